@@ -0,0 +1,241 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates the logs and the log patterns the benchmarks run on. The logs follow the layout of the carbon log of the
+ * WSO2 API Manager and Micro Integrator, {@code [%d] %5p {%c} - %m%ex%n}, with the errors seen on a gateway: pass
+ * through timeouts with their stack traces, mediation faults with a cause, authentication failures and connection
+ * warnings. The logs are generated from a fixed seed, hence two runs with the same parameters read the same bytes.
+ */
+final class LogCorpus {
+
+    static final long SEED = 20240101L;
+    private static final long START_TIME = 1704067200000L;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern(
+            "yyyy-MM-dd HH:mm:ss,SSS").withZone(ZoneOffset.UTC);
+
+    private static final String[] INFO_LINES = {
+            " INFO {org.apache.synapse.mediators.builtin.LogMediator} - {api:PizzaShackAPI:v1.0.0} To: " +
+                    "/pizzashack/1.0.0/menu, MessageID: urn:uuid:%s, correlation_id: %s, Direction: request",
+            " INFO {org.apache.synapse.mediators.builtin.LogMediator} - {api:PizzaShackAPI:v1.0.0} STATUS = " +
+                    "Message dispatched to the main sequence, correlation_id: %s, MessageID: urn:uuid:%s",
+            " INFO {org.wso2.carbon.apimgt.gateway.handlers.throttling.ThrottleHandler} - Request served for " +
+                    "application DefaultApplication of subscriber admin, request id %s, trace %s",
+            " INFO {org.wso2.carbon.core.services.util.CarbonAuthenticationUtil} - 'admin@carbon.super [-1234]' " +
+                    "logged in at [2024-01-01 10:00:00,000+0000] session %s from %s",
+            " INFO {org.apache.synapse.transport.passthru.core.PassThroughListeningIOReactorManager} - Pass-through " +
+                    "HTTPS Listener started on 0.0.0.0:8243 reactor %s worker %s",
+            "DEBUG {org.apache.synapse.transport.http.headers} - http-outgoing-12 >> Content-Type: " +
+                    "application/json; charset=UTF-8, activity %s, flow %s",
+    };
+
+    private LogCorpus() {
+    }
+
+    /**
+     * Generates a log.
+     *
+     * @param lines        number of lines of the log, including the lines of the stack traces
+     * @param errorDensity share of the log records that are errors or warnings, between 0 and 1
+     * @return the log, each line ending with a line break
+     */
+    static byte[] generate(int lines, double errorDensity) {
+
+        Random random = new Random(SEED);
+        StringBuilder log = new StringBuilder(lines * 160);
+        long time = START_TIME;
+        int written = 0;
+        while (written < lines) {
+            time += random.nextInt(50);
+            String record = random.nextDouble() < errorDensity ? errorEvent(random, time) : infoLine(random, time);
+            for (String line : record.split("\n")) {
+                if (written == lines) {
+                    break;
+                }
+                log.append(line).append('\n');
+                written++;
+            }
+        }
+        return log.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a generated log to a temporary file, deleted on exit.
+     */
+    static Path write(int lines, double errorDensity) throws IOException {
+
+        Path file = Files.createTempFile("wso2carbon", ".log");
+        file.toFile().deleteOnExit();
+        Files.write(file, generate(lines, errorDensity));
+        return file;
+    }
+
+    /**
+     * Generates error events, as handed by the log watcher to the interpreter.
+     *
+     * @param count number of events
+     * @return the events, parsed as by the interpreter
+     */
+    static List<ParsedLogLine> errorEvents(int count) {
+
+        Random random = new Random(SEED);
+        List<ParsedLogLine> events = new ArrayList<>(count);
+        long time = START_TIME;
+        for (int i = 0; i < count; i++) {
+            time += random.nextInt(50);
+            String event = errorEvent(random, time);
+            String completeLog = event.endsWith("\n") ? event : event + "\n";
+            String errorLine = completeLog.substring(0, completeLog.indexOf('\n'));
+            events.add(LogLineParser.parse(errorLine, completeLog));
+        }
+        return events;
+    }
+
+    /**
+     * Builds a set of log patterns. The patterns of the sample configuration, which match most of the generated
+     * errors, are placed after the additional ones, which match none of them, so that an event is checked against
+     * all the patterns before it matches, as in a large configuration where the common errors are not listed first.
+     *
+     * @param count number of patterns
+     * @return the patterns
+     */
+    static List<LogPatternRule> patterns(int count) {
+
+        List<LogPatternRule> matching = new ArrayList<>();
+        matching.add(rule("passthru_timeouts", null, "ERROR", "org.apache.synapse.transport.passthru",
+                "java.net.SocketTimeoutException", null));
+        matching.add(rule("passthru", "(.*)org.apache.synapse.transport.passthru(.*)", null, null, null, null));
+        matching.add(rule("connection_refused", null, null, null, null, "Connection refused"));
+        matching.add(rule("synapse", "(.*)org.apache.synapse(.*)", null, null, null, null));
+        matching.add(rule("authentication_failures", null, null, "org.wso2.carbon.apimgt.gateway.handlers.security",
+                null, "authentication failure"));
+        matching.add(rule("out_of_memory", "(.*)OutOfMemoryError(.*)", null, null, null, null));
+
+        List<LogPatternRule> rules = new ArrayList<>();
+        for (int i = 0; rules.size() + matching.size() < count; i++) {
+            switch (i % 4) {
+                case 0:
+                    rules.add(rule("custom_regex_" + i, "(.*)org.wso2.custom.module" + i + ".Handler(.*)", null, null,
+                            null, null));
+                    break;
+                case 1:
+                    rules.add(rule("custom_logger_" + i, null, "ERROR", "org.wso2.custom.component" + i, null,
+                            null));
+                    break;
+                case 2:
+                    rules.add(rule("custom_message_" + i, null, null, null, null, "custom failure " + i + ":"));
+                    break;
+                default:
+                    rules.add(rule("custom_exception_" + i, null, null, null,
+                            "org.wso2.custom.Module" + i + "Exception", null));
+                    break;
+            }
+        }
+        rules.addAll(matching.subList(0, Math.min(count, matching.size())));
+        return rules;
+    }
+
+    private static LogPatternRule rule(String name, String regex, String level, String logger, String exception,
+                                       String message) {
+
+        return new LogPatternRule(name, regex, level == null ? null : Collections.singleton(level), logger, exception,
+                message, new String[]{"ServerInfo"}, 60, 1, 60);
+    }
+
+    private static String infoLine(Random random, long time) {
+
+        String template = INFO_LINES[random.nextInt(INFO_LINES.length)];
+        return prefix(time) + " " + String.format(template, uuid(random), uuid(random));
+    }
+
+    private static String errorEvent(Random random, long time) {
+
+        switch (random.nextInt(5)) {
+            case 0:
+                return prefix(time) + " ERROR {org.apache.synapse.transport.passthru.TargetHandler} - I/O error: " +
+                        "Read timed out, correlation_id: " + uuid(random) + "\n" +
+                        "java.net.SocketTimeoutException: Read timed out\n" +
+                        stackTrace("sun.nio.ch.SocketChannelImpl.read", "org.apache.http.impl.nio.reactor." +
+                                "SessionInputBufferImpl.fill", "org.apache.synapse.transport.passthru." +
+                                "TargetHandler.inputReady", "org.apache.http.impl.nio.reactor." +
+                                "BaseIOReactor.readable", "org.apache.http.impl.nio.reactor.AbstractIOReactor." +
+                                "processEvent", "java.lang.Thread.run");
+            case 1:
+                return prefix(time) + " ERROR {org.apache.synapse.mediators.base.SequenceMediator} - Error while " +
+                        "building message, MessageID: urn:uuid:" + uuid(random) + "\n" +
+                        "org.apache.synapse.SynapseException: Error while building message\n" +
+                        stackTrace("org.apache.synapse.mediators.AbstractListMediator.buildMessage",
+                                "org.apache.synapse.mediators.AbstractListMediator.mediate",
+                                "org.apache.synapse.mediators.base.SequenceMediator.mediate") +
+                        "Caused by: java.lang.NullPointerException\n" +
+                        stackTrace("org.apache.axis2.builder.JSONBuilder.processDocument",
+                                "org.apache.synapse.transport.passthru.util.DeferredMessageBuilder.getDocument");
+            case 2:
+                return prefix(time) + "  WARN {org.apache.synapse.transport.passthru.SourceHandler} - Connection " +
+                        "time out after request is read: http-incoming-" + random.nextInt(1000) +
+                        " Socket Timeout : 180000 Correlation ID : " + uuid(random);
+            case 3:
+                return prefix(time) + " ERROR {org.wso2.carbon.apimgt.gateway.handlers.security." +
+                        "APIAuthenticationHandler} - API authentication failure due to Invalid Credentials, " +
+                        "request id " + uuid(random);
+            default:
+                return prefix(time) + " ERROR {org.apache.synapse.endpoints.EndpointContext} - Endpoint : " +
+                        "PizzaShackAPI--v1.0.0_APIproductionEndpoint with address https://localhost:9443/am/" +
+                        "sample/pizzashack/v1/api/ will be marked SUSPENDED as it failed, Connection refused, " +
+                        "correlation_id: " + uuid(random);
+        }
+    }
+
+    private static String prefix(long time) {
+
+        return "[" + TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(time)) + "]";
+    }
+
+    private static String stackTrace(String... methods) {
+
+        StringBuilder trace = new StringBuilder();
+        for (int i = 0; i < methods.length; i++) {
+            String method = methods[i];
+            String className = method.substring(0, method.lastIndexOf('.'));
+            trace.append("\tat ").append(method).append('(')
+                    .append(className.substring(className.lastIndexOf('.') + 1)).append(".java:")
+                    .append(100 + i * 17).append(")\n");
+        }
+        return trace.toString();
+    }
+
+    private static String uuid(Random random) {
+
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+}
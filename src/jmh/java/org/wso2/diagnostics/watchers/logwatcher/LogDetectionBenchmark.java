@@ -0,0 +1,119 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole detection path of a log line: the log watcher thread, see {@link LogWatcherBenchmark}, and the
+ * matching of the error events with the log patterns on the dispatcher thread, as the interpreter does before it checks
+ * the thresholds and reload times. Each invocation reads a generated log of {@link #LINES} lines from the beginning,
+ * hence the scores are per line.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LogDetectionBenchmark {
+
+    static final int LINES = 100000;
+
+    /**
+     * Share of the log records that are errors or warnings.
+     */
+    @Param({"0.001", "0.01", "0.1", "0.5"})
+    public double errorDensity;
+
+    @Param({"1", "10", "50", "200"})
+    public int patternCount;
+
+    private Path logFile;
+    private LogEventQueue queue;
+    private WatchedLogFile watchedLogFile;
+    private LogPatternMatcher matcher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        logFile = LogCorpus.write(LINES, errorDensity);
+        // large enough to hold every event of the log, none is dropped
+        queue = new LogEventQueue(LINES, LogEventQueue.OverflowPolicy.DROP_OLDEST);
+        // the events are matched by the benchmark instead of an interpreter
+        LogEventAssembler assembler = new LogEventAssembler(null, queue, 500, 1000, 262144, 50, 16384);
+        watchedLogFile = new WatchedLogFile("carbon", logFile.toString(), assembler, new PostTriggerCapture(0, 0));
+        matcher = new LogPatternMatcher(LogCorpus.patterns(patternCount));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        Files.deleteIfExists(logFile);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int detect(Blackhole blackhole) throws IOException, InterruptedException {
+
+        read(watchedLogFile.getTailer(), watchedLogFile);
+        watchedLogFile.getAssembler().flushIfIdle(Long.MAX_VALUE);
+        return drain(blackhole);
+    }
+
+    private static long read(LogTailer logTailer, LogTailer.LineListener listener) throws IOException {
+
+        logTailer.open(false);
+        try {
+            return logTailer.readAvailable(listener);
+        } finally {
+            logTailer.close();
+        }
+    }
+
+    private int drain(Blackhole blackhole) throws InterruptedException {
+
+        int events = 0;
+        LogEvent event;
+        while ((event = queue.poll(0, TimeUnit.MILLISECONDS)) != null) {
+            blackhole.consume(matcher.match(LogLineParser.parse(event.getErrorLine(), event.getCompleteLog())));
+            events++;
+        }
+        return events;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the matching of an error event with the log patterns, which replaced the regex loop of the interpreter,
+ * with and without the extraction of the fields of the event.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LogPatternMatcherBenchmark {
+
+    private static final int EVENTS = 1024;
+
+    @Param({"1", "10", "50", "200"})
+    public int patternCount;
+
+    private LogPatternMatcher matcher;
+    private List<ParsedLogLine> events;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        matcher = new LogPatternMatcher(LogCorpus.patterns(patternCount));
+        events = LogCorpus.errorEvents(EVENTS);
+    }
+
+    /**
+     * Matching an event whose fields are already extracted.
+     */
+    @Benchmark
+    public int match() {
+
+        return matcher.match(nextEvent());
+    }
+
+    /**
+     * Extracting the fields of an event and matching it, as done once per event by the interpreter.
+     */
+    @Benchmark
+    public int parseAndMatch() {
+
+        ParsedLogLine event = nextEvent();
+        return matcher.match(LogLineParser.parse(event.getLine(), event.getCompleteLog()));
+    }
+
+    private ParsedLogLine nextEvent() {
+
+        ParsedLogLine event = events.get(next);
+        next = (next + 1) & (EVENTS - 1);
+        return event;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the log watcher thread: reading and splitting the file into lines, finding the level of each line and
+ * assembling the error events. Each invocation reads a generated log of {@link #LINES} lines from the beginning, hence
+ * the scores are per line.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LogWatcherBenchmark {
+
+    static final int LINES = 100000;
+
+    /**
+     * Share of the log records that are errors or warnings.
+     */
+    @Param({"0.001", "0.01", "0.1", "0.5"})
+    public double errorDensity;
+
+    private Path logFile;
+    private LogTailer tailer;
+    private LogEventQueue queue;
+    private WatchedLogFile watchedLogFile;
+    private LevelClassifier levelClassifier;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        logFile = LogCorpus.write(LINES, errorDensity);
+        tailer = new LogTailer(logFile);
+        levelClassifier = new LevelClassifier();
+        // large enough to hold every event of the log, none is dropped
+        queue = new LogEventQueue(LINES, LogEventQueue.OverflowPolicy.DROP_OLDEST);
+        // the events are drained by the benchmark instead of the dispatcher
+        LogEventAssembler assembler = new LogEventAssembler(null, queue, 500, 1000, 262144, 50, 16384);
+        watchedLogFile = new WatchedLogFile("carbon", logFile.toString(), assembler, new PostTriggerCapture(0, 0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        Files.deleteIfExists(logFile);
+    }
+
+    /**
+     * Reading the file and splitting it into lines.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long split(Blackhole blackhole) throws IOException {
+
+        return read(tailer, (buffer, offset, length) -> blackhole.consume(length));
+    }
+
+    /**
+     * Splitting the file into lines and deciding whether each line starts an error event.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long classify(Blackhole blackhole) throws IOException {
+
+        return read(tailer, (buffer, offset, length) ->
+                blackhole.consume(levelClassifier.isErrorLine(buffer, offset, length)));
+    }
+
+    /**
+     * The log watcher thread: splitting the file into lines, finding the level of each line, keeping the context
+     * lines and assembling the error events into the queue.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int assemble() throws IOException, InterruptedException {
+
+        read(watchedLogFile.getTailer(), watchedLogFile);
+        watchedLogFile.getAssembler().flushIfIdle(Long.MAX_VALUE);
+        return drain();
+    }
+
+    private static long read(LogTailer logTailer, LogTailer.LineListener listener) throws IOException {
+
+        logTailer.open(false);
+        try {
+            return logTailer.readAvailable(listener);
+        } finally {
+            logTailer.close();
+        }
+    }
+
+    private int drain() throws InterruptedException {
+
+        int events = 0;
+        while (queue.poll(0, TimeUnit.MILLISECONDS) != null) {
+            events++;
+        }
+        return events;
+    }
+}
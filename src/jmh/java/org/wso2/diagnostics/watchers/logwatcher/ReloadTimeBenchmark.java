@@ -0,0 +1,115 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the check of the reload time of a pattern, done for every error event matching a pattern. Most events
+ * match a pattern that triggered recently and are rejected, hence the error times advance slower than the reload
+ * time. The check is shared by the interpreters of all the log files, and is also measured from several threads.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReloadTimeBenchmark {
+
+    @Param({"1", "10", "50", "200"})
+    public int patternCount;
+
+    private Path appHome;
+    private Interpreter interpreter;
+    private String[] patternNames;
+
+    /**
+     * The error times and the next pattern of a thread.
+     */
+    @State(Scope.Thread)
+    public static class Events {
+
+        private long errorTime = 1704067200000L;
+        private int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        appHome = Files.createTempDirectory("diagnostics");
+        System.setProperty("app.home", appHome.toString());
+        List<LogPatternRule> rules = LogCorpus.patterns(patternCount);
+        interpreter = new Interpreter(Collections.emptyMap(), rules,
+                new TimestampParser(TimestampParser.DEFAULT_FORMAT));
+        patternNames = new String[rules.size()];
+        for (int i = 0; i < patternNames.length; i++) {
+            patternNames[i] = rules.get(i).getName();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        Files.deleteIfExists(appHome.resolve("temp"));
+        Files.deleteIfExists(appHome);
+    }
+
+    @Benchmark
+    public boolean check(Events events) {
+
+        return nextCheck(events);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean checkContended(Events events) {
+
+        return nextCheck(events);
+    }
+
+    private boolean nextCheck(Events events) {
+
+        // one error every 10 milliseconds, a 60 seconds reload time lets one in 6000 through
+        events.errorTime += 10;
+        String patternName = patternNames[events.next];
+        events.next = events.next + 1 == patternNames.length ? 0 : events.next + 1;
+        return interpreter.checkRegexPatternReloadTime(events.errorTime, patternName, 60);
+    }
+}
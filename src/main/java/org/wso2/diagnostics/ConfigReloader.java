@@ -0,0 +1,178 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reloads {@code conf/config.toml} when it changes, so that the log patterns, the action executors and the thresholds
+ * of the watchers can be tuned without restarting the tool. The file is checked for a new modification time or size
+ * at a fixed interval. A changed file is compiled into a new {@link DiagnosticsConfig}, which replaces the current one
+ * atomically and is handed to the registered listeners. A file that cannot be parsed keeps the current configuration.
+ * <p>
+ * Settings that are only read on start, such as the log files and the log watcher, the capture scheduler and the
+ * enabling or interval of the watchers, are reported in the log when they change but need a restart to take effect.
+ */
+public class ConfigReloader {
+
+    private static final Logger log = LogManager.getLogger(ConfigReloader.class);
+
+    // keys, or prefixes of keys, of the settings only read on start
+    private static final String[] RESTART_REQUIRED = {"server_configuration.", "log_watcher.", "log_file",
+            "capture_scheduler.", "cpu_watcher.enabled", "cpu_watcher.interval", "memory_watcher.enabled",
+            "memory_watcher.interval", "custom_watchers", "traffic_analyzer.", "config_reload.",
+            "jmx_connection.", "metric_history.", "gc_watcher.enabled", "gc_watcher.window", "gc_watcher.reload_time",
+            "gc_watcher.ignored_collectors", "thread_watcher.enabled", "thread_watcher.interval",
+            "thread_watcher.growth_window", "thread_watcher.reload_time"};
+
+    /**
+     * Receives the new configuration after a reload.
+     */
+    public interface Listener {
+
+        void onReload(DiagnosticsConfig config);
+    }
+
+    private final Path configFile;
+    private final AtomicReference<DiagnosticsConfig> config;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private long lastModified;
+    private long lastSize;
+
+    /**
+     * @param configFile the configuration file
+     * @param config     the configuration read on start
+     */
+    public ConfigReloader(String configFile, DiagnosticsConfig config) {
+
+        this.configFile = Paths.get(configFile);
+        this.config = new AtomicReference<>(config);
+        try {
+            this.lastModified = Files.getLastModifiedTime(this.configFile).toMillis();
+            this.lastSize = Files.size(this.configFile);
+        } catch (IOException e) {
+            log.warn("Unable to read the modification time of " + configFile);
+        }
+    }
+
+    public void addListener(Listener listener) {
+
+        listeners.add(listener);
+    }
+
+    /**
+     * @return the current configuration
+     */
+    public DiagnosticsConfig getConfig() {
+
+        return config.get();
+    }
+
+    /**
+     * Starts checking the file for changes.
+     *
+     * @param interval seconds between two checks
+     */
+    public void start(int interval) {
+
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ConfigReloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executorService.scheduleWithFixedDelay(this::checkForChanges, interval, interval, TimeUnit.SECONDS);
+        log.info("Watching " + configFile + " for configuration changes with interval: " + interval + "s");
+    }
+
+    void checkForChanges() {
+
+        try {
+            long modified = Files.getLastModifiedTime(configFile).toMillis();
+            long size = Files.size(configFile);
+            if (modified == lastModified && size == lastSize) {
+                return;
+            }
+            lastModified = modified;
+            lastSize = size;
+            reload();
+        } catch (NoSuchFileException e) {
+            // being replaced by an editor, the next check sees the new file
+        } catch (Exception e) {
+            // a failed reload must not stop the next checks
+            log.error("Error while reloading the configuration from " + configFile, e);
+        }
+    }
+
+    private void reload() throws IOException {
+
+        DiagnosticsConfig oldConfig = config.get();
+        // an invalid file fails here, before anything is replaced
+        DiagnosticsConfig newConfig = DiagnosticsConfig.reload(configFile.toString());
+        config.set(newConfig);
+        Set<String> restartRequired = changedRestartRequiredKeys(oldConfig.getConfigMap(),
+                newConfig.getConfigMap());
+        if (!restartRequired.isEmpty()) {
+            log.warn("Changes to " + restartRequired + " need a restart of the diagnostics tool to take effect.");
+        }
+        for (Listener listener : listeners) {
+            listener.onReload(newConfig);
+        }
+        log.info("Reloaded the configuration from " + configFile);
+    }
+
+    private static Set<String> changedRestartRequiredKeys(Map<String, Object> oldMap, Map<String, Object> newMap) {
+
+        Set<String> keys = new TreeSet<>(oldMap.keySet());
+        keys.addAll(newMap.keySet());
+        Set<String> changed = new TreeSet<>();
+        for (String key : keys) {
+            if (isRestartRequired(key) && !Objects.equals(oldMap.get(key), newMap.get(key))) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isRestartRequired(String key) {
+
+        for (String restartRequired : RESTART_REQUIRED) {
+            if (key.startsWith(restartRequired)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -21,43 +21,91 @@ package org.wso2.diagnostics;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.wso2.diagnostics.actionexecutor.ActionExecutor;
-import org.wso2.diagnostics.actionexecutor.ActionExecutorFactory;
+import org.wso2.diagnostics.actionexecutor.CaptureScheduler;
 import org.wso2.diagnostics.actionexecutor.ServerInfo;
 import org.wso2.diagnostics.actionexecutor.ServerProcess;
 import org.wso2.diagnostics.watchers.Watcher;
 import org.wso2.diagnostics.watchers.logwatcher.Interpreter;
-import org.wso2.diagnostics.utils.ConfigMapHolder;
+import org.wso2.diagnostics.utils.CommonUtils;
 import org.wso2.diagnostics.utils.Constants;
-import org.wso2.diagnostics.utils.TomlParser;
+import org.wso2.diagnostics.utils.JMXConnectionManager;
+import org.wso2.diagnostics.utils.JMXDataRetriever;
+import org.wso2.diagnostics.utils.JMXSampler;
+import org.wso2.diagnostics.utils.MetricHistory;
 import org.wso2.diagnostics.watchers.CPUWatcher;
+import org.wso2.diagnostics.watchers.GCWatcher;
+import org.wso2.diagnostics.watchers.ThreadWatcher;
+import org.wso2.diagnostics.watchers.logwatcher.BackfillScanner;
+import org.wso2.diagnostics.watchers.logwatcher.FingerprintCache;
+import org.wso2.diagnostics.watchers.logwatcher.LogChangeNotifier;
+import org.wso2.diagnostics.watchers.logwatcher.LogEventDispatcher;
+import org.wso2.diagnostics.watchers.logwatcher.LogEventQueue;
+import org.wso2.diagnostics.watchers.logwatcher.LogPatternRule;
 import org.wso2.diagnostics.watchers.logwatcher.LogWatcher;
+import org.wso2.diagnostics.watchers.logwatcher.PollingChangeNotifier;
+import org.wso2.diagnostics.watchers.logwatcher.TailCheckpoint;
+import org.wso2.diagnostics.watchers.logwatcher.TimestampParser;
+import org.wso2.diagnostics.watchers.logwatcher.WatchServiceChangeNotifier;
 import org.wso2.diagnostics.watchers.MemoryWatcher;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-
-import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.Set;
 
 import static org.wso2.diagnostics.utils.Constants.APP_HOME;
 import static org.wso2.diagnostics.utils.Constants.CONFIG_FILE_PATH;
+import static org.wso2.diagnostics.utils.Constants.CONFIG_RELOAD_ENABLED;
+import static org.wso2.diagnostics.utils.Constants.CONFIG_RELOAD_INTERVAL;
 import static org.wso2.diagnostics.utils.Constants.CPU_WATCHER_ENABLED;
-import static org.wso2.diagnostics.utils.Constants.CPU_WATCHER_RETRY_COUNT;
 import static org.wso2.diagnostics.utils.Constants.CPU_WATCHER_INTERVAL;
-import static org.wso2.diagnostics.utils.Constants.CPU_WATCHER_THRESHOLD;
+import static org.wso2.diagnostics.utils.Constants.DEFAULT_LOG_WATCHER_CHECKPOINT_FILE;
+import static org.wso2.diagnostics.utils.Constants.GC_WATCHER_ENABLED;
+import static org.wso2.diagnostics.utils.Constants.GC_WATCHER_IGNORED_COLLECTORS;
+import static org.wso2.diagnostics.utils.Constants.GC_WATCHER_RELOAD_TIME;
+import static org.wso2.diagnostics.utils.Constants.GC_WATCHER_WINDOW;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_CHECKPOINT_ENABLED;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_CHECKPOINT_FILE;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_CHECKPOINT_INTERVAL;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_CONTEXT_BYTES;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_CONTEXT_LINES;
 import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_ENABLED;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_EVENT_IDLE_TIMEOUT;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_EVENT_MAX_BYTES;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_EVENT_MAX_LINES;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_FINGERPRINT_CACHE_SIZE;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_FINGERPRINT_ENABLED;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_FINGERPRINT_FRAMES;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_FINGERPRINT_SURGE_THRESHOLD;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_FINGERPRINT_SURGE_WINDOW;
 import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_INTERVAL;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_MAX_CATCH_UP;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_MAX_INTERVAL;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_MODE;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_MODE_POLLING;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_MODE_WATCH_SERVICE;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_OVERFLOW_POLICY;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_POST_TRIGGER_LINES;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_POST_TRIGGER_TIME;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_QUEUE_SIZE;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_STATS_INTERVAL;
+import static org.wso2.diagnostics.utils.Constants.LOG_WATCHER_TIMESTAMP_FORMAT;
 import static org.wso2.diagnostics.utils.Constants.MEMORY_WATCHER_ENABLED;
 import static org.wso2.diagnostics.utils.Constants.MEMORY_WATCHER_INTERVAL;
-import static org.wso2.diagnostics.utils.Constants.MEMORY_WATCHER_RETRY_COUNT;
-import static org.wso2.diagnostics.utils.Constants.MEMORY_WATCHER_THRESHOLD;
+import static org.wso2.diagnostics.utils.Constants.THREAD_WATCHER_ENABLED;
+import static org.wso2.diagnostics.utils.Constants.THREAD_WATCHER_GROWTH_WINDOW;
+import static org.wso2.diagnostics.utils.Constants.THREAD_WATCHER_INTERVAL;
+import static org.wso2.diagnostics.utils.Constants.THREAD_WATCHER_RELOAD_TIME;
 import static org.wso2.diagnostics.utils.Constants.WATCHER_INITIAL_DELAY;
 
 /**
@@ -69,15 +117,23 @@ public class DiagnosticsApp {
 
     public static void main(String[] args) {
 
+        if (args.length > 0 && Constants.BACKFILL_ARGUMENT.equals(args[0])) {
+            runBackfill(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Map<String, Object> configMap;
         try {
             // delay the start to allow read the server pid and log file path
             Thread.sleep(30000);
-            Map<String, ActionExecutor> actionExecutorMap = new HashMap<>();
-            Map<String, String[]> regexMap = new LinkedHashMap<>();
-            Map<String, Integer> regexPatternReloadTime = new HashMap<>();
-            configMap = readConfiguration(System.getProperty(APP_HOME) + CONFIG_FILE_PATH,
-                    actionExecutorMap, regexMap, regexPatternReloadTime);
+            String configFilePath = System.getProperty(APP_HOME) + CONFIG_FILE_PATH;
+            DiagnosticsConfig config = DiagnosticsConfig.load(configFilePath);
+            configMap = config.getConfigMap();
+            ServerProcess.setProcessId((String) configMap.get(Constants.PROCESS_ID_PATH));
+            ServerProcess.writePID(System.getProperty(Constants.APP_HOME));
+            ConfigReloader configReloader = new ConfigReloader(configFilePath, config);
+            // shared by the JMX based watchers, attaching again to the server after it restarted, and read by the
+            // server info before any watcher is started
+            JMXConnectionManager.init(configMap);
             printServerInfo();
             if (configMap.get(Constants.DIAGNOSTIC_TOOL_ENABLED) == null ||
                     !Boolean.parseBoolean(configMap.get(Constants.DIAGNOSTIC_TOOL_ENABLED).toString())) {
@@ -85,97 +141,311 @@ public class DiagnosticsApp {
                 return;
             }
 
+            // shared by all the watchers to run their action executors
+            CaptureScheduler.init(configMap);
+
             String appHome = System.getProperty(Constants.APP_HOME);
             if (!appHome.endsWith(File.separator)) {
                 appHome = appHome + File.separator;
             }
 
-            // create log watcher thread
+            // create log watcher thread, a single thread serves all the watched log files
             boolean logWatcherEnabled = Boolean.parseBoolean(configMap.get(LOG_WATCHER_ENABLED).toString());
             if (logWatcherEnabled) {
-                double logWatcherInterval = Double.parseDouble(configMap.get(LOG_WATCHER_INTERVAL).toString());
-                LogWatcher carbonLogTailor = new LogWatcher(appHome +
-                        configMap.get(Constants.LOG_FILE_CONFIGURATION_FILE_PATH),
-                        new Interpreter(actionExecutorMap, regexMap, regexPatternReloadTime), logWatcherInterval);
-                log.info("Listening to : " + configMap.get(Constants.LOG_FILE_CONFIGURATION_FILE_PATH));
-                carbonLogTailor.start();
+                long logWatcherStatsInterval = CommonUtils.getIntegerValue(
+                        configMap.get(LOG_WATCHER_STATS_INTERVAL), 300);
+                LogEventQueue logEventQueue = createLogEventQueue(configMap);
+                long eventIdleTimeout = CommonUtils.getIntegerValue(
+                        configMap.get(LOG_WATCHER_EVENT_IDLE_TIMEOUT), 500);
+                int eventMaxLines = CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_EVENT_MAX_LINES), 1000);
+                int eventMaxBytes = CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_EVENT_MAX_BYTES), 262144);
+                LogWatcher logWatcher = new LogWatcher(createLogChangeNotifier(configMap), logEventQueue,
+                        logWatcherStatsInterval, eventIdleTimeout, eventMaxLines, eventMaxBytes);
+                logWatcher.setContextSize(CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_CONTEXT_LINES), 50),
+                        CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_CONTEXT_BYTES), 16384));
+                logWatcher.setPostTriggerWindow(
+                        CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_POST_TRIGGER_TIME), 10) * 1000L,
+                        CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_POST_TRIGGER_LINES), 1000));
+                logWatcher.setCheckpoint(createTailCheckpoint(configMap, appHome));
+                for (Map.Entry<String, String> logFile : readLogFiles(configMap).entrySet()) {
+                    String logFileName = logFile.getKey();
+                    List<LogPatternRule> rules = config.getLogPatternRules(logFileName);
+                    Interpreter interpreter = new Interpreter(config.getActionExecutors(), rules,
+                            createTimestampParser(configMap), createFingerprintCache(configMap));
+                    configReloader.addListener(newConfig -> interpreter.reload(newConfig.getActionExecutors(),
+                            newConfig.getLogPatternRules(logFileName)));
+                    logWatcher.addFile(logFileName, appHome + logFile.getValue(), interpreter);
+                    log.info("Listening to : " + logFile.getValue() + " with " + rules.size() + " log patterns");
+                }
+                new LogEventDispatcher(logEventQueue).start();
+                logWatcher.start();
             }
 
-            // create cpu watcher thread
+            // the JMX based watchers are sampled together, one read of their attributes per tick
+            JMXSampler jmxSampler = new JMXSampler();
+
+            // create cpu watcher
             boolean cpuWatcherEnabled = Boolean.parseBoolean(configMap.get(CPU_WATCHER_ENABLED).toString());
             if (cpuWatcherEnabled) {
-                int cpuWatcherInterval = Integer.parseInt(configMap.get(CPU_WATCHER_INTERVAL).toString());
-                int cpuWatcherRetryCount = Integer.parseInt(configMap.get(CPU_WATCHER_RETRY_COUNT).toString());
-                int cpuWatcherThreshold = Integer.parseInt(configMap.get(CPU_WATCHER_THRESHOLD).toString());
+                // in seconds, a fraction such as 0.5 samples more often than once a second
+                long cpuWatcherInterval = Math.round(
+                        Double.parseDouble(configMap.get(CPU_WATCHER_INTERVAL).toString()) * 1000);
+                int cpuWatcherRetryCount = config.getCpuWatcherRetryCount();
+                int cpuWatcherThreshold = config.getCpuWatcherThreshold();
 
-                log.info("Initiating CPUWatcher with interval: " + cpuWatcherInterval +
+                log.info("Initiating CPUWatcher with interval: " + cpuWatcherInterval + "ms" +
                         " retry count: " + cpuWatcherRetryCount + " threshold: " + cpuWatcherThreshold);
-                ScheduledExecutorService cpuUsageExecutorService = Executors.newSingleThreadScheduledExecutor();
-                CPUWatcher cpuWatcher = new CPUWatcher(
-                        ServerProcess.getProcessId(), cpuWatcherThreshold, cpuWatcherRetryCount);
-                cpuUsageExecutorService.scheduleAtFixedRate(
-                        cpuWatcher, WATCHER_INITIAL_DELAY, cpuWatcherInterval, SECONDS);
+                CPUWatcher cpuWatcher = new CPUWatcher(cpuWatcherThreshold, cpuWatcherRetryCount);
+                jmxSampler.addListener(cpuWatcher, cpuWatcherInterval, JMXDataRetriever.OPERATING_SYSTEM_MBEAN,
+                        JMXDataRetriever.PROCESS_CPU_LOAD);
+                configReloader.addListener(newConfig -> cpuWatcher.setThreshold(newConfig.getCpuWatcherThreshold(),
+                        newConfig.getCpuWatcherRetryCount()));
             }
 
-            // create memory watcher thread
+            // create memory watcher
             boolean memoryWatcherEnabled = Boolean.parseBoolean(configMap.get(MEMORY_WATCHER_ENABLED).toString());
             if (memoryWatcherEnabled) {
-                int memoryWatcherInterval = Integer.parseInt(configMap.get(MEMORY_WATCHER_INTERVAL).toString());
-                int memoryWatcherRetryCount = Integer.parseInt(configMap.get(MEMORY_WATCHER_RETRY_COUNT).toString());
-                int memoryWatcherThreshold = Integer.parseInt(configMap.get(MEMORY_WATCHER_THRESHOLD).toString());
+                // in seconds, a fraction such as 0.5 samples more often than once a second
+                long memoryWatcherInterval = Math.round(
+                        Double.parseDouble(configMap.get(MEMORY_WATCHER_INTERVAL).toString()) * 1000);
+                int memoryWatcherRetryCount = config.getMemoryWatcherRetryCount();
+                int memoryWatcherThreshold = config.getMemoryWatcherThreshold();
 
-                log.info("Initiating MemoryWatcher with interval: " + memoryWatcherInterval +
+                log.info("Initiating MemoryWatcher with interval: " + memoryWatcherInterval + "ms" +
                         " retry count: " + memoryWatcherRetryCount + " threshold: " + memoryWatcherThreshold);
-                ScheduledExecutorService memoryUsageExecutorService = Executors.newSingleThreadScheduledExecutor();
-                MemoryWatcher memoryWatcher = new MemoryWatcher(
-                        ServerProcess.getProcessId(), memoryWatcherThreshold, memoryWatcherRetryCount);
-                memoryUsageExecutorService.scheduleAtFixedRate(
-                        memoryWatcher, WATCHER_INITIAL_DELAY, memoryWatcherInterval, SECONDS);
+                MemoryWatcher memoryWatcher = new MemoryWatcher(memoryWatcherThreshold, memoryWatcherRetryCount);
+                jmxSampler.addListener(memoryWatcher, memoryWatcherInterval, JMXDataRetriever.MEMORY_MBEAN,
+                        JMXDataRetriever.HEAP_MEMORY_USAGE);
+                configReloader.addListener(newConfig -> memoryWatcher.setThreshold(
+                        newConfig.getMemoryWatcherThreshold(), newConfig.getMemoryWatcherRetryCount()));
+            }
+
+            // create gc watcher, notified of the collections by the server
+            if (CommonUtils.getBooleanValue(configMap.get(GC_WATCHER_ENABLED), false)) {
+                long gcWatcherWindow = CommonUtils.getIntegerValue(configMap.get(GC_WATCHER_WINDOW), 60) * 1000L;
+                long gcWatcherReloadTime =
+                        CommonUtils.getIntegerValue(configMap.get(GC_WATCHER_RELOAD_TIME), 300) * 1000L;
+                Object ignoredCollectors = configMap.get(GC_WATCHER_IGNORED_COLLECTORS);
+                Set<String> gcWatcherIgnoredCollectors = new HashSet<>();
+                for (String collector : (ignoredCollectors == null ? GCWatcher.DEFAULT_IGNORED_COLLECTORS :
+                        ignoredCollectors.toString()).split(",")) {
+                    if (!collector.trim().isEmpty()) {
+                        gcWatcherIgnoredCollectors.add(collector.trim());
+                    }
+                }
+
+                log.info("Initiating GCWatcher with pause threshold: " + config.getGcWatcherPauseThreshold() +
+                        "ms time threshold: " + config.getGcWatcherTimeThreshold() + "% window: " + gcWatcherWindow +
+                        "ms ignored collectors: " + gcWatcherIgnoredCollectors);
+                GCWatcher gcWatcher = new GCWatcher(config.getGcWatcherPauseThreshold(),
+                        config.getGcWatcherTimeThreshold(), gcWatcherWindow, gcWatcherReloadTime,
+                        gcWatcherIgnoredCollectors);
+                // samples only to subscribe to the collectors once connected
+                jmxSampler.addListener(gcWatcher, GCWatcher.SUBSCRIPTION_CHECK_INTERVAL,
+                        JMXDataRetriever.GARBAGE_COLLECTOR_MBEANS, JMXDataRetriever.COLLECTION_COUNT);
+                configReloader.addListener(newConfig -> gcWatcher.setThresholds(
+                        newConfig.getGcWatcherPauseThreshold(), newConfig.getGcWatcherTimeThreshold()));
+            }
+
+            // create thread watcher
+            if (CommonUtils.getBooleanValue(configMap.get(THREAD_WATCHER_ENABLED), false)) {
+                Object threadWatcherIntervalValue = configMap.get(THREAD_WATCHER_INTERVAL);
+                long threadWatcherInterval = Math.round((threadWatcherIntervalValue == null ? 10 :
+                        Double.parseDouble(threadWatcherIntervalValue.toString())) * 1000);
+                long threadWatcherGrowthWindow =
+                        CommonUtils.getIntegerValue(configMap.get(THREAD_WATCHER_GROWTH_WINDOW), 300) * 1000L;
+                long threadWatcherReloadTime =
+                        CommonUtils.getIntegerValue(configMap.get(THREAD_WATCHER_RELOAD_TIME), 300) * 1000L;
+
+                log.info("Initiating ThreadWatcher with interval: " + threadWatcherInterval + "ms blocked threshold: " +
+                        config.getThreadWatcherBlockedThreshold() + "% retry count: " +
+                        config.getThreadWatcherRetryCount() + " growth threshold: " +
+                        config.getThreadWatcherGrowthThreshold() + " growth window: " + threadWatcherGrowthWindow +
+                        "ms");
+                ThreadWatcher threadWatcher = new ThreadWatcher(config.getThreadWatcherBlockedThreshold(),
+                        config.getThreadWatcherRetryCount(), config.getThreadWatcherGrowthThreshold(),
+                        threadWatcherGrowthWindow, threadWatcherReloadTime);
+                jmxSampler.addListener(threadWatcher, threadWatcherInterval, JMXDataRetriever.THREADING_MBEAN,
+                        JMXDataRetriever.ALL_THREAD_IDS);
+                configReloader.addListener(newConfig -> threadWatcher.setThresholds(
+                        newConfig.getThreadWatcherBlockedThreshold(), newConfig.getThreadWatcherRetryCount(),
+                        newConfig.getThreadWatcherGrowthThreshold()));
+            }
+
+            // records the metrics of the server, written to each capture
+            MetricHistory metricHistory = MetricHistory.init(configMap);
+            if (metricHistory != null) {
+                jmxSampler.addListener(metricHistory, metricHistory.getInterval(), metricHistory.getAttributes());
             }
+            jmxSampler.start(WATCHER_INITIAL_DELAY);
 
             // load custom watchers
             loadCustomWatchers(configMap);
 
+            if (CommonUtils.getBooleanValue(configMap.get(CONFIG_RELOAD_ENABLED), true)) {
+                configReloader.start(CommonUtils.getIntegerValue(configMap.get(CONFIG_RELOAD_INTERVAL), 5));
+            }
+
         } catch (IOException | InterruptedException e) {
             log.error("Error on starting Diagnostics tool", e);
             throw new RuntimeException(e);
         }
     }
 
-    private static Map<String, Object> readConfiguration(
-            String configFilePath, Map<String, ActionExecutor> actionExecutorMap, Map<String, String[]> regexTree,
-            Map<String, Integer> regexPatternReloadTime) throws IOException {
-
-        Map<String, Object> configMap = TomlParser.parse(configFilePath);
-        ConfigMapHolder.getInstance().setConfigMap(configMap);
-        ServerProcess.setProcessId((String) configMap.get(Constants.PROCESS_ID_PATH));
-
-        ArrayList actionExecutorConfigs = (ArrayList) configMap.get(
-                Constants.TOML_NAME_ACTION_EXECUTOR_CONFIGURATION);
-        for (Object actionExecutorConfig : actionExecutorConfigs) {
-            String executorName = (String) ((HashMap) actionExecutorConfig).get(Constants.TOML_NAME_EXECUTOR);
-            ActionExecutor actionExecutor = ActionExecutorFactory.getActionExecutor(executorName);
-            if (actionExecutor == null) {
-                log.error("Action executor " + executorName + " is not available.");
+    /**
+     * Scans the historical logs with the log patterns instead of starting the watchers.
+     *
+     * @param args the logs directory and the output directory, both optional
+     */
+    private static void runBackfill(String[] args) {
+
+        String appHome = System.getProperty(Constants.APP_HOME);
+        try {
+            DiagnosticsConfig config = DiagnosticsConfig.load(appHome + CONFIG_FILE_PATH);
+            Map<String, Object> configMap = config.getConfigMap();
+            Path logsDirectory = args.length > 0 ? Paths.get(args[0]) :
+                    Paths.get(appHome).resolve(configMap.get(Constants.LOGS_DIRECTORY).toString());
+            Object outputDirectory = configMap.get(Constants.BACKFILL_OUTPUT_DIRECTORY);
+            Path outputPath = args.length > 1 ? Paths.get(args[1]) :
+                    Paths.get(appHome).resolve(outputDirectory == null ? "backfill" : outputDirectory.toString());
+            Object filePattern = configMap.get(Constants.BACKFILL_FILE_PATTERN);
+            int parallelism = CommonUtils.getIntegerValue(configMap.get(Constants.BACKFILL_PARALLELISM), 0);
+            if (parallelism <= 0) {
+                parallelism = Runtime.getRuntime().availableProcessors();
+            }
+            List<Path> files = BackfillScanner.findLogFiles(logsDirectory,
+                    filePattern == null ? "wso2carbon*.log*" : filePattern.toString());
+            List<LogPatternRule> rules = config.getAllLogPatternRules();
+            log.info("Backfilling " + rules.size() + " log patterns over " + files.size() + " log files in " +
+                    logsDirectory);
+            BackfillScanner.Report report = new BackfillScanner(rules,
+                    createTimestampParser(configMap).getFormat(), parallelism).scan(files);
+
+            Files.createDirectories(outputPath);
+            report.writeSummary(outputPath.resolve("backfill_summary.csv"));
+            report.writeHistogram(outputPath.resolve("backfill_histogram.csv"));
+            long elapsed = Math.max(1, report.getElapsedMillis());
+            log.info("Scanned " + report.getBytes() / (1024 * 1024) + "MB, " + report.getLines() + " lines and " +
+                    report.getEvents() + " error events in " + elapsed + "ms (" +
+                    report.getBytes() / 1024 * 1000 / 1024 / elapsed + "MB/s)");
+            for (BackfillScanner.PatternStats stats : report.getPatternStats()) {
+                log.info("Log pattern " + stats.getName() + " matched " + stats.getCount() + " events" +
+                        (stats.getFirst() < 0 ? "" : " from " + new Timestamp(stats.getFirst()) + " to " +
+                                new Timestamp(stats.getLast())));
+            }
+            log.info("Backfill report written to " + outputPath);
+        } catch (IOException e) {
+            log.error("Error while backfilling the log patterns", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the log files to watch. The carbon error log is always watched, additional files are configured with
+     * [[log_file]] entries.
+     *
+     * @return paths of the log files relative to the app home, keyed by the name of the log file
+     */
+    private static Map<String, String> readLogFiles(Map<String, Object> configMap) {
+
+        Map<String, String> logFiles = new LinkedHashMap<>();
+        logFiles.put(Constants.DEFAULT_LOG_FILE_NAME,
+                configMap.get(Constants.LOG_FILE_CONFIGURATION_FILE_PATH).toString());
+        ArrayList logFileConfigs = (ArrayList) configMap.get(Constants.TOML_NAME_LOG_FILE);
+        if (logFileConfigs == null) {
+            return logFiles;
+        }
+        for (Object logFileConfig : logFileConfigs) {
+            String name = (String) ((Map) logFileConfig).get(Constants.TOML_NAME_LOG_FILE_NAME);
+            String path = (String) ((Map) logFileConfig).get(Constants.TOML_NAME_LOG_FILE_PATH);
+            if (StringUtils.isEmpty(name) || StringUtils.isEmpty(path)) {
+                log.error("Both name and path are required for a log_file configuration, hence ignoring it.");
+                continue;
+            }
+            if (logFiles.containsKey(name)) {
+                log.error("Duplicate log_file name " + name + ", hence ignoring it.");
                 continue;
             }
-            actionExecutorMap.put(executorName, actionExecutor);
+            logFiles.put(name, path);
         }
+        return logFiles;
+    }
+
+    private static TimestampParser createTimestampParser(Map<String, Object> configMap) {
 
-        ArrayList regexConfigs = (ArrayList) configMap.get("log_pattern");
-        for (Object regexConfig : regexConfigs) {
-            String regexName = (String) ((HashMap) regexConfig).get("regex");
-            String executorList = (String) ((HashMap) regexConfig).get("executors");
-            String reloadTime = (String) ((HashMap) regexConfig).get(
-                    Constants.TOML_NAME_RELOAD_TIME);
-            if (StringUtils.isNotEmpty(executorList)) {
-                String[] executors = executorList.split(",");
-                regexTree.put(regexName, executors);
-                regexPatternReloadTime.put(regexName, Integer.parseInt(reloadTime));
+        Object timestampFormat = configMap.get(LOG_WATCHER_TIMESTAMP_FORMAT);
+        if (timestampFormat != null) {
+            try {
+                return new TimestampParser(timestampFormat.toString());
+            } catch (IllegalArgumentException e) {
+                log.error(e.getMessage() + ", hence using " + TimestampParser.DEFAULT_FORMAT);
             }
         }
-        ServerProcess.writePID(System.getProperty(Constants.APP_HOME));
-        return configMap;
+        return new TimestampParser(TimestampParser.DEFAULT_FORMAT);
+    }
+
+    private static FingerprintCache createFingerprintCache(Map<String, Object> configMap) {
+
+        if (!CommonUtils.getBooleanValue(configMap.get(LOG_WATCHER_FINGERPRINT_ENABLED), false)) {
+            return null;
+        }
+        int frames = CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_FINGERPRINT_FRAMES), 5);
+        int cacheSize = CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_FINGERPRINT_CACHE_SIZE), 1000);
+        int surgeThreshold = CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_FINGERPRINT_SURGE_THRESHOLD), 100);
+        int surgeWindow = CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_FINGERPRINT_SURGE_WINDOW), 60);
+        log.info("Initiating error fingerprints with frames: " + frames + " cache size: " + cacheSize +
+                " surge threshold: " + surgeThreshold + " surge window: " + surgeWindow + "s");
+        return new FingerprintCache(cacheSize, frames, surgeThreshold, surgeWindow * 1000L);
+    }
+
+    private static TailCheckpoint createTailCheckpoint(Map<String, Object> configMap, String appHome) {
+
+        Object enabled = configMap.get(LOG_WATCHER_CHECKPOINT_ENABLED);
+        if (enabled != null && !Boolean.parseBoolean(enabled.toString())) {
+            log.info("Log watcher checkpoints are disabled, the log files are read from their end on start.");
+            return null;
+        }
+        Object checkpointFile = configMap.get(LOG_WATCHER_CHECKPOINT_FILE);
+        Path checkpointPath = Paths.get(appHome).resolve(
+                checkpointFile == null ? DEFAULT_LOG_WATCHER_CHECKPOINT_FILE : checkpointFile.toString());
+        int checkpointInterval = CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_CHECKPOINT_INTERVAL), 5);
+        // in MB
+        int maxCatchUp = CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_MAX_CATCH_UP), 10);
+        log.info("Initiating log watcher checkpoints at " + checkpointPath + " with interval: " + checkpointInterval +
+                " max catch up: " + maxCatchUp + "MB");
+        return new TailCheckpoint(checkpointPath, checkpointInterval * 1000L, maxCatchUp * 1024L * 1024L);
+    }
+
+    private static LogEventQueue createLogEventQueue(Map<String, Object> configMap) {
+
+        int queueSize = CommonUtils.getIntegerValue(configMap.get(LOG_WATCHER_QUEUE_SIZE), 256);
+        LogEventQueue.OverflowPolicy overflowPolicy = LogEventQueue.OverflowPolicy.DROP_OLDEST;
+        Object policy = configMap.get(LOG_WATCHER_OVERFLOW_POLICY);
+        try {
+            overflowPolicy = LogEventQueue.OverflowPolicy.fromConfig(policy == null ? null : policy.toString());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown log watcher overflow policy " + policy + ", hence using drop_oldest.");
+        }
+        log.info("Initiating log event queue with size: " + queueSize + " overflow policy: " + overflowPolicy);
+        return new LogEventQueue(queueSize, overflowPolicy);
+    }
+
+    private static LogChangeNotifier createLogChangeNotifier(Map<String, Object> configMap) {
+
+        double logWatcherInterval = Double.parseDouble(configMap.get(LOG_WATCHER_INTERVAL).toString());
+        Object maxInterval = configMap.get(LOG_WATCHER_MAX_INTERVAL);
+        double logWatcherMaxInterval = maxInterval == null ? 2 : Double.parseDouble(maxInterval.toString());
+        long minDelay = Math.round(logWatcherInterval * 1000);
+        long maxDelay = Math.round(logWatcherMaxInterval * 1000);
+
+        Object mode = configMap.get(LOG_WATCHER_MODE);
+        if (mode == null || LOG_WATCHER_MODE_WATCH_SERVICE.equals(mode.toString())) {
+            // polls by itself if the file system does not support watching
+            return new WatchServiceChangeNotifier(minDelay, maxDelay);
+        } else if (!LOG_WATCHER_MODE_POLLING.equals(mode.toString())) {
+            log.warn("Unknown log watcher mode " + mode + ", hence falling back to polling.");
+        }
+        return new PollingChangeNotifier(minDelay, maxDelay);
     }
 
     private static void printServerInfo() {
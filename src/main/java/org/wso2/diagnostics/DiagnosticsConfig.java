@@ -0,0 +1,286 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.diagnostics.actionexecutor.ActionExecutor;
+import org.wso2.diagnostics.actionexecutor.ActionExecutorFactory;
+import org.wso2.diagnostics.utils.CommonUtils;
+import org.wso2.diagnostics.utils.ConfigMapHolder;
+import org.wso2.diagnostics.utils.Constants;
+import org.wso2.diagnostics.utils.TomlParser;
+import org.wso2.diagnostics.watchers.logwatcher.LogPatternRule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of {@code conf/config.toml}, compiled once when the file is read: the action executors, the
+ * log patterns and the thresholds of the watchers. A new snapshot is built when the file changes, see
+ * {@link ConfigReloader}.
+ */
+public class DiagnosticsConfig {
+
+    private static final Logger log = LogManager.getLogger(DiagnosticsConfig.class);
+
+    private final Map<String, Object> configMap;
+    private final Map<String, ActionExecutor> actionExecutors;
+    // log patterns grouped by the name of the log file they apply to
+    private final Map<String, List<LogPatternRule>> logPatternRules;
+    private final int cpuWatcherThreshold;
+    private final int cpuWatcherRetryCount;
+    private final int memoryWatcherThreshold;
+    private final int memoryWatcherRetryCount;
+    private final int gcWatcherPauseThreshold;
+    private final int gcWatcherTimeThreshold;
+    private final int threadWatcherBlockedThreshold;
+    private final int threadWatcherRetryCount;
+    private final int threadWatcherGrowthThreshold;
+
+    private DiagnosticsConfig(Map<String, Object> configMap, Map<String, ActionExecutor> actionExecutors,
+                              Map<String, List<LogPatternRule>> logPatternRules) {
+
+        this.configMap = Collections.unmodifiableMap(configMap);
+        this.actionExecutors = Collections.unmodifiableMap(actionExecutors);
+        this.logPatternRules = Collections.unmodifiableMap(logPatternRules);
+        this.cpuWatcherThreshold = CommonUtils.getIntegerValue(configMap.get(Constants.CPU_WATCHER_THRESHOLD), 80);
+        this.cpuWatcherRetryCount = CommonUtils.getIntegerValue(configMap.get(Constants.CPU_WATCHER_RETRY_COUNT), 2);
+        this.memoryWatcherThreshold = CommonUtils.getIntegerValue(configMap.get(Constants.MEMORY_WATCHER_THRESHOLD),
+                80);
+        this.memoryWatcherRetryCount = CommonUtils.getIntegerValue(
+                configMap.get(Constants.MEMORY_WATCHER_RETRY_COUNT), 2);
+        this.gcWatcherPauseThreshold = CommonUtils.getIntegerValue(
+                configMap.get(Constants.GC_WATCHER_PAUSE_THRESHOLD), 1000);
+        this.gcWatcherTimeThreshold = CommonUtils.getIntegerValue(configMap.get(Constants.GC_WATCHER_TIME_THRESHOLD),
+                20);
+        this.threadWatcherBlockedThreshold = CommonUtils.getIntegerValue(
+                configMap.get(Constants.THREAD_WATCHER_BLOCKED_THRESHOLD), 50);
+        this.threadWatcherRetryCount = CommonUtils.getIntegerValue(
+                configMap.get(Constants.THREAD_WATCHER_RETRY_COUNT), 2);
+        this.threadWatcherGrowthThreshold = CommonUtils.getIntegerValue(
+                configMap.get(Constants.THREAD_WATCHER_GROWTH_THRESHOLD), 200);
+    }
+
+    /**
+     * Reads the configuration file. The parsed map is published to the {@link ConfigMapHolder} before the action
+     * executors are created, as they read their parameters from it, and the previous map is published again if the
+     * snapshot cannot be built.
+     *
+     * @param configFilePath path of config.toml
+     * @return the snapshot of the configuration
+     * @throws IOException if the file cannot be read
+     */
+    public static DiagnosticsConfig load(String configFilePath) throws IOException {
+
+        return compile(TomlParser.parse(configFilePath));
+    }
+
+    /**
+     * Reads the configuration file after a change. Unlike {@link #load(String)}, a syntax error fails the reload
+     * instead of leaving out the settings that could not be parsed.
+     *
+     * @param configFilePath path of config.toml
+     * @return the snapshot of the configuration
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static DiagnosticsConfig reload(String configFilePath) throws IOException {
+
+        return compile(TomlParser.parseStrict(configFilePath));
+    }
+
+    private static DiagnosticsConfig compile(Map<String, Object> configMap) {
+
+        List<Object> regexConfigs = asList(configMap.get(Constants.TOML_NAME_LOG_PATTERN));
+        Map<String, List<LogPatternRule>> logPatternRules = readLogPatternRules(regexConfigs);
+        // published before the action executors are created, as they read their parameters from the holder in their
+        // no-arg constructors, including the custom executors loaded from the classpath
+        ConfigMapHolder configMapHolder = ConfigMapHolder.getInstance();
+        Map<String, Object> previousConfigMap = configMapHolder.getConfigMap();
+        configMapHolder.setConfigMap(configMap);
+        try {
+            Map<String, ActionExecutor> actionExecutorMap = new HashMap<>();
+            for (Object actionExecutorConfig :
+                    asList(configMap.get(Constants.TOML_NAME_ACTION_EXECUTOR_CONFIGURATION))) {
+                String executorName = (String) ((Map) actionExecutorConfig).get(Constants.TOML_NAME_EXECUTOR);
+                ActionExecutor actionExecutor = ActionExecutorFactory.getActionExecutor(executorName);
+                if (actionExecutor == null) {
+                    log.error("Action executor " + executorName + " is not available.");
+                    continue;
+                }
+                actionExecutorMap.put(executorName, actionExecutor);
+            }
+            return new DiagnosticsConfig(configMap, actionExecutorMap, logPatternRules);
+        } catch (RuntimeException e) {
+            // the configuration in use stays the one of the previous snapshot
+            configMapHolder.setConfigMap(previousConfigMap);
+            throw e;
+        }
+    }
+
+    private static Map<String, List<LogPatternRule>> readLogPatternRules(List<Object> regexConfigs) {
+
+        Map<String, List<LogPatternRule>> logPatternRules = new LinkedHashMap<>();
+        Set<String> patternNames = new HashSet<>();
+        for (Object regexConfig : regexConfigs) {
+            Map patternConfig = (Map) regexConfig;
+            String executorList = (String) patternConfig.get(Constants.TOML_NAME_LOG_PATTERN_EXECUTORS);
+            // patterns without a log file apply to the carbon error log
+            String logFileName = (String) patternConfig.get(Constants.TOML_NAME_LOG_PATTERN_LOG_FILE);
+            if (StringUtils.isEmpty(logFileName)) {
+                logFileName = Constants.DEFAULT_LOG_FILE_NAME;
+            }
+            if (StringUtils.isEmpty(executorList)) {
+                continue;
+            }
+            LogPatternRule rule = readLogPatternRule(patternConfig, executorList.split(","),
+                    patternNames.size() + 1);
+            if (!rule.hasConditions()) {
+                log.error("Log pattern " + rule.getName() + " has no regex, level, logger, exception or message, " +
+                        "hence ignoring it.");
+                continue;
+            }
+            if (!patternNames.add(rule.getName())) {
+                log.error("Duplicate log pattern name " + rule.getName() + ", hence ignoring it.");
+                continue;
+            }
+            logPatternRules.computeIfAbsent(logFileName, k -> new ArrayList<>()).add(rule);
+        }
+        return logPatternRules;
+    }
+
+    private static LogPatternRule readLogPatternRule(Map patternConfig, String[] executors, int index) {
+
+        String regex = StringUtils.defaultIfEmpty((String) patternConfig.get(Constants.TOML_NAME_LOG_PATTERN_REGEX),
+                null);
+        String name = (String) patternConfig.get(Constants.TOML_NAME_LOG_PATTERN_NAME);
+        if (StringUtils.isEmpty(name)) {
+            // the regex used to be the identity of a pattern
+            name = regex != null ? regex : Constants.TOML_NAME_LOG_PATTERN + "_" + index;
+        }
+        Set<String> levels = null;
+        String levelList = (String) patternConfig.get(Constants.TOML_NAME_LOG_PATTERN_LEVEL);
+        if (StringUtils.isNotEmpty(levelList)) {
+            levels = new HashSet<>();
+            for (String level : levelList.split(",")) {
+                levels.add(level.trim().toUpperCase());
+            }
+        }
+        return new LogPatternRule(name, regex, levels,
+                StringUtils.defaultIfEmpty((String) patternConfig.get(Constants.TOML_NAME_LOG_PATTERN_LOGGER), null),
+                StringUtils.defaultIfEmpty((String) patternConfig.get(Constants.TOML_NAME_LOG_PATTERN_EXCEPTION),
+                        null),
+                StringUtils.defaultIfEmpty((String) patternConfig.get(Constants.TOML_NAME_LOG_PATTERN_MESSAGE), null),
+                executors, CommonUtils.getIntegerValue(patternConfig.get(Constants.TOML_NAME_RELOAD_TIME), 0),
+                CommonUtils.getIntegerValue(patternConfig.get(Constants.TOML_NAME_LOG_PATTERN_THRESHOLD), 1),
+                CommonUtils.getIntegerValue(patternConfig.get(Constants.TOML_NAME_LOG_PATTERN_WINDOW),
+                        Constants.DEFAULT_LOG_PATTERN_WINDOW));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object value) {
+
+        return value instanceof List ? (List<Object>) value : Collections.emptyList();
+    }
+
+    /**
+     * @return the raw configuration, keyed by the dotted TOML keys
+     */
+    public Map<String, Object> getConfigMap() {
+
+        return configMap;
+    }
+
+    public Map<String, ActionExecutor> getActionExecutors() {
+
+        return actionExecutors;
+    }
+
+    /**
+     * @param logFileName name of the log file
+     * @return the log patterns of the log file, in their configured order
+     */
+    public List<LogPatternRule> getLogPatternRules(String logFileName) {
+
+        return logPatternRules.getOrDefault(logFileName, Collections.emptyList());
+    }
+
+    /**
+     * @return the log patterns of all the log files, grouped by the log file and in their configured order within it
+     */
+    public List<LogPatternRule> getAllLogPatternRules() {
+
+        List<LogPatternRule> rules = new ArrayList<>();
+        logPatternRules.values().forEach(rules::addAll);
+        return rules;
+    }
+
+    public int getCpuWatcherThreshold() {
+
+        return cpuWatcherThreshold;
+    }
+
+    public int getCpuWatcherRetryCount() {
+
+        return cpuWatcherRetryCount;
+    }
+
+    public int getMemoryWatcherThreshold() {
+
+        return memoryWatcherThreshold;
+    }
+
+    public int getMemoryWatcherRetryCount() {
+
+        return memoryWatcherRetryCount;
+    }
+
+    public int getGcWatcherPauseThreshold() {
+
+        return gcWatcherPauseThreshold;
+    }
+
+    public int getGcWatcherTimeThreshold() {
+
+        return gcWatcherTimeThreshold;
+    }
+
+    public int getThreadWatcherBlockedThreshold() {
+
+        return threadWatcherBlockedThreshold;
+    }
+
+    public int getThreadWatcherRetryCount() {
+
+        return threadWatcherRetryCount;
+    }
+
+    public int getThreadWatcherGrowthThreshold() {
+
+        return threadWatcherGrowthThreshold;
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.actionexecutor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.diagnostics.postexecutor.ZipFileExecutor;
+import org.wso2.diagnostics.utils.CommonUtils;
+import org.wso2.diagnostics.utils.FileUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.wso2.diagnostics.utils.Constants.CAPTURE_SCHEDULER_EXECUTOR_LIMITS;
+import static org.wso2.diagnostics.utils.Constants.CAPTURE_SCHEDULER_MAX_CONCURRENCY;
+import static org.wso2.diagnostics.utils.Constants.CAPTURE_SCHEDULER_MAX_PENDING;
+import static org.wso2.diagnostics.utils.Constants.CAPTURE_SCHEDULER_MAX_PER_EXECUTOR;
+import static org.wso2.diagnostics.utils.Constants.CAPTURE_SCHEDULER_VIRTUAL_THREADS;
+
+/**
+ * Long-lived scheduler running the action executors of all the watchers (log watcher, CPU watcher, memory watcher
+ * and the custom watchers). It caps the number of captures running at the same time, both globally and per executor
+ * type (the simple class name of the executor). The action executor instances are shared between the captures, hence
+ * by default an executor type never runs twice at the same time, and two heap dumps never run together. Tasks over
+ * the limits wait in a bounded FIFO queue and are started as soon as a running task of a suitable type finishes.
+ * <p>
+ * The tasks run on a fixed pool of platform threads, or on virtual threads when enabled and the runtime supports
+ * them (JDK 21 and later). The limits apply in both cases.
+ */
+public class CaptureScheduler {
+
+    private static final Logger log = LogManager.getLogger(CaptureScheduler.class);
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 4;
+    private static final int DEFAULT_MAX_PER_EXECUTOR = 1;
+    private static final int DEFAULT_MAX_PENDING = 100;
+
+    private static volatile CaptureScheduler instance;
+
+    private final ExecutorService executorService;
+    private final int maxConcurrency;
+    private final int maxPerExecutor;
+    private final int maxPending;
+    private final Map<String, Integer> executorLimits;
+    private final boolean virtualThreads;
+
+    // guarded by this
+    private final ArrayDeque<Task> pending = new ArrayDeque<>();
+    private final Map<String, Integer> runningPerType = new HashMap<>();
+    private int running;
+
+    CaptureScheduler(int maxConcurrency, int maxPerExecutor, int maxPending,
+                     Map<String, Integer> executorLimits, boolean virtualThreads) {
+
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxPerExecutor = Math.max(1, maxPerExecutor);
+        this.maxPending = Math.max(0, maxPending);
+        this.executorLimits = executorLimits;
+        ExecutorService virtualThreadExecutor = virtualThreads ? createVirtualThreadExecutor() : null;
+        this.virtualThreads = virtualThreadExecutor != null;
+        this.executorService = virtualThreadExecutor != null ? virtualThreadExecutor :
+                Executors.newFixedThreadPool(this.maxConcurrency, new CaptureThreadFactory());
+    }
+
+    /**
+     * Creates the shared scheduler from the configuration. Must be called once before the watchers are started.
+     *
+     * @param configMap the configuration map
+     */
+    public static synchronized void init(Map<String, Object> configMap) {
+
+        if (instance != null) {
+            log.warn("Capture scheduler is already initialized.");
+            return;
+        }
+        int maxConcurrency = CommonUtils.getIntegerValue(configMap.get(CAPTURE_SCHEDULER_MAX_CONCURRENCY),
+                DEFAULT_MAX_CONCURRENCY);
+        int maxPerExecutor = CommonUtils.getIntegerValue(configMap.get(CAPTURE_SCHEDULER_MAX_PER_EXECUTOR),
+                DEFAULT_MAX_PER_EXECUTOR);
+        int maxPending = CommonUtils.getIntegerValue(configMap.get(CAPTURE_SCHEDULER_MAX_PENDING),
+                DEFAULT_MAX_PENDING);
+        boolean virtualThreads = configMap.get(CAPTURE_SCHEDULER_VIRTUAL_THREADS) != null &&
+                Boolean.parseBoolean(configMap.get(CAPTURE_SCHEDULER_VIRTUAL_THREADS).toString());
+        // per executor limits are given as [capture_scheduler.executor_limits] ExecutorName = "1"
+        Map<String, Integer> executorLimits = new HashMap<>();
+        String prefix = CAPTURE_SCHEDULER_EXECUTOR_LIMITS + ".";
+        for (Map.Entry<String, Object> entry : configMap.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                executorLimits.put(entry.getKey().substring(prefix.length()),
+                        CommonUtils.getIntegerValue(entry.getValue(), maxPerExecutor));
+            }
+        }
+        instance = new CaptureScheduler(maxConcurrency, maxPerExecutor, maxPending, executorLimits, virtualThreads);
+        log.info("Initiating capture scheduler with max concurrency: " + instance.maxConcurrency +
+                " max per executor: " + instance.maxPerExecutor + " executor limits: " + executorLimits +
+                " max pending: " + instance.maxPending + " virtual threads: " + instance.virtualThreads);
+    }
+
+    /**
+     * @return the shared scheduler, created with the default limits if {@link #init(Map)} was not called
+     */
+    public static CaptureScheduler getInstance() {
+
+        CaptureScheduler scheduler = instance;
+        if (scheduler == null) {
+            synchronized (CaptureScheduler.class) {
+                if (instance == null) {
+                    instance = new CaptureScheduler(DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_PER_EXECUTOR,
+                            DEFAULT_MAX_PENDING, new HashMap<>(), false);
+                }
+                scheduler = instance;
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Runs the given action executors in parallel, within the limits of the scheduler.
+     *
+     * @param actionExecutors the executors to run
+     * @param folderPath      the folder the executors write their output to
+     * @return a future completed when all the executors have finished, whether they succeeded or not
+     */
+    public CompletableFuture<Void> executeAll(Collection<ActionExecutor> actionExecutors, String folderPath) {
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (ActionExecutor actionExecutor : actionExecutors) {
+            futures.add(submit(actionExecutor.getClass().getSimpleName(), () -> actionExecutor.execute(folderPath))
+                    .exceptionally(e -> {
+                        log.error("Action executor " + actionExecutor.getClass().getSimpleName() + " failed.", e);
+                        return null;
+                    }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Runs the action executors configured for a watcher on a new capture folder, and zips the folder once all of
+     * them completed. It does not wait for the executors, so that the thread delivering the samples or the
+     * notifications of the watchers is not blocked by a capture.
+     *
+     * @param watcherType the configuration section of the watcher, such as {@code cpu_watcher}
+     * @param writeFiles  writes the files of the watcher to the capture folder before the executors run, or null
+     * @return a future completed once the capture folder was zipped
+     */
+    public CompletableFuture<Void> capture(String watcherType, Consumer<String> writeFiles) {
+
+        String tempFolderPath = FileUtils.createTimeStampFolder();
+        if (writeFiles != null) {
+            writeFiles.accept(tempFolderPath);
+        }
+        CompletableFuture<Void> captures = CompletableFuture.completedFuture(null);
+        String[] actionExecutors = CommonUtils.getActionExecutors(watcherType);
+        if (actionExecutors != null) {
+            List<ActionExecutor> executors = new ArrayList<>();
+            for (String actionExecutor : actionExecutors) {
+                ActionExecutor executor = ActionExecutorFactory.getActionExecutor(actionExecutor);
+                if (executor != null) {
+                    executors.add(executor);
+                } else {
+                    log.error("Action executor " + actionExecutor + " is not available.");
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Executing action executors: " + String.join(",", actionExecutors));
+            }
+            captures = executeAll(executors, tempFolderPath);
+        }
+        return captures.thenRun(() -> {
+            ZipFileExecutor zipFileExecutor = new ZipFileExecutor();
+            zipFileExecutor.execute(tempFolderPath);
+            if (log.isDebugEnabled()) {
+                log.debug("Zipping the folder " + tempFolderPath + " is successful.");
+            }
+            FileUtils.deleteFolder(tempFolderPath);
+            if (log.isDebugEnabled()) {
+                log.debug("Deleted the folder " + tempFolderPath + " successfully.");
+            }
+        });
+    }
+
+    /**
+     * Submits a capture task. The task starts once the global limit and the limit of its executor type allow it.
+     *
+     * @param executorType type of the task, used for the per executor limit
+     * @param task         the task to run
+     * @return a future completed when the task finishes, or completed exceptionally with a
+     * {@link RejectedExecutionException} if too many tasks are already waiting
+     */
+    public CompletableFuture<Void> submit(String executorType, Runnable task) {
+
+        Task captureTask = new Task(executorType, task);
+        synchronized (this) {
+            if (canStart(executorType)) {
+                start(captureTask);
+            } else if (pending.size() < maxPending) {
+                pending.add(captureTask);
+            } else {
+                log.warn("Too many captures waiting, hence rejecting the " + executorType + " capture.");
+                captureTask.future.completeExceptionally(new RejectedExecutionException(
+                        "Capture queue is full, rejected " + executorType));
+            }
+        }
+        return captureTask.future;
+    }
+
+    /**
+     * @return number of captures running
+     */
+    public synchronized int getRunningCount() {
+
+        return running;
+    }
+
+    /**
+     * @return number of captures waiting for a free slot
+     */
+    public synchronized int getPendingCount() {
+
+        return pending.size();
+    }
+
+    /**
+     * @return whether the captures run on virtual threads, false if they were not enabled or are not supported
+     */
+    boolean isVirtualThreads() {
+
+        return virtualThreads;
+    }
+
+    private boolean canStart(String executorType) {
+
+        return running < maxConcurrency &&
+                runningPerType.getOrDefault(executorType, 0) < executorLimits.getOrDefault(executorType,
+                        maxPerExecutor);
+    }
+
+    // called while holding the lock
+    private void start(Task task) {
+
+        running++;
+        runningPerType.merge(task.executorType, 1, Integer::sum);
+        try {
+            executorService.execute(task);
+        } catch (RejectedExecutionException e) {
+            release(task.executorType);
+            task.future.completeExceptionally(e);
+        }
+    }
+
+    // called while holding the lock
+    private void release(String executorType) {
+
+        running--;
+        runningPerType.merge(executorType, -1, Integer::sum);
+    }
+
+    private synchronized void finished(Task task) {
+
+        release(task.executorType);
+        // start the oldest waiting tasks that fit into the freed slots
+        Iterator<Task> iterator = pending.iterator();
+        while (running < maxConcurrency && iterator.hasNext()) {
+            Task next = iterator.next();
+            if (canStart(next.executorType)) {
+                iterator.remove();
+                start(next);
+            }
+        }
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+
+        // looked up reflectively as the tool is built for Java 11
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Virtual threads are not supported by the Java runtime " + System.getProperty("java.version") +
+                    ", hence using platform threads for the captures.");
+            return null;
+        }
+    }
+
+    private class Task implements Runnable {
+
+        private final String executorType;
+        private final Runnable runnable;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Task(String executorType, Runnable runnable) {
+
+            this.executorType = executorType;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+
+            Throwable failure = null;
+            try {
+                runnable.run();
+            } catch (Throwable e) {
+                failure = e;
+            }
+            // free the slot before the dependent stages of the future run on this thread
+            finished(this);
+            if (failure == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static class CaptureThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+
+            Thread thread = new Thread(runnable, "CaptureScheduler-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -33,13 +33,6 @@ public class MemoryDumper implements ActionExecutor {
 
     private static final Logger log = LogManager.getLogger(MemoryDumper.class);
 
-    private final String serverProcess;
-
-    public MemoryDumper() {
-
-        this.serverProcess = ServerProcess.getProcessId();
-    }
-
     /**
      * Method used to do memory dump with using Java Runtime Environment and jmap command.
      *
@@ -48,6 +41,8 @@ public class MemoryDumper implements ActionExecutor {
     @Override
     public void execute(String filepath) {
 
+        // read on each execution, the server gets a new process id when it restarts
+        String serverProcess = ServerProcess.getProcessId();
         if (new File(filepath).exists()) { // check whether file exists before dumping.
             String filename = "/heap-dump.hprof ";
             String prefix = System.getenv("JAVA_HOME") + "/bin/jmap -dump:live,format=b,file=";
@@ -33,20 +33,6 @@ public class OpenFileFinder implements ActionExecutor {
 
     private static Logger log = LogManager.getLogger(OpenFileFinder.class);
 
-    /**
-     * This string is used to represent process id.
-     */
-    private String processId;
-
-    /**
-     * Creates MemoryDumper with process id.
-     */
-    public OpenFileFinder() {
-
-        this.processId = ServerProcess.getProcessId();
-
-    }
-
     /**
      * Execute lsof command and write the output to a file.
      *
@@ -57,7 +43,8 @@ public class OpenFileFinder implements ActionExecutor {
 
         if (new File(filepath).exists()) { // check whether file exists before dumping.
             String frame = filepath + "/lsof-output.txt ";
-            String command = "lsof -p " + this.processId;
+            // read on each execution, the server gets a new process id when it restarts
+            String command = "lsof -p " + ServerProcess.getProcessId();
 
             try {
                 Process process = Runtime.getRuntime().exec(command);
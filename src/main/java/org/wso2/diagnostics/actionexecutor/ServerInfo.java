@@ -25,6 +25,7 @@ import org.apache.logging.log4j.Logger;
 import org.wso2.diagnostics.utils.ConfigMapHolder;
 import org.wso2.diagnostics.utils.Constants;
 import org.wso2.diagnostics.utils.FileUtils;
+import org.wso2.diagnostics.utils.JMXConnectionManager;
 
 import java.io.File;
 import java.io.FileReader;
@@ -85,6 +86,8 @@ public class ServerInfo implements ActionExecutor {
         serverInfo += "OS Version: " + System.getProperty("os.version") + "\n";
         serverInfo += "OS Architecture: " + System.getProperty("os.arch") + "\n";
         serverInfo += "Diagnostic App Home: " + System.getProperty("app.home") + "\n";
+        serverInfo += "Process ID: " + ServerProcess.getProcessId() + "\n";
+        serverInfo += "JMX Connection: " + JMXConnectionManager.getInstance().getStats() + "\n";
         return serverInfo;
     }
 
@@ -45,16 +45,21 @@ public class ServerProcess {
     static String processId;
 
     static String processFilePath;
+    // last modified time of the wso2carbon.pid file when the process id was read, 0 if it could not be read
+    private static long processFileModified;
+    private static boolean processFileMissing;
 
     /**
-     * Getter method for processId.
+     * Getter method for processId. The wso2carbon.pid file is read again when it changed since it was last read,
+     * such as after the server restarted with a new process id.
      *
      * @return String processId
      */
-    public static String getProcessId() {
-        if ((processId == null)) {
+    public static synchronized String getProcessId() {
+        if (processFilePath != null && (processId == null ||
+                getProcessFile(processFilePath).lastModified() != processFileModified)) {
             // read the process id from the wso2carbon.pid file
-            setProcessId(processFilePath);
+            readProcessId();
         }
         return processId;
     }
@@ -64,19 +69,46 @@ public class ServerProcess {
      *
      * @param path wso2carbon.pid file path
      */
-    public static void setProcessId(String path) {
+    public static synchronized void setProcessId(String path) {
         processFilePath = path;
+        readProcessId();
+    }
+
+    private static void readProcessId() {
+        File processFile = getProcessFile(processFilePath);
+        long modified = processFile.lastModified();
+        try (RandomAccessFile file = new RandomAccessFile(processFile, "r")) {
+            // read the process id from the wso2carbon.pid file
+            String id = StringUtils.trim(file.readLine());
+            processFileModified = modified;
+            processFileMissing = false;
+            if (StringUtils.isEmpty(id)) {
+                // the server is writing the file, read it again in the next call
+                processFileModified = 0;
+            } else if (!id.equals(processId)) {
+                if (processId != null) {
+                    log.info("Server Process ID changed from " + processId + " to " + id);
+                } else {
+                    log.info("Server Process ID: " + id);
+                }
+                processId = id;
+            }
+        } catch (IOException e) {
+            // the previous process id is kept, the file is read again once it is written
+            processFileModified = 0;
+            if (!processFileMissing) {
+                log.error("wso2carbon.pid file not found.");
+                processFileMissing = true;
+            }
+        }
+    }
+
+    private static File getProcessFile(String path) {
         String appHome = System.getProperty(Constants.APP_HOME);
         if (!appHome.endsWith(File.separator)) {
             appHome = appHome + File.separator;
         }
-        try (RandomAccessFile file = new RandomAccessFile(appHome + path, "r")) {
-            // read the process id from the wso2carbon.pid file
-            processId = file.readLine();
-            log.info("Server Process ID: " + processId);
-        } catch (IOException e) {
-            log.error("wso2carbon.pid file not found.");
-        }
+        return new File(appHome + path);
     }
 
     public static String getNodeId() {
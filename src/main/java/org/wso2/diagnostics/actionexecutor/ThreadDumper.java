@@ -38,10 +38,6 @@ public class ThreadDumper implements ActionExecutor {
 
     private static final Logger log = LogManager.getLogger(ThreadDumper.class);
 
-    /**
-     * This string is used to represent process id.
-     */
-    private final String pID;
     /**
      * This long is used to refer delay between thread dumps.
      */
@@ -52,7 +48,6 @@ public class ThreadDumper implements ActionExecutor {
     private int threadDumpCount;
 
     public ThreadDumper() {
-        this.pID = ServerProcess.getProcessId();
         // read thread dump count and delay from configmapholder
         Map configuration = ConfigMapHolder.getInstance().getConfigMap();
         ArrayList actionExecutorConfigs = (ArrayList) configuration.get(
@@ -74,6 +69,8 @@ public class ThreadDumper implements ActionExecutor {
     @Override
     public void execute(String folderPath) {
 
+        // read on each execution, the server gets a new process id when it restarts
+        String pID = ServerProcess.getProcessId();
         if (new File(folderPath).exists()) { // check whether file exists before dumping.
             String commandFrame = System.getenv("JAVA_HOME") + "/bin/jstack " + pID;
 
@@ -33,6 +33,10 @@ public class PostExecutorTask extends TimerTask {
     private final String logLine;
     private final String folderPath;
 
+    /**
+     * @param logLine    the log written to log.txt of the capture, or null if it is already written
+     * @param folderPath the folder of the capture
+     */
     public PostExecutorTask(String logLine, String folderPath) {
 
         this.logLine = logLine;
@@ -42,7 +46,9 @@ public class PostExecutorTask extends TimerTask {
     @Override
     public void run() {
 
-        this.writeLogLine(logLine);
+        if (logLine != null) {
+            this.writeLogLine(logLine);
+        }
         this.executeZipFileExecutor();
         this.deleteFolder();
     }
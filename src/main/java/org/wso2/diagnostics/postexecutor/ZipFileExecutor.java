@@ -25,6 +25,7 @@ import org.wso2.diagnostics.utils.CommonUtils;
 import org.wso2.diagnostics.utils.ConfigMapHolder;
 import org.wso2.diagnostics.utils.Constants;
 import org.wso2.diagnostics.utils.FileUtils;
+import org.wso2.diagnostics.utils.MetricHistory;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -64,6 +65,11 @@ public class ZipFileExecutor {
     public void execute(String path) {
         log.info("Zipping the folder at " + path);
         File folder = new File(path);
+        MetricHistory metricHistory = MetricHistory.getInstance();
+        if (metricHistory != null && folder.isDirectory()) {
+            // how the metrics of the server evolved before the capture
+            metricHistory.export(path);
+        }
         try {
             String zipFileName = ServerProcess.getNodeId() + "_" + folder.getName() + ".zip";
             zipFolder(path, logDirPath + zipFileName);
@@ -0,0 +1,149 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton used to find all occurrences of a fixed set of keywords in a single pass over the input.
+ * The automaton is immutable once built and can be shared between threads.
+ */
+public class AhoCorasick {
+
+    private static final int[] NO_OUTPUT = new int[0];
+
+    // sparse goto function, keys of each node are sorted so that they can be binary searched
+    private final char[][] edgeKeys;
+    private final int[][] edgeTargets;
+    private final int[] failure;
+    // keyword ids ending at each node, including the ones reachable through the failure links
+    private final int[][] output;
+
+    /**
+     * Builds the automaton for the given keywords. The id reported for a keyword is its index in the list.
+     *
+     * @param keywords keywords to search for
+     */
+    public AhoCorasick(List<String> keywords) {
+
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(new ArrayList<>());
+        for (int id = 0; id < keywords.size(); id++) {
+            String keyword = keywords.get(id);
+            if (keyword == null || keyword.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(node).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    outputs.add(new ArrayList<>());
+                    trie.get(node).put(keyword.charAt(i), next);
+                }
+                node = next;
+            }
+            outputs.get(node).add(id);
+        }
+
+        int size = trie.size();
+        edgeKeys = new char[size][];
+        edgeTargets = new int[size][];
+        for (int node = 0; node < size; node++) {
+            TreeMap<Character, Integer> edges = trie.get(node);
+            edgeKeys[node] = new char[edges.size()];
+            edgeTargets[node] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeKeys[node][i] = edge.getKey();
+                edgeTargets[node][i] = edge.getValue();
+                i++;
+            }
+        }
+
+        // breadth first traversal to compute the failure links
+        failure = new int[size];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < edgeKeys[node].length; i++) {
+                char key = edgeKeys[node][i];
+                int child = edgeTargets[node][i];
+                int fallback = failure[node];
+                while (fallback != 0 && next(fallback, key) < 0) {
+                    fallback = failure[fallback];
+                }
+                int target = next(fallback, key);
+                failure[child] = target < 0 || target == child ? 0 : target;
+                outputs.get(child).addAll(outputs.get(failure[child]));
+                queue.add(child);
+            }
+        }
+
+        output = new int[size][];
+        for (int node = 0; node < size; node++) {
+            List<Integer> ids = outputs.get(node);
+            output[node] = ids.isEmpty() ? NO_OUTPUT : ids.stream().distinct().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Scans the input once and marks every keyword that occurs in it.
+     *
+     * @param input text to scan
+     * @param found bit set (one bit per keyword id) that will be updated with the keywords found
+     * @return number of keyword occurrences found
+     */
+    public int search(CharSequence input, long[] found) {
+
+        int matches = 0;
+        int state = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            int target;
+            while ((target = next(state, c)) < 0 && state != 0) {
+                state = failure[state];
+            }
+            state = target < 0 ? 0 : target;
+            for (int id : output[state]) {
+                found[id >>> 6] |= 1L << id;
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private int next(int node, char c) {
+
+        int index = Arrays.binarySearch(edgeKeys[node], c);
+        return index < 0 ? -1 : edgeTargets[node][index];
+    }
+}
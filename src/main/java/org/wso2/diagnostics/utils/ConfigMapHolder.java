@@ -24,7 +24,8 @@ public class ConfigMapHolder {
 
         private static ConfigMapHolder instance = null;
 
-        private Map<String, Object> configMap;
+        // replaced when the configuration is reloaded
+        private volatile Map<String, Object> configMap;
 
         private ConfigMapHolder() {
         }
@@ -23,12 +23,30 @@ public class Constants {
     public static final String CONFIG_FILE_PATH = "/conf/config.toml";
     public static final String APP_HOME = "app.home";
     public static final int WATCHER_INITIAL_DELAY = 60;
+    public static final String CONFIG_RELOAD_ENABLED = "config_reload.enabled";
+    public static final String CONFIG_RELOAD_INTERVAL = "config_reload.interval";
 
     // Toml file constants
     public static final String TOML_NAME_ACTION_EXECUTOR_CONFIGURATION = "action_executor_configuration";
     public static final String TOML_NAME_EXECUTOR = "executor";
     public static final String TOML_NAME_RELOAD_TIME = "reload_time";
     public static final String LOG_FILE_CONFIGURATION_FILE_PATH = "server_configuration.carbon_log_file_path";
+    public static final String TOML_NAME_LOG_PATTERN = "log_pattern";
+    public static final String TOML_NAME_LOG_PATTERN_LOG_FILE = "log_file";
+    public static final String TOML_NAME_LOG_PATTERN_NAME = "name";
+    public static final String TOML_NAME_LOG_PATTERN_REGEX = "regex";
+    public static final String TOML_NAME_LOG_PATTERN_EXECUTORS = "executors";
+    public static final String TOML_NAME_LOG_PATTERN_LEVEL = "level";
+    public static final String TOML_NAME_LOG_PATTERN_LOGGER = "logger";
+    public static final String TOML_NAME_LOG_PATTERN_EXCEPTION = "exception";
+    public static final String TOML_NAME_LOG_PATTERN_MESSAGE = "message";
+    public static final String TOML_NAME_LOG_PATTERN_THRESHOLD = "threshold";
+    public static final String TOML_NAME_LOG_PATTERN_WINDOW = "window";
+    public static final int DEFAULT_LOG_PATTERN_WINDOW = 60;
+    public static final String TOML_NAME_LOG_FILE = "log_file";
+    public static final String TOML_NAME_LOG_FILE_NAME = "name";
+    public static final String TOML_NAME_LOG_FILE_PATH = "path";
+    public static final String DEFAULT_LOG_FILE_NAME = "carbon_error";
 
     // cpu_watcher constants
     public static final String CPU_WATCHER_ENABLED = "cpu_watcher.enabled";
@@ -44,9 +62,75 @@ public class Constants {
     public static final String MEMORY_WATCHER_INTERVAL = "memory_watcher.interval";
     public static final String MEMORY_WATCHER_ACTION_EXECUTORS = "memory_watcher.action_executors";
 
+    // gc_watcher constants
+    public static final String GC_WATCHER_ENABLED = "gc_watcher.enabled";
+    public static final String GC_WATCHER_PAUSE_THRESHOLD = "gc_watcher.pause_threshold";
+    public static final String GC_WATCHER_TIME_THRESHOLD = "gc_watcher.time_threshold";
+    public static final String GC_WATCHER_WINDOW = "gc_watcher.window";
+    public static final String GC_WATCHER_RELOAD_TIME = "gc_watcher.reload_time";
+    public static final String GC_WATCHER_IGNORED_COLLECTORS = "gc_watcher.ignored_collectors";
+    public static final String GC_WATCHER_ACTION_EXECUTORS = "gc_watcher.action_executors";
+
+    // thread_watcher constants
+    public static final String THREAD_WATCHER_ENABLED = "thread_watcher.enabled";
+    public static final String THREAD_WATCHER_INTERVAL = "thread_watcher.interval";
+    public static final String THREAD_WATCHER_BLOCKED_THRESHOLD = "thread_watcher.blocked_threshold";
+    public static final String THREAD_WATCHER_RETRY_COUNT = "thread_watcher.attempts";
+    public static final String THREAD_WATCHER_GROWTH_THRESHOLD = "thread_watcher.growth_threshold";
+    public static final String THREAD_WATCHER_GROWTH_WINDOW = "thread_watcher.growth_window";
+    public static final String THREAD_WATCHER_RELOAD_TIME = "thread_watcher.reload_time";
+    public static final String THREAD_WATCHER_ACTION_EXECUTORS = "thread_watcher.action_executors";
+
     // log_watcher constants
     public static final String LOG_WATCHER_ENABLED = "log_watcher.enabled";
     public static final String LOG_WATCHER_INTERVAL = "log_watcher.interval";
+    public static final String LOG_WATCHER_MAX_INTERVAL = "log_watcher.max_interval";
+    public static final String LOG_WATCHER_MODE = "log_watcher.mode";
+    public static final String LOG_WATCHER_STATS_INTERVAL = "log_watcher.stats_interval";
+    public static final String LOG_WATCHER_MODE_WATCH_SERVICE = "watch_service";
+    public static final String LOG_WATCHER_MODE_POLLING = "polling";
+    public static final String LOG_WATCHER_QUEUE_SIZE = "log_watcher.queue_size";
+    public static final String LOG_WATCHER_OVERFLOW_POLICY = "log_watcher.overflow_policy";
+    public static final String LOG_WATCHER_EVENT_IDLE_TIMEOUT = "log_watcher.event_idle_timeout";
+    public static final String LOG_WATCHER_EVENT_MAX_LINES = "log_watcher.event_max_lines";
+    public static final String LOG_WATCHER_EVENT_MAX_BYTES = "log_watcher.event_max_bytes";
+    public static final String LOG_WATCHER_CONTEXT_LINES = "log_watcher.context_lines";
+    public static final String LOG_WATCHER_CONTEXT_BYTES = "log_watcher.context_bytes";
+    public static final String LOG_WATCHER_POST_TRIGGER_TIME = "log_watcher.post_trigger_time";
+    public static final String LOG_WATCHER_POST_TRIGGER_LINES = "log_watcher.post_trigger_lines";
+    public static final String LOG_WATCHER_CHECKPOINT_ENABLED = "log_watcher.checkpoint_enabled";
+    public static final String LOG_WATCHER_CHECKPOINT_FILE = "log_watcher.checkpoint_file";
+    public static final String LOG_WATCHER_CHECKPOINT_INTERVAL = "log_watcher.checkpoint_interval";
+    public static final String LOG_WATCHER_MAX_CATCH_UP = "log_watcher.max_catch_up";
+    public static final String DEFAULT_LOG_WATCHER_CHECKPOINT_FILE = "log_watcher.checkpoint";
+    public static final String LOG_WATCHER_TIMESTAMP_FORMAT = "log_watcher.timestamp_format";
+    public static final String LOG_WATCHER_FINGERPRINT_ENABLED = "log_watcher.fingerprint_enabled";
+    public static final String LOG_WATCHER_FINGERPRINT_FRAMES = "log_watcher.fingerprint_frames";
+    public static final String LOG_WATCHER_FINGERPRINT_CACHE_SIZE = "log_watcher.fingerprint_cache_size";
+    public static final String LOG_WATCHER_FINGERPRINT_SURGE_THRESHOLD = "log_watcher.fingerprint_surge_threshold";
+    public static final String LOG_WATCHER_FINGERPRINT_SURGE_WINDOW = "log_watcher.fingerprint_surge_window";
+
+    // backfill constants
+    public static final String BACKFILL_ARGUMENT = "--backfill";
+    public static final String BACKFILL_FILE_PATTERN = "backfill.file_pattern";
+    public static final String BACKFILL_PARALLELISM = "backfill.parallelism";
+    public static final String BACKFILL_OUTPUT_DIRECTORY = "backfill.output_directory";
+
+    // jmx_connection constants
+    public static final String JMX_CONNECTION_MIN_BACKOFF = "jmx_connection.min_backoff";
+    public static final String JMX_CONNECTION_MAX_BACKOFF = "jmx_connection.max_backoff";
+
+    // metric_history constants
+    public static final String METRIC_HISTORY_ENABLED = "metric_history.enabled";
+    public static final String METRIC_HISTORY_INTERVAL = "metric_history.interval";
+    public static final String METRIC_HISTORY_DURATION = "metric_history.duration";
+    public static final String METRIC_HISTORY_EXPORT_DURATION = "metric_history.export_duration";
+
+    public static final String CAPTURE_SCHEDULER_MAX_CONCURRENCY = "capture_scheduler.max_concurrency";
+    public static final String CAPTURE_SCHEDULER_MAX_PER_EXECUTOR = "capture_scheduler.max_per_executor";
+    public static final String CAPTURE_SCHEDULER_MAX_PENDING = "capture_scheduler.max_pending";
+    public static final String CAPTURE_SCHEDULER_VIRTUAL_THREADS = "capture_scheduler.virtual_threads";
+    public static final String CAPTURE_SCHEDULER_EXECUTOR_LIMITS = "capture_scheduler.executor_limits";
 
     // LogWatcher constants
     public static final String CUSTOM_WATCHERS = "custom_watchers";
@@ -0,0 +1,385 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import com.sun.tools.attach.VirtualMachine;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import static org.wso2.diagnostics.utils.Constants.JMX_CONNECTION_MAX_BACKOFF;
+import static org.wso2.diagnostics.utils.Constants.JMX_CONNECTION_MIN_BACKOFF;
+
+/**
+ * Keeps the JMX connection to the server process. The connection is made by attaching to the process with the given
+ * process id, and is made again when the process id changes, such as after the server restarted, or when the
+ * connection fails. The failures are learned from the {@link JMXConnectionNotification} of the connector as well as
+ * from the callers, through {@link #invalidate(MBeanServerConnection)}.
+ * <p>
+ * A failed attach is not retried before a backoff, doubled with each consecutive failure from the minimum up to the
+ * maximum backoff, so that a server that is down is not attached to on every sample. A new process id is attached to
+ * right away, hence the monitoring resumes as soon as the restarted server wrote its process id.
+ */
+public class JMXConnectionManager {
+
+    private static final Logger log = LogManager.getLogger(JMXConnectionManager.class);
+
+    private static final int DEFAULT_MIN_BACKOFF = 1;
+    private static final int DEFAULT_MAX_BACKOFF = 30;
+    private static final String LOCAL_CONNECTOR_ADDRESS = "com.sun.management.jmxremote.localConnectorAddress";
+
+    /**
+     * State of the connection.
+     */
+    public enum State {
+        CONNECTED,
+        // not connected, the next attach is allowed
+        DISCONNECTED,
+        // not connected, the last attach failed and the next one waits for the backoff
+        BACKING_OFF
+    }
+
+    /**
+     * Connects to the MBean server of a process.
+     */
+    interface Attacher {
+
+        JMXConnector attach(String pid) throws Exception;
+    }
+
+    private static volatile JMXConnectionManager instance;
+
+    private final long minBackoff;
+    private final long maxBackoff;
+    private final Attacher attacher;
+    // current time in epoch milliseconds
+    private final LongSupplier clock;
+
+    // guarded by this
+    private JMXConnector connector;
+    private MBeanServerConnection connection;
+    private String connectedProcessId;
+    private String lastProcessId;
+    private int consecutiveFailures;
+    private long nextAttemptTime;
+
+    // connection state metrics
+    private volatile State state = State.DISCONNECTED;
+    private volatile long attempts;
+    private volatile long failures;
+    private volatile long connects;
+    private volatile long disconnects;
+    private volatile long stateChangedTime;
+
+    private final NotificationListener connectionListener = this::handleConnectionNotification;
+
+    private JMXConnectionManager(long minBackoff, long maxBackoff) {
+
+        this(minBackoff, maxBackoff, JMXConnectionManager::attachLocalAgent, System::currentTimeMillis);
+    }
+
+    JMXConnectionManager(long minBackoff, long maxBackoff, Attacher attacher, LongSupplier clock) {
+
+        this.minBackoff = Math.max(1, minBackoff);
+        this.maxBackoff = Math.max(this.minBackoff, maxBackoff);
+        this.attacher = attacher;
+        this.clock = clock;
+        this.stateChangedTime = clock.getAsLong();
+    }
+
+    /**
+     * Creates the shared connection manager from the configuration. Must be called once before the watchers are
+     * started.
+     *
+     * @param configMap the configuration map
+     */
+    public static synchronized void init(Map<String, Object> configMap) {
+
+        if (instance != null) {
+            log.warn("JMX connection manager is already initialized.");
+            return;
+        }
+        int minBackoff = CommonUtils.getIntegerValue(configMap.get(JMX_CONNECTION_MIN_BACKOFF), DEFAULT_MIN_BACKOFF);
+        int maxBackoff = CommonUtils.getIntegerValue(configMap.get(JMX_CONNECTION_MAX_BACKOFF), DEFAULT_MAX_BACKOFF);
+        instance = new JMXConnectionManager(minBackoff * 1000L, maxBackoff * 1000L);
+        log.info("Initiating JMX connection manager with min backoff: " + instance.minBackoff + "ms max backoff: " +
+                instance.maxBackoff + "ms");
+    }
+
+    /**
+     * @return the shared connection manager, created with the default backoff if {@link #init(Map)} was not called
+     */
+    public static JMXConnectionManager getInstance() {
+
+        JMXConnectionManager manager = instance;
+        if (manager == null) {
+            synchronized (JMXConnectionManager.class) {
+                if (instance == null) {
+                    instance = new JMXConnectionManager(DEFAULT_MIN_BACKOFF * 1000L, DEFAULT_MAX_BACKOFF * 1000L);
+                }
+                manager = instance;
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Replaces the shared connection manager, such as with one connecting to an MBean server of the tests.
+     */
+    static synchronized void setInstance(JMXConnectionManager manager) {
+
+        instance = manager;
+    }
+
+    /**
+     * Returns the connection to the process, attaching to it if there is no connection to it yet and the backoff of
+     * the last failed attach has passed.
+     *
+     * @param pid the process id of the server
+     * @return the connection, or null if the process could not be attached to
+     */
+    public synchronized MBeanServerConnection getConnection(String pid) {
+
+        if (StringUtils.isEmpty(pid)) {
+            return null;
+        }
+        if (connection != null && pid.equals(connectedProcessId)) {
+            return connection;
+        }
+        if (!pid.equals(lastProcessId)) {
+            if (lastProcessId != null) {
+                log.info("Server process id changed from " + lastProcessId + " to " + pid +
+                        ", attaching to the new process.");
+            }
+            lastProcessId = pid;
+            // a new process is attached to right away, whatever the failures with the previous one
+            consecutiveFailures = 0;
+            nextAttemptTime = 0;
+            close(true);
+        }
+        long now = clock.getAsLong();
+        if (now < nextAttemptTime) {
+            return null;
+        }
+        attach(pid, now);
+        return connection;
+    }
+
+    /**
+     * Drops the connection after a call on it failed, such as when the server stopped. The next call of
+     * {@link #getConnection(String)} attaches again.
+     *
+     * @param failedConnection the connection the call failed on
+     */
+    public synchronized void invalidate(MBeanServerConnection failedConnection) {
+
+        if (failedConnection != null && failedConnection == connection) {
+            log.warn("JMX connection to the process with PID: " + connectedProcessId + " failed.");
+            close(true);
+        }
+    }
+
+    private void attach(String pid, long now) {
+
+        attempts++;
+        if (log.isDebugEnabled()) {
+            log.debug("Creating JMX connection to the process with PID: " + pid + ", attempt: " +
+                    (consecutiveFailures + 1));
+        }
+        JMXConnector newConnector = null;
+        try {
+            newConnector = attacher.attach(pid);
+            newConnector.addConnectionNotificationListener(connectionListener, null, newConnector);
+            connection = newConnector.getMBeanServerConnection();
+            connector = newConnector;
+            connectedProcessId = pid;
+            connects++;
+            log.info("JMX connection to the process with PID: " + pid + " established" +
+                    (consecutiveFailures > 0 ? " after " + consecutiveFailures + " failed attempts." : "."));
+            consecutiveFailures = 0;
+            nextAttemptTime = 0;
+            setState(State.CONNECTED);
+        } catch (Exception e) {
+            closeQuietly(newConnector);
+            failures++;
+            consecutiveFailures++;
+            long backoff = getBackoff(consecutiveFailures);
+            nextAttemptTime = now + backoff;
+            log.warn("Unable to attach to the process with PID: " + pid + ", retrying in " + backoff + "ms. " +
+                    e.getMessage());
+            if (log.isDebugEnabled()) {
+                log.debug("Error while attaching to the process with PID: " + pid, e);
+            }
+            setState(State.BACKING_OFF);
+        }
+    }
+
+    private static JMXConnector attachLocalAgent(String pid) throws Exception {
+
+        VirtualMachine vm = VirtualMachine.attach(pid);
+        String connectorAddress;
+        try {
+            // Get the connector address for JMX remote management, starting the local agent if it is not running
+            connectorAddress = vm.getAgentProperties().getProperty(LOCAL_CONNECTOR_ADDRESS);
+            if (connectorAddress == null) {
+                connectorAddress = vm.startLocalManagementAgent();
+            }
+        } finally {
+            vm.detach();
+        }
+        // Connect to the MBeanServer of the target process
+        return JMXConnectorFactory.connect(new JMXServiceURL(connectorAddress));
+    }
+
+    private long getBackoff(int failureCount) {
+
+        // min backoff doubled for each failure after the first one, without overflowing
+        int shift = Math.min(failureCount - 1, 30);
+        return Math.min(maxBackoff, minBackoff << shift);
+    }
+
+    private void handleConnectionNotification(Notification notification, Object handback) {
+
+        String type = notification.getType();
+        if (!JMXConnectionNotification.FAILED.equals(type) && !JMXConnectionNotification.CLOSED.equals(type)) {
+            return;
+        }
+        synchronized (this) {
+            // the notification may come from a connector already replaced after a process id change
+            if (handback == connector) {
+                log.warn("JMX connection to the process with PID: " + connectedProcessId + " was lost: " + type);
+                // the connector is already closed or failed, it is not closed again from its own notification
+                close(false);
+            }
+        }
+    }
+
+    private void close(boolean closeConnector) {
+
+        JMXConnector oldConnector = connector;
+        boolean wasConnected = connection != null;
+        connector = null;
+        connection = null;
+        connectedProcessId = null;
+        if (oldConnector != null && closeConnector) {
+            try {
+                oldConnector.removeConnectionNotificationListener(connectionListener);
+            } catch (Exception e) {
+                // the connector is closed below
+            }
+            closeQuietly(oldConnector);
+        }
+        if (wasConnected) {
+            disconnects++;
+            setState(State.DISCONNECTED);
+        }
+    }
+
+    private static void closeQuietly(JMXConnector jmxConnector) {
+
+        if (jmxConnector == null) {
+            return;
+        }
+        try {
+            jmxConnector.close();
+        } catch (IOException e) {
+            log.debug("Error while closing the JMX connector", e);
+        }
+    }
+
+    private void setState(State newState) {
+
+        if (state != newState) {
+            log.info("JMX connection state changed from " + state + " to " + newState + ", attempts: " + attempts +
+                    " failures: " + failures + " connects: " + connects + " disconnects: " + disconnects);
+            state = newState;
+            stateChangedTime = clock.getAsLong();
+        }
+    }
+
+    /**
+     * @return the state of the connection
+     */
+    public State getState() {
+
+        return state;
+    }
+
+    /**
+     * @return the time the connection last changed its state, in epoch milliseconds
+     */
+    public long getStateChangedTime() {
+
+        return stateChangedTime;
+    }
+
+    /**
+     * @return the number of attaches tried
+     */
+    public long getAttempts() {
+
+        return attempts;
+    }
+
+    /**
+     * @return the number of attaches that failed
+     */
+    public long getFailures() {
+
+        return failures;
+    }
+
+    /**
+     * @return the number of connections made
+     */
+    public long getConnects() {
+
+        return connects;
+    }
+
+    /**
+     * @return the number of connections lost or dropped
+     */
+    public long getDisconnects() {
+
+        return disconnects;
+    }
+
+    /**
+     * @return the connection state metrics, as written to the diagnostics log and the server information
+     */
+    public String getStats() {
+
+        return "state: " + state + ", since: " + new Timestamp(stateChangedTime) + ", attach attempts: " +
+                attempts + ", failed: " + failures + ", connects: " + connects + ", disconnects: " + disconnects;
+    }
+}
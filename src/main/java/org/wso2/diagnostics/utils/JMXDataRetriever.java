@@ -18,26 +18,36 @@
 
 package org.wso2.diagnostics.utils;
 
-import com.sun.tools.attach.VirtualMachine;
-import com.sun.tools.attach.VirtualMachineDescriptor;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import javax.management.AttributeList;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanServerConnection;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
-import javax.management.remote.JMXConnector;
-import javax.management.remote.JMXConnectorFactory;
-import javax.management.remote.JMXServiceURL;
+import javax.management.openmbean.CompositeData;
 
 public class JMXDataRetriever {
     private static final Logger log = LogManager.getLogger(JMXDataRetriever.class);
-    private static volatile MBeanServerConnection mBeanServerConnection;
+
+    public static final String OPERATING_SYSTEM_MBEAN = "java.lang:type=OperatingSystem";
+    public static final String MEMORY_MBEAN = "java.lang:type=Memory";
+    public static final String PROCESS_CPU_LOAD = "ProcessCpuLoad";
+    public static final String HEAP_MEMORY_USAGE = "HeapMemoryUsage";
+    public static final String THREADING_MBEAN = "java.lang:type=Threading";
+    public static final String THREAD_COUNT = "ThreadCount";
+    public static final String ALL_THREAD_IDS = "AllThreadIds";
+    public static final String GARBAGE_COLLECTOR_MBEANS = "java.lang:type=GarbageCollector,*";
+    public static final String COLLECTION_COUNT = "CollectionCount";
+    public static final String COLLECTION_TIME = "CollectionTime";
 
     public static String getAttributeValue(String type, String pid, String attribute) {
         return getJmxData(pid, attribute, "org.apache.synapse:Name=" + type + ",Type=PassThroughConnections");
@@ -48,16 +58,76 @@ public class JMXDataRetriever {
     }
 
     public static int getCpuUsage(String pid) {
-        String output = getJmxData(pid, "ProcessCpuLoad", "java.lang:type=OperatingSystem");
-        return getFloat(output) == -1 ? -1 : (int) (getFloat(output) * 100);
+        return toCpuUsage(getJmxValue(pid, PROCESS_CPU_LOAD, OPERATING_SYSTEM_MBEAN));
+    }
+
+    /**
+     * @param sample a sample including the ProcessCpuLoad of the OperatingSystem MBean
+     * @return the CPU usage in percent, or -1 if the sample has no CPU load
+     */
+    public static int getCpuUsage(JMXSample sample) {
+        return toCpuUsage(sample.get(OPERATING_SYSTEM_MBEAN, PROCESS_CPU_LOAD));
+    }
+
+    private static int toCpuUsage(Object cpuLoad) {
+        double load = getDouble(cpuLoad);
+        // the load is negative when it is not available yet, such as in the first read after the server started
+        return load < 0 ? -1 : (int) (load * 100);
     }
 
     public static int getMemoryUsage(String pid) {
-        String output = getJmxData(pid, "HeapMemoryUsage", "java.lang:type=Memory");
-        long usedValue = extractLongValue(output, "used");
-        long maxValue = extractLongValue(output, "max");
-        // return percentage
-        return getInt(String.valueOf((usedValue * 100) / maxValue));
+        return toMemoryUsage(getJmxValue(pid, HEAP_MEMORY_USAGE, MEMORY_MBEAN));
+    }
+
+    /**
+     * @param sample a sample including the HeapMemoryUsage of the Memory MBean
+     * @return the heap usage in percent, or -1 if the sample has no heap usage
+     */
+    public static int getMemoryUsage(JMXSample sample) {
+        return toMemoryUsage(sample.get(MEMORY_MBEAN, HEAP_MEMORY_USAGE));
+    }
+
+    private static int toMemoryUsage(Object memoryUsage) {
+        long used = getLong(memoryUsage, "used");
+        long max = getLong(memoryUsage, "max");
+        if (max <= 0) {
+            // the maximum is -1 when the heap has no limit, the heap can grow only up to its committed size then
+            max = getLong(memoryUsage, "committed");
+        }
+        if (used < 0 || max <= 0) {
+            return -1;
+        }
+        return (int) (used * 100 / max);
+    }
+
+    /**
+     * Reads a numeric attribute value without converting it to a string.
+     *
+     * @param value the value of the attribute
+     * @return the value, or -1 if it is not a number
+     */
+    public static double getDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : -1;
+    }
+
+    /**
+     * Reads a numeric item of a composite attribute value, such as the used size of the HeapMemoryUsage, without
+     * converting it to a string.
+     *
+     * @param value the value of the attribute
+     * @param item  the name of the item
+     * @return the item, or -1 if the value is not composite or the item is not a number
+     */
+    public static long getLong(Object value, String item) {
+        if (!(value instanceof CompositeData)) {
+            return -1;
+        }
+        CompositeData compositeData = (CompositeData) value;
+        if (!compositeData.containsKey(item)) {
+            return -1;
+        }
+        Object itemValue = compositeData.get(item);
+        return itemValue instanceof Number ? ((Number) itemValue).longValue() : -1;
     }
 
     private static int getInt(String output) {
@@ -67,83 +137,184 @@ public class JMXDataRetriever {
         return Integer.parseInt(output);
     }
 
-    private static Float getFloat(String output) {
-        if (StringUtils.isEmpty(output)) {
-            return -1f;
-        }
-        return Float.parseFloat(output);
+    public static String getJmxData(String pid, String attribute, String objectName) {
+
+        Object value = getJmxValue(pid, attribute, objectName);
+        return value == null ? "" : value.toString();
     }
 
-    public static long extractLongValue(String input, String fieldName) {
-        String regex = fieldName + "=(\\d+)";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(input);
+    /**
+     * Reads an attribute of an MBean.
+     *
+     * @return the value of the attribute, or null if it could not be read
+     */
+    public static Object getJmxValue(String pid, String attribute, String objectName) {
 
-        if (matcher.find()) {
-            return Long.parseLong(matcher.group(1));
+        MBeanServerConnection connection = JMXConnectionManager.getInstance().getConnection(pid);
+        if (connection == null) {
+            return null;
         }
-
-        return -1; // Return -1 if field not found
+        try {
+            ObjectName mbeanName = new ObjectName(objectName);
+            return connection.getAttribute(mbeanName, attribute);
+        } catch (InstanceNotFoundException e) {
+            log.error("Error while getting JMX data, " + e.getMessage());
+        } catch (IOException e) {
+            log.error("Error while getting JMX data, " + e.getMessage());
+            JMXConnectionManager.getInstance().invalidate(connection);
+        } catch (Exception e) {
+            log.error("Error while getting JMX data", e);
+        }
+        return null;
     }
 
-    public static String getJmxData(String pid, String attribute, String objectName) {
+    /**
+     * Reads several attributes of an MBean in a single call.
+     *
+     * @return the attributes that could be read, or null if the MBean could not be reached
+     */
+    public static AttributeList getAttributes(String pid, String objectName, String[] attributes) {
 
+        MBeanServerConnection connection = JMXConnectionManager.getInstance().getConnection(pid);
+        if (connection == null) {
+            return null;
+        }
         try {
-            MBeanServerConnection connection = getConnection(pid);
-            if (connection != null) {
-                ObjectName mbeanName = new ObjectName(objectName);
-                return connection.getAttribute(mbeanName, attribute).toString();
-            }
+            return connection.getAttributes(new ObjectName(objectName), attributes);
         } catch (InstanceNotFoundException e) {
             log.error("Error while getting JMX data, " + e.getMessage());
+        } catch (IOException e) {
+            // the server stopped or the connection broke, attached again on the next call
+            log.error("Error while getting JMX data, " + e.getMessage());
+            JMXConnectionManager.getInstance().invalidate(connection);
         } catch (Exception e) {
             log.error("Error while getting JMX data", e);
-            mBeanServerConnection = null;
-        }
-        return "";
-    }
-
-    private static MBeanServerConnection getConnection(String pid) {
-        // get connection in a synchronized way
-        if (mBeanServerConnection == null) {
-            synchronized (JMXDataRetriever.class) {
-                if (mBeanServerConnection == null) {
-                    log.debug("Creating JMX connection to the process with PID: " + pid);
-                    try {
-                        // Find the VirtualMachineDescriptor for the target process
-                        VirtualMachineDescriptor vmDescriptor = findVirtualMachineDescriptor(pid);
-                        if (vmDescriptor != null) {
-                            // Attach to the target process
-                            VirtualMachine vm = VirtualMachine.attach(vmDescriptor);
-                            try {
-                                // Get the connector address for JMX remote management
-                                String connectorAddress = vm.getAgentProperties().getProperty(
-                                        "com.sun.management.jmxremote.localConnectorAddress");
-                                if (connectorAddress != null) {
-                                    // Connect to the MBeanServer of the target process
-                                    JMXServiceURL jmxServiceURL = new JMXServiceURL(connectorAddress);
-                                    JMXConnector jmxConnector = JMXConnectorFactory.connect(jmxServiceURL);
-                                    mBeanServerConnection = jmxConnector.getMBeanServerConnection();
-                                }
-                            } finally {
-                                vm.detach();
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.error("Error while getting JMX data", e);
-                    }
-                }
-            }
         }
-        return mBeanServerConnection;
+        return null;
     }
 
-    private static VirtualMachineDescriptor findVirtualMachineDescriptor(String pid) {
-        List<VirtualMachineDescriptor> vmDescriptors = VirtualMachine.list();
-        for (VirtualMachineDescriptor vmDescriptor : vmDescriptors) {
-            if (vmDescriptor.id().equals(pid)) {
-                return vmDescriptor;
+    /**
+     * Looks up the MBeans matching an object name pattern.
+     *
+     * @return the object names of the matching MBeans, or null if the server could not be reached
+     */
+    public static List<String> queryNames(String pid, String pattern) {
+
+        MBeanServerConnection connection = JMXConnectionManager.getInstance().getConnection(pid);
+        if (connection == null) {
+            return null;
+        }
+        try {
+            List<String> objectNames = new ArrayList<>();
+            for (ObjectName objectName : connection.queryNames(new ObjectName(pattern), null)) {
+                objectNames.add(objectName.getCanonicalName());
             }
+            Collections.sort(objectNames);
+            return objectNames;
+        } catch (IOException e) {
+            log.error("Error while getting JMX data, " + e.getMessage());
+            JMXConnectionManager.getInstance().invalidate(connection);
+        } catch (Exception e) {
+            log.error("Error while getting JMX data", e);
+        }
+        return null;
+    }
+
+    /**
+     * Adds a listener of the notifications of an MBean. The listener is removed when the connection is closed, hence
+     * it has to be added again once the connection was made again, see {@link JMXConnectionManager#getConnects()}.
+     *
+     * @return whether the listener was added
+     */
+    public static boolean addNotificationListener(String pid, String objectName, NotificationListener listener,
+                                                  NotificationFilter filter) {
+
+        MBeanServerConnection connection = JMXConnectionManager.getInstance().getConnection(pid);
+        if (connection == null) {
+            return false;
+        }
+        try {
+            connection.addNotificationListener(new ObjectName(objectName), listener, filter, null);
+            return true;
+        } catch (IOException e) {
+            log.error("Error while adding the JMX notification listener, " + e.getMessage());
+            JMXConnectionManager.getInstance().invalidate(connection);
+        } catch (Exception e) {
+            log.error("Error while adding the JMX notification listener", e);
+        }
+        return false;
+    }
+
+    /**
+     * Removes a listener added with {@link #addNotificationListener(String, String, NotificationListener,
+     * NotificationFilter)} on the current connection.
+     *
+     * @return whether the listener was removed
+     */
+    public static boolean removeNotificationListener(String pid, String objectName, NotificationListener listener,
+                                                     NotificationFilter filter) {
+
+        MBeanServerConnection connection = JMXConnectionManager.getInstance().getConnection(pid);
+        if (connection == null) {
+            return false;
+        }
+        try {
+            connection.removeNotificationListener(new ObjectName(objectName), listener, filter, null);
+            return true;
+        } catch (IOException e) {
+            log.error("Error while removing the JMX notification listener, " + e.getMessage());
+            JMXConnectionManager.getInstance().invalidate(connection);
+        } catch (Exception e) {
+            log.error("Error while removing the JMX notification listener", e);
+        }
+        return false;
+    }
+
+    /**
+     * Calls findDeadlockedThreads of the ThreadMXBean of the server.
+     *
+     * @return the ids of the threads deadlocked on monitors or ownable synchronizers, empty if there are none, or null
+     * if the server could not be reached
+     */
+    public static long[] findDeadlockedThreads(String pid) {
+
+        MBeanServerConnection connection = JMXConnectionManager.getInstance().getConnection(pid);
+        if (connection == null) {
+            return null;
+        }
+        try {
+            long[] threadIds = (long[]) connection.invoke(new ObjectName(THREADING_MBEAN), "findDeadlockedThreads",
+                    null, null);
+            return threadIds == null ? new long[0] : threadIds;
+        } catch (IOException e) {
+            log.error("Error while getting JMX data, " + e.getMessage());
+            JMXConnectionManager.getInstance().invalidate(connection);
+        } catch (Exception e) {
+            log.error("Error while getting JMX data", e);
+        }
+        return null;
+    }
+
+    /**
+     * Calls getThreadInfo of the ThreadMXBean of the server for threads, without their stack traces.
+     *
+     * @return the thread information, with a null element for a thread no longer alive, or null if the server could
+     * not be reached
+     */
+    public static CompositeData[] getThreadInfo(String pid, long[] threadIds) {
+
+        MBeanServerConnection connection = JMXConnectionManager.getInstance().getConnection(pid);
+        if (connection == null) {
+            return null;
+        }
+        try {
+            return (CompositeData[]) connection.invoke(new ObjectName(THREADING_MBEAN), "getThreadInfo",
+                    new Object[]{threadIds}, new String[]{long[].class.getName()});
+        } catch (IOException e) {
+            log.error("Error while getting JMX data, " + e.getMessage());
+            JMXConnectionManager.getInstance().invalidate(connection);
+        } catch (Exception e) {
+            log.error("Error while getting JMX data", e);
         }
         return null;
     }
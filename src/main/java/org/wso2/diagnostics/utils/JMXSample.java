@@ -0,0 +1,97 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The values of the JMX attributes read by the {@link JMXSampler} in a single tick. A sample is immutable and shared
+ * by all the listeners of the tick.
+ */
+public final class JMXSample {
+
+    private final long time;
+    // attribute values keyed by the object name and the attribute name
+    private final Map<String, Map<String, Object>> values;
+    // names of the MBeans read for the object name patterns
+    private final Map<String, List<String>> patterns;
+
+    JMXSample(long time, Map<String, Map<String, Object>> values, Map<String, List<String>> patterns) {
+
+        this.time = time;
+        this.values = Collections.unmodifiableMap(values);
+        this.patterns = Collections.unmodifiableMap(patterns);
+    }
+
+    /**
+     * @return the time the sample was taken, in epoch milliseconds
+     */
+    public long getTime() {
+
+        return time;
+    }
+
+    /**
+     * @param objectName the object name of the MBean
+     * @param attribute  the name of the attribute
+     * @return the value of the attribute, or null if it was not read, such as when the server was not reachable
+     */
+    public Object get(String objectName, String attribute) {
+
+        Map<String, Object> attributes = values.get(objectName);
+        return attributes == null ? null : attributes.get(attribute);
+    }
+
+    /**
+     * @param objectName an object name pattern read in the sample, such as {@code java.lang:type=GarbageCollector,*}
+     * @return the object names of the MBeans matching the pattern, empty if the server could not be reached
+     */
+    public List<String> getObjectNames(String objectName) {
+
+        return patterns.getOrDefault(objectName, Collections.emptyList());
+    }
+
+    /**
+     * @param objectName the object name pattern the attribute was read with, such as
+     *                   {@code java.lang:type=GarbageCollector,*}, or the object name of an MBean
+     * @param attribute  the name of the attribute
+     * @return the values of the attribute in all the MBeans matching the pattern that could be read
+     */
+    public List<Object> getAll(String objectName, String attribute) {
+
+        List<String> objectNames = patterns.getOrDefault(objectName, Collections.singletonList(objectName));
+        List<Object> attributeValues = new ArrayList<>(objectNames.size());
+        for (String name : objectNames) {
+            Object value = get(name, attribute);
+            if (value != null) {
+                attributeValues.add(value);
+            }
+        }
+        return attributeValues;
+    }
+
+    @Override
+    public String toString() {
+
+        return values.toString();
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.diagnostics.actionexecutor.ServerProcess;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+
+/**
+ * Reads the JMX attributes of the server for all the watchers on a single thread. In each tick the attributes of the
+ * listeners due in the tick are read with one {@code getAttributes} call per MBean, whatever the number of listeners
+ * reading it, and the values are handed to the listeners as one immutable {@link JMXSample}. Each listener has its own
+ * interval, the sampler ticks at the greatest common divisor of the intervals. When that divisor is below
+ * {@value #MIN_PERIOD}ms, such as for intervals of 333ms and 5000ms, the sampler ticks every {@value #MIN_PERIOD}ms
+ * instead and the intervals are rounded to a whole number of ticks. The MBeans matching an object name pattern are
+ * looked up once per connection.
+ * <p>
+ * The listeners are called on the sampler thread, hence they must not block, such as by waiting for a capture.
+ */
+public class JMXSampler {
+
+    private static final Logger log = LogManager.getLogger(JMXSampler.class);
+
+    // milliseconds, the shortest period the sampler ticks at
+    static final long MIN_PERIOD = 100;
+
+    /**
+     * Receives the samples of the attributes it was added with.
+     */
+    public interface Listener {
+
+        void onSample(JMXSample sample);
+    }
+
+    private static final class Subscription {
+
+        private final Listener listener;
+        private final long interval;
+        // attribute names keyed by the object name of their MBean
+        private final Map<String, String[]> attributes;
+        // number of ticks between two samples of the listener
+        private long ticks;
+
+        private Subscription(Listener listener, long interval, Map<String, String[]> attributes) {
+
+            this.listener = listener;
+            this.interval = interval;
+            this.attributes = attributes;
+        }
+    }
+
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private long tick = 0;
+    // names of the MBeans matching the object name patterns, resolved again after each new connection
+    private final Map<String, List<String>> resolvedPatterns = new HashMap<>();
+    private long resolvedConnects = -1;
+
+    /**
+     * Adds a listener, before the sampler is started.
+     *
+     * @param listener   the listener
+     * @param interval   milliseconds between two samples for the listener
+     * @param objectName the object name of the MBean to read
+     * @param attributes the attributes of the MBean to read
+     */
+    public void addListener(Listener listener, long interval, String objectName, String... attributes) {
+
+        addListener(listener, interval, Collections.singletonMap(objectName, attributes));
+    }
+
+    /**
+     * Adds a listener of the attributes of several MBeans, before the sampler is started. An object name may be a
+     * pattern, such as {@code java.lang:type=GarbageCollector,*}, to read the attributes of all the matching MBeans.
+     *
+     * @param listener   the listener
+     * @param interval   milliseconds between two samples for the listener
+     * @param attributes the attributes to read, keyed by the object name of their MBean
+     */
+    public void addListener(Listener listener, long interval, Map<String, String[]> attributes) {
+
+        subscriptions.add(new Subscription(listener, Math.max(1, interval), new LinkedHashMap<>(attributes)));
+    }
+
+    /**
+     * Starts sampling.
+     *
+     * @param initialDelay seconds before the first sample
+     */
+    public void start(long initialDelay) {
+
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        long period = schedule();
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "JMXSampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executorService.scheduleAtFixedRate(this::sample, TimeUnit.SECONDS.toMillis(initialDelay), period,
+                TimeUnit.MILLISECONDS);
+        log.info("Initiating JMX sampler for " + subscriptions.size() + " listeners with interval: " + period + "ms");
+    }
+
+    /**
+     * Sets the number of ticks between two samples of each listener.
+     *
+     * @return milliseconds between two ticks
+     */
+    long schedule() {
+
+        long period = subscriptions.get(0).interval;
+        for (Subscription subscription : subscriptions) {
+            period = gcd(period, subscription.interval);
+        }
+        if (period < MIN_PERIOD) {
+            long divisor = period;
+            period = MIN_PERIOD;
+            List<String> rounded = new ArrayList<>();
+            for (Subscription subscription : subscriptions) {
+                long ticks = ticks(subscription.interval, period);
+                if (ticks * period != subscription.interval) {
+                    rounded.add(subscription.interval + "ms to " + ticks * period + "ms");
+                }
+            }
+            log.warn("The greatest common divisor of the JMX sampling intervals is only " + divisor + "ms, hence " +
+                    "ticking every " + period + "ms and rounding the intervals " + String.join(", ", rounded));
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.ticks = ticks(subscription.interval, period);
+        }
+        return period;
+    }
+
+    void sample() {
+
+        try {
+            List<Subscription> due = new ArrayList<>();
+            // the attributes of the due listeners, grouped by the MBean
+            Map<String, Set<String>> attributes = new LinkedHashMap<>();
+            for (Subscription subscription : subscriptions) {
+                if (tick % subscription.ticks == 0) {
+                    due.add(subscription);
+                    for (Map.Entry<String, String[]> mbean : subscription.attributes.entrySet()) {
+                        Collections.addAll(attributes.computeIfAbsent(mbean.getKey(), k -> new LinkedHashSet<>()),
+                                mbean.getValue());
+                    }
+                }
+            }
+            tick++;
+            if (due.isEmpty()) {
+                // nothing to read in this tick, such as between the samples of the slower listeners
+                return;
+            }
+            JMXSample sample = read(attributes);
+            if (log.isDebugEnabled()) {
+                log.debug("JMX sample: " + sample);
+            }
+            for (Subscription subscription : due) {
+                try {
+                    subscription.listener.onSample(sample);
+                } catch (Exception e) {
+                    log.error("Error in the JMX sample listener " + subscription.listener.getClass().getName(), e);
+                }
+            }
+        } catch (Throwable e) {
+            // an exception would cancel the next ticks
+            log.error("Error while sampling the JMX attributes", e);
+        }
+    }
+
+    private JMXSample read(Map<String, Set<String>> attributes) {
+
+        String pid = ServerProcess.getProcessId();
+        Map<String, Map<String, Object>> values = new HashMap<>();
+        Map<String, List<String>> patterns = new HashMap<>();
+        for (Map.Entry<String, Set<String>> mbean : attributes.entrySet()) {
+            List<String> objectNames;
+            if (isPattern(mbean.getKey())) {
+                objectNames = resolve(pid, mbean.getKey());
+                patterns.put(mbean.getKey(), objectNames);
+            } else {
+                objectNames = Collections.singletonList(mbean.getKey());
+            }
+            String[] attributeNames = mbean.getValue().toArray(new String[0]);
+            for (String objectName : objectNames) {
+                AttributeList attributeList = JMXDataRetriever.getAttributes(pid, objectName, attributeNames);
+                if (attributeList == null) {
+                    continue;
+                }
+                Map<String, Object> mbeanValues = new HashMap<>();
+                for (Attribute attribute : attributeList.asList()) {
+                    mbeanValues.put(attribute.getName(), attribute.getValue());
+                }
+                values.put(objectName, Collections.unmodifiableMap(mbeanValues));
+            }
+        }
+        return new JMXSample(System.currentTimeMillis(), values, patterns);
+    }
+
+    private List<String> resolve(String pid, String pattern) {
+
+        // connected first, so that the MBeans of a new connection are looked up in the tick it was made in
+        if (JMXConnectionManager.getInstance().getConnection(pid) == null) {
+            return Collections.emptyList();
+        }
+        // the MBeans, such as the garbage collectors, may differ once the server restarted
+        long connects = JMXConnectionManager.getInstance().getConnects();
+        if (connects != resolvedConnects) {
+            resolvedPatterns.clear();
+            resolvedConnects = connects;
+        }
+        List<String> objectNames = resolvedPatterns.get(pattern);
+        if (objectNames == null) {
+            objectNames = JMXDataRetriever.queryNames(pid, pattern);
+            if (objectNames == null) {
+                return Collections.emptyList();
+            }
+            resolvedPatterns.put(pattern, objectNames);
+        }
+        return objectNames;
+    }
+
+    private static boolean isPattern(String objectName) {
+
+        return objectName.indexOf('*') >= 0 || objectName.indexOf('?') >= 0;
+    }
+
+    private static long ticks(long interval, long period) {
+
+        return Math.max(1, Math.round((double) interval / period));
+    }
+
+    private static long gcd(long a, long b) {
+
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
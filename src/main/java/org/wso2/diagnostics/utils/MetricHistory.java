@@ -0,0 +1,270 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.wso2.diagnostics.utils.Constants.METRIC_HISTORY_DURATION;
+import static org.wso2.diagnostics.utils.Constants.METRIC_HISTORY_ENABLED;
+import static org.wso2.diagnostics.utils.Constants.METRIC_HISTORY_EXPORT_DURATION;
+import static org.wso2.diagnostics.utils.Constants.METRIC_HISTORY_INTERVAL;
+
+/**
+ * Records the JMX metrics of the server on every sample, so that a capture shows how they evolved before it was
+ * triggered. The samples are kept in a ring of primitive arrays, one array per metric, sized for the configured
+ * duration at the configured interval, hence the history takes the same memory however long the tool runs. The last
+ * minutes of the history are written to each capture as {@value #FILE_NAME}.
+ * <p>
+ * The GC counts and times are the totals of all the collectors since the server started. A metric that could not be
+ * read, such as while the server is down, is recorded as -1.
+ */
+public class MetricHistory implements JMXSampler.Listener {
+
+    private static final Logger log = LogManager.getLogger(MetricHistory.class);
+
+    public static final String FILE_NAME = "metric-history.csv";
+    private static final String OPEN_FILE_DESCRIPTOR_COUNT = "OpenFileDescriptorCount";
+    private static final String NON_HEAP_MEMORY_USAGE = "NonHeapMemoryUsage";
+    private static final String HEADER = "time,cpu_usage,heap_used,heap_committed,heap_max,non_heap_used,gc_count," +
+            "gc_time,thread_count,open_files";
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    private static final double DEFAULT_INTERVAL = 1;
+    private static final int DEFAULT_DURATION = 60;
+    private static final int DEFAULT_EXPORT_DURATION = 15;
+
+    private static volatile MetricHistory instance;
+
+    private final long interval;
+    private final long exportDuration;
+
+    // guarded by this, the sample i is at (next - size + i) modulo the capacity
+    private final long[] times;
+    private final float[] cpuUsages;
+    private final long[] heapUsed;
+    private final long[] heapCommitted;
+    private final long[] heapMax;
+    private final long[] nonHeapUsed;
+    private final long[] gcCounts;
+    private final long[] gcTimes;
+    private final int[] threadCounts;
+    private final int[] openFiles;
+    private int next;
+    private int size;
+
+    MetricHistory(long interval, long duration, long exportDuration) {
+
+        this.interval = Math.max(1, interval);
+        this.exportDuration = exportDuration;
+        int capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, duration / this.interval));
+        times = new long[capacity];
+        cpuUsages = new float[capacity];
+        heapUsed = new long[capacity];
+        heapCommitted = new long[capacity];
+        heapMax = new long[capacity];
+        nonHeapUsed = new long[capacity];
+        gcCounts = new long[capacity];
+        gcTimes = new long[capacity];
+        threadCounts = new int[capacity];
+        openFiles = new int[capacity];
+    }
+
+    /**
+     * Creates the shared history from the configuration, unless it is disabled.
+     *
+     * @param configMap the configuration map
+     * @return the history, or null if it is disabled
+     */
+    public static synchronized MetricHistory init(Map<String, Object> configMap) {
+
+        if (!CommonUtils.getBooleanValue(configMap.get(METRIC_HISTORY_ENABLED), true)) {
+            return null;
+        }
+        if (instance != null) {
+            log.warn("Metric history is already initialized.");
+            return instance;
+        }
+        Object intervalValue = configMap.get(METRIC_HISTORY_INTERVAL);
+        double interval = intervalValue == null ? DEFAULT_INTERVAL : Double.parseDouble(intervalValue.toString());
+        int duration = CommonUtils.getIntegerValue(configMap.get(METRIC_HISTORY_DURATION), DEFAULT_DURATION);
+        int exportDuration = CommonUtils.getIntegerValue(configMap.get(METRIC_HISTORY_EXPORT_DURATION),
+                DEFAULT_EXPORT_DURATION);
+        instance = new MetricHistory(Math.round(interval * 1000), duration * 60000L, exportDuration * 60000L);
+        log.info("Initiating metric history with interval: " + instance.interval + "ms, samples kept: " +
+                instance.times.length + ", export duration: " + exportDuration + " minutes");
+        return instance;
+    }
+
+    /**
+     * @return the shared history, or null if it is disabled or was not initialized
+     */
+    public static MetricHistory getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * @return milliseconds between two samples
+     */
+    public long getInterval() {
+
+        return interval;
+    }
+
+    /**
+     * @return the attributes to sample for the history, keyed by the object name of their MBean
+     */
+    public Map<String, String[]> getAttributes() {
+
+        Map<String, String[]> attributes = new LinkedHashMap<>();
+        attributes.put(JMXDataRetriever.OPERATING_SYSTEM_MBEAN,
+                new String[]{JMXDataRetriever.PROCESS_CPU_LOAD, OPEN_FILE_DESCRIPTOR_COUNT});
+        attributes.put(JMXDataRetriever.MEMORY_MBEAN,
+                new String[]{JMXDataRetriever.HEAP_MEMORY_USAGE, NON_HEAP_MEMORY_USAGE});
+        attributes.put(JMXDataRetriever.THREADING_MBEAN, new String[]{JMXDataRetriever.THREAD_COUNT});
+        attributes.put(JMXDataRetriever.GARBAGE_COLLECTOR_MBEANS,
+                new String[]{JMXDataRetriever.COLLECTION_COUNT, JMXDataRetriever.COLLECTION_TIME});
+        return attributes;
+    }
+
+    @Override
+    public void onSample(JMXSample sample) {
+
+        Object cpuLoad = sample.get(JMXDataRetriever.OPERATING_SYSTEM_MBEAN, JMXDataRetriever.PROCESS_CPU_LOAD);
+        Object heap = sample.get(JMXDataRetriever.MEMORY_MBEAN, JMXDataRetriever.HEAP_MEMORY_USAGE);
+        Object nonHeap = sample.get(JMXDataRetriever.MEMORY_MBEAN, NON_HEAP_MEMORY_USAGE);
+        double load = JMXDataRetriever.getDouble(cpuLoad);
+        synchronized (this) {
+            int i = next;
+            times[i] = sample.getTime();
+            cpuUsages[i] = load < 0 ? -1 : (float) (load * 100);
+            heapUsed[i] = JMXDataRetriever.getLong(heap, "used");
+            heapCommitted[i] = JMXDataRetriever.getLong(heap, "committed");
+            heapMax[i] = JMXDataRetriever.getLong(heap, "max");
+            nonHeapUsed[i] = JMXDataRetriever.getLong(nonHeap, "used");
+            gcCounts[i] = sum(sample, JMXDataRetriever.COLLECTION_COUNT);
+            gcTimes[i] = sum(sample, JMXDataRetriever.COLLECTION_TIME);
+            threadCounts[i] = (int) JMXDataRetriever.getDouble(
+                    sample.get(JMXDataRetriever.THREADING_MBEAN, JMXDataRetriever.THREAD_COUNT));
+            openFiles[i] = (int) JMXDataRetriever.getDouble(
+                    sample.get(JMXDataRetriever.OPERATING_SYSTEM_MBEAN, OPEN_FILE_DESCRIPTOR_COUNT));
+            next = (i + 1) % times.length;
+            size = Math.min(size + 1, times.length);
+        }
+    }
+
+    private static long sum(JMXSample sample, String attribute) {
+
+        long total = -1;
+        for (Object value : sample.getAll(JMXDataRetriever.GARBAGE_COLLECTOR_MBEANS, attribute)) {
+            long collectorValue = (long) JMXDataRetriever.getDouble(value);
+            // a collector that was not used yet reports -1 for its time
+            if (collectorValue >= 0) {
+                total = Math.max(total, 0) + collectorValue;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Writes the samples of the export duration before now to a capture folder.
+     *
+     * @param folderPath the capture folder
+     */
+    public void export(String folderPath) {
+
+        Path file = Path.of(folderPath, FILE_NAME);
+        try {
+            int written = write(file, System.currentTimeMillis() - exportDuration);
+            if (log.isDebugEnabled()) {
+                log.debug("Written " + written + " metric samples to " + file);
+            }
+        } catch (IOException e) {
+            log.error("Unable to write the metric history to " + file, e);
+        }
+    }
+
+    /**
+     * Writes the samples taken from a time on as CSV.
+     *
+     * @param file the file to write
+     * @param from the time of the first sample to write, in epoch milliseconds
+     * @return the number of samples written
+     */
+    int write(Path file, long from) throws IOException {
+
+        int count;
+        int first;
+        long[][] longColumns;
+        float[] cpu;
+        int[] threads;
+        int[] files;
+        // copied so that the sampler is not held by the write
+        synchronized (this) {
+            count = size;
+            first = Math.floorMod(next - size, times.length);
+            longColumns = new long[][]{times.clone(), heapUsed.clone(), heapCommitted.clone(), heapMax.clone(),
+                    nonHeapUsed.clone(), gcCounts.clone(), gcTimes.clone()};
+            cpu = cpuUsages.clone();
+            threads = threadCounts.clone();
+            files = openFiles.clone();
+        }
+        int written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            StringBuilder line = new StringBuilder(128);
+            for (int n = 0; n < count; n++) {
+                int i = (first + n) % times.length;
+                if (longColumns[0][i] < from) {
+                    continue;
+                }
+                line.setLength(0);
+                line.append(TIME_FORMAT.format(Instant.ofEpochMilli(longColumns[0][i]))).append(',');
+                if (cpu[i] < 0) {
+                    // the missing value on its own, as the conditional expression would widen it to -1.0
+                    line.append(-1);
+                } else {
+                    line.append(Math.round(cpu[i] * 10) / 10.0);
+                }
+                for (int column = 1; column < longColumns.length; column++) {
+                    line.append(',').append(longColumns[column][i]);
+                }
+                line.append(',').append(threads[i]).append(',').append(files[i]);
+                writer.write(line.toString());
+                writer.newLine();
+                written++;
+            }
+        }
+        return written;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import java.util.Arrays;
+
+/**
+ * Counts events over a sliding time window. The window is split into a fixed number of buckets kept in a ring of
+ * primitive arrays, each bucket holding the count of one slice of the window and the start time of that slice. A
+ * bucket is reset when the ring wraps around to it, so the counter never allocates after construction. The count is
+ * accurate to the width of one bucket.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class SlidingWindowCounter {
+
+    private static final int DEFAULT_BUCKETS = 60;
+
+    private final long window;
+    private final long bucketWidth;
+    private final long[] counts;
+    private final long[] bucketStarts;
+    // the latest time seen, the end of the window
+    private long latest = Long.MIN_VALUE;
+
+    /**
+     * @param window length of the window in milliseconds
+     */
+    public SlidingWindowCounter(long window) {
+
+        this(window, DEFAULT_BUCKETS);
+    }
+
+    /**
+     * @param window  length of the window in milliseconds
+     * @param buckets number of buckets the window is split into
+     */
+    public SlidingWindowCounter(long window, int buckets) {
+
+        this.bucketWidth = Math.max(1, window / Math.max(1, buckets));
+        this.window = bucketWidth * Math.max(1, buckets);
+        this.counts = new long[Math.max(1, buckets)];
+        this.bucketStarts = new long[counts.length];
+        Arrays.fill(bucketStarts, Long.MIN_VALUE);
+    }
+
+    /**
+     * Counts an event.
+     *
+     * @param time time of the event in epoch milliseconds
+     * @return the number of events in the window ending at the latest time seen
+     */
+    public long add(long time) {
+
+        latest = Math.max(latest, time);
+        if (time > latest - window) {
+            // events older than the window, such as late lines, are not counted
+            long bucketStart = time - Math.floorMod(time, bucketWidth);
+            int index = (int) Math.floorMod(bucketStart / bucketWidth, (long) counts.length);
+            if (bucketStarts[index] != bucketStart) {
+                bucketStarts[index] = bucketStart;
+                counts[index] = 0;
+            }
+            counts[index]++;
+        }
+        return count(latest);
+    }
+
+    /**
+     * @param now the end of the window in epoch milliseconds
+     * @return the number of events in the window ending at the given time
+     */
+    public long count(long now) {
+
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (bucketStarts[i] != Long.MIN_VALUE && bucketStarts[i] > now - window && bucketStarts[i] <= now) {
+                total += counts[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Forgets the events counted so far.
+     */
+    public void reset() {
+
+        Arrays.fill(counts, 0);
+        Arrays.fill(bucketStarts, Long.MIN_VALUE);
+    }
+
+    /**
+     * @return the length of the window in milliseconds
+     */
+    public long getWindow() {
+
+        return window;
+    }
+}
@@ -40,6 +40,17 @@ public class TomlParser {
         return parseToml(result);
     }
 
+    /**
+     * Parses the file, failing on a syntax error instead of returning what could be parsed.
+     */
+    public static Map<String, Object> parseStrict(String filePath) throws IOException {
+        TomlParseResult result = Toml.parse(Paths.get(filePath));
+        if (result.hasErrors()) {
+            throw new IOException("Invalid configuration in " + filePath + ": " + result.errors().get(0));
+        }
+        return parseToml(result);
+    }
+
     private static Map<String, Object> parseToml(TomlParseResult result) {
 
         Map<String, Object> templateContext = new LinkedHashMap<>();
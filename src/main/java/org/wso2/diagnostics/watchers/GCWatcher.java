@@ -0,0 +1,293 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.diagnostics.actionexecutor.CaptureScheduler;
+import org.wso2.diagnostics.actionexecutor.ServerProcess;
+import org.wso2.diagnostics.utils.JMXConnectionManager;
+import org.wso2.diagnostics.utils.JMXDataRetriever;
+import org.wso2.diagnostics.utils.JMXSample;
+import org.wso2.diagnostics.utils.JMXSampler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.Notification;
+import javax.management.NotificationFilterSupport;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Watches the garbage collections of the server through the GC notifications of its garbage collector MBeans, so that
+ * every pause is seen, however short the time between two samples would be. It keeps a histogram of the pause
+ * durations per collector, and executes the gc watcher actions when a pause is longer than the pause threshold, or
+ * when the share of the window spent in pauses is above the time threshold. The histograms are written to the
+ * captures of the watcher as {@value #FILE_NAME}.
+ * <p>
+ * The notifications are pushed by the server, hence they cost nothing while the server does not collect. They stop
+ * with the connection, and the watcher subscribes again on the first sample after the connection was made again.
+ */
+public class GCWatcher implements JMXSampler.Listener, NotificationListener {
+
+    private static final Logger log = LogManager.getLogger(GCWatcher.class);
+
+    // milliseconds between two checks that the watcher is subscribed on the current connection
+    public static final long SUBSCRIPTION_CHECK_INTERVAL = 5000;
+    // collectors of concurrent cycles, which report the duration of the cycle and not of a pause
+    public static final String DEFAULT_IGNORED_COLLECTORS = "G1 Concurrent GC,ZGC Cycles,ZGC Minor Cycles," +
+            "ZGC Major Cycles,Shenandoah Cycles,ConcurrentMarkSweep";
+    static final String FILE_NAME = "gc-pauses.csv";
+    // upper bounds of the histogram buckets in milliseconds, the last bucket holds the longer pauses
+    private static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    // updated when the configuration is reloaded
+    private volatile long pauseThreshold;
+    private volatile int timeThreshold;
+    private final long window;
+    private final long reloadTime;
+    private final Set<String> ignoredCollectors;
+    private final NotificationFilterSupport filter = new NotificationFilterSupport();
+
+    // guarded by this
+    private final Map<String, PauseHistogram> histograms = new TreeMap<>();
+    // end time and duration of the pauses within the window
+    private final ArrayDeque<long[]> pauses = new ArrayDeque<>();
+    private long pauseTimeInWindow;
+    private long lastTriggerTime;
+
+    // set while the action executors of the last trigger are running
+    private final AtomicBoolean capturing = new AtomicBoolean(false);
+    // connection count of the manager when the watcher subscribed, only used by the sampler thread
+    private long subscribedConnects = -1;
+
+    /**
+     * @param pauseThreshold    pause duration in milliseconds triggering the actions
+     * @param timeThreshold     share of the window spent in pauses triggering the actions, in percent
+     * @param window            the window in milliseconds of the time threshold
+     * @param reloadTime        minimum milliseconds between two triggers
+     * @param ignoredCollectors names of the collectors whose notifications are not pauses
+     */
+    public GCWatcher(long pauseThreshold, int timeThreshold, long window, long reloadTime,
+                     Set<String> ignoredCollectors) {
+
+        this.pauseThreshold = pauseThreshold;
+        this.timeThreshold = timeThreshold;
+        this.window = Math.max(1, window);
+        this.reloadTime = reloadTime;
+        this.ignoredCollectors = ignoredCollectors;
+        this.lastTriggerTime = System.currentTimeMillis() - reloadTime;
+        filter.enableType(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION);
+    }
+
+    /**
+     * Updates the thresholds, such as after the configuration was reloaded.
+     */
+    public void setThresholds(long pauseThreshold, int timeThreshold) {
+
+        this.pauseThreshold = pauseThreshold;
+        this.timeThreshold = timeThreshold;
+    }
+
+    /**
+     * Subscribes to the GC notifications of the collectors once a new connection was made.
+     */
+    @Override
+    public void onSample(JMXSample sample) {
+
+        JMXConnectionManager connectionManager = JMXConnectionManager.getInstance();
+        long connects = connectionManager.getConnects();
+        if (connects == subscribedConnects || connectionManager.getState() != JMXConnectionManager.State.CONNECTED) {
+            return;
+        }
+        List<String> collectors = sample.getObjectNames(JMXDataRetriever.GARBAGE_COLLECTOR_MBEANS);
+        if (collectors.isEmpty()) {
+            return;
+        }
+        String pid = ServerProcess.getProcessId();
+        List<String> subscribed = new ArrayList<>();
+        for (String collector : collectors) {
+            if (!JMXDataRetriever.addNotificationListener(pid, collector, this, filter)) {
+                // tried again on the next check, which would add the listeners added so far a second time
+                unsubscribe(pid, subscribed, connects);
+                return;
+            }
+            subscribed.add(collector);
+        }
+        // a connection made while subscribing has none of the listeners, it is subscribed on the next check
+        if (connectionManager.getConnects() == connects) {
+            subscribedConnects = connects;
+            log.info("GC watcher subscribed to the GC notifications of " + collectors);
+        }
+    }
+
+    /**
+     * Removes the listeners added to the collectors, unless the connection they were added on was closed, which
+     * removed them already.
+     */
+    private void unsubscribe(String pid, List<String> collectors, long connects) {
+
+        JMXConnectionManager connectionManager = JMXConnectionManager.getInstance();
+        for (String collector : collectors) {
+            if (connectionManager.getConnects() != connects ||
+                    connectionManager.getState() != JMXConnectionManager.State.CONNECTED) {
+                return;
+            }
+            JMXDataRetriever.removeNotificationListener(pid, collector, this, filter);
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        String collector = info.getGcName();
+        if (ignoredCollectors.contains(collector)) {
+            return;
+        }
+        long duration = info.getGcInfo().getDuration();
+        long time = notification.getTimeStamp();
+        long timeInWindow;
+        synchronized (this) {
+            histograms.computeIfAbsent(collector, PauseHistogram::new).add(duration);
+            pauses.addLast(new long[]{time, duration});
+            pauseTimeInWindow += duration;
+            while (!pauses.isEmpty() && pauses.peekFirst()[0] <= time - window) {
+                pauseTimeInWindow -= pauses.pollFirst()[1];
+            }
+            timeInWindow = pauseTimeInWindow;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("GC pause of " + duration + "ms by " + collector + ", " + info.getGcAction() + ", cause: " +
+                    info.getGcCause() + ", time in GC within the window: " + timeInWindow + "ms");
+        }
+        if (duration >= pauseThreshold) {
+            trigger("GC pause of " + duration + "ms by " + collector + " is above the threshold of " +
+                    pauseThreshold + "ms, " + info.getGcAction() + ", cause: " + info.getGcCause());
+        } else if (timeInWindow * 100 >= (long) timeThreshold * window) {
+            trigger("GC time of " + timeInWindow + "ms within " + window + "ms is above the threshold of " +
+                    timeThreshold + "%");
+        }
+    }
+
+    private void trigger(String reason) {
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now - lastTriggerTime < reloadTime) {
+                log.debug(reason + ", but the GC watcher was triggered less than the reload time ago.");
+                return;
+            }
+            if (!capturing.compareAndSet(false, true)) {
+                log.debug(reason + ", but the previous capture is still running.");
+                return;
+            }
+            lastTriggerTime = now;
+            // the time threshold is reached again only by the pauses after the trigger
+            pauses.clear();
+            pauseTimeInWindow = 0;
+        }
+        log.info(reason + ". Executing GC watcher actions.");
+        capture().whenComplete((result, throwable) -> capturing.set(false));
+    }
+
+    /**
+     * Starts a capture with the pause histograms.
+     *
+     * @return a future completed once the capture was zipped
+     */
+    CompletableFuture<Void> capture() {
+
+        return CaptureScheduler.getInstance().capture("gc_watcher",
+                folderPath -> writeHistograms(Path.of(folderPath, FILE_NAME)));
+    }
+
+    /**
+     * Writes the pause histograms of all the collectors since the start as CSV, one line per collector.
+     */
+    void writeHistograms(Path file) {
+
+        StringBuilder csv = new StringBuilder("collector,count,total_ms,max_ms");
+        for (long bucket : BUCKETS) {
+            csv.append(",le_").append(bucket);
+        }
+        csv.append(",gt_").append(BUCKETS[BUCKETS.length - 1]).append('\n');
+        synchronized (this) {
+            for (PauseHistogram histogram : histograms.values()) {
+                csv.append(histogram.collector).append(',').append(histogram.count).append(',')
+                        .append(histogram.total).append(',').append(histogram.max);
+                for (long bucketCount : histogram.buckets) {
+                    csv.append(',').append(bucketCount);
+                }
+                csv.append('\n');
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(csv.toString());
+        } catch (IOException e) {
+            log.error("Unable to write the GC pause histograms to " + file, e);
+        }
+    }
+
+    /**
+     * Counts of the pauses of a collector by their duration.
+     */
+    private static final class PauseHistogram {
+
+        private final String collector;
+        private final long[] buckets = new long[BUCKETS.length + 1];
+        private long count;
+        private long total;
+        private long max;
+
+        private PauseHistogram(String collector) {
+
+            this.collector = collector;
+        }
+
+        private void add(long duration) {
+
+            int bucket = 0;
+            while (bucket < BUCKETS.length && duration > BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+            count++;
+            total += duration;
+            max = Math.max(max, duration);
+        }
+    }
+}
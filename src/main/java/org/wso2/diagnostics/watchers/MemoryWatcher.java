@@ -20,42 +20,51 @@ package org.wso2.diagnostics.watchers;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.wso2.diagnostics.actionexecutor.ActionExecutor;
-import org.wso2.diagnostics.actionexecutor.ActionExecutorFactory;
-import org.wso2.diagnostics.postexecutor.ZipFileExecutor;
-import org.wso2.diagnostics.utils.CommonUtils;
-import org.wso2.diagnostics.utils.FileUtils;
+import org.wso2.diagnostics.actionexecutor.CaptureScheduler;
 import org.wso2.diagnostics.utils.JMXDataRetriever;
+import org.wso2.diagnostics.utils.JMXSample;
+import org.wso2.diagnostics.utils.JMXSampler;
+
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * It will check the memory usage and if it is consistently above the threshold,
  * it will execute the memory watcher actions.
  */
-public class MemoryWatcher extends Thread {
+public class MemoryWatcher implements JMXSampler.Listener {
 
     private static final Logger log = LogManager.getLogger(MemoryWatcher.class);
 
-    private final int retryCount;
-    private final double threshold;
+    // updated when the configuration is reloaded
+    private volatile int retryCount;
+    private volatile double threshold;
     private int count = 0;
-    private final String pid;
     private long lastCountUpdatedTime;
+    // set while the action executors of the last trigger are running
+    private final AtomicBoolean capturing = new AtomicBoolean(false);
 
-    public MemoryWatcher(String pid, double threshold, int retryCount) {
-        this.pid = pid;
+    public MemoryWatcher(double threshold, int retryCount) {
         this.threshold = threshold;
         this.retryCount = retryCount;
         this.lastCountUpdatedTime = System.currentTimeMillis();
     }
 
+    /**
+     * Updates the threshold and the retry count, such as after the configuration was reloaded.
+     */
+    public void setThreshold(double threshold, int retryCount) {
+        this.threshold = threshold;
+        this.retryCount = retryCount;
+    }
+
     @Override
-    public void run() {
+    public void onSample(JMXSample sample) {
         if (log.isDebugEnabled()) {
-            log.debug("Memory watcher thread executing for pid: " + pid + ", threshold: " + threshold +
+            log.debug("Memory watcher received a sample, threshold: " + threshold +
                     ", retry count: " + retryCount + ", count: " + count + ", last count updated time: " +
                     lastCountUpdatedTime + ", current time: " + System.currentTimeMillis());
         }
-        double memoryUsage = JMXDataRetriever.getMemoryUsage(pid);
+        double memoryUsage = JMXDataRetriever.getMemoryUsage(sample);
         log.debug("Memory usage: " + memoryUsage + "%");
         if (memoryUsage > threshold) {
             count++;
@@ -63,33 +72,12 @@ public class MemoryWatcher extends Thread {
             log.info("Heap usage is above threshold. Heap usage: " + memoryUsage + "%, Retry count: " + count);
         }
         if (count > retryCount) {
-            log.debug("Memory usage is consistently above threshold. Executing memory watcher actions.");
-            String tempFolderPath = FileUtils.createTimeStampFolder();
-            String[] actionExecutors = CommonUtils.getActionExecutors("memory_watcher");
-            if (actionExecutors != null) {
-                for (String actionExecutor : actionExecutors) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Executing action executor: " + actionExecutor);
-                    }
-                    ActionExecutor executor = ActionExecutorFactory.getActionExecutor(actionExecutor);
-                    if (executor != null) {
-                        executor.execute(tempFolderPath);
-                        if (log.isDebugEnabled()) {
-                            log.debug("Action executor " + actionExecutor + " executed successfully.");
-                        }
-                    } else {
-                        log.error("Action executor " + actionExecutor + " is not available.");
-                    }
-                }
-            }
-            ZipFileExecutor zipFileExecutor = new ZipFileExecutor();
-            zipFileExecutor.execute(tempFolderPath);
-            if (log.isDebugEnabled()) {
-                log.debug("Zipping the folder " + tempFolderPath + " is successful.");
-            }
-            FileUtils.deleteFolder(tempFolderPath);
-            if (log.isDebugEnabled()) {
-                log.debug("Deleted the folder " + tempFolderPath + " successfully.");
+            if (!capturing.compareAndSet(false, true)) {
+                log.debug("Memory usage is above threshold but the previous capture is still running.");
+            } else {
+                log.debug("Memory usage is consistently above threshold. Executing memory watcher actions.");
+                CaptureScheduler.getInstance().capture("memory_watcher", null)
+                        .whenComplete((result, throwable) -> capturing.set(false));
             }
             count = 0;
             lastCountUpdatedTime = System.currentTimeMillis();
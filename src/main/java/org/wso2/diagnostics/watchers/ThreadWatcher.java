@@ -0,0 +1,263 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.diagnostics.actionexecutor.CaptureScheduler;
+import org.wso2.diagnostics.actionexecutor.ServerProcess;
+import org.wso2.diagnostics.utils.JMXDataRetriever;
+import org.wso2.diagnostics.utils.JMXSample;
+import org.wso2.diagnostics.utils.JMXSampler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Watches the threads of the server through its ThreadMXBean. On every sample it looks for deadlocked threads and
+ * counts the threads by their state, reading the thread information without the stack traces, which keeps a check
+ * cheap even with thousands of threads. It executes the thread watcher actions when
+ * <ul>
+ *     <li>threads are deadlocked, once for each new set of deadlocked threads,</li>
+ *     <li>the share of blocked threads is above the blocked threshold for more than the attempts consecutive
+ *     samples, or</li>
+ *     <li>the thread count grew by the growth threshold or more over the growth window.</li>
+ * </ul>
+ * The thread counts and the deadlocked threads with the locks they wait for are written to the captures of the
+ * watcher as {@value #FILE_NAME}.
+ */
+public class ThreadWatcher implements JMXSampler.Listener {
+
+    private static final Logger log = LogManager.getLogger(ThreadWatcher.class);
+
+    static final String FILE_NAME = "thread-states.txt";
+
+    // updated when the configuration is reloaded
+    private volatile int blockedThreshold;
+    private volatile int retryCount;
+    private volatile int growthThreshold;
+    private final long growthWindow;
+    private final long reloadTime;
+
+    // only used by the sampler thread
+    private int blockedCount;
+    // time and thread count of the samples within the growth window
+    private final ArrayDeque<long[]> threadCounts = new ArrayDeque<>();
+    // whether the samples span the whole growth window, so that a growth is sustained over the window
+    private boolean growthWindowFilled;
+    private long[] lastDeadlock = new long[0];
+    private long lastTriggerTime;
+
+    // set while the action executors of the last trigger are running
+    private final AtomicBoolean capturing = new AtomicBoolean(false);
+
+    /**
+     * @param blockedThreshold share of the threads in the BLOCKED state triggering the actions, in percent
+     * @param retryCount       samples above the blocked threshold tolerated before the actions are triggered
+     * @param growthThreshold  threads added within the growth window triggering the actions
+     * @param growthWindow     the window in milliseconds of the growth threshold
+     * @param reloadTime       minimum milliseconds between two triggers on the blocked or growth threshold
+     */
+    public ThreadWatcher(int blockedThreshold, int retryCount, int growthThreshold, long growthWindow,
+                         long reloadTime) {
+
+        this.blockedThreshold = blockedThreshold;
+        this.retryCount = retryCount;
+        this.growthThreshold = growthThreshold;
+        this.growthWindow = Math.max(1, growthWindow);
+        this.reloadTime = reloadTime;
+        this.lastTriggerTime = System.currentTimeMillis() - reloadTime;
+    }
+
+    /**
+     * Updates the thresholds, such as after the configuration was reloaded.
+     */
+    public void setThresholds(int blockedThreshold, int retryCount, int growthThreshold) {
+
+        this.blockedThreshold = blockedThreshold;
+        this.retryCount = retryCount;
+        this.growthThreshold = growthThreshold;
+    }
+
+    @Override
+    public void onSample(JMXSample sample) {
+
+        Object threadIds = sample.get(JMXDataRetriever.THREADING_MBEAN, JMXDataRetriever.ALL_THREAD_IDS);
+        if (!(threadIds instanceof long[])) {
+            // the server could not be reached
+            return;
+        }
+        String pid = ServerProcess.getProcessId();
+        long[] deadlocked = JMXDataRetriever.findDeadlockedThreads(pid);
+        CompositeData[] threads = deadlocked == null ? null : JMXDataRetriever.getThreadInfo(pid, (long[]) threadIds);
+        if (threads == null) {
+            return;
+        }
+        ThreadStates states = new ThreadStates(sample.getTime(), threads, deadlocked);
+        if (log.isDebugEnabled()) {
+            log.debug("Thread watcher received a sample, " + states.getSummary());
+        }
+
+        if (deadlocked.length > 0) {
+            Arrays.sort(deadlocked);
+            // a deadlock lasts until the server restarts, it is captured once
+            if (!Arrays.equals(deadlocked, lastDeadlock) && trigger(deadlocked.length + " threads are deadlocked",
+                    states, false)) {
+                lastDeadlock = deadlocked;
+            }
+        } else {
+            lastDeadlock = deadlocked;
+        }
+
+        if (states.total > 0 && states.blocked * 100L >= (long) blockedThreshold * states.total) {
+            blockedCount++;
+            log.info("Blocked threads are above threshold. Blocked threads: " + states.blocked + " of " +
+                    states.total + ", Retry count: " + blockedCount);
+            if (blockedCount > retryCount && trigger(states.blocked + " of " + states.total +
+                    " threads are consistently blocked, above the threshold of " + blockedThreshold + "%", states,
+                    true)) {
+                blockedCount = 0;
+            }
+        } else {
+            blockedCount = 0;
+        }
+
+        long time = sample.getTime();
+        threadCounts.addLast(new long[]{time, states.total});
+        while (threadCounts.peekFirst()[0] < time - growthWindow) {
+            threadCounts.pollFirst();
+            growthWindowFilled = true;
+        }
+        long[] windowStart = threadCounts.peekFirst();
+        if (growthWindowFilled && states.total - windowStart[1] >= growthThreshold &&
+                trigger("Thread count grew from " + windowStart[1] + " to " + states.total + " within " +
+                        (time - windowStart[0]) + "ms, above the threshold of " + growthThreshold + " threads",
+                        states, true)) {
+            // the growth threshold is reached again only by the growth over a whole window after the trigger
+            threadCounts.clear();
+            threadCounts.addLast(new long[]{time, states.total});
+            growthWindowFilled = false;
+        }
+    }
+
+    /**
+     * @param reason          the reason logged and written to the capture
+     * @param states          the thread states of the sample
+     * @param applyReloadTime whether a trigger within the reload time of the last one is skipped
+     * @return true if the capture was started
+     */
+    private boolean trigger(String reason, ThreadStates states, boolean applyReloadTime) {
+
+        long now = System.currentTimeMillis();
+        if (applyReloadTime && now - lastTriggerTime < reloadTime) {
+            log.debug(reason + ", but the thread watcher was triggered less than the reload time ago.");
+            return false;
+        }
+        if (!capturing.compareAndSet(false, true)) {
+            log.debug(reason + ", but the previous capture is still running.");
+            return false;
+        }
+        lastTriggerTime = now;
+        log.info(reason + ". Executing thread watcher actions.");
+        CaptureScheduler.getInstance().capture("thread_watcher",
+                folderPath -> states.write(Path.of(folderPath, FILE_NAME), reason))
+                .whenComplete((result, throwable) -> capturing.set(false));
+        return true;
+    }
+
+    /**
+     * Counts of the threads of a sample by their state, with the deadlocked threads.
+     */
+    static final class ThreadStates {
+
+        private final long time;
+        private int total;
+        private int runnable;
+        private int blocked;
+        private int waiting;
+        private int timedWaiting;
+        private final List<CompositeData> deadlockedThreads = new ArrayList<>();
+
+        ThreadStates(long time, CompositeData[] threads, long[] deadlocked) {
+
+            this.time = time;
+            for (CompositeData thread : threads) {
+                // a thread that ended since its id was read has no information
+                if (thread == null) {
+                    continue;
+                }
+                total++;
+                String state = String.valueOf(thread.get("threadState"));
+                if (Thread.State.RUNNABLE.name().equals(state)) {
+                    runnable++;
+                } else if (Thread.State.BLOCKED.name().equals(state)) {
+                    blocked++;
+                } else if (Thread.State.WAITING.name().equals(state)) {
+                    waiting++;
+                } else if (Thread.State.TIMED_WAITING.name().equals(state)) {
+                    timedWaiting++;
+                }
+                for (long threadId : deadlocked) {
+                    if (threadId == JMXDataRetriever.getLong(thread, "threadId")) {
+                        deadlockedThreads.add(thread);
+                        break;
+                    }
+                }
+            }
+        }
+
+        String getSummary() {
+
+            return "threads: " + total + ", runnable: " + runnable + ", blocked: " + blocked + ", waiting: " +
+                    waiting + ", timed waiting: " + timedWaiting + ", deadlocked: " + deadlockedThreads.size();
+        }
+
+        void write(Path file, String reason) {
+
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write("Time: " + new Timestamp(time));
+                writer.newLine();
+                writer.write("Reason: " + reason);
+                writer.newLine();
+                writer.write("Thread states: " + getSummary());
+                writer.newLine();
+                for (CompositeData thread : deadlockedThreads) {
+                    writer.newLine();
+                    writer.write("\"" + thread.get("threadName") + "\" id=" + thread.get("threadId") + " " +
+                            thread.get("threadState") + " on " + thread.get("lockName") + " owned by \"" +
+                            thread.get("lockOwnerName") + "\" id=" + thread.get("lockOwnerId"));
+                }
+                writer.newLine();
+            } catch (IOException e) {
+                log.error("Unable to write the thread states to " + file, e);
+            }
+        }
+    }
+}
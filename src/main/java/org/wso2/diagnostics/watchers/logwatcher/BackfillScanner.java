@@ -0,0 +1,634 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Scans historical logs, including the rotated and the gzipped ones, with the log patterns of the log watcher and
+ * counts the matching error events per pattern and per minute. Used to find out what the patterns would have caught
+ * before deploying them, or what happened before the tool was installed.
+ * <p>
+ * The files are scanned in parallel on a fork/join pool. Plain files are split into memory mapped chunks, whose
+ * boundaries are moved to the next line break so that no line is split. An error event that is still open at the end
+ * of a chunk is completed from the bytes after it, hence the events are the same as when the file is read as a whole.
+ * Gzipped files cannot be split and are streamed by a single task each.
+ * <p>
+ * Error events are detected on the bytes, as by the log watcher, and only the error events are decoded and matched.
+ * The patterns are checked in their configured order and the first matching pattern wins, as by the
+ * {@link Interpreter}. The thresholds, reload times and fingerprints of the patterns do not apply, every matching event
+ * is counted.
+ */
+public class BackfillScanner {
+
+    private static final Logger log = LogManager.getLogger(BackfillScanner.class);
+
+    // nominal size of the chunks the plain files are split into
+    static final long CHUNK_SIZE = 64L * 1024 * 1024;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    // lines longer than this are truncated, as by the log tailer
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    // bounds of an error event, that is of the error line and the lines following it
+    private static final int MAX_EVENT_LINES = 200;
+    private static final int MAX_EVENT_BYTES = 64 * 1024;
+    private static final long MINUTE = 60 * 1000L;
+
+    private final LogPatternMatcher matcher;
+    private final String timestampFormat;
+    private final int parallelism;
+    private final long chunkSize;
+
+    /**
+     * @param rules           the log patterns to count
+     * @param timestampFormat date layout of the logs, see {@link TimestampParser}
+     * @param parallelism     number of files or chunks scanned at the same time
+     */
+    public BackfillScanner(List<LogPatternRule> rules, String timestampFormat, int parallelism) {
+
+        this(rules, timestampFormat, parallelism, CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize nominal size of the chunks the plain files are split into
+     */
+    BackfillScanner(List<LogPatternRule> rules, String timestampFormat, int parallelism, long chunkSize) {
+
+        this.chunkSize = chunkSize;
+        this.matcher = new LogPatternMatcher(rules);
+        // fail on an unsupported layout before scanning
+        this.timestampFormat = new TimestampParser(timestampFormat).getFormat();
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Lists the log files of a directory, in the order of their names.
+     *
+     * @param directory the logs directory
+     * @param glob      pattern of the names of the files, such as {@code wso2carbon*.log*}
+     * @return the regular files matching the pattern
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<Path> findLogFiles(Path directory, String glob) throws IOException {
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Scans the given files.
+     *
+     * @param files plain or gzipped (.gz) log files
+     * @return the number of matching events per pattern
+     * @throws IOException if a file cannot be read
+     */
+    public Report scan(List<Path> files) throws IOException {
+
+        List<Segment> segments = new ArrayList<>();
+        for (Path file : files) {
+            split(file, segments);
+        }
+        log.info("Scanning " + files.size() + " log files in " + segments.size() + " segments with parallelism: " +
+                parallelism);
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Report report;
+        try {
+            report = pool.invoke(new ScanTask(segments, 0, segments.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Splits a plain file into chunks of about {@link #chunkSize} bytes ending at line breaks.
+     */
+    private void split(Path file, List<Segment> segments) throws IOException {
+
+        if (file.getFileName().toString().endsWith(".gz")) {
+            segments.add(new Segment(file, 0, -1, true));
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            ByteBuffer probe = ByteBuffer.allocate(4096);
+            while (start < size) {
+                long end = start + chunkSize;
+                if (end >= size) {
+                    end = size;
+                } else {
+                    end = nextLineStart(channel, end, size, probe);
+                }
+                segments.add(new Segment(file, start, end, false));
+                start = end;
+            }
+        }
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer probe)
+            throws IOException {
+
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * A range of a plain file, or a whole gzipped file.
+     */
+    private static final class Segment {
+
+        private final Path file;
+        private final long start;
+        private final long end;
+        private final boolean gzip;
+
+        private Segment(Path file, long start, long end, boolean gzip) {
+
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.gzip = gzip;
+        }
+
+        private long length() {
+
+            return end - start;
+        }
+    }
+
+    /**
+     * Scans a range of the segments, splitting it in halves until a single segment is left.
+     */
+    private final class ScanTask extends RecursiveTask<Report> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Segment> segments;
+        private final int from;
+        private final int to;
+
+        private ScanTask(List<Segment> segments, int from, int to) {
+
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Report compute() {
+
+            if (to - from == 0) {
+                return new Report(matcher);
+            }
+            if (to - from == 1) {
+                try {
+                    return scanSegment(segments.get(from));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error while scanning " + segments.get(from).file, e);
+                }
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(segments, from, middle);
+            left.fork();
+            Report report = new ScanTask(segments, middle, to).compute();
+            report.merge(left.join());
+            return report;
+        }
+    }
+
+    private Report scanSegment(Segment segment) throws IOException {
+
+        // the timestamp parser is not thread safe, hence one per task
+        EventScanner scanner = new EventScanner(new Report(matcher), new TimestampParser(timestampFormat));
+        if (segment.gzip) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(segment.file), BLOCK_SIZE)) {
+                byte[] block = new byte[BLOCK_SIZE];
+                int read;
+                while ((read = in.read(block)) > 0) {
+                    scanner.onBlock(block, read);
+                }
+            }
+            scanner.report.bytes += Files.size(segment.file);
+        } else {
+            try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+                // the bytes after the segment are mapped too, to complete an error event open at its end
+                long mapEnd = Math.min(channel.size(), segment.end + MAX_EVENT_BYTES);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, segment.start,
+                        mapEnd - segment.start);
+                scanner.boundary = segment.length();
+                byte[] block = new byte[BLOCK_SIZE];
+                while (mapped.hasRemaining() && !scanner.done) {
+                    int read = Math.min(block.length, mapped.remaining());
+                    mapped.get(block, 0, read);
+                    scanner.onBlock(block, read);
+                }
+            }
+            scanner.report.bytes += segment.length();
+        }
+        scanner.finish();
+        return scanner.report;
+    }
+
+    /**
+     * Splits the bytes of a segment into lines and the lines into error events. Lines starting at or after the
+     * boundary only complete the error event open at the end of the segment, they are scanned by the next segment.
+     */
+    private final class EventScanner {
+
+        private final Report report;
+        private final TimestampParser timestampParser;
+        private final LevelClassifier levelClassifier = new LevelClassifier();
+        private long boundary = Long.MAX_VALUE;
+        private boolean done = false;
+        // offset of the next line within the segment
+        private long position = 0;
+
+        // holds a line that spans more than one block
+        private byte[] line = new byte[1024];
+        private int lineLength = 0;
+        // bytes of the segment taken by the partial line, which is longer than its buffer once truncated
+        private long lineBytes = 0;
+
+        private final byte[] event = new byte[MAX_EVENT_BYTES];
+        private int eventLength = 0;
+        private int errorLineLength = 0;
+        private int eventLines = 0;
+        private boolean eventOpen = false;
+
+        private EventScanner(Report report, TimestampParser timestampParser) {
+
+            this.report = report;
+            this.timestampParser = timestampParser;
+        }
+
+        private void onBlock(byte[] block, int length) {
+
+            int start = 0;
+            for (int i = 0; i < length && !done; i++) {
+                if (block[i] != '\n') {
+                    continue;
+                }
+                if (lineBytes > 0) {
+                    appendLine(block, start, i - start);
+                    onLine(line, 0, lineLength, lineBytes + 1);
+                    lineLength = 0;
+                    lineBytes = 0;
+                } else {
+                    onLine(block, start, i - start, i - start + 1);
+                }
+                start = i + 1;
+            }
+            if (start < length && !done) {
+                appendLine(block, start, length - start);
+            }
+        }
+
+        private void appendLine(byte[] block, int offset, int length) {
+
+            lineBytes += length;
+            length = Math.min(length, MAX_LINE_LENGTH - lineLength);
+            if (lineLength + length > line.length) {
+                line = Arrays.copyOf(line, Math.min(MAX_LINE_LENGTH,
+                        Math.max(line.length * 2, lineLength + length)));
+            }
+            System.arraycopy(block, offset, line, lineLength, length);
+            lineLength += length;
+        }
+
+        private void finish() {
+
+            if (lineBytes > 0 && !done) {
+                onLine(line, 0, lineLength, lineBytes);
+            }
+            lineLength = 0;
+            lineBytes = 0;
+            flushEvent();
+        }
+
+        /**
+         * @param consumed bytes of the segment the line takes, including the line break
+         */
+        private void onLine(byte[] buffer, int offset, int length, long consumed) {
+
+            boolean owned = position < boundary;
+            position += consumed;
+            if (length > 0 && buffer[offset + length - 1] == '\r') {
+                length--;
+            }
+            if (owned) {
+                report.lines++;
+            }
+            if (levelClassifier.isErrorLine(buffer, offset, length)) {
+                flushEvent();
+                if (!owned) {
+                    done = true;
+                    return;
+                }
+                eventOpen = true;
+                eventLength = 0;
+                eventLines = 0;
+                appendEvent(buffer, offset, length);
+                errorLineLength = eventLength;
+            } else if (eventOpen && eventLines < MAX_EVENT_LINES && eventLength < MAX_EVENT_BYTES) {
+                appendEvent(buffer, offset, length);
+            } else if (!owned) {
+                // the event open at the boundary is complete
+                done = true;
+            }
+        }
+
+        private void appendEvent(byte[] buffer, int offset, int length) {
+
+            int room = MAX_EVENT_BYTES - eventLength;
+            if (room <= 0) {
+                return;
+            }
+            length = Math.min(length, room - 1);
+            System.arraycopy(buffer, offset, event, eventLength, length);
+            eventLength += length;
+            event[eventLength++] = '\n';
+            eventLines++;
+        }
+
+        private void flushEvent() {
+
+            if (!eventOpen) {
+                return;
+            }
+            eventOpen = false;
+            report.events++;
+            String completeLog = new String(event, 0, eventLength, StandardCharsets.UTF_8);
+            // without the line break appended to it
+            String errorLine = new String(event, 0, errorLineLength - 1, StandardCharsets.UTF_8);
+            int index = matcher.match(LogLineParser.parse(errorLine, completeLog));
+            if (index >= 0) {
+                report.stats[index].record(timestampParser.parse(errorLine));
+            }
+        }
+    }
+
+    /**
+     * The matching error events of a pattern.
+     */
+    public static final class PatternStats {
+
+        private final String name;
+        private long count = 0;
+        private long untimed = 0;
+        private long first = Long.MAX_VALUE;
+        private long last = Long.MIN_VALUE;
+        // start of the minute, in epoch milliseconds, to the number of events within the minute
+        private final Map<Long, long[]> minutes = new HashMap<>();
+
+        private PatternStats(String name) {
+
+            this.name = name;
+        }
+
+        private void record(long timestamp) {
+
+            count++;
+            if (timestamp < 0) {
+                untimed++;
+                return;
+            }
+            first = Math.min(first, timestamp);
+            last = Math.max(last, timestamp);
+            minutes.computeIfAbsent(timestamp - timestamp % MINUTE, k -> new long[1])[0]++;
+        }
+
+        private void merge(PatternStats other) {
+
+            count += other.count;
+            untimed += other.untimed;
+            first = Math.min(first, other.first);
+            last = Math.max(last, other.last);
+            for (Map.Entry<Long, long[]> minute : other.minutes.entrySet()) {
+                minutes.computeIfAbsent(minute.getKey(), k -> new long[1])[0] += minute.getValue()[0];
+            }
+        }
+
+        public String getName() {
+
+            return name;
+        }
+
+        public long getCount() {
+
+            return count;
+        }
+
+        /**
+         * @return the number of events without a timestamp, which are not in the histogram
+         */
+        public long getUntimed() {
+
+            return untimed;
+        }
+
+        /**
+         * @return the timestamp of the first event, or -1 if there is none
+         */
+        public long getFirst() {
+
+            return count == untimed ? -1 : first;
+        }
+
+        /**
+         * @return the timestamp of the last event, or -1 if there is none
+         */
+        public long getLast() {
+
+            return count == untimed ? -1 : last;
+        }
+
+        /**
+         * @return the number of events per minute, keyed by the start of the minute in epoch milliseconds
+         */
+        public TreeMap<Long, Long> getHistogram() {
+
+            TreeMap<Long, Long> histogram = new TreeMap<>();
+            for (Map.Entry<Long, long[]> minute : minutes.entrySet()) {
+                histogram.put(minute.getKey(), minute.getValue()[0]);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * The result of a scan.
+     */
+    public static final class Report {
+
+        private final PatternStats[] stats;
+        private long bytes = 0;
+        private long lines = 0;
+        private long events = 0;
+        private long elapsedNanos = 0;
+
+        private Report(LogPatternMatcher matcher) {
+
+            this.stats = new PatternStats[matcher.size()];
+            for (int i = 0; i < stats.length; i++) {
+                stats[i] = new PatternStats(matcher.getRule(i).getName());
+            }
+        }
+
+        private void merge(Report other) {
+
+            for (int i = 0; i < stats.length; i++) {
+                stats[i].merge(other.stats[i]);
+            }
+            bytes += other.bytes;
+            lines += other.lines;
+            events += other.events;
+        }
+
+        /**
+         * @return the statistics of the patterns, in their configured order
+         */
+        public List<PatternStats> getPatternStats() {
+
+            return Collections.unmodifiableList(Arrays.asList(stats));
+        }
+
+        /**
+         * @return the bytes read from the files, compressed for the gzipped files
+         */
+        public long getBytes() {
+
+            return bytes;
+        }
+
+        public long getLines() {
+
+            return lines;
+        }
+
+        /**
+         * @return the number of error events, matching a pattern or not
+         */
+        public long getEvents() {
+
+            return events;
+        }
+
+        public long getElapsedMillis() {
+
+            return elapsedNanos / 1000000;
+        }
+
+        /**
+         * Writes the number of events per pattern and per minute, one {@code pattern,minute,count} row per minute
+         * with events.
+         */
+        public void writeHistogram(Path file) throws IOException {
+
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write("pattern,minute,count");
+                writer.newLine();
+                for (PatternStats patternStats : stats) {
+                    for (Map.Entry<Long, Long> minute : patternStats.getHistogram().entrySet()) {
+                        writer.write(csv(patternStats.name) + "," + new Timestamp(minute.getKey()) + "," +
+                                minute.getValue());
+                        writer.newLine();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes the number of events and the first and last occurrence of each pattern.
+         */
+        public void writeSummary(Path file) throws IOException {
+
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write("pattern,count,untimed,first,last");
+                writer.newLine();
+                for (PatternStats patternStats : stats) {
+                    writer.write(csv(patternStats.name) + "," + patternStats.count + "," + patternStats.untimed +
+                            "," + format(patternStats.getFirst()) + "," + format(patternStats.getLast()));
+                    writer.newLine();
+                }
+            }
+        }
+
+        private static String format(long timestamp) {
+
+            return timestamp < 0 ? "" : new Timestamp(timestamp).toString();
+        }
+
+        private static String csv(String value) {
+
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+                return value;
+            }
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+    }
+}
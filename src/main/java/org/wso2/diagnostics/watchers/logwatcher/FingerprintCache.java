@@ -0,0 +1,179 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.wso2.diagnostics.utils.SlidingWindowCounter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the fingerprints of the error events seen so far (see {@link StackTraceFingerprint}), so that an error is
+ * captured when it is first seen and when it surges, instead of on every occurrence. The cache is bounded, the least
+ * recently seen fingerprint is forgotten when it is full, and is captured again as new if it comes back.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class FingerprintCache {
+
+    // buckets of the surge window of each fingerprint, kept small as there is one window per fingerprint
+    private static final int SURGE_WINDOW_BUCKETS = 12;
+
+    private final int frames;
+    private final int surgeThreshold;
+    private final long surgeWindow;
+    private final Map<String, Fingerprint> fingerprints;
+    private long evictions;
+
+    /**
+     * @param capacity       the number of fingerprints remembered
+     * @param frames         the number of frames of the stack trace included in the fingerprints
+     * @param surgeThreshold the number of occurrences within the surge window after which a captured fingerprint is
+     *                       captured again, 0 to capture a fingerprint only once
+     * @param surgeWindow    the length of the surge window in milliseconds
+     */
+    public FingerprintCache(int capacity, int frames, int surgeThreshold, long surgeWindow) {
+
+        this.frames = frames;
+        this.surgeThreshold = surgeThreshold;
+        this.surgeWindow = surgeWindow;
+        this.fingerprints = new LinkedHashMap<String, Fingerprint>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Fingerprint> eldest) {
+
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Records an occurrence of an error event.
+     *
+     * @param logLine the parsed error event
+     * @param time    the time of the event in epoch milliseconds
+     * @return the fingerprint of the event
+     */
+    public Fingerprint record(ParsedLogLine logLine, long time) {
+
+        String key = StackTraceFingerprint.of(logLine, frames);
+        Fingerprint fingerprint = fingerprints.get(key);
+        if (fingerprint == null) {
+            fingerprint = new Fingerprint(key, time, new SlidingWindowCounter(surgeWindow, SURGE_WINDOW_BUCKETS));
+            fingerprints.put(key, fingerprint);
+        }
+        fingerprint.record(time);
+        return fingerprint;
+    }
+
+    public int size() {
+
+        return fingerprints.size();
+    }
+
+    /**
+     * @return the number of fingerprints forgotten as the cache was full
+     */
+    public long getEvictions() {
+
+        return evictions;
+    }
+
+    /**
+     * The occurrences of one fingerprint and whether it was captured.
+     */
+    public class Fingerprint {
+
+        private final String key;
+        private final long firstSeen;
+        private final SlidingWindowCounter recent;
+        private long lastSeen;
+        private long count;
+        private boolean captured;
+        private long recentCount;
+
+        private Fingerprint(String key, long firstSeen, SlidingWindowCounter recent) {
+
+            this.key = key;
+            this.firstSeen = firstSeen;
+            this.recent = recent;
+        }
+
+        private void record(long time) {
+
+            count++;
+            lastSeen = Math.max(lastSeen, time);
+            recentCount = recent.add(time);
+        }
+
+        /**
+         * @return whether the fingerprint should be captured, as it was never captured or is surging
+         */
+        public boolean isCaptureDue() {
+
+            return !captured || (surgeThreshold > 0 && recentCount >= surgeThreshold);
+        }
+
+        /**
+         * Records that the fingerprint was captured, the next surge needs occurrences of its own.
+         */
+        public void markCaptured() {
+
+            captured = true;
+            recent.reset();
+            recentCount = 0;
+        }
+
+        public boolean isCaptured() {
+
+            return captured;
+        }
+
+        /**
+         * @return a short id of the fingerprint for the logs
+         */
+        public String getId() {
+
+            return String.format("%08x", key.hashCode());
+        }
+
+        public String getKey() {
+
+            return key;
+        }
+
+        public long getCount() {
+
+            return count;
+        }
+
+        public long getFirstSeen() {
+
+            return firstSeen;
+        }
+
+        public long getLastSeen() {
+
+            return lastSeen;
+        }
+    }
+}
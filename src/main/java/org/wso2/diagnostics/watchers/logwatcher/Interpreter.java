@@ -21,18 +21,17 @@ package org.wso2.diagnostics.watchers.logwatcher;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.wso2.diagnostics.actionexecutor.ActionExecutor;
+import org.wso2.diagnostics.actionexecutor.CaptureScheduler;
 import org.wso2.diagnostics.postexecutor.PostExecutorTask;
 import org.wso2.diagnostics.utils.Constants;
+import org.wso2.diagnostics.utils.SlidingWindowCounter;
 
 import java.io.File;
 import java.sql.Timestamp;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class used to interpret the log line.
@@ -40,27 +39,73 @@ import java.util.regex.Pattern;
 public class Interpreter {
 
     private final Logger log = LogManager.getLogger(Interpreter.class);
+    // interval of the log of the pattern rates in milliseconds
+    private static final long RATE_LOG_INTERVAL = 60000;
     private String folderPath; // Folder path of the TimeStamp Folder
-    private final Hashtable<String, Integer> logPatternLastMatchedTime;
+    // epoch milliseconds of the log line that last triggered the action executors of each pattern
+    private final Map<String, AtomicLong> logPatternLastMatchedTime = new ConcurrentHashMap<>();
+    // matches of each pattern within its threshold window, only used by the dispatcher thread
+    private final Map<String, SlidingWindowCounter> logPatternRates = new LinkedHashMap<>();
+    private long lastRateLogTime = System.currentTimeMillis();
     private final Timer timer;
 
-    private final Map<String, ActionExecutor> actionExecutorMap;
-    private final Map<String, String[]> regexMap;
-    private final Map<String, Integer> regexPatternReloadTime;
+    // replaced as a whole when the configuration is reloaded
+    private volatile PatternTable patternTable;
+    // the table the rate counters were created for, only used by the dispatcher thread
+    private PatternTable ratesPatternTable;
+    private final TimestampParser timestampParser;
+    // null when the captures are not deduplicated
+    private final FingerprintCache fingerprintCache;
+    // keeps writing the lines of the log file to a capture after it was triggered, set by the log watcher
+    private PostTriggerCapture postTriggerCapture;
 
     public Interpreter(Map<String, ActionExecutor> actionExecutorMap, Map<String, String[]> regexMap, Map<String,
             Integer> regexPatternReloadTime) {
 
+        this(actionExecutorMap, toRules(regexMap, regexPatternReloadTime),
+                new TimestampParser(TimestampParser.DEFAULT_FORMAT));
+    }
+
+    public Interpreter(Map<String, ActionExecutor> actionExecutorMap, List<LogPatternRule> logPatternRules,
+                       TimestampParser timestampParser) {
+
+        this(actionExecutorMap, logPatternRules, timestampParser, null);
+    }
+
+    /**
+     * @param fingerprintCache the fingerprints of the errors seen so far, to only capture the errors that are new or
+     *                         surging, or null to capture every matching error
+     */
+    public Interpreter(Map<String, ActionExecutor> actionExecutorMap, List<LogPatternRule> logPatternRules,
+                       TimestampParser timestampParser, FingerprintCache fingerprintCache) {
+
         createLogFolder();
-        this.actionExecutorMap = actionExecutorMap;
-        this.regexMap = regexMap;
-        logPatternLastMatchedTime = new Hashtable<>();
-        this.regexPatternReloadTime = regexPatternReloadTime;
+        this.timestampParser = timestampParser;
+        this.fingerprintCache = fingerprintCache;
+        this.patternTable = new PatternTable(actionExecutorMap, logPatternRules);
         timer = new Timer();
     }
 
+    /**
+     * Replaces the log patterns and the action executors, such as after the configuration was reloaded. The events
+     * interpreted from then on use the new ones. The reload times of the patterns that are kept still apply, while
+     * their rate windows start over.
+     */
+    public void reload(Map<String, ActionExecutor> actionExecutorMap, List<LogPatternRule> logPatternRules) {
+
+        this.patternTable = new PatternTable(actionExecutorMap, logPatternRules);
+    }
+
     public void interpret(String errorLine, String completeLog) {
-        this.diagnoseError(errorLine, completeLog);
+        this.diagnoseError(errorLine, completeLog, null);
+    }
+
+    /**
+     * Interprets an error event read by the {@link LogWatcher}, the lines logged before it are written to the capture
+     * along with the event.
+     */
+    public void interpret(LogEvent event) {
+        this.diagnoseError(event.getErrorLine(), event.getCompleteLog(), event);
     }
 
     /**
@@ -68,67 +113,156 @@ public class Interpreter {
      *
      * @param errorLine error line
      * @param completeLog complete log
+     * @param event the event read by the log watcher, null if the error was not read from a log file
      */
-    private void diagnoseError(String errorLine, String completeLog) {
-        this.createFolder();
-        String regexPattern = findRegexPattern(errorLine);
-        String[] executorsList = regexMap.get(regexPattern);
-        if (executorsList != null && this.doAnalysis(executorsList, errorLine, regexPattern)) {
-            try {
-                timer.schedule(new PostExecutorTask(completeLog, folderPath), new Date(new Date().getTime() + 5000));
-            } catch (Exception e) {
-                log.error("Error while scheduling the post executor task", e);
+    private void diagnoseError(String errorLine, String completeLog, LogEvent event) {
+        // the fields are extracted once and shared by all the rules
+        PatternTable table = patternTable;
+        if (table != ratesPatternTable) {
+            // reloaded, the windows of the old patterns do not apply to the new ones
+            logPatternRates.clear();
+            ratesPatternTable = table;
+        }
+        ParsedLogLine logLine = LogLineParser.parse(errorLine, completeLog);
+        LogPatternRule rule = table.matcher.findRule(logLine);
+        if (rule == null) {
+            return;
+        }
+        long errorTime = timestampParser.parse(errorLine);
+        if (errorTime < 0) {
+            errorTime = System.currentTimeMillis();
+        }
+        long count = countMatch(rule, errorTime);
+        logRates(errorTime);
+        FingerprintCache.Fingerprint fingerprint = null;
+        if (fingerprintCache != null) {
+            fingerprint = fingerprintCache.record(logLine, errorTime);
+        }
+        if (count < rule.getThreshold()) {
+            return;
+        }
+        if (fingerprint != null && !fingerprint.isCaptureDue()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Skipping the capture of the error fingerprint " + fingerprint.getId() + " seen " +
+                        fingerprint.getCount() + " times since " + new Timestamp(fingerprint.getFirstSeen()));
             }
-        } else {
-            this.deleteFolder();
+            return;
         }
-    }
-
-    private String findRegexPattern(String errorLine) {
-        for (Map.Entry<String, String[]> entry : regexMap.entrySet()) {
-            String key = entry.getKey();
-            // check whether the error line matches with the regex
-            if (errorLine.matches(key)) {
-                return key;
+        CompletableFuture<Void> analysis = this.doAnalysis(rule, errorTime, table.actionExecutors);
+        if (analysis != null) {
+            // the next capture of the pattern needs a burst of its own
+            logPatternRates.get(rule.getName()).reset();
+            if (fingerprint != null) {
+                log.info("Capturing " + (fingerprint.isCaptured() ? "the surging" : "the new") +
+                        " error fingerprint " + fingerprint.getId() + " seen " + fingerprint.getCount() +
+                        " times since " + new Timestamp(fingerprint.getFirstSeen()) + ": " + fingerprint.getKey());
+                fingerprint.markCaptured();
             }
+            // the folder field is reused by the next event, hence the path of this one is captured here
+            String eventFolderPath = folderPath;
+            // the lines logged before the error followed by the error and its stack trace
+            String capturedLog = event == null ? completeLog : event.getContext() + completeLog;
+            CompletableFuture<Void> window = null;
+            if (event != null && postTriggerCapture != null && postTriggerCapture.isEnabled()) {
+                // log.txt is written by the window, which keeps adding the lines logged after the error
+                window = postTriggerCapture.open(eventFolderPath, capturedLog, event.getNextLine());
+            }
+            String postExecutorLog = window == null ? capturedLog : null;
+            CompletableFuture<Void> captured = window == null ? analysis : CompletableFuture.allOf(analysis, window);
+            captured.thenRun(() -> {
+                try {
+                    timer.schedule(new PostExecutorTask(postExecutorLog, eventFolderPath),
+                            new Date(new Date().getTime() + 5000));
+                } catch (Exception e) {
+                    log.error("Error while scheduling the post executor task", e);
+                }
+            });
         }
-        return null;
+    }
+
+    void setPostTriggerCapture(PostTriggerCapture postTriggerCapture) {
+
+        this.postTriggerCapture = postTriggerCapture;
     }
 
     /**
      * This method is used to do analysis.
      * First get diagnosis list and invoke certain action executor
      *
-     * @param executorList list of executors
-     * @param logLine log line
-     * @param regexPattern regex pattern of the log line
+     * @param rule the log pattern matching the log line
+     * @param errorTime time of the log line in epoch milliseconds
+     * @param actionExecutorMap the action executors by name
+     * @return a future completed when all the executors have finished, null if the pattern is still reloading
      */
-    private boolean doAnalysis(String[] executorList, String logLine, String regexPattern) {
-        long reloadTime = regexPatternReloadTime.get(regexPattern);
-        if (checkRegexPatternReloadTime(logLine, regexPattern, reloadTime)) {
-            log.info("Executing the action executors for the log line matching the regex pattern " + regexPattern);
-            AtomicBoolean analysed = new AtomicBoolean(false);
-            // execute in parallel in different threads
-            ExecutorService executorService = Executors.newFixedThreadPool(10);
-            List<CompletableFuture<Void>> futures = new ArrayList<>();
-            for (String exec : executorList) {
+    private CompletableFuture<Void> doAnalysis(LogPatternRule rule, long errorTime,
+                                               Map<String, ActionExecutor> actionExecutorMap) {
+        if (checkRegexPatternReloadTime(errorTime, rule.getName(), rule.getReloadTime())) {
+            log.info("Executing the action executors for the log line matching the log pattern " + rule);
+            this.createFolder();
+            List<ActionExecutor> actionExecutors = new ArrayList<>();
+            for (String exec : rule.getExecutors()) {
                 String executor = exec.trim();
                 ActionExecutor actionExecutor = actionExecutorMap.get(executor);
                 if (actionExecutor == null) {
                     log.error("Action executor " + executor + " is not available.");
                     continue;
                 }
-                CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                    actionExecutor.execute(this.folderPath);
-                    analysed.set(true);
-                }, executorService);
-                futures.add(future);
+                actionExecutors.add(actionExecutor);
+            }
+            // executed in parallel on the shared capture scheduler, within its concurrency limits
+            return CaptureScheduler.getInstance().executeAll(actionExecutors, this.folderPath);
+        }
+        return null;
+    }
+
+    /**
+     * Counts a match of the pattern in its window.
+     *
+     * @return the number of matches of the pattern within its window, including this one
+     */
+    private long countMatch(LogPatternRule rule, long errorTime) {
+
+        SlidingWindowCounter counter = logPatternRates.computeIfAbsent(rule.getName(),
+                k -> new SlidingWindowCounter(rule.getWindow() * 1000L));
+        return counter.add(errorTime);
+    }
+
+    /**
+     * Logs the number of matches of each pattern within its window, at most once per {@link #RATE_LOG_INTERVAL}.
+     */
+    private void logRates(long errorTime) {
+
+        long now = System.currentTimeMillis();
+        if (now - lastRateLogTime < RATE_LOG_INTERVAL) {
+            return;
+        }
+        lastRateLogTime = now;
+        StringBuilder rates = new StringBuilder();
+        for (Map.Entry<String, SlidingWindowCounter> entry : logPatternRates.entrySet()) {
+            SlidingWindowCounter counter = entry.getValue();
+            long count = counter.count(errorTime);
+            if (count == 0) {
+                continue;
             }
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-            executorService.shutdown();
-            return true;
+            long windowSeconds = counter.getWindow() / 1000;
+            rates.append(rates.length() == 0 ? "" : ", ").append(entry.getKey()).append(": ").append(count)
+                    .append(" in ").append(windowSeconds).append("s (")
+                    .append(String.format("%.2f", count * 60.0 / Math.max(1, windowSeconds))).append("/min)");
+        }
+        if (rates.length() > 0) {
+            log.info("Log pattern rates: " + rates);
         }
-        return false;
+    }
+
+    private static List<LogPatternRule> toRules(Map<String, String[]> regexMap,
+                                                Map<String, Integer> regexPatternReloadTime) {
+
+        List<LogPatternRule> rules = new ArrayList<>();
+        for (Map.Entry<String, String[]> entry : regexMap.entrySet()) {
+            rules.add(new LogPatternRule(entry.getKey(), entry.getKey(), null, null, null, null, entry.getValue(),
+                    regexPatternReloadTime.getOrDefault(entry.getKey(), 0), 1, Constants.DEFAULT_LOG_PATTERN_WINDOW));
+        }
+        return rules;
     }
 
     /**
@@ -143,19 +277,6 @@ public class Interpreter {
         }
     }
 
-    private void deleteFolder() {
-
-        File dumpFolder = new File(this.folderPath);
-        if (dumpFolder.exists()) {
-            String[] entries = dumpFolder.list();
-            for (String entry : entries) {
-                File currentFile = new File(dumpFolder.getPath(), entry);
-                currentFile.delete();
-            }
-            dumpFolder.delete();
-        }
-    }
-
     /**
      * Create folder for dump.
      */
@@ -181,40 +302,41 @@ public class Interpreter {
     }
 
     /**
-     * Method used to calculate current error time form log line.
+     * Checks whether the reload time of the pattern has passed since it last triggered the action executors, and if
+     * so records this log line as the last trigger.
      *
-     * @param timeStr timestamp from the log line.
-     * @return calculated time in Integer.
+     * @param errorTime    time of the log line in epoch milliseconds
+     * @param patternName  the name of the log pattern the log line matched
+     * @param reloadTime   the reload time of the pattern in seconds
+     * @return true if the action executors should be executed
      */
-    private int calculateTime(String timeStr) {
-
-        String[] timeArray = timeStr.split(":");
-        int hour = Integer.parseInt(timeArray[0]);
-        int minute = Integer.parseInt(timeArray[1]);
-        int second = Integer.parseInt(timeArray[0].substring(0, 2));
-        return (hour * 3600) + (minute * 60) + second;
-    }
-
-    private boolean checkRegexPatternReloadTime(String testLine, String regexPattern, long reloadTime) {
-
-        String timeRegex = "\\d\\d:\\d\\d:\\d\\d,\\d\\d\\d";
-        //Grep the first line of the error line.
-        String[] errorLine = testLine.split("\n");
-        Pattern pattern = Pattern.compile(timeRegex);
-        Matcher matcher = pattern.matcher(errorLine[0]);
-        if (matcher.find()) {
-            long errorTime = calculateTime(matcher.group(0));
-            if (logPatternLastMatchedTime.containsKey(regexPattern)) {
-                if ((errorTime - logPatternLastMatchedTime.get(regexPattern)) > reloadTime) {
-                    logPatternLastMatchedTime.replace(regexPattern, (int) errorTime);
-                } else {
-                    return false;
-                }
-            } else {
-                logPatternLastMatchedTime.put(regexPattern, (int) errorTime);
+    boolean checkRegexPatternReloadTime(long errorTime, String patternName, long reloadTime) {
+
+        AtomicLong lastMatchedTime = logPatternLastMatchedTime.computeIfAbsent(patternName,
+                k -> new AtomicLong(Long.MIN_VALUE));
+        while (true) {
+            long last = lastMatchedTime.get();
+            if (last != Long.MIN_VALUE && errorTime - last <= reloadTime * 1000) {
+                return false;
+            }
+            if (lastMatchedTime.compareAndSet(last, errorTime)) {
                 return true;
             }
         }
-        return true;
+    }
+
+    /**
+     * The log patterns together with the action executors they refer to, replaced together on a reload.
+     */
+    private static final class PatternTable {
+
+        private final Map<String, ActionExecutor> actionExecutors;
+        private final LogPatternMatcher matcher;
+
+        private PatternTable(Map<String, ActionExecutor> actionExecutors, List<LogPatternRule> logPatternRules) {
+
+            this.actionExecutors = actionExecutors;
+            this.matcher = new LogPatternMatcher(logPatternRules);
+        }
     }
 }
@@ -0,0 +1,87 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+/**
+ * Decides whether a line read from a log file starts an error event, on the bytes of the line and before anything is
+ * decoded. The level is written at the same column of every line of a log file, right after the timestamp, hence the
+ * column the level was last found at is checked first. Shorter levels padded to the width of the longer ones (%5p)
+ * start one column later or earlier, which is checked too. Only when there is no level there, such as for the lines
+ * of a stack trace or after the layout of the log changed, the start of the line is scanned for the level.
+ * <p>
+ * Used by the single thread reading the file, hence not thread safe.
+ */
+class LevelClassifier {
+
+    // column of the level found last, -1 until a level is found
+    private int column = -1;
+    private long lines;
+    private long scans;
+
+    /**
+     * @return the level of the line, or null if the line has no level
+     */
+    String findLevel(byte[] buffer, int offset, int length) {
+
+        lines++;
+        if (column >= 0) {
+            String level = LogLineParser.levelAt(buffer, offset, length, column);
+            if (level == null) {
+                level = LogLineParser.levelAt(buffer, offset, length, column + 1);
+            }
+            if (level == null) {
+                level = LogLineParser.levelAt(buffer, offset, length, column - 1);
+            }
+            if (level != null) {
+                return level;
+            }
+        }
+        scans++;
+        int found = LogLineParser.findLevelColumn(buffer, offset, length);
+        if (found < 0) {
+            return null;
+        }
+        column = found;
+        return LogLineParser.levelAt(buffer, offset, length, found);
+    }
+
+    /**
+     * Whether the line starts an error event, see {@link LogLineParser#isErrorLevel(String)}.
+     */
+    boolean isErrorLine(byte[] buffer, int offset, int length) {
+
+        return LogLineParser.isErrorLevel(findLevel(buffer, offset, length));
+    }
+
+    /**
+     * @return the number of lines classified
+     */
+    long getLines() {
+
+        return lines;
+    }
+
+    /**
+     * @return the number of lines whose level was not at the expected column, and which were scanned for it
+     */
+    long getScans() {
+
+        return scans;
+    }
+}
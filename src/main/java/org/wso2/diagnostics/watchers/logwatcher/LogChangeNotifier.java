@@ -0,0 +1,50 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+
+/**
+ * Decides when the {@link LogWatcher} should check the watched files again.
+ */
+public interface LogChangeNotifier extends Closeable {
+
+    /**
+     * Starts notifying about the changes of the given file.
+     *
+     * @param file file to watch
+     */
+    void register(Path file);
+
+    /**
+     * Blocks until one of the registered files may have changed.
+     *
+     * @param hadData whether the previous check found new data, which resets any backoff
+     * @param maxWait upper bound for the wait in milliseconds
+     * @return true if the wait ended because of a file system event, false if it timed out
+     * @throws InterruptedException if the watcher thread is interrupted
+     */
+    boolean await(boolean hadData, long maxWait) throws InterruptedException;
+
+    /**
+     * @return name of the mode, used when reporting statistics
+     */
+    String getMode();
+}
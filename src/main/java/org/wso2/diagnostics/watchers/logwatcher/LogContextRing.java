@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+/**
+ * The most recent lines of a log file, kept as raw bytes to give the context before an error event. The ring is
+ * bounded both by a number of lines and by a number of bytes, the oldest lines are dropped to make room for new ones.
+ * Lines are not decoded, and adding one does not allocate. A line longer than the byte capacity is cut.
+ * <p>
+ * Instances are not thread safe.
+ */
+class LogContextRing {
+
+    private final byte[] bytes;
+    // start offset in bytes and length of each line, as a ring of lines
+    private final int[] lineStarts;
+    private final int[] lineLengths;
+    // index of the oldest line and number of lines
+    private int first;
+    private int count;
+    // offset of the next byte to write and number of bytes used
+    private int writePosition;
+    private int usedBytes;
+
+    /**
+     * @param maxLines the number of lines kept
+     * @param maxBytes the number of bytes kept
+     */
+    LogContextRing(int maxLines, int maxBytes) {
+
+        this.bytes = new byte[Math.max(1, maxBytes)];
+        this.lineStarts = new int[Math.max(1, maxLines)];
+        this.lineLengths = new int[lineStarts.length];
+    }
+
+    /**
+     * Adds a line, dropping the oldest lines if there is no room for it.
+     */
+    void add(byte[] buffer, int offset, int length) {
+
+        length = Math.min(length, bytes.length);
+        while (count > 0 && (count == lineStarts.length || usedBytes + length > bytes.length)) {
+            usedBytes -= lineLengths[first];
+            first = (first + 1) % lineStarts.length;
+            count--;
+        }
+        int index = (first + count) % lineStarts.length;
+        lineStarts[index] = writePosition;
+        lineLengths[index] = length;
+        int tail = Math.min(length, bytes.length - writePosition);
+        System.arraycopy(buffer, offset, bytes, writePosition, tail);
+        System.arraycopy(buffer, offset + tail, bytes, 0, length - tail);
+        writePosition = (writePosition + length) % bytes.length;
+        usedBytes += length;
+        count++;
+    }
+
+    /**
+     * @return the number of lines kept
+     */
+    int size() {
+
+        return count;
+    }
+
+    /**
+     * @return a copy of the lines, oldest first, each followed by a new line
+     */
+    byte[] snapshot() {
+
+        return snapshot(count);
+    }
+
+    /**
+     * @param lines the number of most recent lines to copy, at most {@link #size()}
+     * @return a copy of the most recent lines, oldest first, each followed by a new line
+     */
+    byte[] snapshot(int lines) {
+
+        lines = Math.max(0, Math.min(lines, count));
+        int skipped = count - lines;
+        int size = lines;
+        for (int i = skipped; i < count; i++) {
+            size += lineLengths[(first + i) % lineStarts.length];
+        }
+        byte[] snapshot = new byte[size];
+        int position = 0;
+        for (int i = skipped; i < count; i++) {
+            int index = (first + i) % lineStarts.length;
+            int start = lineStarts[index];
+            int length = lineLengths[index];
+            int tail = Math.min(length, bytes.length - start);
+            System.arraycopy(bytes, start, snapshot, position, tail);
+            System.arraycopy(bytes, 0, snapshot, position + tail, length - tail);
+            position += length;
+            snapshot[position++] = '\n';
+        }
+        return snapshot;
+    }
+}
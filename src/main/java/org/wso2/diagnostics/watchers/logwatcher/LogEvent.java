@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An error event read from a log file: the error line together with the lines that follow it, such as the stack
+ * trace, the lines logged before it, and the interpreter of the file it was read from.
+ */
+public class LogEvent {
+
+    private final Interpreter interpreter;
+    private final String errorLine;
+    private final String completeLog;
+    // raw lines logged before the error line, only decoded when the event is captured
+    private final byte[] context;
+    // number of the first line of the file logged after the event, -1 if the event was not read by the log watcher
+    private final long nextLine;
+    // number of later events of the same file folded into this one while the queue was full
+    private int coalescedCount;
+
+    public LogEvent(Interpreter interpreter, String errorLine, String completeLog) {
+
+        this(interpreter, errorLine, completeLog, null, -1);
+    }
+
+    /**
+     * @param context  the lines logged before the error line, each followed by a new line, or null if there are none
+     * @param nextLine the number of the first line of the file logged after the event, counted from 0 since the log
+     *                 watcher started, or -1 if unknown
+     */
+    public LogEvent(Interpreter interpreter, String errorLine, String completeLog, byte[] context, long nextLine) {
+
+        this.interpreter = interpreter;
+        this.errorLine = errorLine;
+        this.completeLog = completeLog;
+        this.context = context;
+        this.nextLine = nextLine;
+    }
+
+    public Interpreter getInterpreter() {
+
+        return interpreter;
+    }
+
+    public String getErrorLine() {
+
+        return errorLine;
+    }
+
+    public String getCompleteLog() {
+
+        return completeLog;
+    }
+
+    /**
+     * @return the lines logged before the error line, or an empty string if there are none
+     */
+    public String getContext() {
+
+        return context == null ? "" : new String(context, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of the first line of the file logged after the event, or -1 if unknown
+     */
+    public long getNextLine() {
+
+        return nextLine;
+    }
+
+    public int getCoalescedCount() {
+
+        return coalescedCount;
+    }
+
+    void coalesce() {
+
+        coalescedCount++;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Accumulates the lines of a multi-line error event (the error line and the stack trace following it) and hands the
+ * event to the {@link LogEventQueue} once it is complete. An event is complete when the next error line starts, when
+ * no line has been added to it for the idle timeout, or when it reaches the maximum number of lines or bytes. Without
+ * the idle timeout, the last error before a quiet period would only be interpreted when the next error is logged.
+ * <p>
+ * Lines that arrive after an event was closed on a timeout or on a limit, and before the next error line, are not
+ * added to any event. Every line, in an event or not, is kept in a bounded {@link LogContextRing}, which gives the
+ * lines logged before each error event. Hence the memory used per file is bounded however much is logged.
+ */
+class LogEventAssembler {
+
+    private final Interpreter interpreter;
+    private final LogEventQueue queue;
+    private final long idleTimeout;
+    private final int maxLines;
+    private final int maxBytes;
+    // the lines before the current event, null when no context is kept
+    private final LogContextRing context;
+
+    /**
+     * To accumulate the lines of the current error event.
+     */
+    private final StringBuilder logBuilder = new StringBuilder();
+    private String errorLine = "";
+    private byte[] eventContext;
+    private int lines;
+    private int bytes;
+    // time the last line was added to the current event, in milliseconds
+    private long lastLineTime;
+    // number of lines added so far, in or out of an event, which is the number of the next line
+    private long lineNumber;
+
+    private long idleFlushes;
+    private long limitFlushes;
+
+    /**
+     * @param interpreter  the interpreter of the file the events are read from
+     * @param queue        the queue to hand the events to
+     * @param idleTimeout  milliseconds without a new line after which an event is complete, 0 to disable
+     * @param maxLines     number of lines after which an event is complete, 0 for no limit
+     * @param maxBytes     number of bytes after which an event is complete, 0 for no limit
+     * @param contextLines number of lines kept as the context before an event, 0 to keep none
+     * @param contextBytes number of bytes kept as the context before an event
+     */
+    LogEventAssembler(Interpreter interpreter, LogEventQueue queue, long idleTimeout, int maxLines, int maxBytes,
+                      int contextLines, int contextBytes) {
+
+        this.interpreter = interpreter;
+        this.queue = queue;
+        this.idleTimeout = idleTimeout;
+        this.maxLines = maxLines;
+        this.maxBytes = maxBytes;
+        this.context = contextLines > 0 && contextBytes > 0 ? new LogContextRing(contextLines, contextBytes) : null;
+    }
+
+    /**
+     * Completes the current event, if any, and starts a new one with the given error line.
+     */
+    void startEvent(byte[] buffer, int offset, int length) {
+
+        // the error line is the first line after the current event
+        flush();
+        lineNumber++;
+        if (context != null) {
+            eventContext = context.snapshot();
+            context.add(buffer, offset, length);
+        }
+        length = capLength(length);
+        errorLine = new String(buffer, offset, length, StandardCharsets.UTF_8);
+        logBuilder.append(errorLine).append("\n");
+        lines = 1;
+        bytes = length + 1;
+        lastLineTime = System.currentTimeMillis();
+        checkLimits();
+    }
+
+    /**
+     * Adds a line to the current event. The line is not decoded when there is no open event.
+     */
+    void appendLine(byte[] buffer, int offset, int length) {
+
+        lineNumber++;
+        if (context != null) {
+            context.add(buffer, offset, length);
+        }
+        if (lines == 0) {
+            return;
+        }
+        length = capLength(length);
+        logBuilder.append(new String(buffer, offset, length, StandardCharsets.UTF_8)).append("\n");
+        lines++;
+        bytes += length + 1;
+        lastLineTime = System.currentTimeMillis();
+        checkLimits();
+    }
+
+    /**
+     * Completes the current event if no line has been added to it for the idle timeout.
+     *
+     * @param now current time in milliseconds
+     */
+    void flushIfIdle(long now) {
+
+        if (lines > 0 && idleTimeout > 0 && now - lastLineTime >= idleTimeout) {
+            idleFlushes++;
+            flush();
+        }
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return milliseconds until the current event becomes idle, or Long.MAX_VALUE if there is nothing to wait for
+     */
+    long timeUntilIdle(long now) {
+
+        if (lines == 0 || idleTimeout <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, lastLineTime + idleTimeout - now);
+    }
+
+    long getIdleFlushes() {
+
+        return idleFlushes;
+    }
+
+    /**
+     * @return the number of events completed on the maximum number of lines or bytes
+     */
+    long getLimitFlushes() {
+
+        return limitFlushes;
+    }
+
+    /**
+     * @return the length of the line cut to the bytes left in the event, a line may end within a multi-byte character
+     * only when the event is cut anyway
+     */
+    private int capLength(int length) {
+
+        return maxBytes > 0 ? Math.max(0, Math.min(length, maxBytes - bytes - 1)) : length;
+    }
+
+    private void checkLimits() {
+
+        if ((maxLines > 0 && lines >= maxLines) || (maxBytes > 0 && bytes >= maxBytes)) {
+            limitFlushes++;
+            flush();
+        }
+    }
+
+    private void flush() {
+
+        if (lines > 0) {
+            queue.offer(new LogEvent(interpreter, errorLine, logBuilder.toString(), eventContext, lineNumber));
+            logBuilder.setLength(0);
+            eventContext = null;
+            lines = 0;
+            bytes = 0;
+        }
+    }
+}
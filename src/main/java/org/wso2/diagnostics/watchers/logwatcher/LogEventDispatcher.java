@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes the error events from the {@link LogEventQueue} and passes them to the interpreter of the log file they were
+ * read from. Captures triggered by the interpreters run on this thread, not on the {@link LogWatcher} thread.
+ */
+public class LogEventDispatcher extends Thread {
+
+    private static final Logger log = LogManager.getLogger(LogEventDispatcher.class);
+
+    private final LogEventQueue queue;
+
+    public LogEventDispatcher(LogEventQueue queue) {
+
+        super("LogEventDispatcher");
+        this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+
+        try {
+            while (!isInterrupted()) {
+                LogEvent event = queue.poll(1, TimeUnit.MINUTES);
+                if (event == null) {
+                    continue;
+                }
+                if (event.getCoalescedCount() > 0) {
+                    log.info(event.getCoalescedCount() + " log events were coalesced into the event: " +
+                            event.getErrorLine());
+                }
+                try {
+                    event.getInterpreter().interpret(event);
+                } catch (RuntimeException e) {
+                    // a failure on one event must not stop the interpretation of the next ones
+                    log.error("Error while interpreting the log event: " + event.getErrorLine(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Log event dispatcher interrupted, hence stopping.", e);
+        }
+    }
+}
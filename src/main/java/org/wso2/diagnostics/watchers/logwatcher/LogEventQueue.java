@@ -0,0 +1,174 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer that hands the error events from the {@link LogWatcher} thread to the thread running the
+ * interpreters. Offering never blocks, so a long running capture never stalls the tailing of the log files. When the
+ * buffer is full the configured {@link OverflowPolicy} decides which event is given up.
+ */
+public class LogEventQueue {
+
+    /**
+     * What to do with a new event when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Evict the oldest queued event to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Fold the new event into the newest queued event of the same log file, which keeps the count of the folded
+         * events. If there is no queued event of the same file, the oldest event is evicted.
+         */
+        COALESCE;
+
+        public static OverflowPolicy fromConfig(String value) {
+
+            return value == null ? DROP_OLDEST : valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private final LogEvent[] ring;
+    private final OverflowPolicy overflowPolicy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int head;
+    private int size;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public LogEventQueue(int capacity, OverflowPolicy overflowPolicy) {
+
+        this.ring = new LogEvent[Math.max(1, capacity)];
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Adds an event without blocking.
+     *
+     * @param event event to add
+     */
+    public void offer(LogEvent event) {
+
+        lock.lock();
+        try {
+            if (size == ring.length) {
+                if (overflowPolicy == OverflowPolicy.COALESCE && coalesceIntoNewest(event)) {
+                    coalesced.incrementAndGet();
+                    return;
+                }
+                // evict the oldest event
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                dropped.incrementAndGet();
+            }
+            ring[(head + size) % ring.length] = event;
+            size++;
+            queued.incrementAndGet();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the oldest event, waiting up to the given time for one to arrive.
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of the timeout
+     * @return the oldest event, or null if none arrived in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public LogEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            LogEvent event = ring[head];
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+            return event;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean coalesceIntoNewest(LogEvent event) {
+
+        for (int i = size - 1; i >= 0; i--) {
+            LogEvent queuedEvent = ring[(head + i) % ring.length];
+            if (queuedEvent.getInterpreter() == event.getInterpreter()) {
+                queuedEvent.coalesce();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+
+        return ring.length;
+    }
+
+    public long getQueuedCount() {
+
+        return queued.get();
+    }
+
+    public long getDroppedCount() {
+
+        return dropped.get();
+    }
+
+    public long getCoalescedCount() {
+
+        return coalesced.get();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+
+        return overflowPolicy;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for the log4j2 layouts used by the WSO2 products, such as {@code [%d] %5p {%c} - %m%ex%n} or
+ * {@code TID: [%tenantId] [%d] %5p {%c} [%t] - %m%ex%n}. The level is the first token of the line that is a log level
+ * delimited by spaces or brackets. The logger is the text in braces and the thread the text in brackets around the
+ * level, and the message is what follows the " - " separator. The plain log4j2 layout
+ * {@code %d [%t] %-5level %logger - %msg%n} is understood as well.
+ */
+public class LogLineParser {
+
+    public static final String TRACE = "TRACE";
+    public static final String DEBUG = "DEBUG";
+    public static final String INFO = "INFO";
+    public static final String WARN = "WARN";
+    public static final String ERROR = "ERROR";
+    public static final String FATAL = "FATAL";
+
+    private static final String[] LEVELS = {TRACE, DEBUG, INFO, WARN, ERROR, FATAL};
+    private static final byte[][] LEVEL_BYTES = new byte[LEVELS.length][];
+    // the level is expected near the start of the line, after the timestamp and the tenant
+    private static final int MAX_LEVEL_COLUMN = 128;
+    // length of the longest level token
+    private static final int MAX_LEVEL_LENGTH = 5;
+
+    static {
+        for (int i = 0; i < LEVELS.length; i++) {
+            LEVEL_BYTES[i] = LEVELS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private LogLineParser() {
+    }
+
+    /**
+     * Finds the level of a log line without decoding it.
+     *
+     * @return the level, one of the constants of this class, or null if the line has no level, such as the lines of
+     * a stack trace
+     */
+    public static String findLevel(byte[] buffer, int offset, int length) {
+
+        int column = findLevelColumn(buffer, offset, length);
+        return column < 0 ? null : levelAt(buffer, offset, length, column);
+    }
+
+    /**
+     * Finds the column of the level of a log line, that is the first level token within the first
+     * {@link #MAX_LEVEL_COLUMN} bytes of the line.
+     *
+     * @return the column of the level relative to the offset, or -1 if the line has no level
+     */
+    static int findLevelColumn(byte[] buffer, int offset, int length) {
+
+        int end = Math.min(length, MAX_LEVEL_COLUMN);
+        for (int column = 0; column < end; column++) {
+            if (levelAt(buffer, offset, length, column) != null) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks for a level token starting at the given column of a log line.
+     *
+     * @return the level, or null if there is no level token at the column
+     */
+    static String levelAt(byte[] buffer, int offset, int length, int column) {
+
+        if (column < 0 || column >= length) {
+            return null;
+        }
+        int i = offset + column;
+        int level;
+        // the levels start with different letters, in the order of LEVELS
+        switch (buffer[i]) {
+            case 'T':
+                level = 0;
+                break;
+            case 'D':
+                level = 1;
+                break;
+            case 'I':
+                level = 2;
+                break;
+            case 'W':
+                level = 3;
+                break;
+            case 'E':
+                level = 4;
+                break;
+            case 'F':
+                level = 5;
+                break;
+            default:
+                return null;
+        }
+        if (column > 0 && !isDelimiter(buffer[i - 1])) {
+            return null;
+        }
+        byte[] token = LEVEL_BYTES[level];
+        int tokenEnd = i + token.length;
+        if (tokenEnd <= offset + length && regionMatches(buffer, i, token) &&
+                (tokenEnd == offset + length || isDelimiter(buffer[tokenEnd]))) {
+            return LEVELS[level];
+        }
+        return null;
+    }
+
+    /**
+     * Whether a line with the given level starts an error event.
+     */
+    public static boolean isErrorLevel(String level) {
+
+        return ERROR.equals(level) || WARN.equals(level) || FATAL.equals(level);
+    }
+
+    /**
+     * Extracts the fields of an error event.
+     *
+     * @param line        the error line
+     * @param completeLog the error line and the lines following it, such as the stack trace
+     * @return the parsed event, with null fields for the fields that could not be found
+     */
+    public static ParsedLogLine parse(String line, String completeLog) {
+
+        // the level is found on the bytes as by the log watcher, one byte per character keeps the columns the same
+        byte[] head = line.substring(0, Math.min(line.length(), MAX_LEVEL_COLUMN + MAX_LEVEL_LENGTH + 1))
+                .getBytes(StandardCharsets.ISO_8859_1);
+        int levelStart = findLevelColumn(head, 0, head.length);
+        String level = levelStart < 0 ? null : levelAt(head, 0, head.length, levelStart);
+        if (level == null) {
+            return new ParsedLogLine(line, completeLog, null, null, null, line);
+        }
+        String thread = null;
+        String logger = null;
+        int i = levelStart + level.length();
+        // {logger} and [thread] in either order after the level
+        for (int field = 0; field < 2; field++) {
+            i = skipSpaces(line, i);
+            if (i < line.length() && line.charAt(i) == '{' && logger == null) {
+                int close = line.indexOf('}', i);
+                if (close < 0) {
+                    break;
+                }
+                logger = line.substring(i + 1, close).trim();
+                i = close + 1;
+            } else if (i < line.length() && line.charAt(i) == '[' && thread == null) {
+                int close = line.indexOf(']', i);
+                if (close < 0) {
+                    break;
+                }
+                thread = line.substring(i + 1, close).trim();
+                i = close + 1;
+            }
+        }
+        int separator = line.indexOf(" - ", Math.max(0, i - 1));
+        if (logger == null && separator > i) {
+            // plain layouts: %level %logger - %msg
+            String candidate = line.substring(i, separator).trim();
+            if (!candidate.isEmpty() && candidate.indexOf(' ') < 0) {
+                logger = candidate;
+            }
+        }
+        if (thread == null) {
+            thread = threadBeforeLevel(line, levelStart);
+        }
+        String message = separator >= 0 ? line.substring(separator + 3) : line.substring(Math.min(i, line.length()));
+        return new ParsedLogLine(line, completeLog, level, thread, logger, message);
+    }
+
+    /**
+     * Extracts the class names of the exceptions in a stack trace, that is of the lines such as
+     * {@code java.io.IOException: message} or {@code Caused by: java.io.IOException}.
+     *
+     * @param completeLog the error line followed by the stack trace
+     * @return the exception classes in the order they appear
+     */
+    static List<String> parseExceptionClasses(String completeLog) {
+
+        List<String> exceptions = new ArrayList<>();
+        if (completeLog == null) {
+            return exceptions;
+        }
+        // the first line is the error line itself
+        int start = completeLog.indexOf('\n');
+        while (start >= 0 && start < completeLog.length()) {
+            int lineStart = skipSpaces(completeLog, start + 1);
+            int lineEnd = completeLog.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = completeLog.length();
+            }
+            if (completeLog.startsWith("Caused by: ", lineStart)) {
+                lineStart += "Caused by: ".length();
+            } else if (completeLog.startsWith("Suppressed: ", lineStart)) {
+                lineStart += "Suppressed: ".length();
+            }
+            if (!completeLog.startsWith("at ", lineStart) && !completeLog.startsWith("...", lineStart)) {
+                int classEnd = lineStart;
+                while (classEnd < lineEnd && isClassNameChar(completeLog.charAt(classEnd))) {
+                    classEnd++;
+                }
+                if (classEnd > lineStart && (classEnd == lineEnd || completeLog.charAt(classEnd) == ':')) {
+                    String className = completeLog.substring(lineStart, classEnd);
+                    // exceptions not named like one, such as AxisFault, are recognized by the frames below them
+                    if (className.indexOf('.') > 0 && (className.endsWith("Exception") ||
+                            className.endsWith("Error") || className.endsWith("Throwable") ||
+                            completeLog.startsWith("at ", skipSpaces(completeLog, lineEnd + 1)))) {
+                        exceptions.add(className);
+                    }
+                }
+            }
+            start = lineEnd;
+        }
+        return exceptions;
+    }
+
+    private static String threadBeforeLevel(String line, int levelStart) {
+
+        // %d [%t] %level: the last bracketed text before the level that is not the timestamp
+        int close = line.lastIndexOf(']', levelStart);
+        while (close > 0) {
+            int open = line.lastIndexOf('[', close);
+            if (open < 0) {
+                return null;
+            }
+            if (open + 1 < close && !Character.isDigit(line.charAt(open + 1))) {
+                return line.substring(open + 1, close).trim();
+            }
+            close = line.lastIndexOf(']', open);
+        }
+        return null;
+    }
+
+    private static int skipSpaces(String text, int i) {
+
+        while (i < text.length() && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isClassNameChar(char c) {
+
+        return Character.isJavaIdentifierPart(c) || c == '.';
+    }
+
+    private static boolean isDelimiter(int c) {
+
+        return c == ' ' || c == '\t' || c == '[' || c == ']';
+    }
+
+    private static boolean regionMatches(byte[] buffer, int offset, byte[] token) {
+
+        for (int i = 0; i < token.length; i++) {
+            if (buffer[offset + i] != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wso2.diagnostics.utils.AhoCorasick;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches an error event against the configured log patterns ({@link LogPatternRule}).
+ * All the regexes are compiled once, and the literal fragments that every match of a regex must contain are fed
+ * into an Aho-Corasick automaton. A single scan of the line then tells which regexes can possibly match, and only
+ * those are evaluated with the full regex. The field conditions of a rule are checked before its regex, as they are
+ * much cheaper. Rules are evaluated in their configured order, so the first matching rule is the same one a
+ * sequential loop would have returned.
+ */
+public class LogPatternMatcher {
+
+    private static final Logger log = LogManager.getLogger(LogPatternMatcher.class);
+
+    // literals shorter than this are too common to be a useful filter
+    private static final int MIN_LITERAL_LENGTH = 3;
+    private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?[idmsuxU-]+[:)]");
+
+    private final LogPatternRule[] rules;
+    // compiled regex of each rule, null if the rule has no regex
+    private final Pattern[] patterns;
+    // index of the literal of each regex in the automaton, -1 if the regex must always be evaluated
+    private final int[] literalIds;
+    private final AhoCorasick prefilter;
+    private final int literalCount;
+
+    public LogPatternMatcher(Collection<LogPatternRule> ruleList) {
+
+        List<LogPatternRule> rules = new ArrayList<>();
+        List<Pattern> patterns = new ArrayList<>();
+        List<String> literals = new ArrayList<>();
+        List<Integer> literalIds = new ArrayList<>();
+        for (LogPatternRule rule : ruleList) {
+            String regex = rule.getRegex();
+            Pattern pattern = null;
+            String literal = null;
+            if (regex != null) {
+                try {
+                    pattern = Pattern.compile(regex);
+                } catch (PatternSyntaxException e) {
+                    log.error("Invalid regex " + regex + " in log pattern " + rule.getName() + ", hence ignoring it.",
+                            e);
+                    continue;
+                }
+                literal = extractRequiredLiteral(regex);
+            }
+            rules.add(rule);
+            patterns.add(pattern);
+            if (literal != null && literal.length() >= MIN_LITERAL_LENGTH) {
+                literalIds.add(literals.size());
+                literals.add(literal);
+            } else {
+                literalIds.add(-1);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Compiled log pattern " + rule + " with prefilter literal: " + literal);
+            }
+        }
+        this.rules = rules.toArray(new LogPatternRule[0]);
+        this.patterns = patterns.toArray(new Pattern[0]);
+        this.literalIds = literalIds.stream().mapToInt(Integer::intValue).toArray();
+        this.literalCount = literals.size();
+        this.prefilter = literals.isEmpty() ? null : new AhoCorasick(literals);
+    }
+
+    /**
+     * Finds the first configured rule that matches the error event.
+     *
+     * @param logLine the parsed error event
+     * @return index of the matching rule, or -1 if none of the rules match
+     */
+    public int match(ParsedLogLine logLine) {
+
+        if (logLine == null) {
+            return -1;
+        }
+        String line = logLine.getLine();
+        long[] candidates = null;
+        for (int i = 0; i < rules.length; i++) {
+            if (!rules[i].matchesFields(logLine)) {
+                continue;
+            }
+            if (patterns[i] == null) {
+                return i;
+            }
+            int literalId = literalIds[i];
+            if (literalId >= 0) {
+                if (candidates == null) {
+                    // scanned once, on the first rule that needs it
+                    candidates = new long[(literalCount + 63) >>> 6];
+                    prefilter.search(line, candidates);
+                }
+                if ((candidates[literalId >>> 6] & (1L << literalId)) == 0) {
+                    continue;
+                }
+            }
+            if (patterns[i].matcher(line).matches()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first configured rule that matches the error event.
+     *
+     * @param logLine the parsed error event
+     * @return the matching rule, or null if none of the rules match
+     */
+    public LogPatternRule findRule(ParsedLogLine logLine) {
+
+        int index = match(logLine);
+        return index < 0 ? null : rules[index];
+    }
+
+    public LogPatternRule getRule(int index) {
+
+        return rules[index];
+    }
+
+    public int size() {
+
+        return rules.length;
+    }
+
+    /**
+     * Extracts the longest literal fragment that every string matching the regex must contain.
+     * The analysis is conservative: only the top level of the regex is inspected, and null is returned whenever a
+     * required literal cannot be proven (top level alternation, inline flags, quoting etc.).
+     *
+     * @param regex regular expression
+     * @return longest required literal, or null if none could be found
+     */
+    static String extractRequiredLiteral(String regex) {
+
+        if (INLINE_FLAGS.matcher(regex).find() || regex.contains("\\Q")) {
+            // inline flags such as (?i) change how literals match
+            return null;
+        }
+        String longest = null;
+        StringBuilder current = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        boolean previousWasLiteral = false;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            boolean literal = false;
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    break;
+                }
+                char escaped = regex.charAt(i + 1);
+                i = skipEscape(regex, i);
+                if (depth > 0) {
+                    continue;
+                }
+                if (Character.isLetterOrDigit(escaped)) {
+                    // character classes, anchors, back references and escaped characters such as \d, \b, \1, \x41
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                } else {
+                    current.append(escaped);
+                    literal = true;
+                }
+                previousWasLiteral = literal;
+                continue;
+            }
+            if (c == '[') {
+                longest = longer(longest, current);
+                current.setLength(0);
+                i = skipCharacterClass(regex, i);
+                previousWasLiteral = false;
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+                longest = longer(longest, current);
+                current.setLength(0);
+            } else if (c == ')') {
+                depth--;
+            } else if (depth > 0) {
+                // contents of groups are not analysed
+                i++;
+                continue;
+            } else if (c == '|') {
+                return null;
+            } else if (c == '*' || c == '?' || c == '{') {
+                // the previous atom is optional, hence it is not part of the required literal
+                if (previousWasLiteral) {
+                    current.setLength(current.length() - 1);
+                }
+                longest = longer(longest, current);
+                current.setLength(0);
+                if (c == '{') {
+                    int end = regex.indexOf('}', i);
+                    i = end < 0 ? regex.length() : end;
+                }
+            } else if (c == '+' || c == '.' || c == '^' || c == '$') {
+                longest = longer(longest, current);
+                current.setLength(0);
+            } else {
+                current.append(c);
+                literal = true;
+            }
+            previousWasLiteral = literal;
+            i++;
+        }
+        return longer(longest, current);
+    }
+
+    private static String longer(String longest, StringBuilder current) {
+
+        if (current.length() > 0 && (longest == null || current.length() > longest.length())) {
+            return current.toString();
+        }
+        return longest;
+    }
+
+    /**
+     * Finds the end of an escape, including the characters that belong to it, such as the digits of \x41, \u0041,
+     * \0101 and \12, or the braces of \x{41}, \p{Lu}, \N{...} and the name of \k&lt;name&gt;.
+     *
+     * @param regex regular expression
+     * @param start index of the backslash
+     * @return index after the escape
+     */
+    private static int skipEscape(String regex, int start) {
+
+        int i = start + 2;
+        switch (regex.charAt(start + 1)) {
+            case 'x':
+                return i < regex.length() && regex.charAt(i) == '{' ? skipPast(regex, i, '}') : i + 2;
+            case 'u':
+                return i + 4;
+            case '0': {
+                // up to three octal digits
+                int end = Math.min(regex.length(), i + 3);
+                while (i < end && regex.charAt(i) >= '0' && regex.charAt(i) <= '7') {
+                    i++;
+                }
+                return i;
+            }
+            case 'c':
+                return i + 1;
+            case 'p':
+            case 'P':
+                return i < regex.length() && regex.charAt(i) == '{' ? skipPast(regex, i, '}') : i + 1;
+            case 'N':
+                return i < regex.length() && regex.charAt(i) == '{' ? skipPast(regex, i, '}') : i;
+            case 'k':
+                return i < regex.length() && regex.charAt(i) == '<' ? skipPast(regex, i, '>') : i;
+            default:
+                if (Character.isDigit(regex.charAt(start + 1))) {
+                    // a back reference takes as many digits as form a group number
+                    while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+                        i++;
+                    }
+                }
+                return i;
+        }
+    }
+
+    private static int skipPast(String regex, int start, char end) {
+
+        int index = regex.indexOf(end, start);
+        return index < 0 ? regex.length() : index + 1;
+    }
+
+    private static int skipCharacterClass(String regex, int start) {
+
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int nested = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                nested++;
+            } else if (c == ']') {
+                if (nested == 0) {
+                    return i + 1;
+                }
+                nested--;
+            }
+            i++;
+        }
+        return i;
+    }
+}
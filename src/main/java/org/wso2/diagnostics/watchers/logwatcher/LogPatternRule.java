@@ -0,0 +1,172 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A configured log pattern ({@code [[log_pattern]]}): the conditions an error event must meet and the action
+ * executors to run when it does. All the given conditions must match, conditions that are not given (null) match
+ * any event. The field conditions are checked on the fields extracted by the {@link LogLineParser}, the regex on the
+ * whole error line.
+ * <p>
+ * A pattern with a threshold triggers only when it has matched that many events within its window, so that a burst of
+ * errors is captured but a rare one is not.
+ */
+public class LogPatternRule {
+
+    private final String name;
+    private final String regex;
+    private final Set<String> levels;
+    private final String loggerPrefix;
+    private final String exceptionClass;
+    private final String messageText;
+    private final String[] executors;
+    private final int reloadTime;
+    private final int threshold;
+    private final int window;
+
+    /**
+     * @param name           unique name of the pattern, used for its reload time and in the logs
+     * @param regex          regex the whole error line must match
+     * @param levels         levels the error line must have, in upper case
+     * @param loggerPrefix   prefix of the logger name
+     * @param exceptionClass fully qualified or simple name of an exception in the stack trace
+     * @param messageText    text the message must contain
+     * @param executors      the action executors to run
+     * @param reloadTime     seconds during which the pattern is not triggered again
+     * @param threshold      number of matching events within the window needed to trigger the pattern, 1 to trigger
+     *                       on every match
+     * @param window         length of the window in seconds
+     */
+    public LogPatternRule(String name, String regex, Set<String> levels, String loggerPrefix, String exceptionClass,
+                          String messageText, String[] executors, int reloadTime, int threshold, int window) {
+
+        this.name = name;
+        this.regex = regex;
+        this.levels = levels == null || levels.isEmpty() ? null : Collections.unmodifiableSet(levels);
+        this.loggerPrefix = loggerPrefix;
+        this.exceptionClass = exceptionClass;
+        this.messageText = messageText;
+        this.executors = executors;
+        this.reloadTime = reloadTime;
+        this.threshold = Math.max(1, threshold);
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Checks the field conditions of the rule. The regex, if any, is checked by the {@link LogPatternMatcher}.
+     *
+     * @param logLine the parsed error event
+     * @return true if all the field conditions match
+     */
+    boolean matchesFields(ParsedLogLine logLine) {
+
+        if (levels != null && (logLine.getLevel() == null || !levels.contains(logLine.getLevel()))) {
+            return false;
+        }
+        if (loggerPrefix != null && (logLine.getLogger() == null || !logLine.getLogger().startsWith(loggerPrefix))) {
+            return false;
+        }
+        if (messageText != null && (logLine.getMessage() == null || !logLine.getMessage().contains(messageText))) {
+            return false;
+        }
+        return exceptionClass == null || hasException(logLine.getExceptionClasses());
+    }
+
+    private boolean hasException(List<String> exceptionClasses) {
+
+        for (String exception : exceptionClasses) {
+            if (exception.equals(exceptionClass) || (exception.endsWith(exceptionClass) &&
+                    exception.charAt(exception.length() - exceptionClass.length() - 1) == '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the rule has a condition at all, a rule without conditions would match every event
+     */
+    public boolean hasConditions() {
+
+        return regex != null || levels != null || loggerPrefix != null || exceptionClass != null ||
+                messageText != null;
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    public String getRegex() {
+
+        return regex;
+    }
+
+    public String[] getExecutors() {
+
+        return executors;
+    }
+
+    public int getReloadTime() {
+
+        return reloadTime;
+    }
+
+    public int getThreshold() {
+
+        return threshold;
+    }
+
+    /**
+     * @return length of the threshold window in seconds
+     */
+    public int getWindow() {
+
+        return window;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder builder = new StringBuilder(name).append(" {");
+        if (regex != null) {
+            builder.append(" regex: ").append(regex);
+        }
+        if (levels != null) {
+            builder.append(" level: ").append(levels);
+        }
+        if (loggerPrefix != null) {
+            builder.append(" logger: ").append(loggerPrefix);
+        }
+        if (exceptionClass != null) {
+            builder.append(" exception: ").append(exceptionClass);
+        }
+        if (messageText != null) {
+            builder.append(" message: ").append(messageText);
+        }
+        if (threshold > 1) {
+            builder.append(" threshold: ").append(threshold).append(" in ").append(window).append("s");
+        }
+        return builder.append(" }").toString();
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Reads the lines appended to a file through a {@link FileChannel}.
+ * Data is read in large chunks into a reusable direct buffer and split into lines at the byte level, so that no
+ * decoding happens until a listener decides that it needs the line. A line that is only partially written when the
+ * end of the file is reached is kept and completed by the next read.
+ * <p>
+ * Rotation is detected through the identity of the file (the inode on Unix), so a rotated file is noticed even when
+ * the new file has already grown past the old offset. The open channel keeps pointing to the rotated file, which
+ * allows the lines written to it just before the rename to be drained before switching to the new file.
+ */
+public class LogTailer implements Closeable {
+
+    private static final Logger log = LogManager.getLogger(LogTailer.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // lines longer than this are truncated to protect the heap from a runaway writer
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    /**
+     * Receives the complete lines read from the file. The byte array is reused after the call returns, hence the
+     * listener has to copy or decode whatever it wants to keep.
+     */
+    public interface LineListener {
+
+        void onLine(byte[] buffer, int offset, int length);
+    }
+
+    private final Path path;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final byte[] chunk = new byte[READ_BUFFER_SIZE];
+    // holds a line that spans more than one read
+    private byte[] partialLine = new byte[1024];
+    private int partialLength = 0;
+    private boolean partialTruncated = false;
+    // file offset of the first byte of the partial line
+    private long partialStart;
+    // set when resuming in the middle of a line, whose remainder is then skipped
+    private boolean skipToNextLine = false;
+
+    private FileChannel channel;
+    private long position;
+    // identity of the open file, null if the file system does not provide one
+    private Object fileKey;
+
+    public LogTailer(Path path) {
+
+        this.path = path;
+    }
+
+    /**
+     * Opens the file.
+     *
+     * @param fromEnd whether to skip the existing content of the file
+     * @return false if the file does not exist yet
+     * @throws IOException if the file cannot be opened
+     */
+    public boolean open(boolean fromEnd) throws IOException {
+
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            close();
+            return false;
+        }
+        position = fromEnd ? channel.size() : 0;
+        partialLength = 0;
+        partialTruncated = false;
+        skipToNextLine = false;
+        return true;
+    }
+
+    /**
+     * Opens the file and resumes from a checkpoint. If the file is still the one the checkpoint was taken on, reading
+     * continues from the checkpoint offset, otherwise (the file was rotated in between) from the beginning of the new
+     * file. In both cases at most maxCatchUp bytes before the end of the file are read again.
+     *
+     * @param offset     the offset of the checkpoint
+     * @param fileKey    the identity of the file the checkpoint was taken on, as given by {@link #getFileKey()}
+     * @param maxCatchUp maximum number of existing bytes to read
+     * @return false if the file does not exist yet
+     * @throws IOException if the file cannot be opened
+     */
+    public boolean resume(long offset, String fileKey, long maxCatchUp) throws IOException {
+
+        if (!open(true)) {
+            return false;
+        }
+        long size = position;
+        long resumeFrom = fileKey != null && fileKey.equals(getFileKey()) && offset <= size ? offset : 0;
+        position = Math.max(resumeFrom, size - maxCatchUp);
+        if (position > 0 && position != resumeFrom) {
+            // the catch up limit cut the file in the middle of a line unless the previous byte is a line end
+            ByteBuffer previous = ByteBuffer.allocate(1);
+            channel.read(previous, position - 1);
+            skipToNextLine = previous.get(0) != '\n';
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the file at the path has been rotated or truncated, and if so drains the rest of the old file
+     * and switches to the new file from its beginning.
+     *
+     * @param listener listener to deliver the remaining lines of the old file to
+     * @return true if the tailer switched to a new file or restarted after a truncation
+     * @throws IOException if the files cannot be read
+     */
+    public boolean handleRotation(LineListener listener) throws IOException {
+
+        if (channel == null) {
+            // the file was missing on the last attempt
+            return open(false);
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // renamed and the new file is not created yet, keep reading the old one
+            return false;
+        }
+        Object currentKey = attributes.fileKey();
+        if (currentKey != null && fileKey != null && !currentKey.equals(fileKey)) {
+            // lines written to the old file between the last read and the rename
+            readAvailable(listener);
+            flushPartialLine(listener);
+            close();
+            if (!open(false)) {
+                log.warn("Rotated log file " + path + " disappeared before it could be opened.");
+            }
+            return true;
+        }
+        if (attributes.size() < position) {
+            // truncated in place (copytruncate) or replaced on a file system without file keys
+            flushPartialLine(listener);
+            close();
+            open(false);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads everything appended to the file since the last call and delivers the complete lines to the listener.
+     *
+     * @param listener listener to deliver the lines to
+     * @return number of bytes read
+     * @throws IOException if the file cannot be read
+     */
+    public long readAvailable(LineListener listener) throws IOException {
+
+        if (channel == null) {
+            return 0;
+        }
+        long total = 0;
+        int read;
+        while ((read = channel.read(readBuffer, position)) > 0) {
+            position += read;
+            total += read;
+            readBuffer.flip();
+            readBuffer.get(chunk, 0, read);
+            readBuffer.clear();
+            splitLines(position - read, read, listener);
+        }
+        return total;
+    }
+
+    public long getPosition() {
+
+        return position;
+    }
+
+    /**
+     * @return the offset to resume from after a restart, which is the start of the line that is not yet complete
+     */
+    public long getCheckpointOffset() {
+
+        return partialLength > 0 || partialTruncated ? partialStart : position;
+    }
+
+    /**
+     * @return the identity of the open file as a string, null if no file is open or the file system has none
+     */
+    public String getFileKey() {
+
+        return fileKey == null ? null : fileKey.toString();
+    }
+
+    public Path getPath() {
+
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        fileKey = null;
+    }
+
+    private void splitLines(long chunkStart, int length, LineListener listener) {
+
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (chunk[i] != '\n') {
+                continue;
+            }
+            if (skipToNextLine) {
+                skipToNextLine = false;
+            } else if (partialLength > 0 || partialTruncated) {
+                appendPartial(start, i - start);
+                deliver(listener, partialLine, 0, partialLength);
+                partialLength = 0;
+                partialTruncated = false;
+            } else {
+                deliver(listener, chunk, start, i - start);
+            }
+            start = i + 1;
+        }
+        if (start < length && !skipToNextLine) {
+            if (partialLength == 0 && !partialTruncated) {
+                partialStart = chunkStart + start;
+            }
+            appendPartial(start, length - start);
+        }
+    }
+
+    private void appendPartial(int offset, int length) {
+
+        int room = MAX_LINE_LENGTH - partialLength;
+        if (length > room) {
+            if (!partialTruncated) {
+                log.warn("Truncating a line longer than " + MAX_LINE_LENGTH + " bytes in " + path);
+            }
+            partialTruncated = true;
+            length = room;
+        }
+        if (partialLength + length > partialLine.length) {
+            byte[] grown = new byte[Math.min(MAX_LINE_LENGTH, Math.max(partialLine.length * 2,
+                    partialLength + length))];
+            System.arraycopy(partialLine, 0, grown, 0, partialLength);
+            partialLine = grown;
+        }
+        System.arraycopy(chunk, offset, partialLine, partialLength, length);
+        partialLength += length;
+    }
+
+    private void flushPartialLine(LineListener listener) {
+
+        if (partialLength > 0) {
+            deliver(listener, partialLine, 0, partialLength);
+        }
+        partialLength = 0;
+        partialTruncated = false;
+        skipToNextLine = false;
+    }
+
+    private static void deliver(LineListener listener, byte[] buffer, int offset, int length) {
+
+        // drop the carriage return of CRLF line endings
+        if (length > 0 && buffer[offset + length - 1] == '\r') {
+            length--;
+        }
+        listener.onLine(buffer, offset, length);
+    }
+}
@@ -18,128 +18,303 @@
 
 package org.wso2.diagnostics.watchers.logwatcher;
 
-import java.io.Closeable;
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+/**
+ * Tails a set of log files on a single thread. Each file keeps its own offset and its own interpreter (and with it
+ * its own pattern table), while the wakeups are shared, so adding files does not add threads or wakeups.
+ */
 public class LogWatcher extends Thread {
 
     private static final Logger log = LogManager.getLogger(LogWatcher.class);
 
     /**
-     * The file which will be tailed.
+     * The files which will be tailed.
+     */
+    private final List<WatchedLogFile> files = new ArrayList<>();
+    /**
+     * Decides when to check the files for new content.
+     */
+    private final LogChangeNotifier notifier;
+    /**
+     * Interval between two statistics reports in milliseconds, 0 to disable the reports.
+     */
+    private final long statsInterval;
+    /**
+     * The queue the completed error events are handed to.
+     */
+    private final LogEventQueue queue;
+    /**
+     * Milliseconds without a new line after which a multi-line error event is complete.
+     */
+    private final long eventIdleTimeout;
+    /**
+     * Number of lines after which a multi-line error event is complete.
+     */
+    private final int eventMaxLines;
+    /**
+     * Number of bytes after which a multi-line error event is complete.
+     */
+    private final int eventMaxBytes;
+    /**
+     * Number of lines and bytes kept per file as the context logged before an error event.
+     */
+    private int contextLines;
+    private int contextBytes;
+    /**
+     * Milliseconds and number of lines the log is still written to a capture after it was triggered.
+     */
+    private long postTriggerTime;
+    private int postTriggerLines;
+    /**
+     * Persists the read offsets across restarts, null to always start from the end of the files.
+     */
+    private TailCheckpoint checkpoint;
+
+    // statistics reported periodically to compare the watch modes
+    private long wakeups;
+    private long idleWakeups;
+    private long eventWakeups;
+    private long latencySamples;
+    private long totalLatency;
+    private long maxLatency;
+
+    /**
+     * Creates a watcher without any files, {@link #addFile(String, String, Interpreter)} adds them.
+     *
+     * @param notifier   decides when the files are checked for new content.
+     * @param queue      the queue to hand the error events to.
+     * @param statsInterval interval between statistics reports in seconds, 0 to disable them.
+     * @param eventIdleTimeout milliseconds without a new line after which an error event is complete, 0 to disable.
+     * @param eventMaxLines number of lines after which an error event is complete, 0 for no limit.
+     * @param eventMaxBytes number of bytes after which an error event is complete, 0 for no limit.
      */
-    private final File file;
+    public LogWatcher(LogChangeNotifier notifier, LogEventQueue queue, long statsInterval, long eventIdleTimeout,
+                      int eventMaxLines, int eventMaxBytes) {
+
+        super("LogWatcher");
+        this.notifier = notifier;
+        this.queue = queue;
+        this.statsInterval = statsInterval * 1000;
+        this.eventIdleTimeout = eventIdleTimeout;
+        this.eventMaxLines = eventMaxLines;
+        this.eventMaxBytes = eventMaxBytes;
+    }
+
     /**
-     * The amount of time to wait for the file to be updated.
+     * Adds a file to be tailed. Must be called before the watcher is started.
+     *
+     * @param name        name of the file used in the logs.
+     * @param filepath    the file to follow.
+     * @param interpreter the interpreter holding the patterns of this file.
      */
-    private final long delay;
+    public void addFile(String name, String filepath, Interpreter interpreter) {
+
+        PostTriggerCapture postTriggerCapture = new PostTriggerCapture(postTriggerTime, postTriggerLines);
+        interpreter.setPostTriggerCapture(postTriggerCapture);
+        files.add(new WatchedLogFile(name, filepath,
+                new LogEventAssembler(interpreter, queue, eventIdleTimeout, eventMaxLines, eventMaxBytes,
+                        contextLines, contextBytes), postTriggerCapture));
+    }
+
     /**
-     * The interpreter to notify of events when tailing.
+     * Keeps the last lines of each file, to give the context logged before an error event. Must be called before
+     * the files are added.
+     *
+     * @param contextLines number of lines kept, 0 to keep none.
+     * @param contextBytes number of bytes kept.
+     */
+    public void setContextSize(int contextLines, int contextBytes) {
+
+        this.contextLines = contextLines;
+        this.contextBytes = contextBytes;
+    }
+
+    /**
+     * Keeps writing the lines of a file to a capture triggered by an error of that file, after the error. Must be
+     * called before the files are added.
+     *
+     * @param postTriggerTime  milliseconds the lines are written for, 0 to disable.
+     * @param postTriggerLines number of lines after which the writing stops, 0 for no limit.
      */
-    private final Interpreter interpreter;
+    public void setPostTriggerWindow(long postTriggerTime, int postTriggerLines) {
+
+        this.postTriggerTime = postTriggerTime;
+        this.postTriggerLines = postTriggerLines;
+    }
 
     /**
-     * Creates a Tailer for the given file.
+     * Enables resuming from the persisted offsets after a restart. Must be called before the watcher is started.
      *
-     * @param filepath   the file to follow.
-     * @param interpreter   the TailerListener to use.
-     * @param delay      the delay between checks of the file for new content in seconds.
+     * @param checkpoint the checkpoint store.
      */
-    public LogWatcher(String filepath, Interpreter interpreter, double delay) {
+    public void setCheckpoint(TailCheckpoint checkpoint) {
 
-        this.file = new File(filepath);
-        this.delay = Math.round(delay * 1000);
-        this.interpreter = interpreter;
+        this.checkpoint = checkpoint;
     }
 
     public void run() {
         try {
-
-            RandomAccessFile reader = null;
-            long position = 0;
-            StringBuilder logBuilder = new StringBuilder(); // To accumulate log lines
-            while (reader == null) {
-                try {
-                    reader = new RandomAccessFile(file, "r");
-                    log.info("Initiating LogWatcher for file: " + file.getPath());
-                    position = file.length();
-                    reader.seek(position);
-                } catch (FileNotFoundException e) {
-                    // ignoring this exception as the file may not be created yet
-                    log.debug("Log file " + file.getPath() + " not found.");
-                    Thread.sleep(delay);
-                }
+            for (WatchedLogFile file : files) {
+                open(file);
             }
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            long cpuTimeAtLastReport = threadMXBean.getCurrentThreadCpuTime();
+            long lastReport = System.currentTimeMillis();
+            boolean hadData = false;
             while (true) {
-                long fileLength = file.length();
-                if (fileLength < position) {
-                    // File was rotated
-                    log.info("Log file has been rotated. Reopening the file " + file.getPath());
-                    // Reopen the reader after rotation
-                    try {
-                        // Ensure that the old file is closed
-                        closeQuietly(reader);
-                        reader = new RandomAccessFile(file, "r");
-                        readLines(reader, logBuilder);
-                        position = 0;
-                    } catch (FileNotFoundException e) {
-                        log.error("Log file " + file.getPath() + " not found." , e);
-                    }
-                    continue;
+                // wake up in time to complete a pending error event on its idle timeout
+                long maxWait = Long.MAX_VALUE;
+                long now = System.currentTimeMillis();
+                for (WatchedLogFile file : files) {
+                    maxWait = Math.min(maxWait, file.getAssembler().timeUntilIdle(now));
                 }
-                // Check if the file has been updated
-                if (fileLength > position) {
-                    readLines(reader, logBuilder);
-                    // Update the file length
-                    position = fileLength;
-                    // Move the file pointer to the end
-                    reader.seek(fileLength);
+                boolean fileEvent = notifier.await(hadData, maxWait);
+                hadData = false;
+                for (WatchedLogFile file : files) {
+                    hadData |= poll(file);
+                }
+                now = System.currentTimeMillis();
+                for (WatchedLogFile file : files) {
+                    file.getAssembler().flushIfIdle(now);
+                }
+                if (checkpoint != null) {
+                    updateCheckpoints();
+                    checkpoint.saveIfDue(now);
+                }
+                recordWakeup(fileEvent, hadData);
+                if (statsInterval > 0 && System.currentTimeMillis() - lastReport >= statsInterval) {
+                    long cpuTime = threadMXBean.getCurrentThreadCpuTime();
+                    reportStats(System.currentTimeMillis() - lastReport, cpuTime - cpuTimeAtLastReport);
+                    cpuTimeAtLastReport = cpuTime;
+                    lastReport = System.currentTimeMillis();
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Log watcher interrupted, hence stopping.", e);
+        } finally {
+            if (checkpoint != null) {
+                updateCheckpoints();
+                checkpoint.save();
+            }
+            try {
+                notifier.close();
+            } catch (IOException e) {
+                log.error("Unable to close the log change notifier", e);
+            }
+            for (WatchedLogFile file : files) {
+                try {
+                    file.getTailer().close();
+                } catch (IOException e) {
+                    log.error("Unable to close the file: " + file.getTailer().getPath(), e);
                 }
-                // Sleep for a short duration before checking for updates again
-                Thread.sleep(delay);
             }
-        } catch (IOException | InterruptedException e) {
-            log.error("Error while tailing the log file: " + file.getPath(), e);
         }
     }
 
-    private void closeQuietly(Closeable closeable) {
+    private void open(WatchedLogFile file) {
 
+        LogTailer tailer = file.getTailer();
+        notifier.register(tailer.getPath());
         try {
-            if (closeable != null) {
-                closeable.close();
+            boolean opened = checkpoint != null ? checkpoint.open(file.getName(), tailer) : tailer.open(true);
+            if (opened) {
+                log.info("Initiating LogWatcher in " + notifier.getMode() + " mode for " + file.getName() +
+                        " file: " + tailer.getPath());
+            } else {
+                // the file may not be created yet, it is read from the beginning once it appears
+                log.info("Log file " + tailer.getPath() + " not found. Waiting for it to be created.");
             }
-        } catch (IOException ioe) {
-            log.error("unable to close the file: " + file.getPath(), ioe);
+        } catch (IOException e) {
+            log.error("Unable to open the log file: " + tailer.getPath() + ", retrying on the next check.", e);
         }
     }
 
-    private void readLines(RandomAccessFile reader, StringBuilder logBuilder) throws IOException {
-
-        // Read the new lines
-        String line;
-        String errorLine = "";
-        while ((line = reader.readLine()) != null) {
-            // Check if the line indicates the start of a stack trace
-            if (line.contains("ERROR") || line.contains("WARN")) {
-                if (logBuilder.length() == 0) {
-                    errorLine = line;
-                    logBuilder.append(line).append("\n");
-                } else {
-                    interpreter.interpret(errorLine, logBuilder.toString());
-                    logBuilder.setLength(0);
-                    errorLine = line;
-                    logBuilder.append(line).append("\n");
-                }
-            } else {
-                logBuilder.append(line).append("\n");
+    private void updateCheckpoints() {
+
+        for (WatchedLogFile file : files) {
+            checkpoint.update(file.getName(), file.getTailer());
+        }
+    }
+
+    private boolean poll(WatchedLogFile file) {
+
+        LogTailer tailer = file.getTailer();
+        try {
+            if (tailer.handleRotation(file)) {
+                log.info("Log file " + tailer.getPath() + " has been rotated or created. Reading it from the start.");
             }
+            if (tailer.readAvailable(file) > 0) {
+                recordLatency(tailer);
+                return true;
+            }
+        } catch (IOException e) {
+            // an error on one file must not stop watching the others
+            log.error("Error while tailing the log file: " + tailer.getPath(), e);
+        }
+        return false;
+    }
+
+    private void recordWakeup(boolean fileEvent, boolean hadData) {
+
+        wakeups++;
+        if (fileEvent) {
+            eventWakeups++;
         }
+        if (!hadData) {
+            idleWakeups++;
+        }
+    }
+
+    private void recordLatency(LogTailer tailer) throws IOException {
+
+        // time between the last write to the file and the moment it was read
+        try {
+            long latency = System.currentTimeMillis() - Files.getLastModifiedTime(tailer.getPath()).toMillis();
+            latency = Math.max(0, latency);
+            latencySamples++;
+            totalLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+        } catch (NoSuchFileException e) {
+            // rotated in between, nothing to measure
+        }
+    }
+
+    private void reportStats(long elapsed, long cpuTimeNanos) {
+
+        long idleFlushes = 0;
+        long limitFlushes = 0;
+        long lines = 0;
+        long levelScans = 0;
+        for (WatchedLogFile file : files) {
+            idleFlushes += file.getAssembler().getIdleFlushes();
+            limitFlushes += file.getAssembler().getLimitFlushes();
+            lines += file.getLevelClassifier().getLines();
+            levelScans += file.getLevelClassifier().getScans();
+        }
+
+        log.info("LogWatcher statistics (" + notifier.getMode() + " mode) for the last " + elapsed / 1000 +
+                "s: wakeups: " + wakeups + ", idle wakeups: " + idleWakeups + ", file event wakeups: " +
+                eventWakeups + ", cpu time: " + cpuTimeNanos / 1000000 + "ms, detection latency avg: " +
+                (latencySamples == 0 ? 0 : totalLatency / latencySamples) + "ms, max: " + maxLatency +
+                "ms, events queued: " + queue.getQueuedCount() + ", dropped: " + queue.getDroppedCount() +
+                ", coalesced: " + queue.getCoalescedCount() + ", pending: " + queue.size() + "/" +
+                queue.capacity() + ", events completed on idle timeout: " + idleFlushes + ", on size limit: " +
+                limitFlushes + ", lines read: " + lines + ", scanned for their level: " + levelScans);
+        wakeups = 0;
+        idleWakeups = 0;
+        eventWakeups = 0;
+        latencySamples = 0;
+        totalLatency = 0;
+        maxLatency = 0;
     }
 }
@@ -0,0 +1,93 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.util.List;
+
+/**
+ * The fields of an error event extracted by the {@link LogLineParser}. Fields that are not present in the log layout
+ * are null. The exception classes of the stack trace are only extracted when a rule asks for them.
+ */
+public class ParsedLogLine {
+
+    private final String line;
+    private final String completeLog;
+    private final String level;
+    private final String thread;
+    private final String logger;
+    private final String message;
+    private List<String> exceptionClasses;
+
+    ParsedLogLine(String line, String completeLog, String level, String thread, String logger, String message) {
+
+        this.line = line;
+        this.completeLog = completeLog;
+        this.level = level;
+        this.thread = thread;
+        this.logger = logger;
+        this.message = message;
+    }
+
+    /**
+     * @return the error line
+     */
+    public String getLine() {
+
+        return line;
+    }
+
+    /**
+     * @return the error line followed by the lines of the event, such as the stack trace
+     */
+    public String getCompleteLog() {
+
+        return completeLog;
+    }
+
+    public String getLevel() {
+
+        return level;
+    }
+
+    public String getThread() {
+
+        return thread;
+    }
+
+    public String getLogger() {
+
+        return logger;
+    }
+
+    public String getMessage() {
+
+        return message;
+    }
+
+    /**
+     * @return the exception classes of the stack trace following the error line, including the causes
+     */
+    public List<String> getExceptionClasses() {
+
+        if (exceptionClasses == null) {
+            exceptionClasses = LogLineParser.parseExceptionClasses(completeLog);
+        }
+        return exceptionClasses;
+    }
+}
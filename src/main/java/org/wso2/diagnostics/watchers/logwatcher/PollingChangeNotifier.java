@@ -0,0 +1,75 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.nio.file.Path;
+
+/**
+ * Polls the files at an adaptive interval. The interval starts at the configured minimum, doubles every time a check
+ * finds nothing new and drops back to the minimum as soon as new data is read.
+ */
+public class PollingChangeNotifier implements LogChangeNotifier {
+
+    private final long minInterval;
+    private final long maxInterval;
+    private long currentInterval;
+
+    /**
+     * @param minInterval interval used while the files are being written, in milliseconds
+     * @param maxInterval upper bound of the interval while the files are idle, in milliseconds
+     */
+    public PollingChangeNotifier(long minInterval, long maxInterval) {
+
+        this.minInterval = Math.max(1, minInterval);
+        this.maxInterval = Math.max(this.minInterval, maxInterval);
+        this.currentInterval = this.minInterval;
+    }
+
+    @Override
+    public void register(Path file) {
+        // nothing to register, every file is checked on each wake up
+    }
+
+    @Override
+    public boolean await(boolean hadData, long maxWait) throws InterruptedException {
+
+        currentInterval = hadData ? minInterval : Math.min(maxInterval, currentInterval * 2);
+        Thread.sleep(Math.max(1, Math.min(currentInterval, maxWait)));
+        return false;
+    }
+
+    /**
+     * @return the interval of the last wait, in milliseconds
+     */
+    long getCurrentInterval() {
+
+        return currentInterval;
+    }
+
+    @Override
+    public String getMode() {
+
+        return "polling";
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps writing the lines of a log file to the {@code log.txt} of a capture for a while after the capture was
+ * triggered, so that the capture holds the lines logged right after the error, such as retries or the errors it
+ * caused. A capture window is opened by the {@link Interpreter} of the file and closes after a time or a number of
+ * lines, whichever comes first. Several windows can be open at once.
+ * <p>
+ * The lines are written by the {@link LogWatcher} thread as it reads them, while the windows are opened on the
+ * {@link LogEventDispatcher} thread and closed on either. Hence the lines read between an error event being completed
+ * and its window being opened, starting with the line that completed it, are kept in a bounded ring and written to
+ * the window when it is opened.
+ */
+class PostTriggerCapture {
+
+    private static final Logger log = LogManager.getLogger(PostTriggerCapture.class);
+    // lines and bytes kept for the windows not opened yet
+    private static final int RECENT_LINES = 1000;
+    private static final int RECENT_BYTES = 256 * 1024;
+
+    private final long duration;
+    private final int maxLines;
+    private final List<Window> windows = new CopyOnWriteArrayList<>();
+    // the last lines read and the number of lines read so far, guarded by this
+    private final LogContextRing recentLines;
+    private long lineCount;
+
+    /**
+     * @param duration milliseconds the window stays open, 0 to disable the windows
+     * @param maxLines number of lines after which the window is closed, 0 for no limit
+     */
+    PostTriggerCapture(long duration, int maxLines) {
+
+        this.duration = duration;
+        this.maxLines = maxLines;
+        this.recentLines = duration > 0 ? new LogContextRing(RECENT_LINES, RECENT_BYTES) : null;
+    }
+
+    boolean isEnabled() {
+
+        return duration > 0;
+    }
+
+    /**
+     * Opens a window writing to the {@code log.txt} of a capture.
+     *
+     * @param folderPath  the folder of the capture
+     * @param capturedLog the error event that triggered the capture, written before the following lines
+     * @param fromLine    the number of the first line logged after the event, as counted by {@link #onLine}, the
+     *                    lines read since then are written first, or -1 to only write the lines read from now on
+     * @return a future completed when the window is closed, or null if the log file could not be opened
+     */
+    synchronized CompletableFuture<Void> open(String folderPath, String capturedLog, long fromLine) {
+
+        Window window;
+        try {
+            window = new Window(new BufferedOutputStream(new FileOutputStream(folderPath + "/" + "log.txt")));
+            window.out.write(capturedLog.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.error("Error occurred while writing the log line to the file", e);
+            return null;
+        }
+        if (fromLine >= 0 && fromLine < lineCount) {
+            replay(window, fromLine);
+        }
+        windows.add(window);
+        CompletableFuture.runAsync(window::close, CompletableFuture.delayedExecutor(duration, TimeUnit.MILLISECONDS));
+        return window.closed;
+    }
+
+    /**
+     * Writes a line read from the log file to the open windows and keeps it for the windows opened later.
+     */
+    synchronized void onLine(byte[] buffer, int offset, int length) {
+
+        if (recentLines == null) {
+            return;
+        }
+        recentLines.add(buffer, offset, length);
+        lineCount++;
+        for (Window window : windows) {
+            window.write(buffer, offset, length);
+        }
+    }
+
+    private void replay(Window window, long fromLine) {
+
+        long missed = lineCount - fromLine;
+        if (missed > recentLines.size()) {
+            log.warn((missed - recentLines.size()) + " lines logged after the error were read before its capture " +
+                    "was triggered and are not written to its log.txt");
+        }
+        byte[] lines = recentLines.snapshot((int) Math.min(missed, recentLines.size()));
+        int start = 0;
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i] == '\n') {
+                window.write(lines, start, i - start);
+                start = i + 1;
+            }
+        }
+    }
+
+    private class Window {
+
+        private final OutputStream out;
+        private final CompletableFuture<Void> closed = new CompletableFuture<>();
+        private int lines;
+
+        private Window(OutputStream out) {
+
+            this.out = out;
+        }
+
+        private synchronized void write(byte[] buffer, int offset, int length) {
+
+            if (closed.isDone()) {
+                return;
+            }
+            try {
+                out.write(buffer, offset, length);
+                out.write('\n');
+            } catch (IOException e) {
+                log.error("Error occurred while writing the log line to the file", e);
+                close();
+                return;
+            }
+            if (maxLines > 0 && ++lines >= maxLines) {
+                close();
+            }
+        }
+
+        private synchronized void close() {
+
+            if (closed.isDone()) {
+                return;
+            }
+            windows.remove(this);
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.error("Error occurred while writing the log line to the file", e);
+            }
+            closed.complete(null);
+        }
+    }
+}
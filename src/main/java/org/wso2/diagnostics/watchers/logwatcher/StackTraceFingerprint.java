@@ -0,0 +1,168 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.util.List;
+
+/**
+ * Computes the fingerprint of an error event, which is the same for every occurrence of the same error. The
+ * fingerprint of an event with a stack trace is the class of its exception followed by the top frames of the stack
+ * trace. The fingerprint of an event without one is its logger followed by its message. Numbers, hexadecimal values
+ * and ids are replaced with {@code #}, as they differ between occurrences, such as the line numbers of lambdas, object
+ * hashes, ports or message ids.
+ */
+public class StackTraceFingerprint {
+
+    private static final char PLACEHOLDER = '#';
+    // hexadecimal words at least this long are considered ids, such as UUIDs or correlation ids
+    private static final int MIN_ID_LENGTH = 8;
+
+    private StackTraceFingerprint() {
+    }
+
+    /**
+     * @param logLine the parsed error event
+     * @param frames  the number of frames of the stack trace included in the fingerprint
+     * @return the fingerprint of the event
+     */
+    public static String of(ParsedLogLine logLine, int frames) {
+
+        List<String> exceptions = logLine.getExceptionClasses();
+        StringBuilder fingerprint = new StringBuilder();
+        if (exceptions.isEmpty()) {
+            fingerprint.append(logLine.getLogger()).append('|');
+            normalize(logLine.getMessage(), 0, logLine.getMessage() == null ? 0 : logLine.getMessage().length(),
+                    fingerprint);
+            return fingerprint.toString();
+        }
+        fingerprint.append(exceptions.get(0));
+        String completeLog = logLine.getCompleteLog();
+        int start = completeLog == null ? -1 : completeLog.indexOf('\n');
+        int found = 0;
+        while (start >= 0 && found < frames) {
+            int lineStart = start + 1;
+            while (lineStart < completeLog.length() &&
+                    (completeLog.charAt(lineStart) == ' ' || completeLog.charAt(lineStart) == '\t')) {
+                lineStart++;
+            }
+            int lineEnd = completeLog.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = completeLog.length();
+            }
+            if (completeLog.startsWith("at ", lineStart)) {
+                fingerprint.append('|');
+                normalize(completeLog, lineStart + 3, lineEnd, fingerprint);
+                found++;
+            }
+            start = lineEnd < completeLog.length() ? lineEnd : -1;
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Appends the text with its numbers, hexadecimal values and ids replaced with {@link #PLACEHOLDER}.
+     */
+    static void normalize(String text, int start, int end, StringBuilder out) {
+
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                if (c != '\r') {
+                    out.append(c);
+                }
+                i++;
+                continue;
+            }
+            int idEnd = dashedIdEnd(text, i, end);
+            if (idEnd > 0) {
+                // hexadecimal groups joined by dashes, such as a UUID, whose groups are too short to be ids alone
+                out.append(PLACEHOLDER);
+                i = idEnd;
+                continue;
+            }
+            int wordEnd = i;
+            boolean hex = true;
+            boolean digit = false;
+            while (wordEnd < end && Character.isLetterOrDigit(text.charAt(wordEnd))) {
+                char w = text.charAt(wordEnd);
+                digit |= w >= '0' && w <= '9';
+                hex &= (w >= '0' && w <= '9') || (w >= 'a' && w <= 'f') || (w >= 'A' && w <= 'F');
+                wordEnd++;
+            }
+            boolean prefixedHex = wordEnd - i > 2 && c == '0' && (text.charAt(i + 1) == 'x' ||
+                    text.charAt(i + 1) == 'X') && isHex(text, i + 2, wordEnd);
+            if (prefixedHex || (hex && digit && wordEnd - i >= MIN_ID_LENGTH)) {
+                out.append(PLACEHOLDER);
+            } else {
+                // digits within a word, such as Lambda$123 or thread-42
+                boolean inNumber = false;
+                for (int j = i; j < wordEnd; j++) {
+                    char w = text.charAt(j);
+                    if (w >= '0' && w <= '9') {
+                        if (!inNumber) {
+                            out.append(PLACEHOLDER);
+                        }
+                        inNumber = true;
+                    } else {
+                        out.append(w);
+                        inNumber = false;
+                    }
+                }
+            }
+            i = wordEnd;
+        }
+    }
+
+    /**
+     * @return the end of the dashed hexadecimal id starting at the given index, or -1 if there is none
+     */
+    private static int dashedIdEnd(String text, int start, int end) {
+
+        int i = start;
+        boolean dash = false;
+        boolean digit = false;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == '-' && i > start && i + 1 < end && isHex(text, i + 1, i + 2)) {
+                dash = true;
+            } else if (isHex(text, i, i + 1)) {
+                digit |= c >= '0' && c <= '9';
+            } else {
+                break;
+            }
+            i++;
+        }
+        if (!dash || !digit || i - start < MIN_ID_LENGTH || (i < end && Character.isLetterOrDigit(text.charAt(i)))) {
+            return -1;
+        }
+        return i;
+    }
+
+    private static boolean isHex(String text, int start, int end) {
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
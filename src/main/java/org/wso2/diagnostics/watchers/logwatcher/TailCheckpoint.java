@@ -0,0 +1,157 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Persists the read offset and the identity of each watched log file, so that after a restart the {@link LogWatcher}
+ * resumes where it stopped instead of skipping everything logged while the tool was down. The checkpoints are kept
+ * in memory and written to a small properties file only when they changed and the save interval has passed, by
+ * writing a temporary file and renaming it over the previous one.
+ */
+public class TailCheckpoint {
+
+    private static final Logger log = LogManager.getLogger(TailCheckpoint.class);
+
+    private static final String PATH = ".path";
+    private static final String FILE_KEY = ".file_key";
+    private static final String OFFSET = ".offset";
+
+    private final Path checkpointFile;
+    private final long saveInterval;
+    private final long maxCatchUp;
+    private final Properties checkpoints = new Properties();
+    private boolean dirty;
+    private long lastSave;
+
+    /**
+     * @param checkpointFile the file to persist the checkpoints to
+     * @param saveInterval   minimum interval between two writes of the file in milliseconds
+     * @param maxCatchUp     maximum number of bytes of a file read again when resuming
+     */
+    public TailCheckpoint(Path checkpointFile, long saveInterval, long maxCatchUp) {
+
+        this.checkpointFile = checkpointFile;
+        this.saveInterval = saveInterval;
+        this.maxCatchUp = maxCatchUp;
+        try (InputStream inputStream = Files.newInputStream(checkpointFile)) {
+            checkpoints.load(inputStream);
+        } catch (NoSuchFileException e) {
+            log.info("No log watcher checkpoint found at " + checkpointFile + ", starting from the end of the files.");
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Unable to read the log watcher checkpoint " + checkpointFile + ", ignoring it.", e);
+        }
+    }
+
+    /**
+     * Opens the tailer of a file at its checkpoint, or at the end of the file if there is no checkpoint for it.
+     *
+     * @param name   name of the watched file
+     * @param tailer tailer of the file
+     * @return false if the file does not exist yet
+     * @throws IOException if the file cannot be opened
+     */
+    boolean open(String name, LogTailer tailer) throws IOException {
+
+        String offset = checkpoints.getProperty(name + OFFSET);
+        // a checkpoint taken on another path belongs to a different configuration
+        if (offset == null || !tailer.getPath().toString().equals(checkpoints.getProperty(name + PATH))) {
+            return tailer.open(true);
+        }
+        try {
+            boolean opened = tailer.resume(Long.parseLong(offset), checkpoints.getProperty(name + FILE_KEY),
+                    maxCatchUp);
+            if (opened) {
+                log.info("Resuming " + tailer.getPath() + " from offset " + tailer.getPosition() +
+                        " (checkpoint offset " + offset + ")");
+            }
+            return opened;
+        } catch (NumberFormatException e) {
+            log.error("Invalid checkpoint offset " + offset + " for " + name + ", starting from the end.");
+            return tailer.open(true);
+        }
+    }
+
+    /**
+     * Records the current position of a tailer. Cheap, nothing is written to the disk.
+     *
+     * @param name   name of the watched file
+     * @param tailer tailer of the file
+     */
+    void update(String name, LogTailer tailer) {
+
+        String fileKey = tailer.getFileKey();
+        if (fileKey == null) {
+            // no file open at the moment, keep the last checkpoint
+            return;
+        }
+        String offset = Long.toString(tailer.getCheckpointOffset());
+        if (!offset.equals(checkpoints.getProperty(name + OFFSET)) ||
+                !fileKey.equals(checkpoints.getProperty(name + FILE_KEY))) {
+            checkpoints.setProperty(name + PATH, tailer.getPath().toString());
+            checkpoints.setProperty(name + FILE_KEY, fileKey);
+            checkpoints.setProperty(name + OFFSET, offset);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the checkpoints if they changed and the save interval has passed since the last write.
+     *
+     * @param now current time in milliseconds
+     */
+    void saveIfDue(long now) {
+
+        if (dirty && now - lastSave >= saveInterval) {
+            save();
+            lastSave = now;
+        }
+    }
+
+    /**
+     * Writes the checkpoints if they changed.
+     */
+    void save() {
+
+        if (!dirty) {
+            return;
+        }
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(temp)) {
+                checkpoints.store(outputStream, "Log watcher checkpoints");
+            }
+            Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            log.error("Unable to write the log watcher checkpoint " + checkpointFile, e);
+        }
+    }
+}
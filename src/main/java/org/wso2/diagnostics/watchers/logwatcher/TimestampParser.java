@@ -0,0 +1,276 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/**
+ * Finds and parses the timestamp of a log line written with a log4j2 date layout such as
+ * {@code yyyy-MM-dd HH:mm:ss,SSS} (the {@code %d} of the WSO2 log layouts). The layout is compiled once into a list of
+ * fixed width numeric fields and literals, which are matched against the characters of the line directly, hence
+ * parsing allocates nothing. Only the first line of the given text is searched.
+ * <p>
+ * Supported fields are {@code yyyy}, {@code MM}, {@code dd}, {@code HH}, {@code mm}, {@code ss} and {@code SSS}, any
+ * other character, or text in single quotes, is a literal. The log4j2 named formats DEFAULT and ISO8601 are accepted
+ * as well. Timestamps are in the default time zone of the tool. Layouts without a date use the current date.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class TimestampParser {
+
+    public static final String DEFAULT_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    private static final int LITERAL = 0;
+    private static final int YEAR = 1;
+    private static final int MONTH = 2;
+    private static final int DAY = 3;
+    private static final int HOUR = 4;
+    private static final int MINUTE = 5;
+    private static final int SECOND = 6;
+    private static final int MILLIS = 7;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private final String format;
+    // compiled layout, one entry per character of the matched text
+    private final int[] fields;
+    private final char[] literals;
+    private final boolean hasDate;
+    private final ZoneRules zoneRules = ZoneId.systemDefault().getRules();
+
+    // offset of the default time zone, cached per local day as it only changes on daylight saving transitions
+    private long cachedLocalDay = Long.MIN_VALUE;
+    private long cachedOffset;
+    private boolean cachedTransitionDay;
+
+    /**
+     * @param format the log4j2 date layout
+     * @throws IllegalArgumentException if the layout has a field that is not supported
+     */
+    public TimestampParser(String format) {
+
+        if ("DEFAULT".equals(format)) {
+            format = DEFAULT_FORMAT;
+        } else if ("ISO8601".equals(format)) {
+            format = "yyyy-MM-dd'T'HH:mm:ss,SSS";
+        }
+        this.format = format;
+        StringBuilder literalBuilder = new StringBuilder();
+        int[] compiled = new int[format.length()];
+        int length = 0;
+        boolean quoted = false;
+        boolean date = false;
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+                continue;
+            }
+            int field = quoted ? LITERAL : field(c);
+            int width = 1;
+            if (field != LITERAL) {
+                while (i + width < format.length() && format.charAt(i + width) == c) {
+                    width++;
+                }
+                if (width != expectedWidth(field)) {
+                    throw new IllegalArgumentException("Unsupported date layout " + format + ", " + c +
+                            " must be given " + expectedWidth(field) + " times");
+                }
+                date |= field == YEAR || field == MONTH || field == DAY;
+                i += width - 1;
+            } else if (!quoted && Character.isLetter(c)) {
+                throw new IllegalArgumentException("Unsupported date layout " + format + ", unknown field " + c);
+            }
+            for (int j = 0; j < width; j++) {
+                compiled[length++] = field;
+                literalBuilder.append(field == LITERAL ? c : '0');
+            }
+        }
+        this.fields = Arrays.copyOf(compiled, length);
+        this.literals = literalBuilder.toString().toCharArray();
+        this.hasDate = date;
+    }
+
+    /**
+     * Finds the first timestamp in the first line of the given text.
+     *
+     * @param text the log line, or the complete event starting with the log line
+     * @return the timestamp in epoch milliseconds, or -1 if there is none
+     */
+    public long parse(CharSequence text) {
+
+        int end = text.length();
+        for (int i = 0; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                end = i;
+                break;
+            }
+        }
+        for (int start = 0; start + fields.length <= end; start++) {
+            long timestamp = parseAt(text, start);
+            if (timestamp >= 0) {
+                return timestamp;
+            }
+        }
+        return -1;
+    }
+
+    public String getFormat() {
+
+        return format;
+    }
+
+    private long parseAt(CharSequence text, int start) {
+
+        int year = 0;
+        int month = 0;
+        int day = 0;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int millis = 0;
+        for (int i = 0; i < fields.length; i++) {
+            char c = text.charAt(start + i);
+            int field = fields[i];
+            if (field == LITERAL) {
+                if (c != literals[i]) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            int digit = c - '0';
+            switch (field) {
+                case YEAR:
+                    year = year * 10 + digit;
+                    break;
+                case MONTH:
+                    month = month * 10 + digit;
+                    break;
+                case DAY:
+                    day = day * 10 + digit;
+                    break;
+                case HOUR:
+                    hour = hour * 10 + digit;
+                    break;
+                case MINUTE:
+                    minute = minute * 10 + digit;
+                    break;
+                case SECOND:
+                    second = second * 10 + digit;
+                    break;
+                default:
+                    millis = millis * 10 + digit;
+                    break;
+            }
+        }
+        if (month > 12 || day > 31 || hour > 23 || minute > 59 || second > 60) {
+            return -1;
+        }
+        long timeOfDay = ((hour * 60L + minute) * 60 + second) * 1000 + millis;
+        long localDay;
+        if (hasDate) {
+            localDay = epochDay(year, Math.max(1, month), Math.max(1, day));
+        } else {
+            // no date in the layout, the time belongs to the current day unless that would be in the future
+            long now = System.currentTimeMillis();
+            long localNow = now + offsetOf(Math.floorDiv(now, MILLIS_PER_DAY), Math.floorMod(now, MILLIS_PER_DAY));
+            localDay = Math.floorDiv(localNow, MILLIS_PER_DAY);
+            if (localDay * MILLIS_PER_DAY + timeOfDay > localNow + 3600000L) {
+                localDay--;
+            }
+        }
+        return localDay * MILLIS_PER_DAY + timeOfDay - offsetOf(localDay, timeOfDay);
+    }
+
+    private long offsetOf(long localDay, long timeOfDay) {
+
+        if (localDay != cachedLocalDay) {
+            // a window of 14 hours on both sides of the day covers every time zone
+            long start = localDay * 86400 - 50400;
+            long end = localDay * 86400 + 86400 + 50400;
+            int startOffset = zoneRules.getOffset(Instant.ofEpochSecond(start)).getTotalSeconds();
+            int endOffset = zoneRules.getOffset(Instant.ofEpochSecond(end)).getTotalSeconds();
+            cachedTransitionDay = startOffset != endOffset;
+            cachedOffset = startOffset * 1000L;
+            cachedLocalDay = localDay;
+        }
+        if (cachedTransitionDay) {
+            // daylight saving transition around this day, resolved exactly as java.time would
+            LocalDateTime localDateTime = LocalDateTime.ofEpochSecond(localDay * 86400 + timeOfDay / 1000, 0,
+                    ZoneOffset.UTC);
+            return zoneRules.getOffset(localDateTime).getTotalSeconds() * 1000L;
+        }
+        return cachedOffset;
+    }
+
+    /**
+     * Days since 1970-01-01 of a date in the proleptic Gregorian calendar.
+     */
+    private static long epochDay(int year, int month, int day) {
+
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int field(char c) {
+
+        switch (c) {
+            case 'y':
+                return YEAR;
+            case 'M':
+                return MONTH;
+            case 'd':
+                return DAY;
+            case 'H':
+                return HOUR;
+            case 'm':
+                return MINUTE;
+            case 's':
+                return SECOND;
+            case 'S':
+                return MILLIS;
+            default:
+                return LITERAL;
+        }
+    }
+
+    private static int expectedWidth(int field) {
+
+        switch (field) {
+            case YEAR:
+                return 4;
+            case MILLIS:
+                return 3;
+            default:
+                return 2;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Waits for modify, create and delete events of the watched files using a {@link WatchService} on their parent
+ * directories (inotify on Linux). A rename done by log rotation shows up as a delete of the old name followed by a
+ * create of the new file. Since some file systems (NFS, some container overlays) never deliver events, the wait also
+ * falls back to adaptive polling: it never blocks longer than the current polling interval. When the file system does
+ * not support watching at all, or none of the directories could be watched, the files are only polled.
+ */
+public class WatchServiceChangeNotifier implements LogChangeNotifier {
+
+    private static final Logger log = LogManager.getLogger(WatchServiceChangeNotifier.class);
+
+    private final WatchService watchService;
+    private final PollingChangeNotifier fallback;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Map<Path, Set<Path>> watchedFiles = new HashMap<>();
+    private long currentInterval;
+    private final long minInterval;
+    private final long maxInterval;
+
+    public WatchServiceChangeNotifier(long minInterval, long maxInterval) {
+
+        this(FileSystems.getDefault(), minInterval, maxInterval);
+    }
+
+    /**
+     * @param fileSystem the file system of the watched files
+     */
+    WatchServiceChangeNotifier(FileSystem fileSystem, long minInterval, long maxInterval) {
+
+        WatchService service = null;
+        try {
+            service = fileSystem.newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("File system events are not supported, hence falling back to polling.", e);
+        }
+        this.watchService = service;
+        this.minInterval = Math.max(1, minInterval);
+        this.maxInterval = Math.max(this.minInterval, maxInterval);
+        this.currentInterval = this.minInterval;
+        this.fallback = new PollingChangeNotifier(minInterval, maxInterval);
+    }
+
+    @Override
+    public void register(Path file) {
+
+        if (watchService == null) {
+            return;
+        }
+        Path absolute = file.toAbsolutePath().normalize();
+        Path directory = absolute.getParent();
+        try {
+            if (!watchedFiles.containsKey(directory)) {
+                WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                directories.put(key, directory);
+                watchedFiles.put(directory, new HashSet<>());
+            }
+            watchedFiles.get(directory).add(absolute.getFileName());
+        } catch (IOException e) {
+            // the directory may not exist yet, polling still picks the file up
+            log.warn("Unable to watch the directory " + directory + " for changes, falling back to polling.", e);
+        }
+    }
+
+    @Override
+    public boolean await(boolean hadData, long maxWait) throws InterruptedException {
+
+        if (directories.isEmpty()) {
+            return fallback.await(hadData, maxWait);
+        }
+        currentInterval = hadData ? minInterval : Math.min(maxInterval, currentInterval * 2);
+        WatchKey key = watchService.poll(Math.max(1, Math.min(currentInterval, maxWait)), TimeUnit.MILLISECONDS);
+        boolean changed = false;
+        while (key != null) {
+            changed |= isRelevant(key);
+            if (!key.reset()) {
+                // the directory is no longer accessible
+                Path directory = directories.remove(key);
+                watchedFiles.remove(directory);
+                log.warn("Stopped receiving events for the directory " + directory + ", falling back to polling.");
+            }
+            key = watchService.poll();
+        }
+        return changed;
+    }
+
+    private boolean isRelevant(WatchKey key) {
+
+        Path directory = directories.get(key);
+        Set<Path> files = directory == null ? null : watchedFiles.get(directory);
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                relevant = true;
+            } else if (files != null && files.contains((Path) event.context())) {
+                relevant = true;
+            }
+        }
+        return relevant;
+    }
+
+    @Override
+    public String getMode() {
+
+        return watchService == null ? fallback.getMode() : "watch_service";
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import java.nio.file.Paths;
+
+/**
+ * State of a single file served by the {@link LogWatcher}: its tailer (and with it the read offset) and the
+ * assembler of the error event currently being accumulated, which hands the completed events to the
+ * {@link LogEventQueue} instead of interpreting them on the watcher thread, and the capture windows writing the lines
+ * logged after a triggered capture.
+ */
+class WatchedLogFile implements LogTailer.LineListener {
+
+    private final String name;
+    private final LogTailer tailer;
+    private final LogEventAssembler assembler;
+    private final PostTriggerCapture postTriggerCapture;
+    private final LevelClassifier levelClassifier = new LevelClassifier();
+
+    WatchedLogFile(String name, String filepath, LogEventAssembler assembler, PostTriggerCapture postTriggerCapture) {
+
+        this.name = name;
+        this.tailer = new LogTailer(Paths.get(filepath));
+        this.assembler = assembler;
+        this.postTriggerCapture = postTriggerCapture;
+    }
+
+    String getName() {
+
+        return name;
+    }
+
+    LogTailer getTailer() {
+
+        return tailer;
+    }
+
+    LogEventAssembler getAssembler() {
+
+        return assembler;
+    }
+
+    LevelClassifier getLevelClassifier() {
+
+        return levelClassifier;
+    }
+
+    @Override
+    public void onLine(byte[] buffer, int offset, int length) {
+
+        // Check if the level of the line indicates the start of an error event, a level mentioned in the message of
+        // another line does not count
+        if (levelClassifier.isErrorLine(buffer, offset, length)) {
+            assembler.startEvent(buffer, offset, length);
+        } else {
+            // lines following an error line, such as the stack trace. Lines that do not belong to an error event,
+            // the bulk of the log, are only kept as bytes for the context of the next event and never decoded
+            assembler.appendLine(buffer, offset, length);
+        }
+        // numbered in the same order as by the assembler, for the windows to start at the line after their event
+        postTriggerCapture.onLine(buffer, offset, length);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wso2.diagnostics.utils.ConfigMapHolder;
+import org.wso2.diagnostics.watchers.logwatcher.LogPatternRule;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConfigReloaderTest {
+
+    private static final String CONFIG = "[cpu_watcher]\n" +
+            "enabled = \"true\"\n" +
+            "threshold = \"80\"\n" +
+            "interval = \"10\"\n\n" +
+            "[[log_pattern]]\n" +
+            "name = \"oom\"\n" +
+            "regex = \".*OutOfMemoryError.*\"\n" +
+            "executors = \"ServerInfo\"\n\n" +
+            "[[action_executor_configuration]]\n" +
+            "executor = \"ServerInfo\"\n";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<DiagnosticsConfig> reloads = new ArrayList<>();
+    private final LogRecorder logRecorder = new LogRecorder();
+    private Logger reloaderLogger;
+    private Level reloaderLevel;
+    private File configFile;
+    private ConfigReloader reloader;
+
+    @Before
+    public void setUp() throws IOException {
+
+        reloaderLogger = (Logger) LogManager.getLogger(ConfigReloader.class);
+        reloaderLevel = reloaderLogger.getLevel();
+        reloaderLogger.setLevel(Level.INFO);
+        logRecorder.start();
+        reloaderLogger.addAppender(logRecorder);
+
+        configFile = folder.newFile("config.toml");
+        write(CONFIG);
+        reloader = new ConfigReloader(configFile.getPath(), DiagnosticsConfig.load(configFile.getPath()));
+        reloader.addListener(reloads::add);
+    }
+
+    @After
+    public void tearDown() {
+
+        reloaderLogger.removeAppender(logRecorder);
+        reloaderLogger.setLevel(reloaderLevel);
+    }
+
+    @Test
+    public void testUnchangedFileIsNotReloaded() {
+
+        DiagnosticsConfig config = reloader.getConfig();
+        reloader.checkForChanges();
+        assertSame(config, reloader.getConfig());
+        assertEquals(0, reloads.size());
+    }
+
+    @Test
+    public void testPatternAndThresholdChangesReachTheListeners() throws IOException {
+
+        write(CONFIG.replace("threshold = \"80\"", "threshold = \"95\"")
+                .replace(".*OutOfMemoryError.*", ".*StackOverflowError.*"));
+        reloader.checkForChanges();
+
+        assertEquals(1, reloads.size());
+        DiagnosticsConfig config = reloads.get(0);
+        assertSame(config, reloader.getConfig());
+        assertEquals(95, config.getCpuWatcherThreshold());
+        List<LogPatternRule> rules = config.getAllLogPatternRules();
+        assertEquals(1, rules.size());
+        assertEquals("oom", rules.get(0).getName());
+        assertEquals(".*StackOverflowError.*", rules.get(0).getRegex());
+        assertEquals(config.getConfigMap(), ConfigMapHolder.getInstance().getConfigMap());
+        // neither key needs a restart
+        assertEquals(Collections.emptyList(), logRecorder.messages(Level.WARN));
+    }
+
+    @Test
+    public void testRestartRequiredChangeIsWarned() throws IOException {
+
+        write(CONFIG.replace("interval = \"10\"", "interval = \"30\"")
+                .replace("threshold = \"80\"", "threshold = \"90\""));
+        reloader.checkForChanges();
+
+        List<String> warnings = logRecorder.messages(Level.WARN);
+        assertEquals(1, warnings.size());
+        assertEquals("Changes to [cpu_watcher.interval] need a restart of the diagnostics tool to take effect.",
+                warnings.get(0));
+        // the rest of the configuration is applied
+        assertEquals(1, reloads.size());
+        assertEquals(90, reloader.getConfig().getCpuWatcherThreshold());
+    }
+
+    @Test
+    public void testInvalidFileKeepsTheCurrentSnapshot() throws IOException {
+
+        DiagnosticsConfig config = reloader.getConfig();
+        write(CONFIG.replace("threshold = \"80\"", "threshold = \"95") + "[cpu_watcher\n");
+        reloader.checkForChanges();
+
+        assertSame(config, reloader.getConfig());
+        assertEquals(80, reloader.getConfig().getCpuWatcherThreshold());
+        assertEquals(0, reloads.size());
+        assertEquals(config.getConfigMap(), ConfigMapHolder.getInstance().getConfigMap());
+        assertEquals(1, logRecorder.messages(Level.ERROR).size());
+
+        // the file is read again once fixed
+        write(CONFIG.replace("threshold = \"80\"", "threshold = \"95\""));
+        reloader.checkForChanges();
+        assertEquals(95, reloader.getConfig().getCpuWatcherThreshold());
+    }
+
+    @Test
+    public void testFailedCompileKeepsThePublishedConfiguration() throws IOException {
+
+        DiagnosticsConfig config = reloader.getConfig();
+        // parses, but the action executor configurations are not tables
+        write("action_executor_configuration = [\"ServerInfo\"]\n[cpu_watcher]\nthreshold = \"95\"\n");
+        try {
+            DiagnosticsConfig.reload(configFile.getPath());
+            fail("A configuration that cannot be compiled was accepted");
+        } catch (ClassCastException e) {
+            // expected
+        }
+        assertEquals(config.getConfigMap(), ConfigMapHolder.getInstance().getConfigMap());
+
+        reloader.checkForChanges();
+        assertSame(config, reloader.getConfig());
+        assertEquals(0, reloads.size());
+        assertEquals(config.getConfigMap(), ConfigMapHolder.getInstance().getConfigMap());
+    }
+
+    private void write(String content) throws IOException {
+
+        long previous = configFile.lastModified();
+        Files.write(configFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        // moved forward, as the file may be rewritten within the resolution of its modification time
+        assertTrue(configFile.setLastModified(previous + 2000));
+    }
+
+    /**
+     * Records the messages logged by the reloader.
+     */
+    private static final class LogRecorder extends AbstractAppender {
+
+        private final List<LogEvent> events = new ArrayList<>();
+
+        private LogRecorder() {
+
+            super("LogRecorder", null, null, true, Property.EMPTY_ARRAY);
+        }
+
+        @Override
+        public synchronized void append(LogEvent event) {
+
+            events.add(event.toImmutable());
+        }
+
+        private synchronized List<String> messages(Level level) {
+
+            List<String> messages = new ArrayList<>();
+            for (LogEvent event : events) {
+                if (event.getLevel() == level) {
+                    messages.add(event.getMessage().getFormattedMessage());
+                }
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.actionexecutor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CaptureSchedulerTest {
+
+    private static final long TIMEOUT = 10;
+
+    // the tasks block on the gate until the test opens it
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final Map<String, AtomicInteger> runningPerType = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxRunningPerType = new ConcurrentHashMap<>();
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() {
+
+        gate.countDown();
+    }
+
+    @Test
+    public void testGlobalLimit() throws Exception {
+
+        CaptureScheduler scheduler = new CaptureScheduler(2, 5, 10, new HashMap<>(), false);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(submit(scheduler, "Executor" + i));
+        }
+        awaitStarted(2);
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(3, scheduler.getPendingCount());
+
+        gate.countDown();
+        awaitAll(futures);
+        assertEquals(2, maxRunning.get());
+        assertEquals(5, started.size());
+        assertEquals(0, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testPerTypeLimits() throws Exception {
+
+        Map<String, Integer> executorLimits = new HashMap<>();
+        executorLimits.put("ThreadDumper", 2);
+        CaptureScheduler scheduler = new CaptureScheduler(4, 1, 10, executorLimits, false);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(submit(scheduler, "ThreadDumper"));
+            futures.add(submit(scheduler, "MemoryDumper"));
+        }
+        // two thread dumps by their own limit, a single heap dump by the default one
+        awaitStarted(3);
+        assertEquals(3, scheduler.getRunningCount());
+        assertEquals(3, scheduler.getPendingCount());
+
+        gate.countDown();
+        awaitAll(futures);
+        assertEquals(2, maxRunningPerType.get("ThreadDumper").get());
+        assertEquals(1, maxRunningPerType.get("MemoryDumper").get());
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void testWaitingTaskOfABusyTypeIsPassedOver() throws Exception {
+
+        CaptureScheduler scheduler = new CaptureScheduler(2, 1, 10, new HashMap<>(), false);
+        CountDownLatch otherGate = new CountDownLatch(1);
+        CompletableFuture<Void> first = submit(scheduler, "MemoryDumper");
+        CompletableFuture<Void> other = scheduler.submit("ThreadDumper", () -> await(otherGate));
+        CompletableFuture<Void> second = submit(scheduler, "MemoryDumper");
+        CompletableFuture<Void> third = submit(scheduler, "NetstatExecutor");
+        awaitStarted(1);
+        assertEquals(2, scheduler.getPendingCount());
+
+        // the thread dump frees a slot, the heap dump waiting first still has to wait for the running one
+        otherGate.countDown();
+        other.get(TIMEOUT, TimeUnit.SECONDS);
+        awaitStarted(2);
+        assertEquals("NetstatExecutor", started.get(1));
+        assertFalse(second.isDone());
+        assertEquals(1, scheduler.getPendingCount());
+
+        gate.countDown();
+        awaitAll(List.of(first, second, third));
+        assertEquals(1, maxRunningPerType.get("MemoryDumper").get());
+    }
+
+    @Test
+    public void testTasksOverThePendingBoundAreRejected() throws Exception {
+
+        CaptureScheduler scheduler = new CaptureScheduler(1, 1, 2, new HashMap<>(), false);
+        List<CompletableFuture<Void>> accepted = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            accepted.add(submit(scheduler, "Executor" + i));
+        }
+        CompletableFuture<Void> rejected = submit(scheduler, "Executor3");
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.join();
+            fail("The task over the pending bound was accepted");
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(2, scheduler.getPendingCount());
+
+        gate.countDown();
+        awaitAll(accepted);
+        assertEquals(3, started.size());
+        assertFalse(started.contains("Executor3"));
+    }
+
+    @Test
+    public void testFailedTaskFreesItsSlot() throws Exception {
+
+        CaptureScheduler scheduler = new CaptureScheduler(1, 1, 10, new HashMap<>(), false);
+        CompletableFuture<Void> failed = scheduler.submit("Executor", () -> {
+            throw new IllegalStateException("capture failed");
+        });
+        CompletableFuture<Void> next = scheduler.submit("Executor", () -> started.add("Executor"));
+        try {
+            failed.get(TIMEOUT, TimeUnit.SECONDS);
+            fail("The failure of the task was not reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        next.get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(List.of("Executor"), started);
+    }
+
+    @Test
+    public void testExecuteAllCompletesWhenAllExecutorsFinished() throws Exception {
+
+        CaptureScheduler scheduler = new CaptureScheduler(4, 1, 10, new HashMap<>(), false);
+        List<String> folders = Collections.synchronizedList(new ArrayList<>());
+        ActionExecutor failing = folderPath -> {
+            throw new IllegalStateException("capture failed");
+        };
+        ActionExecutor recording = folders::add;
+        // a failing executor does not fail the capture
+        scheduler.executeAll(List.of(failing, recording), "folder").get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(List.of("folder"), folders);
+    }
+
+    @Test
+    public void testVirtualThreadsFallBackToPlatformThreads() throws Exception {
+
+        CaptureScheduler scheduler = new CaptureScheduler(2, 1, 10, new HashMap<>(), true);
+        // virtual threads are final from Java 21 on, older runtimes fall back to the fixed pool
+        assertEquals(Runtime.version().feature() >= 21, scheduler.isVirtualThreads());
+        assertFalse(new CaptureScheduler(2, 1, 10, new HashMap<>(), false).isVirtualThreads());
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(submit(scheduler, "Executor" + i));
+        }
+        awaitStarted(2);
+        assertEquals(2, scheduler.getPendingCount());
+        gate.countDown();
+        awaitAll(futures);
+        assertEquals(2, maxRunning.get());
+    }
+
+    /**
+     * Submits a task blocking on the gate, recording how many tasks run at the same time.
+     */
+    private CompletableFuture<Void> submit(CaptureScheduler scheduler, String executorType) {
+
+        return scheduler.submit(executorType, () -> {
+            started.add(executorType);
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            AtomicInteger typeRunning = runningPerType.computeIfAbsent(executorType, k -> new AtomicInteger());
+            maxRunningPerType.computeIfAbsent(executorType, k -> new AtomicInteger())
+                    .accumulateAndGet(typeRunning.incrementAndGet(), Math::max);
+            await(gate);
+            typeRunning.decrementAndGet();
+            running.decrementAndGet();
+        });
+    }
+
+    private void awaitStarted(int count) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (started.size() < count) {
+            assertTrue("Only " + started.size() + " of " + count + " tasks started", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        // give a task started over the limit the time to show up
+        Thread.sleep(100);
+        assertEquals(count, started.size());
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> futures) throws Exception {
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    private static void await(CountDownLatch latch) {
+
+        try {
+            assertTrue(latch.await(TIMEOUT, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wso2.diagnostics.actionexecutor.ServerProcess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.management.MBeanServerConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JMXConnectionManagerTest {
+
+    private static final long MIN_BACKOFF = 1000;
+    private static final long MAX_BACKOFF = 4000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private JMXTestServer server;
+    private JMXConnectionManager manager;
+
+    @Before
+    public void setUp() throws IOException {
+
+        server = new JMXTestServer(MIN_BACKOFF, MAX_BACKOFF);
+        manager = server.getConnectionManager();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        server.close();
+    }
+
+    @Test
+    public void testBackoffDoublesUpToTheMaximum() {
+
+        server.setFailing(true);
+        long start = server.getTime();
+        // attempts at 0, then after backoffs of 1s, 2s, 4s and 4s
+        long[] attemptTimes = {0, 1000, 3000, 7000, 11000};
+        for (int i = 0; i < attemptTimes.length; i++) {
+            if (i > 0) {
+                server.setTime(start + attemptTimes[i] - 1);
+                assertNull(manager.getConnection("100"));
+                assertEquals("attempts 1ms before attempt " + (i + 1), i, manager.getAttempts());
+            }
+            server.setTime(start + attemptTimes[i]);
+            assertNull(manager.getConnection("100"));
+            assertEquals("attempts at attempt " + (i + 1), i + 1, manager.getAttempts());
+            assertEquals(JMXConnectionManager.State.BACKING_OFF, manager.getState());
+        }
+        assertEquals(attemptTimes.length, manager.getFailures());
+    }
+
+    @Test
+    public void testConnectsAfterTheBackoffAndResetsIt() {
+
+        server.setFailing(true);
+        assertNull(manager.getConnection("100"));
+        server.setTime(server.getTime() + MIN_BACKOFF);
+        assertNull(manager.getConnection("100"));
+
+        server.setFailing(false);
+        server.setTime(server.getTime() + 2 * MIN_BACKOFF);
+        assertNotNull(manager.getConnection("100"));
+        assertEquals(JMXConnectionManager.State.CONNECTED, manager.getState());
+        assertEquals(1, manager.getConnects());
+
+        // the next failure starts from the minimum backoff again
+        manager.invalidate(manager.getConnection("100"));
+        server.setFailing(true);
+        assertNull(manager.getConnection("100"));
+        assertEquals(4, manager.getAttempts());
+        server.setTime(server.getTime() + MIN_BACKOFF);
+        assertNull(manager.getConnection("100"));
+        assertEquals(5, manager.getAttempts());
+    }
+
+    @Test
+    public void testNewProcessIdIsAttachedWithoutWaitingForTheBackoff() {
+
+        server.setFailing(true);
+        assertNull(manager.getConnection("100"));
+        server.setFailing(false);
+        assertNotNull(manager.getConnection("200"));
+        assertEquals(Arrays.asList("100", "200"), server.getAttachedProcessIds());
+    }
+
+    @Test
+    public void testReattachesWhenThePidFileChanges() throws IOException {
+
+        System.setProperty(Constants.APP_HOME, folder.getRoot().getPath());
+        File pidFile = folder.newFile("wso2carbon.pid");
+        Files.write(pidFile.toPath(), "100\n".getBytes(StandardCharsets.UTF_8));
+        ServerProcess.setProcessId("wso2carbon.pid");
+
+        MBeanServerConnection first = manager.getConnection(ServerProcess.getProcessId());
+        assertNotNull(first);
+        assertSame(first, manager.getConnection(ServerProcess.getProcessId()));
+
+        // the server restarted and wrote its new process id
+        Files.write(pidFile.toPath(), "200\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(pidFile.setLastModified(pidFile.lastModified() + 2000));
+        MBeanServerConnection second = manager.getConnection(ServerProcess.getProcessId());
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertEquals(Arrays.asList("100", "200"), server.getAttachedProcessIds());
+        assertEquals(2, manager.getConnects());
+        assertEquals(1, manager.getDisconnects());
+        assertEquals(JMXConnectionManager.State.CONNECTED, manager.getState());
+    }
+
+    @Test
+    public void testInvalidateDropsOnlyTheCurrentConnection() {
+
+        MBeanServerConnection first = manager.getConnection("100");
+        manager.invalidate(first);
+        assertEquals(JMXConnectionManager.State.DISCONNECTED, manager.getState());
+        assertEquals(1, manager.getDisconnects());
+
+        // a disconnect does not wait for a backoff
+        MBeanServerConnection second = manager.getConnection("100");
+        assertNotNull(second);
+        assertNotSame(first, second);
+        // a late failure of the dropped connection does not drop the new one
+        manager.invalidate(first);
+        assertSame(second, manager.getConnection("100"));
+        assertEquals(2, manager.getConnects());
+        assertEquals(1, manager.getDisconnects());
+    }
+
+    @Test
+    public void testClosedConnectorIsNoticed() throws IOException {
+
+        assertNotNull(manager.getConnection("100"));
+        server.getConnectors().get(0).close();
+        assertEquals(JMXConnectionManager.State.DISCONNECTED, manager.getState());
+        assertEquals(1, manager.getDisconnects());
+
+        assertNotNull(manager.getConnection("100"));
+        assertEquals(2, manager.getConnects());
+    }
+}
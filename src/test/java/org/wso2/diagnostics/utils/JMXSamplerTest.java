@@ -0,0 +1,244 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wso2.diagnostics.actionexecutor.ServerProcess;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class JMXSamplerTest {
+
+    private static final String MEMORY = "test:type=Memory";
+    private static final String THREADING = "test:type=Threading";
+    private static final String COLLECTORS = "test:type=GarbageCollector,*";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private JMXTestServer server;
+    private final JMXSampler sampler = new JMXSampler();
+
+    @Before
+    public void setUp() throws Exception {
+
+        System.setProperty(Constants.APP_HOME, folder.getRoot().getPath());
+        Files.write(folder.newFile("wso2carbon.pid").toPath(), "100\n".getBytes(StandardCharsets.UTF_8));
+        ServerProcess.setProcessId("wso2carbon.pid");
+        server = new JMXTestServer(1000, 1000);
+        register(MEMORY);
+        register(THREADING);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        server.close();
+    }
+
+    @Test
+    public void testTicksAtTheGreatestCommonDivisor() {
+
+        Recorder fast = new Recorder();
+        Recorder slow = new Recorder();
+        sampler.addListener(fast, 1000, Collections.emptyMap());
+        sampler.addListener(slow, 5000, Collections.emptyMap());
+
+        assertEquals(1000, sampler.schedule());
+        for (int i = 0; i < 10; i++) {
+            sampler.sample();
+        }
+        assertEquals(10, fast.samples.size());
+        assertEquals(2, slow.samples.size());
+    }
+
+    @Test
+    public void testPeriodIsClampedWhenTheIntervalsHaveNoUsefulDivisor() {
+
+        // the greatest common divisor is 1ms
+        Recorder odd = new Recorder();
+        Recorder slow = new Recorder();
+        Recorder tooFast = new Recorder();
+        sampler.addListener(odd, 333, Collections.emptyMap());
+        sampler.addListener(slow, 5000, Collections.emptyMap());
+        sampler.addListener(tooFast, 30, Collections.emptyMap());
+
+        assertEquals(JMXSampler.MIN_PERIOD, sampler.schedule());
+        // 15 seconds of ticks, 333ms rounded to 300ms and 30ms to a single tick
+        for (int i = 0; i < 150; i++) {
+            sampler.sample();
+        }
+        assertEquals(50, odd.samples.size());
+        assertEquals(3, slow.samples.size());
+        assertEquals(150, tooFast.samples.size());
+    }
+
+    @Test
+    public void testAttributesAreReadOncePerMBeanPerTick() {
+
+        Recorder heap = new Recorder();
+        Recorder nonHeap = new Recorder();
+        Recorder threads = new Recorder();
+        Recorder slow = new Recorder();
+        sampler.addListener(heap, 1000, MEMORY, "Used");
+        sampler.addListener(nonHeap, 1000, MEMORY, "Committed");
+        sampler.addListener(threads, 1000, THREADING, "Used");
+        sampler.addListener(slow, 2000, MEMORY, "Max");
+        sampler.schedule();
+
+        sampler.sample();
+        assertEquals(2, server.getCalls("getAttributes"));
+        JMXSample sample = heap.samples.get(0);
+        assertSame(sample, nonHeap.samples.get(0));
+        assertSame(sample, threads.samples.get(0));
+        assertSame(sample, slow.samples.get(0));
+        assertEquals(10L, sample.get(MEMORY, "Used"));
+        assertEquals(20L, sample.get(MEMORY, "Committed"));
+        assertEquals(30L, sample.get(MEMORY, "Max"));
+        assertEquals(10L, sample.get(THREADING, "Used"));
+
+        // the slow listener is not due, its attribute is not read
+        sampler.sample();
+        assertEquals(4, server.getCalls("getAttributes"));
+        sample = heap.samples.get(1);
+        assertEquals(1, slow.samples.size());
+        assertEquals(10L, sample.get(MEMORY, "Used"));
+        assertNull(sample.get(MEMORY, "Max"));
+    }
+
+    @Test
+    public void testPatternIsResolvedOncePerConnection() throws Exception {
+
+        register("test:type=GarbageCollector,name=Young");
+        register("test:type=GarbageCollector,name=Old");
+        Recorder recorder = new Recorder();
+        Map<String, String[]> attributes = new HashMap<>();
+        attributes.put(COLLECTORS, new String[]{"Used"});
+        sampler.addListener(recorder, 1000, attributes);
+        sampler.schedule();
+
+        sampler.sample();
+        sampler.sample();
+        assertEquals(1, server.getCalls("queryNames"));
+        List<String> collectors = Arrays.asList("test:name=Old,type=GarbageCollector",
+                "test:name=Young,type=GarbageCollector");
+        assertEquals(collectors, recorder.samples.get(1).getObjectNames(COLLECTORS));
+        assertEquals(Arrays.asList(10L, 10L), recorder.samples.get(1).getAll(COLLECTORS, "Used"));
+
+        // the server restarted with another collector
+        server.getMBeanServer().unregisterMBean(new ObjectName("test:type=GarbageCollector,name=Old"));
+        register("test:type=GarbageCollector,name=Concurrent");
+        JMXConnectionManager manager = server.getConnectionManager();
+        manager.invalidate(manager.getConnection(ServerProcess.getProcessId()));
+
+        sampler.sample();
+        assertEquals(2, server.getCalls("queryNames"));
+        assertEquals(Arrays.asList("test:name=Concurrent,type=GarbageCollector",
+                "test:name=Young,type=GarbageCollector"), recorder.samples.get(2).getObjectNames(COLLECTORS));
+        assertEquals(Arrays.asList(10L, 10L), recorder.samples.get(2).getAll(COLLECTORS, "Used"));
+        sampler.sample();
+        assertEquals(2, server.getCalls("queryNames"));
+    }
+
+    @Test
+    public void testNoValuesWhileTheServerIsDown() {
+
+        server.setFailing(true);
+        Recorder recorder = new Recorder();
+        Map<String, String[]> attributes = new HashMap<>();
+        attributes.put(MEMORY, new String[]{"Used"});
+        attributes.put(COLLECTORS, new String[]{"Used"});
+        sampler.addListener(recorder, 1000, attributes);
+        sampler.schedule();
+
+        sampler.sample();
+        JMXSample sample = recorder.samples.get(0);
+        assertNull(sample.get(MEMORY, "Used"));
+        assertEquals(Collections.emptyList(), sample.getObjectNames(COLLECTORS));
+        assertEquals(0, server.getCalls("getAttributes"));
+    }
+
+    private void register(String objectName) throws Exception {
+
+        server.getMBeanServer().registerMBean(new StandardMBean(new Usage(), UsageMBean.class),
+                new ObjectName(objectName));
+    }
+
+    private static final class Recorder implements JMXSampler.Listener {
+
+        private final List<JMXSample> samples = new ArrayList<>();
+
+        @Override
+        public void onSample(JMXSample sample) {
+
+            samples.add(sample);
+        }
+    }
+
+    /**
+     * An MBean of the tests.
+     */
+    public interface UsageMBean {
+
+        long getUsed();
+
+        long getCommitted();
+
+        long getMax();
+    }
+
+    private static final class Usage implements UsageMBean {
+
+        @Override
+        public long getUsed() {
+
+            return 10;
+        }
+
+        @Override
+        public long getCommitted() {
+
+            return 20;
+        }
+
+        @Override
+        public long getMax() {
+
+            return 30;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+import javax.management.remote.MBeanServerForwarder;
+
+/**
+ * An MBean server of the tests, standing for the server process. The shared {@link JMXConnectionManager} is replaced
+ * with one connecting to it over a JMX connector, whatever the process id, on a clock set by the tests. The calls
+ * made on the MBean server through the connector are counted by their method name.
+ */
+public class JMXTestServer implements AutoCloseable {
+
+    private final MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+    private final JMXConnectorServer connectorServer;
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private final List<String> attachedProcessIds = new CopyOnWriteArrayList<>();
+    private final List<JMXConnector> connectors = new CopyOnWriteArrayList<>();
+    private final AtomicLong time = new AtomicLong(1000000);
+    private final JMXConnectionManager connectionManager;
+    private volatile boolean failing;
+
+    public JMXTestServer(long minBackoff, long maxBackoff) throws IOException {
+
+        connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://"),
+                null, mBeanServer);
+        connectorServer.setMBeanServerForwarder(countingForwarder());
+        connectorServer.start();
+        connectionManager = new JMXConnectionManager(minBackoff, maxBackoff, pid -> {
+            attachedProcessIds.add(pid);
+            if (failing) {
+                throw new IOException("Unable to attach to " + pid);
+            }
+            JMXConnector connector = JMXConnectorFactory.connect(connectorServer.getAddress());
+            connectors.add(connector);
+            return connector;
+        }, time::get);
+        JMXConnectionManager.setInstance(connectionManager);
+    }
+
+    public MBeanServer getMBeanServer() {
+
+        return mBeanServer;
+    }
+
+    public JMXConnectionManager getConnectionManager() {
+
+        return connectionManager;
+    }
+
+    /**
+     * @param failing whether the attaches fail, such as while the server is down
+     */
+    public void setFailing(boolean failing) {
+
+        this.failing = failing;
+    }
+
+    /**
+     * @return the process ids attached to, including by the failed attaches
+     */
+    public List<String> getAttachedProcessIds() {
+
+        return attachedProcessIds;
+    }
+
+    /**
+     * @return the connectors made, the last one is the current connection
+     */
+    public List<JMXConnector> getConnectors() {
+
+        return connectors;
+    }
+
+    /**
+     * Sets the time of the clock of the connection manager, in milliseconds.
+     */
+    public void setTime(long millis) {
+
+        time.set(millis);
+    }
+
+    public long getTime() {
+
+        return time.get();
+    }
+
+    /**
+     * @param method the name of a method of the MBean server, such as {@code getAttributes}
+     * @return the number of calls of the method made through the connectors
+     */
+    public int getCalls(String method) {
+
+        AtomicInteger count = calls.get(method);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return a sample holding only the MBeans read for an object name pattern, as the watchers subscribing to the
+     * notifications of the MBeans get it
+     */
+    public static JMXSample sampleOf(String pattern, List<String> objectNames) {
+
+        return new JMXSample(System.currentTimeMillis(), Collections.emptyMap(),
+                Collections.singletonMap(pattern, objectNames));
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        JMXConnectionManager.setInstance(null);
+        for (JMXConnector connector : connectors) {
+            try {
+                connector.close();
+            } catch (IOException e) {
+                // closed already
+            }
+        }
+        connectorServer.stop();
+    }
+
+    private MBeanServerForwarder countingForwarder() {
+
+        MBeanServer[] target = new MBeanServer[1];
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getMBeanServer":
+                    return target[0];
+                case "setMBeanServer":
+                    target[0] = (MBeanServer) args[0];
+                    return null;
+                default:
+                    calls.computeIfAbsent(method.getName(), k -> new AtomicInteger()).incrementAndGet();
+                    try {
+                        return method.invoke(target[0], args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        };
+        return (MBeanServerForwarder) Proxy.newProxyInstance(MBeanServerForwarder.class.getClassLoader(),
+                new Class<?>[]{MBeanServerForwarder.class}, handler);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetricHistoryTest {
+
+    private static final long START = 1714557600000L;
+    private static final String HEADER = "time,cpu_usage,heap_used,heap_committed,heap_max,non_heap_used,gc_count," +
+            "gc_time,thread_count,open_files";
+    private static final String YOUNG = "java.lang:type=GarbageCollector,name=G1 Young Generation";
+    private static final String OLD = "java.lang:type=GarbageCollector,name=G1 Old Generation";
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOverfilledRingKeepsTheLatestSamplesInOrder() throws Exception {
+
+        // 5 samples kept
+        MetricHistory history = new MetricHistory(1000, 5000, 60000);
+        for (int i = 0; i < 8; i++) {
+            history.onSample(sample(START + i * 1000L, 0.1 * i, i));
+        }
+
+        Path file = folder.getRoot().toPath().resolve(MetricHistory.FILE_NAME);
+        assertEquals(5, history.write(file, 0));
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(6, lines.size());
+        assertEquals(HEADER, lines.get(0));
+        for (int i = 3; i < 8; i++) {
+            assertEquals(row(START + i * 1000L, String.valueOf(i * 10.0), i), lines.get(i - 2));
+        }
+    }
+
+    @Test
+    public void testRingWrappedSeveralTimes() throws Exception {
+
+        MetricHistory history = new MetricHistory(1000, 3000, 60000);
+        for (int i = 0; i < 11; i++) {
+            history.onSample(sample(START + i * 1000L, 0.5, i));
+        }
+
+        Path file = folder.getRoot().toPath().resolve(MetricHistory.FILE_NAME);
+        assertEquals(3, history.write(file, 0));
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList(HEADER, row(START + 8000, "50.0", 8), row(START + 9000, "50.0", 9),
+                row(START + 10000, "50.0", 10)), lines);
+    }
+
+    @Test
+    public void testOnlyTheSamplesOfTheExportWindowAreWritten() throws Exception {
+
+        MetricHistory history = new MetricHistory(1000, 10000, 60000);
+        for (int i = 0; i < 6; i++) {
+            history.onSample(sample(START + i * 1000L, 0.25, i));
+        }
+
+        Path file = folder.getRoot().toPath().resolve(MetricHistory.FILE_NAME);
+        // the sample at the start of the window is included
+        assertEquals(2, history.write(file, START + 4000));
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList(HEADER, row(START + 4000, "25.0", 4), row(START + 5000, "25.0", 5)), lines);
+
+        assertEquals(0, history.write(file, START + 6000));
+        assertEquals(Arrays.asList(HEADER), Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMissingMetricsAreWrittenAsMinusOne() throws Exception {
+
+        MetricHistory history = new MetricHistory(1000, 5000, 60000);
+        // the server was down, nothing could be read
+        history.onSample(new JMXSample(START, new HashMap<>(), new HashMap<>()));
+        // the CPU load is negative until the JVM has measured it
+        Map<String, Map<String, Object>> values = values(-1.0, 1);
+        history.onSample(new JMXSample(START + 1000, values, patterns()));
+
+        Path file = folder.getRoot().toPath().resolve(MetricHistory.FILE_NAME);
+        assertEquals(2, history.write(file, 0));
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(TIME_FORMAT.format(Instant.ofEpochMilli(START)) + ",-1,-1,-1,-1,-1,-1,-1,-1,-1", lines.get(1));
+        assertEquals(row(START + 1000, "-1", 1), lines.get(2));
+    }
+
+    @Test
+    public void testCpuUsageIsRoundedToOneDecimal() throws Exception {
+
+        MetricHistory history = new MetricHistory(1000, 5000, 60000);
+        history.onSample(sample(START, 0.12345, 0));
+        history.onSample(sample(START + 1000, 1.0, 1));
+
+        Path file = folder.getRoot().toPath().resolve(MetricHistory.FILE_NAME);
+        history.write(file, 0);
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(row(START, "12.3", 0), lines.get(1));
+        assertEquals(row(START + 1000, "100.0", 1), lines.get(2));
+    }
+
+    @Test
+    public void testUnusedCollectorIsLeftOutOfTheTotals() throws Exception {
+
+        MetricHistory history = new MetricHistory(1000, 5000, 60000);
+        Map<String, Map<String, Object>> values = values(0.5, 0);
+        // the old generation collector did not run yet and reports -1 for its time
+        values.get(OLD).put(JMXDataRetriever.COLLECTION_TIME, -1L);
+        history.onSample(new JMXSample(START, values, patterns()));
+
+        Path file = folder.getRoot().toPath().resolve(MetricHistory.FILE_NAME);
+        history.write(file, 0);
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(TIME_FORMAT.format(Instant.ofEpochMilli(START)) + ",50.0,100,200,1000,50,3,10,40,60",
+                lines.get(1));
+    }
+
+    /**
+     * @return a sample with every metric set, the sizes, counts and times growing with the step
+     */
+    private static JMXSample sample(long time, double cpuLoad, int step) throws OpenDataException {
+
+        return new JMXSample(time, values(cpuLoad, step), patterns());
+    }
+
+    private static Map<String, Map<String, Object>> values(double cpuLoad, int step) throws OpenDataException {
+
+        Map<String, Map<String, Object>> values = new HashMap<>();
+        Map<String, Object> os = new HashMap<>();
+        os.put(JMXDataRetriever.PROCESS_CPU_LOAD, cpuLoad);
+        os.put("OpenFileDescriptorCount", 60L + step);
+        values.put(JMXDataRetriever.OPERATING_SYSTEM_MBEAN, os);
+        Map<String, Object> memory = new HashMap<>();
+        memory.put(JMXDataRetriever.HEAP_MEMORY_USAGE, usage(100 + step, 200, 1000));
+        memory.put("NonHeapMemoryUsage", usage(50 + step, 80, -1));
+        values.put(JMXDataRetriever.MEMORY_MBEAN, memory);
+        Map<String, Object> threading = new HashMap<>();
+        threading.put(JMXDataRetriever.THREAD_COUNT, 40 + step);
+        values.put(JMXDataRetriever.THREADING_MBEAN, threading);
+        Map<String, Object> young = new HashMap<>();
+        young.put(JMXDataRetriever.COLLECTION_COUNT, 2L + step);
+        young.put(JMXDataRetriever.COLLECTION_TIME, 10L + step);
+        values.put(YOUNG, young);
+        Map<String, Object> old = new HashMap<>();
+        old.put(JMXDataRetriever.COLLECTION_COUNT, 1L);
+        old.put(JMXDataRetriever.COLLECTION_TIME, 5L);
+        values.put(OLD, old);
+        return values;
+    }
+
+    private static Map<String, List<String>> patterns() {
+
+        Map<String, List<String>> patterns = new HashMap<>();
+        patterns.put(JMXDataRetriever.GARBAGE_COLLECTOR_MBEANS, Arrays.asList(YOUNG, OLD));
+        return patterns;
+    }
+
+    private static CompositeData usage(long used, long committed, long max) throws OpenDataException {
+
+        String[] items = {"init", "used", "committed", "max"};
+        CompositeType type = new CompositeType("MemoryUsage", "memory usage", items, items,
+                new OpenType<?>[]{SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG});
+        return new CompositeDataSupport(type, items, new Object[]{0L, used, committed, max});
+    }
+
+    /**
+     * @return the CSV row of a sample made by {@link #sample(long, double, int)}
+     */
+    private static String row(long time, String cpuUsage, int step) {
+
+        return TIME_FORMAT.format(Instant.ofEpochMilli(time)) + "," + cpuUsage + "," + (100 + step) + ",200,1000," +
+                (50 + step) + "," + (3 + step) + "," + (15 + step) + "," + (40 + step) + "," + (60 + step);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlidingWindowCounterTest {
+
+    @Test
+    public void testCountsEventsWithinTheWindow() {
+
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 10);
+        assertEquals(1, counter.add(0));
+        assertEquals(2, counter.add(1000));
+        assertEquals(3, counter.add(1500));
+        assertEquals(4, counter.add(9999));
+        assertEquals(4, counter.count(9999));
+    }
+
+    @Test
+    public void testEventsExpireWhenTheWindowMoves() {
+
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 10);
+        counter.add(0);
+        counter.add(5000);
+        // the bucket of the first event has left the window
+        assertEquals(2, counter.add(10000));
+        assertEquals(1, counter.add(20000));
+        assertEquals(0, counter.count(40000));
+    }
+
+    @Test
+    public void testWrappedBucketStartsOver() {
+
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 10);
+        counter.add(500);
+        counter.add(600);
+        // the same bucket of the ring, a window later
+        assertEquals(1, counter.add(10500));
+        assertEquals(1, counter.count(10500));
+    }
+
+    @Test
+    public void testLateEvents() {
+
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 10);
+        counter.add(20000);
+        // older than the window, such as a line of a file that was read late
+        assertEquals(1, counter.add(5000));
+        // out of order but still within the window
+        assertEquals(2, counter.add(15000));
+        assertEquals(2, counter.count(20000));
+    }
+
+    @Test
+    public void testReset() {
+
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 10);
+        counter.add(1000);
+        counter.add(2000);
+        counter.reset();
+        assertEquals(0, counter.count(2000));
+        assertEquals(1, counter.add(3000));
+    }
+
+    @Test
+    public void testWindowIsAMultipleOfTheBucketWidth() {
+
+        assertEquals(1000, new SlidingWindowCounter(1005, 10).getWindow());
+        assertEquals(60000, new SlidingWindowCounter(60000).getWindow());
+        // a window shorter than the number of buckets has buckets of one millisecond
+        assertEquals(10, new SlidingWindowCounter(5, 10).getWindow());
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GarbageCollectorMXBean;
+import com.sun.management.GcInfo;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wso2.diagnostics.actionexecutor.ServerProcess;
+import org.wso2.diagnostics.utils.Constants;
+import org.wso2.diagnostics.utils.JMXConnectionManager;
+import org.wso2.diagnostics.utils.JMXDataRetriever;
+import org.wso2.diagnostics.utils.JMXTestServer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ObjectName;
+import javax.management.StandardEmitterMBean;
+import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class GCWatcherTest {
+
+    private static final String YOUNG = "G1 Young Generation";
+    private static final String OLD = "G1 Old Generation";
+    private static final String CONCURRENT = "G1 Concurrent GC";
+    private static final String BROKEN = "Broken";
+    private static final long WINDOW = 10000;
+    // how long to wait for a notification sent through the JMX connector
+    private static final long DELIVERY_TIMEOUT = 5000;
+
+    // a GC of this JVM, copied with other durations into the synthetic notifications
+    private static GcInfo gcInfoTemplate;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong captures = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, StandardEmitterMBean> emitters = new HashMap<>();
+
+    @BeforeClass
+    public static void setUpClass() {
+
+        System.gc();
+        for (java.lang.management.GarbageCollectorMXBean collector :
+                ManagementFactory.getGarbageCollectorMXBeans()) {
+            GcInfo gcInfo = ((GarbageCollectorMXBean) collector).getLastGcInfo();
+            if (gcInfo != null) {
+                gcInfoTemplate = gcInfo;
+            }
+        }
+        assertNotNull("no GC of the test JVM to copy the notifications from", gcInfoTemplate);
+    }
+
+    @Before
+    public void setUp() {
+
+        captures.set(0);
+    }
+
+    @Test
+    public void testHistogramCountsThePausesOfEachCollectorInTheirBuckets() throws IOException {
+
+        GCWatcher watcher = watcher(Long.MAX_VALUE, 100);
+        long time = 1000000;
+        for (long duration : new long[]{1, 2, 3, 50, 20000}) {
+            watcher.handleNotification(notification(YOUNG, duration, time++), null);
+        }
+        watcher.handleNotification(notification(OLD, 7, time++), null);
+        // the duration of a concurrent cycle is not a pause
+        watcher.handleNotification(notification(CONCURRENT, 300, time), null);
+
+        List<String> lines = histograms(watcher);
+        assertEquals("collector,count,total_ms,max_ms,le_1,le_2,le_5,le_10,le_20,le_50,le_100,le_200,le_500," +
+                "le_1000,le_2000,le_5000,le_10000,gt_10000", lines.get(0));
+        assertEquals(OLD + ",1,7,7,0,0,0,1,0,0,0,0,0,0,0,0,0,0", lines.get(1));
+        assertEquals(YOUNG + ",5,20056,20000,1,1,1,0,0,1,0,0,0,0,0,0,0,1", lines.get(2));
+        assertEquals(3, lines.size());
+    }
+
+    @Test
+    public void testPauseAtTheThresholdTriggers() {
+
+        GCWatcher watcher = watcher(500, 100);
+        watcher.handleNotification(notification(YOUNG, 499, 1000000), null);
+        assertEquals(0, captures.get());
+        watcher.handleNotification(notification(YOUNG, 500, 1000001), null);
+        assertEquals(1, captures.get());
+    }
+
+    @Test
+    public void testTimeInGCWithinTheWindowTriggers() {
+
+        // 10% of the 10s window is 1000ms
+        GCWatcher watcher = watcher(Long.MAX_VALUE, 10);
+        long start = 1000000;
+        watcher.handleNotification(notification(YOUNG, 400, start), null);
+        watcher.handleNotification(notification(YOUNG, 400, start + 3000), null);
+        // the first pause leaves the window, 800ms within it
+        watcher.handleNotification(notification(YOUNG, 400, start + WINDOW), null);
+        assertEquals(0, captures.get());
+        // 1100ms within the window
+        watcher.handleNotification(notification(YOUNG, 300, start + WINDOW + 1000), null);
+        assertEquals(1, captures.get());
+
+        // the window starts over after a trigger
+        watcher.handleNotification(notification(YOUNG, 900, start + WINDOW + 2000), null);
+        assertEquals(1, captures.get());
+        watcher.handleNotification(notification(YOUNG, 100, start + WINDOW + 3000), null);
+        assertEquals(2, captures.get());
+    }
+
+    @Test
+    public void testSubscribesOncePerConnection() throws Exception {
+
+        try (JMXTestServer server = serverWithCollectors(YOUNG, OLD)) {
+            GCWatcher watcher = watcher(Long.MAX_VALUE, 100);
+            List<String> collectors = objectNames(YOUNG, OLD);
+
+            watcher.onSample(JMXTestServer.sampleOf(JMXDataRetriever.GARBAGE_COLLECTOR_MBEANS, collectors));
+            // a later sample on the same connection does not subscribe again
+            watcher.onSample(JMXTestServer.sampleOf(JMXDataRetriever.GARBAGE_COLLECTOR_MBEANS, collectors));
+            awaitDelivery(watcher, OLD);
+            emit(YOUNG, 10);
+            awaitPauses(watcher, YOUNG, 1);
+
+            // the listeners are gone with the connection, the next sample subscribes on the new one
+            JMXConnectionManager manager = server.getConnectionManager();
+            manager.invalidate(manager.getConnection(ServerProcess.getProcessId()));
+            manager.getConnection(ServerProcess.getProcessId());
+            assertEquals(2, manager.getConnects());
+            watcher.onSample(JMXTestServer.sampleOf(JMXDataRetriever.GARBAGE_COLLECTOR_MBEANS, collectors));
+            awaitDelivery(watcher, OLD);
+            emit(YOUNG, 10);
+            awaitPauses(watcher, YOUNG, 2);
+            emit(YOUNG, 10);
+            awaitPauses(watcher, YOUNG, 3);
+            assertEquals(3, pauses(watcher, YOUNG));
+        }
+    }
+
+    @Test
+    public void testPartialSubscriptionIsUndone() throws Exception {
+
+        try (JMXTestServer server = serverWithCollectors(YOUNG, OLD)) {
+            // an MBean that does not emit notifications fails the subscription after the first collector
+            server.getMBeanServer().registerMBean(new StandardMBean(new Collector(BROKEN), CollectorMBean.class),
+                    new ObjectName(objectName(BROKEN)));
+            GCWatcher watcher = watcher(Long.MAX_VALUE, 100);
+
+            watcher.onSample(JMXTestServer.sampleOf(JMXDataRetriever.GARBAGE_COLLECTOR_MBEANS,
+                    objectNames(YOUNG, BROKEN)));
+            watcher.onSample(JMXTestServer.sampleOf(JMXDataRetriever.GARBAGE_COLLECTOR_MBEANS,
+                    objectNames(YOUNG, OLD)));
+            awaitDelivery(watcher, OLD);
+
+            // a listener left from the failed subscription would count each pause twice
+            emit(YOUNG, 10);
+            awaitPauses(watcher, YOUNG, 1);
+            emit(YOUNG, 10);
+            awaitPauses(watcher, YOUNG, 2);
+            assertEquals(2, pauses(watcher, YOUNG));
+        }
+    }
+
+    private GCWatcher watcher(long pauseThreshold, int timeThreshold) {
+
+        return new GCWatcher(pauseThreshold, timeThreshold, WINDOW, 0, new HashSet<>(Arrays.asList(
+                GCWatcher.DEFAULT_IGNORED_COLLECTORS.split(",")))) {
+            @Override
+            CompletableFuture<Void> capture() {
+
+                captures.incrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+    }
+
+    private Notification notification(String collector, long duration, long time) {
+
+        try {
+            CompositeData gcInfo = copy(gcInfoTemplate, "endTime", gcInfoTemplate.getStartTime() + duration);
+            CompositeData info = new GarbageCollectionNotificationInfo(collector, "end of minor GC",
+                    "G1 Evacuation Pause", gcInfoTemplate).toCompositeData(null);
+            Notification notification = new Notification(
+                    GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION, objectName(collector),
+                    sequence.incrementAndGet(), time);
+            // the GcInfo of the template is replaced by its open data, which can be sent through the JMX connector
+            notification.setUserData(copy(info, "gcInfo", gcInfo));
+            return notification;
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static CompositeData copy(CompositeData compositeData, String key, Object value)
+            throws OpenDataException {
+
+        CompositeType type = compositeData.getCompositeType();
+        Map<String, Object> items = new HashMap<>();
+        for (String item : type.keySet()) {
+            items.put(item, compositeData.get(item));
+        }
+        items.put(key, value);
+        return new CompositeDataSupport(type, items);
+    }
+
+    private JMXTestServer serverWithCollectors(String... collectors) throws Exception {
+
+        System.setProperty(Constants.APP_HOME, folder.getRoot().getPath());
+        Files.write(folder.newFile("wso2carbon.pid").toPath(), "100\n".getBytes(StandardCharsets.UTF_8));
+        ServerProcess.setProcessId("wso2carbon.pid");
+        JMXTestServer server = new JMXTestServer(1000, 1000);
+        for (String collector : collectors) {
+            registerCollector(server, collector);
+        }
+        // the watcher subscribes once the sampler connected
+        assertNotNull(server.getConnectionManager().getConnection(ServerProcess.getProcessId()));
+        return server;
+    }
+
+    private void registerCollector(JMXTestServer server, String collector) throws Exception {
+
+        StandardEmitterMBean mBean = new StandardEmitterMBean(new Collector(collector), CollectorMBean.class,
+                new NotificationBroadcasterSupport());
+        server.getMBeanServer().registerMBean(mBean, new ObjectName(objectName(collector)));
+        emitters.put(collector, mBean);
+    }
+
+    private void emit(String collector, long duration) {
+
+        emitters.get(collector).sendNotification(notification(collector, duration, System.currentTimeMillis()));
+    }
+
+    private static String objectName(String collector) {
+
+        return "java.lang:type=GarbageCollector,name=" + collector;
+    }
+
+    private static List<String> objectNames(String... collectors) {
+
+        String[] objectNames = new String[collectors.length];
+        for (int i = 0; i < collectors.length; i++) {
+            objectNames[i] = objectName(collectors[i]);
+        }
+        return Arrays.asList(objectNames);
+    }
+
+    private List<String> histograms(GCWatcher watcher) throws IOException {
+
+        Path file = folder.getRoot().toPath().resolve(GCWatcher.FILE_NAME);
+        watcher.writeHistograms(file);
+        return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+
+    private long pauses(GCWatcher watcher, String collector) throws IOException {
+
+        for (String line : histograms(watcher)) {
+            if (line.startsWith(collector + ",")) {
+                return Long.parseLong(line.split(",")[1]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Waits for the notifications of a collector to be delivered. The JMX connector starts fetching the notifications
+     * of a new listener in the background, those sent before it does are lost, hence the collector is sent pauses
+     * until one of them arrived.
+     */
+    private void awaitDelivery(GCWatcher watcher, String collector) throws Exception {
+
+        long count = pauses(watcher, collector);
+        long deadline = System.currentTimeMillis() + DELIVERY_TIMEOUT;
+        while (pauses(watcher, collector) == count && System.currentTimeMillis() < deadline) {
+            emit(collector, 20);
+            Thread.sleep(50);
+        }
+        assertTrue("no notification of " + collector + " was delivered", pauses(watcher, collector) > count);
+    }
+
+    private void awaitPauses(GCWatcher watcher, String collector, long count) throws Exception {
+
+        long deadline = System.currentTimeMillis() + DELIVERY_TIMEOUT;
+        while (pauses(watcher, collector) < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, pauses(watcher, collector));
+    }
+
+    /**
+     * A garbage collector MBean of the tests.
+     */
+    public interface CollectorMBean {
+
+        String getName();
+    }
+
+    private static final class Collector implements CollectorMBean {
+
+        private final String name;
+
+        private Collector(String name) {
+
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+
+            return name;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class BackfillScannerTest {
+
+    private static final int EVENTS = 200;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<LogPatternRule> rules = Arrays.asList(
+            new LogPatternRule("oom", ".*OutOfMemoryError.*", null, null, null, null, new String[0], 0, 1, 60),
+            // matches on the exception in the stack trace, which is only known once the event is complete
+            new LogPatternRule("sql", null, null, null, "SQLException", null, new String[0], 0, 1, 60),
+            // never checked for the events matching the first pattern
+            new LogPatternRule("any-error", null, Collections.singleton("ERROR"), null, null, null, new String[0], 0,
+                    1, 60));
+    private String content;
+
+    @Before
+    public void setUp() {
+
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < EVENTS; i++) {
+            // 50 events per minute
+            String timestamp = String.format("[2024-05-01 10:%02d:%02d,000]", i / 50, i % 50);
+            log.append(timestamp).append("  INFO {org.wso2.Sample} - Request ").append(i).append(" received\n");
+            if (i % 2 == 0) {
+                log.append(timestamp).append(" ERROR {org.wso2.Sample} - Out of heap java.lang.OutOfMemoryError: ")
+                        .append("Java heap space\r\n");
+            } else {
+                log.append(timestamp).append(" ERROR {org.wso2.Sample} - Query failed\n")
+                        .append("java.sql.SQLException: connection closed\n")
+                        .append("\tat org.wso2.Sample.query(Sample.java:").append(i).append(")\n")
+                        .append("\tat org.wso2.Sample.run(Sample.java:20)\n");
+            }
+        }
+        // an error without a timestamp is counted but not in the histogram
+        log.append("ERROR java.lang.OutOfMemoryError: Metaspace\n");
+        // the last line has no line break
+        log.append("[2024-05-01 10:04:00,000]  INFO {org.wso2.Sample} - Shutting down");
+        content = log.toString();
+    }
+
+    @Test
+    public void testCountsMatchingEventsOfPlainFile() throws IOException {
+
+        Path file = write("wso2carbon.log", content);
+        BackfillScanner.Report report = scanner(BackfillScanner.CHUNK_SIZE).scan(Collections.singletonList(file));
+
+        assertExpectedCounts(report);
+        assertEquals(Files.size(file), report.getBytes());
+        assertEquals(content.split("\n").length, report.getLines());
+
+        BackfillScanner.PatternStats oom = report.getPatternStats().get(0);
+        assertEquals(1, oom.getUntimed());
+        assertEquals(time(0, 0), oom.getFirst());
+        assertEquals(time(3, 48), oom.getLast());
+        TreeMap<Long, Long> histogram = new TreeMap<>();
+        for (int minute = 0; minute < 4; minute++) {
+            histogram.put(time(minute, 0), 25L);
+        }
+        assertEquals(histogram, oom.getHistogram());
+    }
+
+    @Test
+    public void testChunksOfMappedFileGiveTheSameCounts() throws IOException {
+
+        Path file = write("wso2carbon.log", content);
+        // chunk sizes that split the file within the stack traces of the events
+        for (long chunkSize : new long[]{1, 64, 100, 333, 4096}) {
+            BackfillScanner.Report report = scanner(chunkSize).scan(Collections.singletonList(file));
+            assertExpectedCounts(report);
+            assertEquals("chunk size " + chunkSize, content.split("\n").length, report.getLines());
+            assertEquals(Files.size(file), report.getBytes());
+            assertEquals(scanner(BackfillScanner.CHUNK_SIZE).scan(Collections.singletonList(file))
+                    .getPatternStats().get(1).getHistogram(), report.getPatternStats().get(1).getHistogram());
+        }
+    }
+
+    @Test
+    public void testGzippedFileGivesTheSameCounts() throws IOException {
+
+        Path file = folder.getRoot().toPath().resolve("wso2carbon-05-01-2024.log.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        BackfillScanner.Report report = scanner(BackfillScanner.CHUNK_SIZE).scan(Collections.singletonList(file));
+
+        assertExpectedCounts(report);
+        assertEquals(content.split("\n").length, report.getLines());
+        // compressed bytes
+        assertEquals(Files.size(file), report.getBytes());
+    }
+
+    @Test
+    public void testScansPlainAndGzippedFilesTogether() throws IOException {
+
+        Path plain = write("wso2carbon.log", content);
+        Path gzip = folder.getRoot().toPath().resolve("wso2carbon.log.1.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        BackfillScanner.Report report = scanner(100).scan(BackfillScanner.findLogFiles(folder.getRoot().toPath(),
+                "wso2carbon*.log*"));
+
+        assertEquals(2 * (EVENTS + 1), report.getEvents());
+        assertEquals(2 * (EVENTS / 2 + 1), report.getPatternStats().get(0).getCount());
+        assertEquals(EVENTS, report.getPatternStats().get(1).getCount());
+        assertEquals(Files.size(plain) + Files.size(gzip), report.getBytes());
+    }
+
+    @Test
+    public void testFindLogFilesInNameOrder() throws IOException {
+
+        write("wso2carbon.log", "");
+        write("wso2carbon.log.2", "");
+        write("wso2carbon.log.1", "");
+        write("http_access.log", "");
+        folder.newFolder("wso2carbon.log.d");
+
+        Path root = folder.getRoot().toPath();
+        assertEquals(Arrays.asList(root.resolve("wso2carbon.log"), root.resolve("wso2carbon.log.1"),
+                root.resolve("wso2carbon.log.2")), BackfillScanner.findLogFiles(root, "wso2carbon*.log*"));
+    }
+
+    private void assertExpectedCounts(BackfillScanner.Report report) {
+
+        assertEquals(EVENTS + 1, report.getEvents());
+        assertEquals(EVENTS / 2 + 1, report.getPatternStats().get(0).getCount());
+        assertEquals(EVENTS / 2, report.getPatternStats().get(1).getCount());
+        assertEquals(0, report.getPatternStats().get(2).getCount());
+    }
+
+    private BackfillScanner scanner(long chunkSize) {
+
+        return new BackfillScanner(rules, TimestampParser.DEFAULT_FORMAT, 2, chunkSize);
+    }
+
+    private Path write(String name, String text) throws IOException {
+
+        return Files.write(folder.getRoot().toPath().resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long time(int minute, int second) {
+
+        return LocalDateTime.of(2024, 5, 1, 10, minute, second).atZone(ZoneId.systemDefault()).toInstant()
+                .toEpochMilli();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintCacheTest {
+
+    private static final String ERROR_LINE =
+            "[2024-05-01 10:00:00,000] ERROR {org.wso2.carbon.Sample} - Request failed";
+
+    @Test
+    public void testOccurrencesOfTheSameErrorShareAFingerprint() {
+
+        FingerprintCache cache = new FingerprintCache(16, 3, 0, 60000);
+        FingerprintCache.Fingerprint first = cache.record(trace("java.lang.IllegalStateException", 10, 0x1a2b), 0);
+        // line numbers of lambdas and object hashes differ between builds and occurrences
+        FingerprintCache.Fingerprint second = cache.record(trace("java.lang.IllegalStateException", 42, 0x3c4d), 1000);
+
+        assertSame(first, second);
+        assertEquals(2, second.getCount());
+        assertEquals(0, second.getFirstSeen());
+        assertEquals(1000, second.getLastSeen());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDifferentErrorsHaveDifferentFingerprints() {
+
+        FingerprintCache cache = new FingerprintCache(16, 3, 0, 60000);
+        FingerprintCache.Fingerprint illegalState = cache.record(trace("java.lang.IllegalStateException", 10, 1), 0);
+        FingerprintCache.Fingerprint nullPointer = cache.record(trace("java.lang.NullPointerException", 10, 1), 0);
+
+        assertNotSame(illegalState, nullPointer);
+        assertNotEquals(illegalState.getKey(), nullPointer.getKey());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testErrorsWithoutStackTraceAreKeyedOnLoggerAndMessage() {
+
+        FingerprintCache cache = new FingerprintCache(16, 3, 0, 60000);
+        FingerprintCache.Fingerprint first = cache.record(message("Message 5f1d7a2c-1b3e-4c5d-8e9f-0a1b2c3d4e5f " +
+                "failed on port 9443"), 0);
+        FingerprintCache.Fingerprint second = cache.record(message("Message 0b2c3d4e-5f6a-4b7c-8d9e-f0a1b2c3d4e5 " +
+                "failed on port 8243"), 0);
+        FingerprintCache.Fingerprint other = cache.record(message("Connection refused"), 0);
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+    }
+
+    @Test
+    public void testCapturedOnlyOnceWithoutSurgeThreshold() {
+
+        FingerprintCache cache = new FingerprintCache(16, 3, 0, 60000);
+        FingerprintCache.Fingerprint fingerprint = cache.record(trace("java.lang.IllegalStateException", 10, 1), 0);
+        assertTrue(fingerprint.isCaptureDue());
+        fingerprint.markCaptured();
+        assertTrue(fingerprint.isCaptured());
+
+        for (int i = 1; i <= 100; i++) {
+            assertFalse(cache.record(trace("java.lang.IllegalStateException", 10, 1), i).isCaptureDue());
+        }
+    }
+
+    @Test
+    public void testCapturedAgainWhenSurging() {
+
+        FingerprintCache cache = new FingerprintCache(16, 3, 3, 60000);
+        cache.record(trace("java.lang.IllegalStateException", 10, 1), 0).markCaptured();
+
+        assertFalse(cache.record(trace("java.lang.IllegalStateException", 10, 1), 1000).isCaptureDue());
+        assertFalse(cache.record(trace("java.lang.IllegalStateException", 10, 1), 2000).isCaptureDue());
+        FingerprintCache.Fingerprint surging = cache.record(trace("java.lang.IllegalStateException", 10, 1), 3000);
+        assertTrue(surging.isCaptureDue());
+
+        // the next surge needs occurrences of its own
+        surging.markCaptured();
+        assertFalse(cache.record(trace("java.lang.IllegalStateException", 10, 1), 4000).isCaptureDue());
+    }
+
+    @Test
+    public void testOccurrencesSpreadBeyondTheSurgeWindowAreNoSurge() {
+
+        FingerprintCache cache = new FingerprintCache(16, 3, 3, 60000);
+        cache.record(trace("java.lang.IllegalStateException", 10, 1), 0).markCaptured();
+
+        for (int i = 1; i <= 10; i++) {
+            assertFalse(cache.record(trace("java.lang.IllegalStateException", 10, 1), i * 40000L).isCaptureDue());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlySeenFingerprintIsEvicted() {
+
+        FingerprintCache cache = new FingerprintCache(2, 3, 0, 60000);
+        cache.record(trace("java.lang.IllegalStateException", 10, 1), 0).markCaptured();
+        cache.record(trace("java.lang.NullPointerException", 10, 1), 0).markCaptured();
+        // seen again, the null pointer exception is now the least recently seen
+        cache.record(trace("java.lang.IllegalStateException", 10, 1), 1000);
+        cache.record(trace("java.io.IOException", 10, 1), 2000);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.record(trace("java.lang.IllegalStateException", 10, 1), 3000).isCaptured());
+        // forgotten, hence captured again as new
+        assertTrue(cache.record(trace("java.lang.NullPointerException", 10, 1), 3000).isCaptureDue());
+    }
+
+    private static ParsedLogLine trace(String exception, int lambdaLine, int hash) {
+
+        String completeLog = ERROR_LINE + "\n" + exception + ": failed for object@" + Integer.toHexString(hash) +
+                "\n\tat org.wso2.carbon.Sample.lambda$run$0(Sample.java:" + lambdaLine + ")" +
+                "\n\tat org.wso2.carbon.Sample.run(Sample.java:120)" +
+                "\n\tat java.base/java.lang.Thread.run(Thread.java:833)" +
+                "\n\tat org.wso2.carbon.Outer.frameBeyondTheLimit(Outer.java:" + hash + ")\n";
+        return LogLineParser.parse(ERROR_LINE, completeLog);
+    }
+
+    private static ParsedLogLine message(String message) {
+
+        String errorLine = "[2024-05-01 10:00:00,000] ERROR {org.wso2.carbon.Sample} - " + message;
+        return LogLineParser.parse(errorLine, errorLine + "\n");
+    }
+}
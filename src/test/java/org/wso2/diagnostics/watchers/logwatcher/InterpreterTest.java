@@ -0,0 +1,132 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wso2.diagnostics.actionexecutor.ActionExecutor;
+import org.wso2.diagnostics.utils.ConfigMapHolder;
+import org.wso2.diagnostics.utils.Constants;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class InterpreterTest {
+
+    // long enough for the action executors to run on the capture scheduler
+    private static final long TRIGGER_TIMEOUT = 5000;
+    // how long to wait before concluding that the pattern was not triggered
+    private static final long NO_TRIGGER_WAIT = 200;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final LinkedBlockingQueue<String> triggers = new LinkedBlockingQueue<>();
+    private Interpreter interpreter;
+
+    @Before
+    public void setUp() {
+
+        System.setProperty(Constants.APP_HOME, folder.getRoot().getPath());
+        Map<String, Object> configMap = new HashMap<>();
+        configMap.put("zip_file_configuration.output_directory", "data");
+        configMap.put("zip_file_configuration.max_count", "5");
+        configMap.put("server_configuration.node_id", "node");
+        ConfigMapHolder.getInstance().setConfigMap(configMap);
+        ActionExecutor recorder = triggers::add;
+        // three matches within a minute
+        LogPatternRule rule = new LogPatternRule("oom", ".*OutOfMemoryError.*", null, null, null, null,
+                new String[]{"Recorder"}, 0, 3, 60);
+        interpreter = new Interpreter(Collections.singletonMap("Recorder", recorder),
+                Collections.singletonList(rule), new TimestampParser(TimestampParser.DEFAULT_FORMAT));
+    }
+
+    @Test
+    public void testTriggersWhenThresholdIsReachedWithinTheWindow() throws InterruptedException {
+
+        interpret("10:00:00");
+        interpret("10:00:01");
+        assertNotTriggered();
+        interpret("10:00:02");
+        assertTriggered();
+    }
+
+    @Test
+    public void testWindowStartsOverAfterTrigger() throws InterruptedException {
+
+        interpret("10:00:00");
+        interpret("10:00:01");
+        interpret("10:00:02");
+        assertTriggered();
+        // the next capture needs a burst of its own
+        interpret("10:00:03");
+        interpret("10:00:04");
+        assertNotTriggered();
+        interpret("10:00:05");
+        assertTriggered();
+    }
+
+    @Test
+    public void testMatchesOutsideTheWindowAreNotCounted() throws InterruptedException {
+
+        interpret("10:00:00");
+        interpret("10:00:01");
+        interpret("10:02:00");
+        interpret("10:02:30");
+        assertNotTriggered();
+        interpret("10:02:59");
+        assertTriggered();
+    }
+
+    @Test
+    public void testNonMatchingErrorsAreNotCounted() throws InterruptedException {
+
+        interpret("10:00:00");
+        interpret("10:00:01");
+        interpreter.interpret("[2024-05-01 10:00:02,000] ERROR {org.wso2.Sample} - Connection refused",
+                "[2024-05-01 10:00:02,000] ERROR {org.wso2.Sample} - Connection refused\n");
+        assertNotTriggered();
+    }
+
+    private void interpret(String time) {
+
+        String errorLine = "[2024-05-01 " + time + ",000] ERROR {org.wso2.Sample} - Out of heap " +
+                "java.lang.OutOfMemoryError: Java heap space";
+        interpreter.interpret(errorLine, errorLine + "\n");
+    }
+
+    private void assertTriggered() throws InterruptedException {
+
+        assertNotNull("the pattern was not triggered", triggers.poll(TRIGGER_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    private void assertNotTriggered() throws InterruptedException {
+
+        assertNull("the pattern was triggered below its threshold",
+                triggers.poll(NO_TRIGGER_WAIT, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LevelClassifierTest {
+
+    private final LevelClassifier classifier = new LevelClassifier();
+
+    @Test
+    public void testFindsTheLevelOfCarbonLogLines() {
+
+        assertEquals("INFO", findLevel("[2024-05-01 10:00:00,000]  INFO {org.wso2.Sample} - Server started"));
+        assertEquals("ERROR", findLevel("[2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - Failed"));
+        assertEquals("WARN", findLevel("TID: [-1234] [] [2024-05-01 10:00:00,000]  WARN {org.wso2.Sample} - Slow"));
+        assertEquals("FATAL", findLevel("2024-05-01 10:00:00,000 [main] FATAL org.wso2.Sample - Halted"));
+        assertEquals("DEBUG", findLevel("[2024-05-01 10:00:00,000] [DEBUG] org.wso2.Sample - Value"));
+    }
+
+    @Test
+    public void testLinesWithoutLevel() {
+
+        assertNull(findLevel("\tat org.wso2.Sample.run(Sample.java:10)"));
+        assertNull(findLevel("java.lang.IllegalStateException: Invalid state"));
+        assertNull(findLevel(""));
+        // level words within other words or not delimited by spaces or brackets
+        assertNull(findLevel("[2024-05-01 10:00:00,000] ERRORS {org.wso2.Sample}"));
+        assertNull(findLevel("[2024-05-01 10:00:00,000] NOINFO {org.wso2.Sample}"));
+        assertNull(findLevel("[2024-05-01 10:00:00,000] {ERROR} org.wso2.Sample"));
+    }
+
+    @Test
+    public void testLevelBeyondTheFirstColumnsIsIgnored() {
+
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 128; i++) {
+            line.append('x');
+        }
+        assertNull(findLevel(line.append(" ERROR {org.wso2.Sample} - Failed").toString()));
+    }
+
+    @Test
+    public void testChecksTheColumnOfThePreviousLevelFirst() {
+
+        findLevel("[2024-05-01 10:00:00,000]  INFO {org.wso2.Sample} - Server started");
+        assertEquals(1, classifier.getScans());
+        // %5p pads the shorter levels, hence the longer ones start one column earlier
+        assertEquals("ERROR", findLevel("[2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - Failed"));
+        assertEquals("WARN", findLevel("[2024-05-01 10:00:00,000]  WARN {org.wso2.Sample} - Slow"));
+        assertEquals("INFO", findLevel("[2024-05-01 10:00:00,000]  INFO {org.wso2.Sample} - Done"));
+        assertEquals(1, classifier.getScans());
+
+        // stack trace lines have no level at the column and are scanned
+        assertNull(findLevel("\tat org.wso2.Sample.run(Sample.java:10)"));
+        assertEquals(2, classifier.getScans());
+        assertEquals(5, classifier.getLines());
+    }
+
+    @Test
+    public void testFollowsAChangedLayout() {
+
+        findLevel("[2024-05-01 10:00:00,000]  INFO {org.wso2.Sample} - Server started");
+        assertEquals("ERROR", findLevel("TID: [-1234] [] [2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - x"));
+        assertEquals(2, classifier.getScans());
+        assertEquals("INFO", findLevel("TID: [-1234] [] [2024-05-01 10:00:00,000]  INFO {org.wso2.Sample} - y"));
+        assertEquals(2, classifier.getScans());
+    }
+
+    @Test
+    public void testErrorLines() {
+
+        assertTrue(isErrorLine("[2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - Failed"));
+        assertTrue(isErrorLine("[2024-05-01 10:00:00,000]  WARN {org.wso2.Sample} - Slow"));
+        assertTrue(isErrorLine("[2024-05-01 10:00:00,000] FATAL {org.wso2.Sample} - Halted"));
+        assertFalse(isErrorLine("[2024-05-01 10:00:00,000]  INFO {org.wso2.Sample} - Started"));
+        assertFalse(isErrorLine("[2024-05-01 10:00:00,000] TRACE {org.wso2.Sample} - Value"));
+        assertFalse(isErrorLine("\tat org.wso2.Sample.run(Sample.java:10)"));
+    }
+
+    @Test
+    public void testLineWithinALargerBuffer() {
+
+        byte[] buffer = "ERROR first\n[2024-05-01 10:00:00,000]  INFO {org.wso2.Sample} - Second\nWARN"
+                .getBytes(StandardCharsets.UTF_8);
+        int offset = "ERROR first\n".length();
+        int length = "[2024-05-01 10:00:00,000]  INFO {org.wso2.Sample} - Second".length();
+        assertEquals("INFO", classifier.findLevel(buffer, offset, length));
+        assertEquals("INFO", LogLineParser.findLevel(buffer, offset, length));
+    }
+
+    private String findLevel(String line) {
+
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return classifier.findLevel(bytes, 0, bytes.length);
+    }
+
+    private boolean isErrorLine(String line) {
+
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return classifier.isErrorLine(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogContextRingTest {
+
+    @Test
+    public void testEmptyRing() {
+
+        LogContextRing ring = new LogContextRing(3, 1024);
+        assertEquals(0, ring.size());
+        assertEquals("", snapshot(ring));
+    }
+
+    @Test
+    public void testKeepsTheLastLinesAfterWrapping() {
+
+        LogContextRing ring = new LogContextRing(3, 1024);
+        for (int i = 1; i <= 7; i++) {
+            add(ring, "line " + i);
+        }
+        assertEquals(3, ring.size());
+        assertEquals("line 5\nline 6\nline 7\n", snapshot(ring));
+    }
+
+    @Test
+    public void testByteLimitEvictsTheOldestLines() {
+
+        LogContextRing ring = new LogContextRing(10, 10);
+        add(ring, "abcdef");
+        add(ring, "ghij");
+        assertEquals("abcdef\nghij\n", snapshot(ring));
+        add(ring, "klm");
+        assertEquals("ghij\nklm\n", snapshot(ring));
+        add(ring, "nopqrs");
+        assertEquals("klm\nnopqrs\n", snapshot(ring));
+        // the line is written across the end of the byte buffer
+        add(ring, "tuv");
+        assertEquals(2, ring.size());
+        assertEquals("nopqrs\ntuv\n", snapshot(ring));
+        // both lines are dropped to make room
+        add(ring, "wxyz0123");
+        assertEquals(1, ring.size());
+        assertEquals("wxyz0123\n", snapshot(ring));
+    }
+
+    @Test
+    public void testLineLongerThanTheBytesIsCut() {
+
+        LogContextRing ring = new LogContextRing(4, 5);
+        add(ring, "x");
+        add(ring, "0123456789");
+        assertEquals(1, ring.size());
+        assertEquals("01234\n", snapshot(ring));
+        add(ring, "y");
+        assertEquals("y\n", snapshot(ring));
+    }
+
+    @Test
+    public void testSnapshotOfTheMostRecentLines() {
+
+        LogContextRing ring = new LogContextRing(5, 1024);
+        for (int i = 1; i <= 7; i++) {
+            add(ring, "line " + i);
+        }
+        assertEquals("line 6\nline 7\n", new String(ring.snapshot(2), StandardCharsets.UTF_8));
+        assertEquals("line 3\nline 4\nline 5\nline 6\nline 7\n",
+                new String(ring.snapshot(10), StandardCharsets.UTF_8));
+        assertEquals(0, ring.snapshot(0).length);
+    }
+
+    @Test
+    public void testLineIsCopiedFromItsOffset() {
+
+        LogContextRing ring = new LogContextRing(2, 1024);
+        byte[] buffer = "INFO one|INFO two".getBytes(StandardCharsets.UTF_8);
+        ring.add(buffer, 0, 8);
+        ring.add(buffer, 9, 8);
+        // the buffer of the reader is reused for the next lines
+        buffer[0] = 'X';
+        assertEquals("INFO one\nINFO two\n", snapshot(ring));
+    }
+
+    private static void add(LogContextRing ring, String line) {
+
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        ring.add(bytes, 0, bytes.length);
+    }
+
+    private static String snapshot(LogContextRing ring) {
+
+        return new String(ring.snapshot(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogEventAssemblerTest {
+
+    private final LogEventQueue queue = new LogEventQueue(16, LogEventQueue.OverflowPolicy.DROP_OLDEST);
+
+    @Test
+    public void testNextErrorLineCompletesTheEvent() throws InterruptedException {
+
+        LogEventAssembler assembler = new LogEventAssembler(null, queue, 0, 0, 0, 0, 0);
+        startEvent(assembler, "ERROR first");
+        appendLine(assembler, "\tat frame");
+        assertEquals(0, queue.size());
+        startEvent(assembler, "ERROR second");
+
+        LogEvent event = queue.poll(0, TimeUnit.MILLISECONDS);
+        assertEquals("ERROR first", event.getErrorLine());
+        assertEquals("ERROR first\n\tat frame\n", event.getCompleteLog());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testIdleTimeoutCompletesTheEvent() throws InterruptedException {
+
+        LogEventAssembler assembler = new LogEventAssembler(null, queue, 100, 0, 0, 0, 0);
+        long start = System.currentTimeMillis();
+        startEvent(assembler, "ERROR idle");
+        appendLine(assembler, "\tat frame");
+        long added = System.currentTimeMillis();
+
+        long untilIdle = assembler.timeUntilIdle(added);
+        assertTrue(untilIdle > 0 && untilIdle <= 100);
+        assembler.flushIfIdle(start + 50);
+        assertEquals(0, queue.size());
+        assembler.flushIfIdle(added + 100);
+        assertEquals(1, assembler.getIdleFlushes());
+        assertEquals(Long.MAX_VALUE, assembler.timeUntilIdle(added + 200));
+        assertEquals("ERROR idle\n\tat frame\n", queue.poll(0, TimeUnit.MILLISECONDS).getCompleteLog());
+
+        // lines after the idle flush do not belong to any event
+        appendLine(assembler, "\tat late frame");
+        assembler.flushIfIdle(Long.MAX_VALUE);
+        assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testIdleTimeoutDisabled() {
+
+        LogEventAssembler assembler = new LogEventAssembler(null, queue, 0, 0, 0, 0, 0);
+        startEvent(assembler, "ERROR kept");
+        assertEquals(Long.MAX_VALUE, assembler.timeUntilIdle(System.currentTimeMillis()));
+        assembler.flushIfIdle(Long.MAX_VALUE);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testMaxLinesCompletesTheEvent() throws InterruptedException {
+
+        LogEventAssembler assembler = new LogEventAssembler(null, queue, 0, 3, 0, 0, 0);
+        startEvent(assembler, "ERROR long trace");
+        appendLine(assembler, "\tat frame 1");
+        assertEquals(0, queue.size());
+        appendLine(assembler, "\tat frame 2");
+        appendLine(assembler, "\tat frame 3");
+
+        assertEquals(1, assembler.getLimitFlushes());
+        assertEquals("ERROR long trace\n\tat frame 1\n\tat frame 2\n",
+                queue.poll(0, TimeUnit.MILLISECONDS).getCompleteLog());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testMaxBytesCutsTheEvent() throws InterruptedException {
+
+        LogEventAssembler assembler = new LogEventAssembler(null, queue, 0, 0, 16, 0, 0);
+        startEvent(assembler, "ERROR 12345");
+        appendLine(assembler, "abcdefghij");
+
+        LogEvent event = queue.poll(0, TimeUnit.MILLISECONDS);
+        assertEquals(1, assembler.getLimitFlushes());
+        assertEquals("ERROR 12345\nabc\n", event.getCompleteLog());
+        assertEquals(16, event.getCompleteLog().length());
+
+        // a single line longer than the limit is cut to it
+        startEvent(assembler, "ERROR 0123456789 0123456789");
+        event = queue.poll(0, TimeUnit.MILLISECONDS);
+        assertEquals("ERROR 012345678", event.getErrorLine());
+        assertEquals(2, assembler.getLimitFlushes());
+    }
+
+    @Test
+    public void testContextHoldsTheLinesBeforeTheEvent() throws InterruptedException {
+
+        LogEventAssembler assembler = new LogEventAssembler(null, queue, 0, 0, 0, 2, 1024);
+        appendLine(assembler, "INFO one");
+        appendLine(assembler, "INFO two");
+        appendLine(assembler, "INFO three");
+        startEvent(assembler, "ERROR with context");
+        startEvent(assembler, "ERROR next");
+
+        LogEvent event = queue.poll(0, TimeUnit.MILLISECONDS);
+        assertEquals("INFO two\nINFO three\n", event.getContext());
+        assertEquals("ERROR with context\n", event.getCompleteLog());
+    }
+
+    @Test
+    public void testContextAfterTheRingWrapped() throws InterruptedException {
+
+        // 3 lines of 6 bytes fit in the 20 bytes
+        LogEventAssembler assembler = new LogEventAssembler(null, queue, 0, 0, 0, 3, 20);
+        for (int i = 1; i <= 5; i++) {
+            appendLine(assembler, "INFO " + i);
+        }
+        // makes room by dropping the two oldest lines
+        appendLine(assembler, "INFO long line");
+        startEvent(assembler, "ERROR a");
+        appendLine(assembler, "\tat f");
+        startEvent(assembler, "ERROR b");
+        startEvent(assembler, "ERROR c");
+
+        LogEvent event = queue.poll(0, TimeUnit.MILLISECONDS);
+        assertEquals("INFO 5\nINFO long line\n", event.getContext());
+        assertEquals("ERROR a\n\tat f\n", event.getCompleteLog());
+        // the lines of an event are the context of the next one
+        event = queue.poll(0, TimeUnit.MILLISECONDS);
+        assertEquals("ERROR a\n\tat f\n", event.getContext());
+        assertEquals("ERROR b\n", event.getCompleteLog());
+    }
+
+    private static void startEvent(LogEventAssembler assembler, String line) {
+
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        assembler.startEvent(bytes, 0, bytes.length);
+    }
+
+    private static void appendLine(LogEventAssembler assembler, String line) {
+
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        assembler.appendLine(bytes, 0, bytes.length);
+    }
+}
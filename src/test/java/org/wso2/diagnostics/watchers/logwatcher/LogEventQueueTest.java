@@ -0,0 +1,149 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wso2.diagnostics.utils.Constants;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LogEventQueueTest {
+
+    @ClassRule
+    public static final TemporaryFolder APP_HOME = new TemporaryFolder();
+
+    private static Interpreter fileA;
+    private static Interpreter fileB;
+
+    @BeforeClass
+    public static void setUp() {
+
+        System.setProperty(Constants.APP_HOME, APP_HOME.getRoot().getPath());
+        fileA = new Interpreter(Collections.emptyMap(), Collections.emptyList(), null);
+        fileB = new Interpreter(Collections.emptyMap(), Collections.emptyList(), null);
+    }
+
+    @Test
+    public void testPollReturnsEventsInOrder() throws InterruptedException {
+
+        LogEventQueue queue = new LogEventQueue(4, LogEventQueue.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 3; i++) {
+            queue.offer(new LogEvent(fileA, "error " + i, "error " + i));
+        }
+        assertEquals(3, queue.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("error " + i, queue.poll(0, TimeUnit.MILLISECONDS).getErrorLine());
+        }
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testDropOldestEvictsTheOldestEvents() throws InterruptedException {
+
+        LogEventQueue queue = new LogEventQueue(3, LogEventQueue.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(new LogEvent(fileA, "error " + i, "error " + i));
+        }
+        assertEquals(3, queue.size());
+        assertEquals(5, queue.getQueuedCount());
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(0, queue.getCoalescedCount());
+        // the ring wrapped around, the oldest remaining event is polled first
+        for (int i = 2; i < 5; i++) {
+            assertEquals("error " + i, queue.poll(0, TimeUnit.MILLISECONDS).getErrorLine());
+        }
+        assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testCoalesceFoldsIntoTheNewestEventOfTheSameFile() throws InterruptedException {
+
+        LogEventQueue queue = new LogEventQueue(3, LogEventQueue.OverflowPolicy.COALESCE);
+        queue.offer(new LogEvent(fileA, "a0", "a0"));
+        queue.offer(new LogEvent(fileA, "a1", "a1"));
+        queue.offer(new LogEvent(fileB, "b0", "b0"));
+        queue.offer(new LogEvent(fileA, "a2", "a2"));
+        queue.offer(new LogEvent(fileA, "a3", "a3"));
+        queue.offer(new LogEvent(fileB, "b1", "b1"));
+
+        assertEquals(3, queue.size());
+        assertEquals(3, queue.getQueuedCount());
+        assertEquals(3, queue.getCoalescedCount());
+        assertEquals(0, queue.getDroppedCount());
+        LogEvent a0 = queue.poll(0, TimeUnit.MILLISECONDS);
+        LogEvent a1 = queue.poll(0, TimeUnit.MILLISECONDS);
+        LogEvent b0 = queue.poll(0, TimeUnit.MILLISECONDS);
+        assertEquals("a0", a0.getErrorLine());
+        assertEquals(0, a0.getCoalescedCount());
+        assertEquals("a1", a1.getErrorLine());
+        assertEquals(2, a1.getCoalescedCount());
+        assertEquals("b0", b0.getErrorLine());
+        assertEquals(1, b0.getCoalescedCount());
+    }
+
+    @Test
+    public void testCoalesceEvictsTheOldestEventWithoutAnEventOfTheSameFile() throws InterruptedException {
+
+        LogEventQueue queue = new LogEventQueue(2, LogEventQueue.OverflowPolicy.COALESCE);
+        queue.offer(new LogEvent(fileA, "a0", "a0"));
+        queue.offer(new LogEvent(fileA, "a1", "a1"));
+        queue.offer(new LogEvent(fileB, "b0", "b0"));
+
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(0, queue.getCoalescedCount());
+        assertEquals("a1", queue.poll(0, TimeUnit.MILLISECONDS).getErrorLine());
+        LogEvent b0 = queue.poll(0, TimeUnit.MILLISECONDS);
+        assertSame(fileB, b0.getInterpreter());
+        assertEquals(0, b0.getCoalescedCount());
+    }
+
+    @Test
+    public void testPollWaitsForAnOfferedEvent() throws InterruptedException {
+
+        LogEventQueue queue = new LogEventQueue(1, LogEventQueue.OverflowPolicy.DROP_OLDEST);
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            queue.offer(new LogEvent(fileA, "late", "late"));
+        });
+        producer.start();
+        assertEquals("late", queue.poll(5, TimeUnit.SECONDS).getErrorLine());
+        producer.join();
+    }
+
+    @Test
+    public void testOverflowPolicyFromConfig() {
+
+        assertEquals(LogEventQueue.OverflowPolicy.DROP_OLDEST, LogEventQueue.OverflowPolicy.fromConfig(null));
+        assertEquals(LogEventQueue.OverflowPolicy.COALESCE, LogEventQueue.OverflowPolicy.fromConfig(" coalesce "));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LogLineParserTest {
+
+    private static final String[] LINES = {
+            "[2024-05-01 10:00:00,000]  INFO {org.wso2.Sample} - Server started",
+            "[2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - Failed",
+            "TID: [-1234] [] [2024-05-01 10:00:00,000]  WARN {org.wso2.Sample} [worker-1] - Slow",
+            "2024-05-01 10:00:00,000 [main] FATAL org.wso2.Sample - Halted",
+            "TID: [-1234] [café.com] [2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - Tenant error",
+            "TID: [-1234] [例え.jp] [2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - Tenant error",
+            "\tat org.wso2.Sample.run(Sample.java:10)",
+            "[2024-05-01 10:00:00,000] ERRORS {org.wso2.Sample}",
+            "ERROR",
+            "",
+    };
+
+    @Test
+    public void testParsesTheFieldsOfCarbonLogLine() {
+
+        ParsedLogLine line = parse("TID: [-1234] [] [2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} [worker-1] - " +
+                "Request failed - retrying");
+        assertEquals("ERROR", line.getLevel());
+        assertEquals("org.wso2.Sample", line.getLogger());
+        assertEquals("worker-1", line.getThread());
+        assertEquals("Request failed - retrying", line.getMessage());
+    }
+
+    @Test
+    public void testParsesThePlainLayout() {
+
+        ParsedLogLine line = parse("2024-05-01 10:00:00,000 [main] FATAL org.wso2.Sample - Halted");
+        assertEquals("FATAL", line.getLevel());
+        assertEquals("org.wso2.Sample", line.getLogger());
+        assertEquals("main", line.getThread());
+        assertEquals("Halted", line.getMessage());
+    }
+
+    @Test
+    public void testLineWithoutLevel() {
+
+        ParsedLogLine line = parse("\tat org.wso2.Sample.run(Sample.java:10)");
+        assertNull(line.getLevel());
+        assertNull(line.getLogger());
+        assertEquals("\tat org.wso2.Sample.run(Sample.java:10)", line.getMessage());
+    }
+
+    @Test
+    public void testParseFindsTheSameLevelAsTheBytes() {
+
+        for (String text : LINES) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            assertEquals(text, LogLineParser.findLevel(bytes, 0, bytes.length), parse(text).getLevel());
+        }
+    }
+
+    @Test
+    public void testLevelAfterMultiByteCharacters() {
+
+        ParsedLogLine line = parse("TID: [-1234] [例え.jp] [2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - Failed");
+        assertEquals("ERROR", line.getLevel());
+        assertEquals("org.wso2.Sample", line.getLogger());
+        assertEquals("Failed", line.getMessage());
+    }
+
+    @Test
+    public void testExceptionClasses() {
+
+        String completeLog = "[2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - Failed\n" +
+                "org.apache.axis2.AxisFault: Connection refused\n" +
+                "\tat org.wso2.Sample.send(Sample.java:10)\n" +
+                "Caused by: java.net.ConnectException: Connection refused\n" +
+                "\t... 5 more\n";
+        assertEquals(Arrays.asList("org.apache.axis2.AxisFault", "java.net.ConnectException"),
+                LogLineParser.parseExceptionClasses(completeLog));
+    }
+
+    private static ParsedLogLine parse(String line) {
+
+        return LogLineParser.parse(line, line + "\n");
+    }
+}
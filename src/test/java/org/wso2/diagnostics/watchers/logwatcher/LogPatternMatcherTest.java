@@ -0,0 +1,114 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogPatternMatcherTest {
+
+    private static final String[] REGEXES = {
+            ".*OutOfMemoryError.*",
+            ".*\\x41BCDE.*",
+            ".*\\x{41}BCDE.*",
+            ".*\\u0041BCDE.*",
+            ".*\\0101BCD.*",
+            ".*(?<n>abc)\\k<n>zz.*",
+            ".*(abc)\\1zz.*",
+            ".*\\p{Lu}rror in \\p{L}+ handler.*",
+            ".*\\N{LATIN CAPITAL LETTER A}BCDE.*",
+            ".*\\cJ?Timeout occurred.*",
+            ".*Connection \\d+ refused.*",
+            ".*ERROR \\[\\w+\\] failed\\.retry.*",
+            ".*error (code|status)=50\\d.*",
+            ".*Timeouts?{1,2} reached.*",
+            ".*[A-Z]{3}-\\d{4} failure.*",
+    };
+
+    private static final String[] LINES = {
+            "java.lang.OutOfMemoryError: Java heap space",
+            "ABCDE",
+            "value ABCDE here",
+            "41BCDE",
+            "0041BCDE",
+            "101BCD",
+            "ABCD",
+            "abcabczz",
+            "abc<n>zz",
+            "Error in Http handler",
+            "error in Http handler",
+            "\nTimeout occurred",
+            "Timeout occurred",
+            "Connection 42 refused",
+            "ERROR [main] failed.retry",
+            "ERROR [main] failedXretry",
+            "error code=503",
+            "error status=500",
+            "Timeouts reached",
+            "Timeout reached",
+            "ABC-1234 failure",
+            "",
+    };
+
+    @Test
+    public void testMatchesSameLinesAsRegexWithoutPrefilter() {
+
+        for (String regex : REGEXES) {
+            Pattern pattern = Pattern.compile(regex);
+            LogPatternMatcher matcher = new LogPatternMatcher(Collections.singletonList(
+                    new LogPatternRule("rule", regex, null, null, null, null, new String[0], 0, 1, 1)));
+            for (String line : LINES) {
+                ParsedLogLine logLine = new ParsedLogLine(line, line, "ERROR", null, null, null);
+                assertEquals("regex " + regex + " on line " + line, pattern.matcher(line).matches(),
+                        matcher.match(logLine) == 0);
+            }
+        }
+    }
+
+    @Test
+    public void testRequiredLiteralIsInEveryMatch() {
+
+        for (String regex : REGEXES) {
+            String literal = LogPatternMatcher.extractRequiredLiteral(regex);
+            for (String line : LINES) {
+                if (literal != null && Pattern.compile(regex).matcher(line).matches()) {
+                    assertTrue("literal " + literal + " of " + regex + " is not in " + line, line.contains(literal));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEscapesAreNotKeptAsLiterals() {
+
+        assertEquals("BCDE", LogPatternMatcher.extractRequiredLiteral("\\x41BCDE"));
+        assertEquals("BCDE", LogPatternMatcher.extractRequiredLiteral("\\x{41}BCDE"));
+        assertEquals("BCDE", LogPatternMatcher.extractRequiredLiteral("\\u0041BCDE"));
+        assertEquals("BCD", LogPatternMatcher.extractRequiredLiteral("\\0101BCD"));
+        assertEquals("zz", LogPatternMatcher.extractRequiredLiteral("(?<n>abc)\\k<n>zz"));
+        assertEquals(" handler", LogPatternMatcher.extractRequiredLiteral("\\p{L}+ handler"));
+        assertNull(LogPatternMatcher.extractRequiredLiteral("\\x41"));
+    }
+}
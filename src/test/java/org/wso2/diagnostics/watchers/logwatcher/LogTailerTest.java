@@ -0,0 +1,169 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogTailerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> lines = new ArrayList<>();
+    private final LogTailer.LineListener listener =
+            (buffer, offset, length) -> lines.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+
+    @Test
+    public void testReadsCompleteLinesAndKeepsPartialLine() throws IOException {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        append(file, "existing\n");
+        try (LogTailer tailer = new LogTailer(file)) {
+            assertTrue(tailer.open(true));
+            append(file, "first\r\nsecond\nthi");
+            tailer.readAvailable(listener);
+            assertEquals(Arrays.asList("first", "second"), lines);
+            // the checkpoint is at the start of the incomplete line
+            assertEquals("existing\nfirst\r\nsecond\n".length(), tailer.getCheckpointOffset());
+            append(file, "rd\n");
+            tailer.readAvailable(listener);
+            assertEquals(Arrays.asList("first", "second", "third"), lines);
+        }
+    }
+
+    @Test
+    public void testDrainsRotatedFileBeforeSwitching() throws IOException {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        try (LogTailer tailer = new LogTailer(file)) {
+            assertTrue(tailer.open(false));
+            append(file, "before rotation\n");
+            tailer.readAvailable(listener);
+            String oldKey = tailer.getFileKey();
+            // written after the last read, then the file is rotated and a new file is grown past the old offset
+            append(file, "written before the rename\nunterminated");
+            Files.move(file, folder.getRoot().toPath().resolve("wso2carbon.log.1"));
+            append(file, "new file line 1\nnew file line 2\nnew file line 3\n");
+
+            assertTrue(tailer.handleRotation(listener));
+            tailer.readAvailable(listener);
+            assertEquals(Arrays.asList("before rotation", "written before the rename", "unterminated",
+                    "new file line 1", "new file line 2", "new file line 3"), lines);
+            if (oldKey != null) {
+                assertFalse(oldKey.equals(tailer.getFileKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testKeepsReadingOldFileUntilNewFileIsCreated() throws IOException {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        try (LogTailer tailer = new LogTailer(file)) {
+            assertTrue(tailer.open(false));
+            Path rotated = folder.getRoot().toPath().resolve("wso2carbon.log.1");
+            Files.move(file, rotated);
+            append(rotated, "late line\n");
+            assertFalse(tailer.handleRotation(listener));
+            tailer.readAvailable(listener);
+            assertEquals(Collections.singletonList("late line"), lines);
+        }
+    }
+
+    @Test
+    public void testRestartsAfterTruncation() throws IOException {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        try (LogTailer tailer = new LogTailer(file)) {
+            assertTrue(tailer.open(false));
+            append(file, "line before copytruncate\n");
+            tailer.readAvailable(listener);
+            Files.write(file, "after\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+
+            assertTrue(tailer.handleRotation(listener));
+            tailer.readAvailable(listener);
+            assertEquals(Arrays.asList("line before copytruncate", "after"), lines);
+        }
+    }
+
+    @Test
+    public void testResumesFromCheckpointOfTheSameFile() throws IOException {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        append(file, "read before the restart\nmissed while stopped\n");
+        String fileKey;
+        try (LogTailer tailer = new LogTailer(file)) {
+            tailer.open(false);
+            fileKey = tailer.getFileKey();
+        }
+        try (LogTailer tailer = new LogTailer(file)) {
+            assertTrue(tailer.resume("read before the restart\n".length(), fileKey, Long.MAX_VALUE));
+            tailer.readAvailable(listener);
+            assertEquals(Collections.singletonList("missed while stopped"), lines);
+        }
+    }
+
+    @Test
+    public void testResumeSkipsLineCutByCatchUpLimit() throws IOException {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        append(file, "0123456789\nlast\n");
+        try (LogTailer tailer = new LogTailer(file)) {
+            // 8 bytes before the end fall in the middle of the first line
+            assertTrue(tailer.resume(0, null, 8));
+            tailer.readAvailable(listener);
+            assertEquals(Collections.singletonList("last"), lines);
+        }
+    }
+
+    @Test
+    public void testOpenMissingFile() throws IOException {
+
+        Path file = folder.getRoot().toPath().resolve("missing.log");
+        try (LogTailer tailer = new LogTailer(file)) {
+            assertFalse(tailer.open(true));
+            append(file, "created later\n");
+            assertTrue(tailer.handleRotation(listener));
+            tailer.readAvailable(listener);
+            assertEquals(Collections.singletonList("created later"), lines);
+        }
+    }
+
+    private static void append(Path file, String text) throws IOException {
+
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wso2.diagnostics.actionexecutor.ActionExecutor;
+import org.wso2.diagnostics.utils.ConfigMapHolder;
+import org.wso2.diagnostics.utils.Constants;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the time from an error being written to a log file to the action executors of its log pattern being
+ * triggered, through the whole detection path: the log watcher, the event assembler, the queue and the interpreter.
+ */
+public class LogWatcherTest {
+
+    private static final long IDLE_TIMEOUT = 200;
+    private static final long POLL_INTERVAL = 20;
+    // the idle timeout, the polling interval and scheduling slack on a loaded build machine
+    private static final long TRIGGER_BOUND = IDLE_TIMEOUT + POLL_INTERVAL + 800;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final LinkedBlockingQueue<Long> triggers = new LinkedBlockingQueue<>();
+    // seconds of the timestamp of the next error, the errors of a pattern are one reload time apart
+    private int errorSecond;
+    private Path logFile;
+    private LogWatcher watcher;
+    private LogEventDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws IOException {
+
+        System.setProperty(Constants.APP_HOME, folder.getRoot().getPath());
+        Map<String, Object> configMap = new HashMap<>();
+        configMap.put("zip_file_configuration.output_directory", "data");
+        configMap.put("zip_file_configuration.max_count", "5");
+        configMap.put("server_configuration.node_id", "node");
+        ConfigMapHolder.getInstance().setConfigMap(configMap);
+        logFile = folder.newFile("wso2carbon.log").toPath();
+        append("[2024-05-01 09:59:59,000]  INFO {org.wso2.Sample} - Server started\n");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+
+        for (Thread thread : new Thread[]{watcher, dispatcher}) {
+            if (thread != null) {
+                thread.interrupt();
+                thread.join(5000);
+            }
+        }
+    }
+
+    @Test
+    public void testLastErrorBeforeQuietPeriodTriggersWithinIdleTimeout() throws Exception {
+
+        start(IDLE_TIMEOUT, 1000);
+        assertTriggeredWithinBound(errorLine() + "\n\tat org.wso2.Sample.run(Sample.java:10)\n");
+    }
+
+    @Test
+    public void testMaxLinesTriggersBeforeIdleTimeout() throws Exception {
+
+        // with an idle timeout far beyond the bound, only the line limit can complete the event in time
+        start(60000, 3);
+        assertTriggeredWithinBound(errorLine() + "\n\tat frame 1\n\tat frame 2\n");
+    }
+
+    @Test
+    public void testTriggersAfterRotation() throws Exception {
+
+        start(IDLE_TIMEOUT, 1000);
+        assertTriggeredWithinBound(errorLine() + "\n");
+        Files.move(logFile, folder.getRoot().toPath().resolve("wso2carbon.log.1"));
+        assertTriggeredWithinBound(errorLine() + "\n");
+    }
+
+    @Test
+    public void testTriggersAfterTruncation() throws Exception {
+
+        start(IDLE_TIMEOUT, 1000);
+        append("[2024-05-01 10:00:00,000]  INFO {org.wso2.Sample} - padding the file before it is truncated\n");
+        Thread.sleep(POLL_INTERVAL * 5);
+        Files.write(logFile, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+        // the truncation is noticed once the file is smaller than the read offset
+        Thread.sleep(POLL_INTERVAL * 5);
+        assertTriggeredWithinBound(errorLine() + "\n");
+    }
+
+    @Test
+    public void testNonMatchingErrorDoesNotTrigger() throws Exception {
+
+        start(IDLE_TIMEOUT, 1000);
+        append("[2024-05-01 10:00:00,123] ERROR {org.wso2.Sample} - Connection refused\n");
+        assertNull(triggers.poll(TRIGGER_BOUND, TimeUnit.MILLISECONDS));
+    }
+
+    private void start(long idleTimeout, int maxLines) throws InterruptedException {
+
+        ActionExecutor recorder = folderPath -> triggers.add(System.nanoTime());
+        LogPatternRule rule = new LogPatternRule("oom", ".*OutOfMemoryError.*", null, null, null, null,
+                new String[]{"Recorder"}, 0, 1, 60);
+        Interpreter interpreter = new Interpreter(Collections.singletonMap("Recorder", recorder),
+                Collections.singletonList(rule), new TimestampParser(TimestampParser.DEFAULT_FORMAT));
+        LogEventQueue queue = new LogEventQueue(16, LogEventQueue.OverflowPolicy.DROP_OLDEST);
+        watcher = new LogWatcher(new PollingChangeNotifier(POLL_INTERVAL, POLL_INTERVAL), queue, 0, idleTimeout,
+                maxLines, 0);
+        watcher.addFile("carbon", logFile.toString(), interpreter);
+        watcher.setDaemon(true);
+        dispatcher = new LogEventDispatcher(queue);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        watcher.start();
+        // the watcher skips the existing content, hence it has to be open before the errors are written
+        Thread.sleep(POLL_INTERVAL * 10);
+    }
+
+    private void assertTriggeredWithinBound(String text) throws Exception {
+
+        long written = System.nanoTime();
+        append(text);
+        Long triggered = triggers.poll(TRIGGER_BOUND * 5, TimeUnit.MILLISECONDS);
+        assertNotNull("the error was not captured", triggered);
+        long timeToTrigger = TimeUnit.NANOSECONDS.toMillis(triggered - written);
+        assertTrue("time to trigger " + timeToTrigger + "ms is above " + TRIGGER_BOUND + "ms",
+                timeToTrigger <= TRIGGER_BOUND);
+    }
+
+    private String errorLine() {
+
+        errorSecond++;
+        return String.format("[2024-05-01 10:00:%02d,123] ERROR {org.wso2.Sample} - Out of heap " +
+                "java.lang.OutOfMemoryError: Java heap space", errorSecond);
+    }
+
+    private void append(String text) throws IOException {
+
+        Files.write(logFile, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+}
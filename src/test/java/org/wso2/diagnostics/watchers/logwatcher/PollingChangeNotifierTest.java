@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PollingChangeNotifierTest {
+
+    @Test
+    public void testIntervalDoublesWhileIdleUpToTheMaximum() throws InterruptedException {
+
+        PollingChangeNotifier notifier = new PollingChangeNotifier(1, 8);
+        assertEquals(1, notifier.getCurrentInterval());
+        long[] intervals = {2, 4, 8, 8};
+        for (long interval : intervals) {
+            assertFalse(notifier.await(false, 1000));
+            assertEquals(interval, notifier.getCurrentInterval());
+        }
+    }
+
+    @Test
+    public void testNewDataResetsTheInterval() throws InterruptedException {
+
+        PollingChangeNotifier notifier = new PollingChangeNotifier(2, 16);
+        notifier.await(false, 1000);
+        notifier.await(false, 1000);
+        assertEquals(8, notifier.getCurrentInterval());
+        notifier.await(true, 1000);
+        assertEquals(2, notifier.getCurrentInterval());
+        notifier.await(false, 1000);
+        assertEquals(4, notifier.getCurrentInterval());
+    }
+
+    @Test
+    public void testWaitIsBoundedByTheMaximumWait() throws InterruptedException {
+
+        PollingChangeNotifier notifier = new PollingChangeNotifier(60000, 60000);
+        long start = System.nanoTime();
+        assertFalse(notifier.await(false, 10));
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        // the interval is kept for the next wait
+        assertEquals(60000, notifier.getCurrentInterval());
+    }
+
+    @Test
+    public void testIntervalsAreSanitized() {
+
+        PollingChangeNotifier notifier = new PollingChangeNotifier(0, -1);
+        assertEquals(1, notifier.getCurrentInterval());
+        assertEquals("polling", notifier.getMode());
+    }
+}
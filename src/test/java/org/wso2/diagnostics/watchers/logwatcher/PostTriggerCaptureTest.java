@@ -0,0 +1,185 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wso2.diagnostics.actionexecutor.ActionExecutor;
+import org.wso2.diagnostics.utils.ConfigMapHolder;
+import org.wso2.diagnostics.utils.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Goes through the path of a captured error as the log watcher and the dispatcher run it, one step at a time: the
+ * lines are read by the watched file, the completed event is taken from the queue and interpreted, which opens the
+ * capture window.
+ */
+public class PostTriggerCaptureTest {
+
+    private static final String ERROR = "[2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - Out of heap " +
+            "java.lang.OutOfMemoryError: Java heap space";
+    private static final String NEXT_ERROR = "[2024-05-01 10:00:01,000] ERROR {org.wso2.Sample} - Retry failed";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final LogEventQueue queue = new LogEventQueue(16, LogEventQueue.OverflowPolicy.DROP_OLDEST);
+    private Interpreter interpreter;
+
+    @Before
+    public void setUp() {
+
+        System.setProperty(Constants.APP_HOME, folder.getRoot().getPath());
+        Map<String, Object> configMap = new HashMap<>();
+        configMap.put("zip_file_configuration.output_directory", "data");
+        configMap.put("zip_file_configuration.max_count", "5");
+        configMap.put("server_configuration.node_id", "node");
+        ConfigMapHolder.getInstance().setConfigMap(configMap);
+        ActionExecutor recorder = folderPath -> {
+        };
+        LogPatternRule rule = new LogPatternRule("oom", ".*OutOfMemoryError.*", null, null, null, null,
+                new String[]{"Recorder"}, 0, 1, 60);
+        interpreter = new Interpreter(Collections.singletonMap("Recorder", recorder),
+                Collections.singletonList(rule), new TimestampParser(TimestampParser.DEFAULT_FORMAT));
+    }
+
+    @Test
+    public void testLinesReadBeforeTheWindowOpensAreWritten() throws Exception {
+
+        WatchedLogFile file = watchedFile(60000, 3);
+        line(file, "[2024-05-01 09:59:59,000]  INFO {org.wso2.Sample} - before the error");
+        line(file, ERROR);
+        line(file, "\tat org.wso2.Sample.run(Sample.java:10)");
+        // completes the event, and is read by the watcher before the dispatcher interprets the event
+        line(file, NEXT_ERROR);
+        line(file, "\tat org.wso2.Sample.retry(Sample.java:20)");
+
+        interpreter.interpret(queue.poll(0, TimeUnit.MILLISECONDS));
+        line(file, "[2024-05-01 10:00:02,000]  INFO {org.wso2.Sample} - after the window opened");
+        line(file, "[2024-05-01 10:00:03,000]  INFO {org.wso2.Sample} - after the window closed");
+
+        assertEquals("[2024-05-01 09:59:59,000]  INFO {org.wso2.Sample} - before the error\n" +
+                ERROR + "\n" +
+                "\tat org.wso2.Sample.run(Sample.java:10)\n" +
+                NEXT_ERROR + "\n" +
+                "\tat org.wso2.Sample.retry(Sample.java:20)\n" +
+                "[2024-05-01 10:00:02,000]  INFO {org.wso2.Sample} - after the window opened\n", capturedLog());
+    }
+
+    @Test
+    public void testEventCompletedOnItsLineLimitStartsTheWindowAtTheNextLine() throws Exception {
+
+        WatchedLogFile file = watchedFile(60000, 2, 2);
+        line(file, ERROR);
+        line(file, "\tat org.wso2.Sample.run(Sample.java:10)");
+        line(file, "\tat org.wso2.Sample.main(Sample.java:5)");
+
+        interpreter.interpret(queue.poll(0, TimeUnit.MILLISECONDS));
+        line(file, NEXT_ERROR);
+
+        assertEquals(ERROR + "\n" +
+                "\tat org.wso2.Sample.run(Sample.java:10)\n" +
+                "\tat org.wso2.Sample.main(Sample.java:5)\n" +
+                NEXT_ERROR + "\n", capturedLog());
+    }
+
+    @Test
+    public void testWindowHoldsTheFirstLinesAfterTheError() throws Exception {
+
+        WatchedLogFile file = watchedFile(60000, 2);
+        line(file, ERROR);
+        line(file, NEXT_ERROR);
+        line(file, "first line after the error");
+        line(file, "second line after the error");
+
+        interpreter.interpret(queue.poll(0, TimeUnit.MILLISECONDS));
+
+        assertEquals(ERROR + "\n" +
+                NEXT_ERROR + "\n" +
+                "first line after the error\n", capturedLog());
+    }
+
+    @Test
+    public void testLinesBeyondTheKeptOnesAreLost() throws Exception {
+
+        WatchedLogFile file = watchedFile(60000, 1000);
+        line(file, ERROR);
+        line(file, NEXT_ERROR);
+        for (int i = 1; i < 1100; i++) {
+            line(file, "line " + i);
+        }
+
+        interpreter.interpret(queue.poll(0, TimeUnit.MILLISECONDS));
+
+        // the last 1000 lines are kept, the window starts at the oldest of them
+        String[] lines = capturedLog().split("\n");
+        assertEquals(1001, lines.length);
+        assertEquals(ERROR, lines[0]);
+        assertEquals("line 100", lines[1]);
+        assertEquals("line 1099", lines[1000]);
+    }
+
+    private WatchedLogFile watchedFile(long windowTime, int windowLines) {
+
+        return watchedFile(windowTime, windowLines, 0);
+    }
+
+    private WatchedLogFile watchedFile(long windowTime, int windowLines, int eventMaxLines) {
+
+        PostTriggerCapture postTriggerCapture = new PostTriggerCapture(windowTime, windowLines);
+        interpreter.setPostTriggerCapture(postTriggerCapture);
+        LogEventAssembler assembler = new LogEventAssembler(interpreter, queue, 0, eventMaxLines, 0, 10, 4096);
+        return new WatchedLogFile("carbon", folder.getRoot().getPath() + "/wso2carbon.log", assembler,
+                postTriggerCapture);
+    }
+
+    private static void line(WatchedLogFile file, String line) {
+
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        file.onLine(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return the log.txt of the only capture, which is complete once its window was closed on the line limit
+     */
+    private String capturedLog() throws IOException {
+
+        Path captured;
+        try (Stream<Path> paths = Files.walk(new File(folder.getRoot(), "temp").toPath())) {
+            captured = paths.filter(path -> path.endsWith("log.txt")).findFirst().orElse(null);
+        }
+        assertNotNull("log.txt was not written", captured);
+        return new String(Files.readAllBytes(captured), StandardCharsets.UTF_8);
+    }
+}
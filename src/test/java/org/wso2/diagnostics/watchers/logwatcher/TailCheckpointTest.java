@@ -0,0 +1,214 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TailCheckpointTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> lines = new ArrayList<>();
+    private final LogTailer.LineListener listener =
+            (buffer, offset, length) -> lines.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+    private Path logFile;
+    private Path checkpointFile;
+
+    @Before
+    public void setUp() throws IOException {
+
+        logFile = folder.newFile("wso2carbon.log").toPath();
+        checkpointFile = folder.getRoot().toPath().resolve("log-watcher.checkpoint");
+    }
+
+    @Test
+    public void testStartsFromTheEndWithoutCheckpoint() throws IOException {
+
+        append("logged before the first start\n");
+        TailCheckpoint checkpoint = new TailCheckpoint(checkpointFile, 0, Long.MAX_VALUE);
+        try (LogTailer tailer = new LogTailer(logFile)) {
+            assertTrue(checkpoint.open("carbon", tailer));
+            append("new line\n");
+            tailer.readAvailable(listener);
+        }
+        assertEquals(Collections.singletonList("new line"), lines);
+    }
+
+    @Test
+    public void testResumesWhereItStoppedAfterRestart() throws IOException {
+
+        append("read before the restart\n");
+        runUntilStopped(Long.MAX_VALUE);
+        append("logged while stopped\nsecond line while stopped\n");
+
+        TailCheckpoint checkpoint = new TailCheckpoint(checkpointFile, 0, Long.MAX_VALUE);
+        try (LogTailer tailer = new LogTailer(logFile)) {
+            assertTrue(checkpoint.open("carbon", tailer));
+            tailer.readAvailable(listener);
+        }
+        assertEquals(Arrays.asList("logged while stopped", "second line while stopped"), lines);
+    }
+
+    @Test
+    public void testResumesFromTheStartOfAnIncompleteLine() throws IOException {
+
+        TailCheckpoint checkpoint = new TailCheckpoint(checkpointFile, 0, Long.MAX_VALUE);
+        try (LogTailer tailer = new LogTailer(logFile)) {
+            checkpoint.open("carbon", tailer);
+            append("complete\nincompl");
+            tailer.readAvailable(listener);
+            checkpoint.update("carbon", tailer);
+            checkpoint.save();
+        }
+        append("ete\n");
+        lines.clear();
+
+        try (LogTailer tailer = new LogTailer(logFile)) {
+            assertTrue(new TailCheckpoint(checkpointFile, 0, Long.MAX_VALUE).open("carbon", tailer));
+            tailer.readAvailable(listener);
+        }
+        assertEquals(Collections.singletonList("incomplete"), lines);
+    }
+
+    @Test
+    public void testReadsRotatedFileFromTheStart() throws IOException {
+
+        append("read before the restart\n");
+        runUntilStopped(Long.MAX_VALUE);
+        Files.move(logFile, folder.getRoot().toPath().resolve("wso2carbon.log.1"));
+        append("first line of the new file\n");
+
+        try (LogTailer tailer = new LogTailer(logFile)) {
+            assertTrue(new TailCheckpoint(checkpointFile, 0, Long.MAX_VALUE).open("carbon", tailer));
+            tailer.readAvailable(listener);
+        }
+        assertEquals(Collections.singletonList("first line of the new file"), lines);
+    }
+
+    @Test
+    public void testCatchUpIsBounded() throws IOException {
+
+        runUntilStopped(Long.MAX_VALUE);
+        StringBuilder outage = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            outage.append("line ").append(i).append('\n');
+        }
+        append(outage.toString());
+
+        try (LogTailer tailer = new LogTailer(logFile)) {
+            // 20 bytes hold the last two lines and the end of the one before them
+            assertTrue(new TailCheckpoint(checkpointFile, 0, 20).open("carbon", tailer));
+            tailer.readAvailable(listener);
+        }
+        assertEquals(Arrays.asList("line 98", "line 99"), lines);
+    }
+
+    @Test
+    public void testIgnoresCheckpointOfAnotherPath() throws IOException {
+
+        append("read before the restart\n");
+        runUntilStopped(Long.MAX_VALUE);
+        Path otherFile = folder.newFile("other.log").toPath();
+        Files.write(otherFile, "existing line of another file\n".getBytes(StandardCharsets.UTF_8));
+
+        try (LogTailer tailer = new LogTailer(otherFile)) {
+            assertTrue(new TailCheckpoint(checkpointFile, 0, Long.MAX_VALUE).open("carbon", tailer));
+            tailer.readAvailable(listener);
+        }
+        assertTrue(lines.isEmpty());
+    }
+
+    @Test
+    public void testSavesOnlyWhenChangedAndDue() throws IOException {
+
+        TailCheckpoint checkpoint = new TailCheckpoint(checkpointFile, 1000, Long.MAX_VALUE);
+        try (LogTailer tailer = new LogTailer(logFile)) {
+            checkpoint.open("carbon", tailer);
+            checkpoint.saveIfDue(1000);
+            assertFalse("nothing changed yet", Files.exists(checkpointFile));
+
+            append("line\n");
+            tailer.readAvailable(listener);
+            checkpoint.update("carbon", tailer);
+            checkpoint.saveIfDue(1000);
+            assertTrue(Files.exists(checkpointFile));
+            long saved = Files.getLastModifiedTime(checkpointFile).toMillis();
+
+            append("another line\n");
+            tailer.readAvailable(listener);
+            checkpoint.update("carbon", tailer);
+            Files.delete(checkpointFile);
+            checkpoint.saveIfDue(1500);
+            assertFalse("the save interval has not passed", Files.exists(checkpointFile));
+            checkpoint.saveIfDue(2000);
+            assertTrue(Files.exists(checkpointFile));
+            assertTrue(Files.getLastModifiedTime(checkpointFile).toMillis() >= saved);
+        }
+    }
+
+    @Test
+    public void testIgnoresCorruptCheckpoint() throws IOException {
+
+        Files.write(checkpointFile, "carbon.path=\\uZZZZ\n".getBytes(StandardCharsets.UTF_8));
+        append("existing\n");
+        try (LogTailer tailer = new LogTailer(logFile)) {
+            assertTrue(new TailCheckpoint(checkpointFile, 0, Long.MAX_VALUE).open("carbon", tailer));
+            assertEquals(Files.size(logFile), tailer.getPosition());
+        }
+    }
+
+    /**
+     * Reads the file to its end and saves the checkpoint, as the log watcher does when it stops.
+     */
+    private void runUntilStopped(long maxCatchUp) throws IOException {
+
+        TailCheckpoint checkpoint = new TailCheckpoint(checkpointFile, 0, maxCatchUp);
+        try (LogTailer tailer = new LogTailer(logFile)) {
+            checkpoint.open("carbon", tailer);
+            tailer.readAvailable(listener);
+            checkpoint.update("carbon", tailer);
+            checkpoint.save();
+        }
+        lines.clear();
+    }
+
+    private void append(String text) throws IOException {
+
+        Files.write(logFile, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimestampParserTest {
+
+    // a zone with daylight saving, 2024-03-31 02:00 is skipped and 2024-10-27 02:00 to 03:00 is repeated
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(ZONE));
+    }
+
+    @After
+    public void tearDown() {
+
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    public void testParsesDefaultLayout() {
+
+        TimestampParser parser = new TimestampParser("DEFAULT");
+        assertEquals(TimestampParser.DEFAULT_FORMAT, parser.getFormat());
+        assertEquals(expected(2024, 5, 1, 10, 15, 30, 123),
+                parser.parse("[2024-05-01 10:15:30,123] ERROR {org.wso2.Sample} - failed"));
+    }
+
+    @Test
+    public void testParsesIso8601Layout() {
+
+        assertEquals(expected(2024, 1, 15, 23, 59, 59, 999),
+                new TimestampParser("ISO8601").parse("TID: [-1234] [] [2024-01-15T23:59:59,999] ERROR"));
+    }
+
+    @Test
+    public void testDaylightSavingTransitions() {
+
+        TimestampParser parser = new TimestampParser(TimestampParser.DEFAULT_FORMAT);
+        // the days around the transitions are parsed in order, as in a log file, to go through the cached offsets
+        int[][] timestamps = {
+                {2024, 3, 30, 12, 0},
+                {2024, 3, 31, 1, 30},
+                // skipped by the clocks, resolved as java.time does to 03:30 summer time
+                {2024, 3, 31, 2, 30},
+                {2024, 3, 31, 3, 30},
+                {2024, 4, 1, 12, 0},
+                {2024, 10, 26, 12, 0},
+                {2024, 10, 27, 1, 30},
+                // repeated by the clocks, resolved as java.time does to the earlier offset
+                {2024, 10, 27, 2, 30},
+                {2024, 10, 27, 3, 30},
+                {2024, 10, 28, 12, 0},
+        };
+        for (int[] t : timestamps) {
+            String line = String.format("[%04d-%02d-%02d %02d:%02d:00,000] ERROR", t[0], t[1], t[2], t[3], t[4]);
+            assertEquals(line, expected(t[0], t[1], t[2], t[3], t[4], 0, 0), parser.parse(line));
+        }
+    }
+
+    @Test
+    public void testSummerAndWinterTimeDifferByTheOffsetChange() {
+
+        TimestampParser parser = new TimestampParser(TimestampParser.DEFAULT_FORMAT);
+        long beforeSpringForward = parser.parse("2024-03-31 01:59:59,000");
+        long afterSpringForward = parser.parse("2024-03-31 03:00:00,000");
+        assertEquals(1000, afterSpringForward - beforeSpringForward);
+    }
+
+    @Test
+    public void testLayoutWithoutDateUsesTheCurrentDay() {
+
+        TimestampParser parser = new TimestampParser("HH:mm:ss,SSS");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss,SSS");
+
+        ZonedDateTime minuteAgo = ZonedDateTime.now(ZONE).minusMinutes(1).truncatedTo(ChronoUnit.MILLIS);
+        long timestamp = parser.parse(formatter.format(minuteAgo) + " ERROR");
+        assertEquals(minuteAgo.toInstant().toEpochMilli(), timestamp);
+    }
+
+    @Test
+    public void testLayoutWithoutDateIsNeverInTheFuture() {
+
+        TimestampParser parser = new TimestampParser("HH:mm:ss,SSS");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss,SSS");
+
+        // a time later than now belongs to the previous day
+        ZonedDateTime now = ZonedDateTime.now(ZONE);
+        LocalTime later = now.plusHours(2).toLocalTime().truncatedTo(ChronoUnit.MILLIS);
+        long timestamp = parser.parse(formatter.format(later) + " ERROR");
+        assertTrue(timestamp <= now.toInstant().toEpochMilli() + 3600000L);
+        assertTrue(timestamp > now.minusDays(1).toInstant().toEpochMilli());
+        assertEquals(later, ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZONE).toLocalTime());
+    }
+
+    @Test
+    public void testFindsTimestampOnlyInTheFirstLine() {
+
+        TimestampParser parser = new TimestampParser(TimestampParser.DEFAULT_FORMAT);
+        assertEquals(-1, parser.parse("ERROR without a timestamp\n[2024-05-01 10:15:30,123] next line"));
+        assertEquals(-1, parser.parse("[2024-05-01 10:15"));
+        assertEquals(-1, parser.parse(""));
+    }
+
+    @Test
+    public void testRejectsOutOfRangeFields() {
+
+        TimestampParser parser = new TimestampParser(TimestampParser.DEFAULT_FORMAT);
+        assertEquals(-1, parser.parse("[2024-13-01 10:15:30,123] ERROR"));
+        assertEquals(-1, parser.parse("[2024-05-01 24:15:30,123] ERROR"));
+        assertEquals(-1, parser.parse("[2024-05-01 10:60:30,123] ERROR"));
+    }
+
+    @Test
+    public void testQuotedLiterals() {
+
+        assertEquals(expected(2024, 5, 1, 10, 15, 30, 0),
+                new TimestampParser("yyyy-MM-dd'at'HH:mm:ss").parse("2024-05-01at10:15:30 ERROR"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUnsupportedField() {
+
+        new TimestampParser("dd MMM yyyy HH:mm:ss");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUnsupportedWidth() {
+
+        new TimestampParser("yy-MM-dd HH:mm:ss");
+    }
+
+    private static long expected(int year, int month, int day, int hour, int minute, int second, int millis) {
+
+        return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1000000)
+                .atZone(ZONE).toInstant().toEpochMilli();
+    }
+}
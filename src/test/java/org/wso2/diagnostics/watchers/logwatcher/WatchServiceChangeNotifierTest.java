@@ -0,0 +1,166 @@
+/*
+ *  Copyright (c) 2024, WSO2 LLC. (http://www.wso2.org).
+ *
+ *   WSO2 LLC. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.wso2.diagnostics.watchers.logwatcher;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The waits for a change are bounded by a long interval, hence a wait returning true early was woken up by a file
+ * system event, whatever the delay of its delivery.
+ */
+public class WatchServiceChangeNotifierTest {
+
+    private static final long LONG_INTERVAL = 30000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private WatchServiceChangeNotifier notifier;
+
+    @After
+    public void tearDown() throws IOException {
+
+        if (notifier != null) {
+            notifier.close();
+        }
+    }
+
+    @Test
+    public void testWriteToTheFileWakesTheWait() throws Exception {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        notifier = new WatchServiceChangeNotifier(LONG_INTERVAL, LONG_INTERVAL);
+        notifier.register(file);
+        assertEquals("watch_service", notifier.getMode());
+
+        append(file, "[2024-05-01 10:00:00,000] ERROR {org.wso2.Sample} - failed\n");
+        long start = System.nanoTime();
+        assertTrue(notifier.await(false, LONG_INTERVAL));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(LONG_INTERVAL / 2));
+    }
+
+    @Test
+    public void testWaitingThreadIsWokenByAWrite() throws Exception {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        notifier = new WatchServiceChangeNotifier(LONG_INTERVAL, LONG_INTERVAL);
+        notifier.register(file);
+
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+                append(file, "line\n");
+            } catch (InterruptedException | IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        long start = System.nanoTime();
+        assertTrue(notifier.await(false, LONG_INTERVAL));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(LONG_INTERVAL / 2));
+        writer.join();
+    }
+
+    @Test
+    public void testRotationWakesTheWait() throws Exception {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        notifier = new WatchServiceChangeNotifier(LONG_INTERVAL, LONG_INTERVAL);
+        notifier.register(file);
+
+        Files.move(file, file.resolveSibling("wso2carbon.log.1"));
+        Files.createFile(file);
+        assertTrue(notifier.await(false, LONG_INTERVAL));
+    }
+
+    @Test
+    public void testChangeOfAnotherFileInTheDirectoryIsIgnored() throws Exception {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        Path other = folder.newFile("http_access.log").toPath();
+        notifier = new WatchServiceChangeNotifier(100, 100);
+        notifier.register(file);
+
+        append(other, "GET /\n");
+        assertFalse(notifier.await(false, 100));
+    }
+
+    @Test
+    public void testWaitWithoutEventsIsBoundedByThePollingInterval() throws Exception {
+
+        Path file = folder.newFile("wso2carbon.log").toPath();
+        notifier = new WatchServiceChangeNotifier(50, 50);
+        notifier.register(file);
+
+        long start = System.nanoTime();
+        assertFalse(notifier.await(false, LONG_INTERVAL));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(LONG_INTERVAL / 2));
+    }
+
+    @Test
+    public void testMissingDirectoryFallsBackToPolling() throws Exception {
+
+        notifier = new WatchServiceChangeNotifier(50, 50);
+        notifier.register(folder.getRoot().toPath().resolve("missing").resolve("wso2carbon.log"));
+
+        long start = System.nanoTime();
+        assertFalse(notifier.await(false, LONG_INTERVAL));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(LONG_INTERVAL / 2));
+    }
+
+    @Test
+    public void testFileSystemWithoutWatchServiceFallsBackToPolling() throws Exception {
+
+        // a zip file system does not support watching
+        URI uri = URI.create("jar:" + folder.getRoot().toPath().resolve("logs.zip").toUri());
+        try (FileSystem zipFileSystem = FileSystems.newFileSystem(uri, Collections.singletonMap("create", "true"))) {
+            Path file = zipFileSystem.getPath("wso2carbon.log");
+            notifier = new WatchServiceChangeNotifier(zipFileSystem, 50, 50);
+            notifier.register(file);
+            assertEquals("polling", notifier.getMode());
+
+            long start = System.nanoTime();
+            assertFalse(notifier.await(false, LONG_INTERVAL));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(LONG_INTERVAL / 2));
+        }
+    }
+
+    private static void append(Path file, String content) throws IOException {
+
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}